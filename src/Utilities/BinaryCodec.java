@@ -0,0 +1,652 @@
+package Utilities;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary framing a client can switch to with FRAMING_REQ, for clients that send or receive many messages.
+ *
+ * A frame is the length of the rest of the frame as a varint, a 1-byte command id and the payload.
+ * The high bit of the command id marks a frame with a request id (see MessageCodec.REQUEST_ID), which
+ * follows the command id as a zigzag varint.
+ * The payload holds the components of the record of the command in declaration order, without names:
+ * <ul>
+ *     <li>boolean: 1 byte; Boolean: 1 byte, 0 for null, 1 for false and 2 for true</li>
+ *     <li>int and long: zigzag varint; Integer and Long: 1 byte (0 for null) and a zigzag varint</li>
+ *     <li>String: varint of the UTF-8 length + 1 (0 for null) and the UTF-8 bytes</li>
+ *     <li>List and Map: varint of the size + 1 (0 for null) and the elements, for a map key then value</li>
+ *     <li>Nested record: varint of its encoded length + 1 (0 for null) and its components</li>
+ * </ul>
+ * Components at the end that are null, false or 0 are left out, and a decoder ignores bytes after the
+ * components it knows. A record can therefore get new components at the end, like a JSON payload gets
+ * new optional fields.
+ *
+ * The layout is derived from the record types, so both sides must use the same records. Commands
+ * without a record have an empty payload.
+ */
+public final class BinaryCodec {
+    public static final String FRAMING = "binary";
+
+    /**
+     * A decoded frame.
+     *
+     * @param command   The command, or null for an unknown command id.
+     * @param payload   The payload record, or null for a command without a record.
+     * @param requestId The request id, or null for none.
+     */
+    public record Frame(String command, Object payload, Long requestId) {
+        public Frame(String command, Object payload) {
+            this(command, payload, null);
+        }
+    }
+
+    // Set on the command id of a frame with a request id
+    private static final int REQUEST_ID_FLAG = 0x80;
+
+    // A command id is the index in this array, up to 127. Ids are part of the protocol, so new commands are only appended.
+    private static final String[] COMMANDS = {
+            null, Commands.READY, Commands.ENTER, Commands.ENTER_RESP, Commands.BROADCAST_REQ,
+            Commands.BROADCAST_RESP, Commands.BROADCAST, Commands.JOINED, Commands.LEFT, Commands.BYE,
+            Commands.BYE_RESP, Commands.UNKNOWN_COMMAND, Commands.PING, Commands.PONG, Commands.LIST_REQ,
+            Commands.LIST_RESP, Commands.PRIVATE_MSG, Commands.HANGUP, Commands.PRIVATE_MSG_REQ, Commands.PRIVATE_MSG_ACK,
+            Commands.PRIVATE_MSG_RESP, Commands.PONG_ERROR, Commands.PARSE_ERROR, Commands.RPS_START_REQ, Commands.RPS_START_RESP,
+            Commands.RPS_INVITE, Commands.RPS_READY, Commands.RPS_INVITE_DECLINED, Commands.RPS_INVITE_RESP, Commands.RPS_MOVE_RESP,
+            Commands.RPS_RESULT, Commands.RPS_MOVE_REQ, Commands.FILE_TRANSFER_REQ, Commands.FILE_TRANSFER_RESP, Commands.FILE_TRANSFER_READY,
+            Commands.TTT_START_REQ, Commands.TTT_INVITE, Commands.TTT_INVITE_RESP, Commands.TTT_START_RESP, Commands.TTT_MOVE_REQ,
+            Commands.TTT_MOVE_RESP, Commands.TTT_RESULT, Commands.TTT_INVITE_DECLINED, Commands.TTT_READY, Commands.TTT_BOARD_DELTA,
+            Commands.TTT_SNAPSHOT, Commands.TTT_WATCH_REQ, Commands.TTT_WATCH_RESP, Commands.TTT_UNWATCH_REQ, Commands.TTT_UNWATCH_RESP,
+            Commands.TTT_PAUSED, Commands.TTT_RESUME, Commands.LEADERBOARD_REQ, Commands.LEADERBOARD_RESP, Commands.ROOM_JOIN_REQ,
+            Commands.ROOM_JOIN_RESP, Commands.ROOM_LEAVE_REQ, Commands.ROOM_LEAVE_RESP, Commands.ROOM_MSG_REQ, Commands.ROOM_MSG_RESP,
+            Commands.ROOM_MSG, Commands.HISTORY_REQ, Commands.HISTORY_RESP, Commands.SEARCH_REQ, Commands.SEARCH_RESP,
+            Commands.PRESENCE_DELTA, Commands.MENTION, Commands.FRAMING_REQ, Commands.FRAMING_RESP, Commands.COMPRESS_REQ,
+            Commands.COMPRESS_RESP
+    };
+    private static final Map<String, Integer> IDS = new HashMap<>();
+    // The longest varint of an int
+    private static final int MAX_LENGTH_BYTES = 5;
+
+    static {
+        for (int id = 1; id < COMMANDS.length; id++) {
+            IDS.put(COMMANDS[id], id);
+        }
+    }
+
+    private static final ClassValue<RecordSchema> SCHEMAS = new ClassValue<>() {
+        @Override
+        protected RecordSchema computeValue(Class<?> type) {
+            return new RecordSchema(type);
+        }
+    };
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * @param command A command.
+     * @return The id of the command, or -1 if it has none.
+     */
+    public static int idOf(String command) {
+        Integer id = IDS.get(command);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Encodes a complete frame, length included.
+     *
+     * @param command The command of the frame.
+     * @param payload The payload; anything but a record, e.g. null, gives an empty payload.
+     * @return The frame.
+     * @throws IllegalArgumentException If the command has no id.
+     */
+    public static byte[] encodeFrame(String command, Object payload) {
+        return encodeFrame(command, payload, null);
+    }
+
+    /**
+     * Encodes a complete frame with a request id, length included.
+     *
+     * @param command   The command of the frame.
+     * @param payload   The payload; anything but a record, e.g. null, gives an empty payload.
+     * @param requestId The request id, or null for none.
+     * @return The frame.
+     * @throws IllegalArgumentException If the command has no id.
+     */
+    public static byte[] encodeFrame(String command, Object payload, Long requestId) {
+        int id = idOf(command);
+        if (id < 0) {
+            throw new IllegalArgumentException("No binary id for command " + command);
+        }
+        Output out = new Output();
+        out.length = MAX_LENGTH_BYTES;
+        if (requestId == null) {
+            out.writeByte(id);
+        } else {
+            out.writeByte(id | REQUEST_ID_FLAG);
+            out.writeVarint(zigzag(requestId));
+        }
+        if (payload instanceof Record) {
+            encodeRecord(SCHEMAS.get(payload.getClass()), payload, out);
+        }
+        // Write the length right in front of the body and return both
+        int bodyLength = out.length - MAX_LENGTH_BYTES;
+        int start = MAX_LENGTH_BYTES - varintSize(bodyLength);
+        out.length = start;
+        out.writeVarint(bodyLength);
+        return Arrays.copyOfRange(out.bytes, start, MAX_LENGTH_BYTES + bodyLength);
+    }
+
+    /**
+     * Converts a text frame, as in "COMMAND {json}", into a binary frame.
+     *
+     * @param line The text frame without line break.
+     * @return The binary frame.
+     * @throws IOException              If the JSON payload does not match the record of the command.
+     * @throws IllegalArgumentException If the command has no id.
+     */
+    public static byte[] textToFrame(String line) throws IOException {
+        int space = line.indexOf(' ');
+        String command = space < 0 ? line : line.substring(0, space);
+        Object payload = null;
+        Long requestId = null;
+        if (space >= 0) {
+            String json = line.substring(space + 1);
+            if (MessageCodec.typeOf(command) != null) {
+                payload = MessageCodec.decode(command, json);
+            }
+            requestId = MessageCodec.requestIdOf(json);
+        }
+        return encodeFrame(command, payload, requestId);
+    }
+
+    /**
+     * Converts a decoded frame into a text frame, as in "COMMAND {json}".
+     *
+     * @param frame The frame, with a known command.
+     * @return The text frame without line break.
+     * @throws IOException If the payload cannot be serialized.
+     */
+    public static String frameToText(Frame frame) throws IOException {
+        String text = frame.command() + " " + (frame.payload() == null ? "{}" : MessageCodec.toJson(frame.payload()));
+        return frame.requestId() == null ? text : MessageCodec.withRequestId(text, frame.requestId());
+    }
+
+    /**
+     * Decodes a frame without its length.
+     *
+     * @param bytes  The bytes holding the frame.
+     * @param offset The offset of the command id.
+     * @param length The length of the frame without its length.
+     * @return The frame, with a null command if the id is unknown.
+     * @throws IOException If the payload is malformed.
+     */
+    public static Frame decodeFrame(byte[] bytes, int offset, int length) throws IOException {
+        if (length < 1) {
+            throw new IOException("Empty binary frame");
+        }
+        int id = bytes[offset] & 0xFF & ~REQUEST_ID_FLAG;
+        String command = id < COMMANDS.length ? COMMANDS[id] : null;
+        Input in = new Input(bytes, offset + 1, offset + length);
+        Long requestId = (bytes[offset] & REQUEST_ID_FLAG) != 0 ? unzigzag(in.readVarint()) : null;
+        if (command == null) {
+            return new Frame(null, null, requestId);
+        }
+        Class<?> type = MessageCodec.typeOf(command);
+        if (type == null) {
+            return new Frame(command, null, requestId);
+        }
+        return new Frame(command, decodeRecord(SCHEMAS.get(type), in, offset + length), requestId);
+    }
+
+    /**
+     * Writes a frame to a stream, e.g. the socket of a client.
+     *
+     * @param out     The stream.
+     * @param command The command of the frame.
+     * @param payload The payload record.
+     * @throws IOException If the stream cannot be written.
+     */
+    public static void writeFrame(OutputStream out, String command, Object payload) throws IOException {
+        writeFrame(out, command, payload, null);
+    }
+
+    /**
+     * Writes a frame with a request id to a stream, e.g. the socket of the server.
+     *
+     * @param out       The stream.
+     * @param command   The command of the frame.
+     * @param payload   The payload record.
+     * @param requestId The request id, or null for none.
+     * @throws IOException If the stream cannot be written.
+     */
+    public static void writeFrame(OutputStream out, String command, Object payload, Long requestId) throws IOException {
+        out.write(encodeFrame(command, payload, requestId));
+        out.flush();
+    }
+
+    /**
+     * Reads the next frame from a stream, e.g. the socket of a client.
+     *
+     * @param in       The stream.
+     * @param maxBytes The maximum length of a frame.
+     * @return The frame, or null at the end of the stream.
+     * @throws IOException If the stream cannot be read or the frame is malformed or too long.
+     */
+    public static Frame readFrame(InputStream in, int maxBytes) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return null;
+                }
+                throw new EOFException("Truncated binary frame");
+            }
+            length |= (b & 0x7F) << shift;
+            if (b < 0x80) {
+                break;
+            } else if (shift == 28) {
+                throw new IOException("Malformed binary frame length");
+            }
+        }
+        if (length > maxBytes) {
+            throw new IOException("Binary frame longer than " + maxBytes + " bytes");
+        }
+        byte[] body = in.readNBytes(length);
+        if (body.length < length) {
+            throw new EOFException("Truncated binary frame");
+        }
+        return decodeFrame(body, 0, length);
+    }
+
+    private static void encodeRecord(RecordSchema schema, Object record, Output out) {
+        int end = out.length;
+        for (Component component : schema.components) {
+            Object value = component.get(record);
+            encodeValue(component, value, out);
+            if (!component.isDefault(value)) {
+                end = out.length;
+            }
+        }
+        // Leave out the components at the end that have their default value
+        out.length = end;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void encodeValue(Component component, Object value, Output out) {
+        switch (component.kind) {
+            case BOOLEAN -> out.writeByte((Boolean) value ? 1 : 0);
+            case BOXED_BOOLEAN -> out.writeByte(value == null ? 0 : (Boolean) value ? 2 : 1);
+            case INT, LONG -> out.writeVarint(zigzag(((Number) value).longValue()));
+            case BOXED_INT, BOXED_LONG -> {
+                if (value == null) {
+                    out.writeByte(0);
+                } else {
+                    out.writeByte(1);
+                    out.writeVarint(zigzag(((Number) value).longValue()));
+                }
+            }
+            case STRING -> writeString((String) value, out);
+            case STRING_LIST -> {
+                if (writeSize(value == null ? -1 : ((List<?>) value).size(), out)) {
+                    for (Object element : (List<?>) value) {
+                        writeString((String) element, out);
+                    }
+                }
+            }
+            case RECORD_LIST -> {
+                if (writeSize(value == null ? -1 : ((List<?>) value).size(), out)) {
+                    for (Object element : (List<?>) value) {
+                        writeNested(component.elementSchema, element, out);
+                    }
+                }
+            }
+            case STRING_MAP -> {
+                if (writeSize(value == null ? -1 : ((Map<?, ?>) value).size(), out)) {
+                    for (Map.Entry<String, String> entry : ((Map<String, String>) value).entrySet()) {
+                        writeString(entry.getKey(), out);
+                        writeString(entry.getValue(), out);
+                    }
+                }
+            }
+            case RECORD -> writeNested(component.elementSchema, value, out);
+        }
+    }
+
+    private static void writeString(String value, Output out) {
+        if (value == null) {
+            out.writeByte(0);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeVarint(utf8.length + 1L);
+        out.writeBytes(utf8);
+    }
+
+    /**
+     * @return False if the collection is null, so no elements follow.
+     */
+    private static boolean writeSize(int size, Output out) {
+        out.writeVarint(size + 1L);
+        return size >= 0;
+    }
+
+    private static void writeNested(RecordSchema schema, Object record, Output out) {
+        if (record == null) {
+            out.writeByte(0);
+            return;
+        }
+        Output nested = new Output();
+        encodeRecord(schema, record, nested);
+        out.writeVarint(nested.length + 1L);
+        out.writeBytes(Arrays.copyOf(nested.bytes, nested.length));
+    }
+
+    private static Object decodeRecord(RecordSchema schema, Input in, int end) throws IOException {
+        Object[] values = new Object[schema.components.length];
+        for (int i = 0; i < values.length; i++) {
+            Component component = schema.components[i];
+            values[i] = in.position < end ? decodeValue(component, in) : component.defaultValue;
+        }
+        if (in.position > end) {
+            throw new IOException("Malformed binary payload");
+        }
+        // Components added in a later version
+        in.position = end;
+        try {
+            return schema.construct(values);
+        } catch (RuntimeException e) {
+            // Rejected by the constructor of the record
+            throw new IOException("Malformed binary payload", e);
+        }
+    }
+
+    private static Object decodeValue(Component component, Input in) throws IOException {
+        switch (component.kind) {
+            case BOOLEAN:
+                return in.readByte() != 0;
+            case BOXED_BOOLEAN: {
+                int b = in.readByte();
+                return b == 0 ? null : b == 2;
+            }
+            case INT:
+                return (int) unzigzag(in.readVarint());
+            case LONG:
+                return unzigzag(in.readVarint());
+            case BOXED_INT:
+                return in.readByte() == 0 ? null : (int) unzigzag(in.readVarint());
+            case BOXED_LONG:
+                return in.readByte() == 0 ? null : unzigzag(in.readVarint());
+            case STRING:
+                return readString(in);
+            case STRING_LIST: {
+                int size = readSize(in);
+                if (size < 0) {
+                    return null;
+                }
+                List<String> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readString(in));
+                }
+                return list;
+            }
+            case RECORD_LIST: {
+                int size = readSize(in);
+                if (size < 0) {
+                    return null;
+                }
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readNested(component.elementSchema, in));
+                }
+                return list;
+            }
+            case STRING_MAP: {
+                int size = readSize(in);
+                if (size < 0) {
+                    return null;
+                }
+                Map<String, String> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(readString(in), readString(in));
+                }
+                return map;
+            }
+            default:
+                return readNested(component.elementSchema, in);
+        }
+    }
+
+    private static String readString(Input in) throws IOException {
+        int length = readSize(in);
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(in.bytes, in.position, in.take(length), StandardCharsets.UTF_8);
+        in.position += length;
+        return value;
+    }
+
+    /**
+     * @return The size, or -1 for null.
+     */
+    private static int readSize(Input in) throws IOException {
+        long size = in.readVarint() - 1;
+        // A size can never be more than the remaining bytes, which keeps a bad frame from allocating much
+        if (size < -1 || size > in.end - in.position) {
+            throw new IOException("Malformed binary payload");
+        }
+        return (int) size;
+    }
+
+    private static Object readNested(RecordSchema schema, Input in) throws IOException {
+        int length = readSize(in);
+        if (length < 0) {
+            return null;
+        }
+        return decodeRecord(schema, in, in.position + in.take(length));
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private enum Kind {
+        BOOLEAN, INT, LONG, BOXED_BOOLEAN, BOXED_INT, BOXED_LONG, STRING, STRING_LIST, RECORD_LIST, STRING_MAP, RECORD
+    }
+
+    private static final class Component {
+        private final Kind kind;
+        private final MethodHandle accessor;
+        private final Object defaultValue;
+        // The schema of a nested record or of the elements of a list of records
+        private final RecordSchema elementSchema;
+
+        Component(RecordComponent component) throws IllegalAccessException {
+            Class<?> type = component.getType();
+            RecordSchema element = null;
+            if (type == boolean.class) {
+                kind = Kind.BOOLEAN;
+            } else if (type == int.class) {
+                kind = Kind.INT;
+            } else if (type == long.class) {
+                kind = Kind.LONG;
+            } else if (type == Boolean.class) {
+                kind = Kind.BOXED_BOOLEAN;
+            } else if (type == Integer.class) {
+                kind = Kind.BOXED_INT;
+            } else if (type == Long.class) {
+                kind = Kind.BOXED_LONG;
+            } else if (type == String.class) {
+                kind = Kind.STRING;
+            } else if (type == List.class && typeArgument(component, 0) == String.class) {
+                kind = Kind.STRING_LIST;
+            } else if (type == List.class && typeArgument(component, 0) instanceof Class<?> elementType && elementType.isRecord()) {
+                kind = Kind.RECORD_LIST;
+                element = SCHEMAS.get(elementType);
+            } else if (type == Map.class && typeArgument(component, 0) == String.class && typeArgument(component, 1) == String.class) {
+                kind = Kind.STRING_MAP;
+            } else if (type.isRecord()) {
+                kind = Kind.RECORD;
+                element = SCHEMAS.get(type);
+            } else {
+                throw new IllegalArgumentException("Unsupported component " + component);
+            }
+            elementSchema = element;
+            defaultValue = switch (kind) {
+                case BOOLEAN -> false;
+                case INT -> 0;
+                case LONG -> 0L;
+                default -> null;
+            };
+            accessor = MethodHandles.publicLookup().unreflect(component.getAccessor())
+                    .asType(MethodType.methodType(Object.class, Object.class));
+        }
+
+        Object get(Object record) {
+            try {
+                return accessor.invokeExact(record);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        boolean isDefault(Object value) {
+            return value == null || value.equals(defaultValue);
+        }
+
+        private static Type typeArgument(RecordComponent component, int index) {
+            return component.getGenericType() instanceof ParameterizedType parameterized
+                    ? parameterized.getActualTypeArguments()[index] : null;
+        }
+    }
+
+    private static final class RecordSchema {
+        private final Component[] components;
+        private final MethodHandle constructor;
+
+        RecordSchema(Class<?> type) {
+            RecordComponent[] recordComponents = type.getRecordComponents();
+            components = new Component[recordComponents.length];
+            Class<?>[] parameterTypes = new Class<?>[recordComponents.length];
+            try {
+                for (int i = 0; i < recordComponents.length; i++) {
+                    components[i] = new Component(recordComponents[i]);
+                    parameterTypes[i] = recordComponents[i].getType();
+                }
+                constructor = MethodHandles.publicLookup().unreflectConstructor(type.getDeclaredConstructor(parameterTypes))
+                        .asSpreader(Object[].class, parameterTypes.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Cannot encode " + type, e);
+            }
+        }
+
+        Object construct(Object[] values) {
+            try {
+                return constructor.invokeExact(values);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final class Output {
+        private byte[] bytes = new byte[64];
+        private int length;
+
+        void writeByte(int b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) b;
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeBytes(byte[] source) {
+            if (length + source.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + source.length));
+            }
+            System.arraycopy(source, 0, bytes, length, source.length);
+            length += source.length;
+        }
+    }
+
+    private static final class Input {
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        Input(byte[] bytes, int position, int end) {
+            this.bytes = bytes;
+            this.position = position;
+            this.end = end;
+        }
+
+        int readByte() throws IOException {
+            if (position >= end) {
+                throw new IOException("Malformed binary payload");
+            }
+            return bytes[position++];
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed binary payload");
+        }
+
+        /**
+         * Checks that the next length bytes are part of the payload.
+         *
+         * @return The length.
+         */
+        int take(int length) throws IOException {
+            if (length > end - position) {
+                throw new IOException("Malformed binary payload");
+            }
+            return length;
+        }
+    }
+}
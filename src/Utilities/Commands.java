@@ -19,6 +19,7 @@ public class Commands {
     public static final String PRIVATE_MSG = "PRIVATE_MSG";
     public static final String HANGUP = "HANGUP";
     public static final String PRIVATE_MSG_REQ = "PRIVATE_MSG_REQ";
+    public static final String PRIVATE_MSG_ACK = "PRIVATE_MSG_ACK";
     public static final String PRIVATE_MSG_RESP = "PRIVATE_MSG_RESP";
     public static final String PONG_ERROR = "PONG_ERROR";
     public static final String PARSE_ERROR = "PARSE_ERROR";
@@ -43,5 +44,43 @@ public class Commands {
     public static final String TTT_RESULT = "TTT_RESULT";
     public static final String TTT_INVITE_DECLINED = "TTT_INVITE_DECLINED";
     public static final String TTT_READY = "TTT_READY";
-    public static final String TTT_BOARD_UPDATE = "TTT_BOARD_UPDATE";
+    public static final String TTT_BOARD_DELTA = "TTT_BOARD_DELTA";
+    public static final String TTT_SNAPSHOT = "TTT_SNAPSHOT";
+    public static final String TTT_WATCH_REQ = "TTT_WATCH_REQ";
+    public static final String TTT_WATCH_RESP = "TTT_WATCH_RESP";
+    public static final String TTT_UNWATCH_REQ = "TTT_UNWATCH_REQ";
+    public static final String TTT_UNWATCH_RESP = "TTT_UNWATCH_RESP";
+    public static final String TTT_PAUSED = "TTT_PAUSED";
+    public static final String TTT_RESUME = "TTT_RESUME";
+    public static final String LEADERBOARD_REQ = "LEADERBOARD_REQ";
+    public static final String LEADERBOARD_RESP = "LEADERBOARD_RESP";
+    public static final String ROOM_JOIN_REQ = "ROOM_JOIN_REQ";
+    public static final String ROOM_JOIN_RESP = "ROOM_JOIN_RESP";
+    public static final String ROOM_LEAVE_REQ = "ROOM_LEAVE_REQ";
+    public static final String ROOM_LEAVE_RESP = "ROOM_LEAVE_RESP";
+    public static final String ROOM_MSG_REQ = "ROOM_MSG_REQ";
+    public static final String ROOM_MSG_RESP = "ROOM_MSG_RESP";
+    public static final String ROOM_MSG = "ROOM_MSG";
+    public static final String HISTORY_REQ = "HISTORY_REQ";
+    public static final String HISTORY_RESP = "HISTORY_RESP";
+    public static final String SEARCH_REQ = "SEARCH_REQ";
+    public static final String SEARCH_RESP = "SEARCH_RESP";
+    public static final String PRESENCE_DELTA = "PRESENCE_DELTA";
+    public static final String MENTION = "MENTION";
+    public static final String FRAMING_REQ = "FRAMING_REQ";
+    public static final String FRAMING_RESP = "FRAMING_RESP";
+    public static final String COMPRESS_REQ = "COMPRESS_REQ";
+    public static final String COMPRESS_RESP = "COMPRESS_RESP";
+
+    /**
+     * @param command A command sent by a client.
+     * @return The command of the direct answer to it (ENTER_RESP for ENTER, BYE_RESP for BYE, X_RESP for
+     * X_REQ), or null if the command is not a request.
+     */
+    public static String responseTo(String command) {
+        if (command.equals(ENTER) || command.equals(BYE)) {
+            return command + "_RESP";
+        }
+        return command.endsWith("_REQ") ? command.substring(0, command.length() - "_REQ".length()) + "_RESP" : null;
+    }
 }
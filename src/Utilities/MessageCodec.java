@@ -0,0 +1,320 @@
+package Utilities;
+
+import Utilities.messages.*;
+import Utilities.messages.fileTransfer.FileTransferReady;
+import Utilities.messages.fileTransfer.FileTransferReq;
+import Utilities.messages.fileTransfer.FileTransferResp;
+import Utilities.messages.history.HistoryReq;
+import Utilities.messages.history.HistoryResp;
+import Utilities.messages.leaderboard.LeaderboardReq;
+import Utilities.messages.leaderboard.LeaderboardResp;
+import Utilities.messages.privateMessage.PrivateMsg;
+import Utilities.messages.privateMessage.PrivateMsgAck;
+import Utilities.messages.privateMessage.PrivateMsgReq;
+import Utilities.messages.privateMessage.PrivateMsgResp;
+import Utilities.messages.requestList.ListReq;
+import Utilities.messages.requestList.ListResp;
+import Utilities.messages.rockPaperScissor.*;
+import Utilities.messages.room.*;
+import Utilities.messages.search.SearchReq;
+import Utilities.messages.search.SearchResp;
+import Utilities.messages.ticTacToe.*;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The codec shared by the server, the client and the protocol tests. It maps every command to the record
+ * carrying its payload, and keeps a pre-built ObjectReader and ObjectWriter per record type, so encoding
+ * or decoding a frame is a hash lookup followed by the Jackson call.
+ *
+ * Building a reader or writer makes Jackson resolve the (de)serializer of its type eagerly, and warmUp()
+ * additionally runs every type through a decode and an encode, so the class loading and introspection
+ * happen once at startup instead of on the first message of each type.
+ *
+ * A few commands carry no record (RPS_READY, TTT_INVITE_DECLINED and TTT_UNWATCH_REQ) and have no entry.
+ * Any object is still encoded, with the shared mapper when its type is not registered.
+ *
+ * The id of a request (REQUEST_ID) belongs to the frame rather than to its record: records ignore it when
+ * decoding, requestIdOf() reads it and withRequestId() adds it to an encoded frame.
+ */
+public final class MessageCodec {
+    /** The member of a JSON payload that holds the id of a request, which the server echoes in the answer. */
+    public static final String REQUEST_ID = "reqId";
+    private static final String QUOTED_REQUEST_ID = "\"" + REQUEST_ID + "\"";
+
+    private static final ObjectMapper MAPPER = Utils.newSharedBufferMapper();
+    private static final Map<String, Class<?>> TYPE_BY_COMMAND = new HashMap<>();
+    // The first command registered for a type, e.g. JOINED for Joined, which is also used by LEFT
+    private static final Map<Class<?>, String> COMMAND_BY_TYPE = new HashMap<>();
+    private static final Map<Class<?>, ObjectReader> READERS = new HashMap<>();
+    private static final Map<Class<?>, ObjectWriter> WRITERS = new HashMap<>();
+
+    static {
+        register(Commands.READY, Ready.class);
+        register(Commands.ENTER, Enter.class);
+        register(Commands.ENTER_RESP, EnterResp.class);
+        register(Commands.BROADCAST_REQ, BroadcastReq.class);
+        register(Commands.BROADCAST_RESP, BroadcastResp.class);
+        register(Commands.BROADCAST, Broadcast.class);
+        register(Commands.JOINED, Joined.class);
+        register(Commands.LEFT, Joined.class);
+        register(Commands.PRESENCE_DELTA, PresenceDelta.class);
+        register(Commands.MENTION, Mention.class);
+        register(Commands.BYE, Bye.class);
+        register(Commands.BYE_RESP, BroadcastResp.class);
+        register(Commands.PARSE_ERROR, ParseError.class);
+        register(Commands.UNKNOWN_COMMAND, ParseError.class);
+        register(Commands.PING, Ping.class);
+        register(Commands.PONG, Pong.class);
+        register(Commands.PONG_ERROR, PongError.class);
+        register(Commands.HANGUP, Hangup.class);
+        register(Commands.LIST_REQ, ListReq.class);
+        register(Commands.LIST_RESP, ListResp.class);
+        register(Commands.PRIVATE_MSG_REQ, PrivateMsgReq.class);
+        register(Commands.PRIVATE_MSG_RESP, PrivateMsgResp.class);
+        register(Commands.PRIVATE_MSG, PrivateMsg.class);
+        register(Commands.PRIVATE_MSG_ACK, PrivateMsgAck.class);
+        register(Commands.RPS_START_REQ, RpsStartReq.class);
+        register(Commands.RPS_START_RESP, RpsStartResp.class);
+        register(Commands.RPS_INVITE, RpsInvite.class);
+        register(Commands.RPS_INVITE_RESP, RpsInviteResp.class);
+        register(Commands.RPS_INVITE_DECLINED, RpsInviteDeclined.class);
+        register(Commands.RPS_MOVE_REQ, RpsMove.class);
+        register(Commands.RPS_MOVE_RESP, RpsMoveResp.class);
+        register(Commands.RPS_RESULT, RpsResult.class);
+        register(Commands.FILE_TRANSFER_REQ, FileTransferReq.class);
+        register(Commands.FILE_TRANSFER_RESP, FileTransferResp.class);
+        register(Commands.FILE_TRANSFER_READY, FileTransferReady.class);
+        register(Commands.TTT_START_REQ, TttStartReq.class);
+        register(Commands.TTT_START_RESP, TttStartResp.class);
+        register(Commands.TTT_INVITE, TttInvite.class);
+        register(Commands.TTT_INVITE_RESP, TttInviteResp.class);
+        register(Commands.TTT_READY, TttReady.class);
+        register(Commands.TTT_MOVE_REQ, TttMove.class);
+        register(Commands.TTT_MOVE_RESP, TttMoveResp.class);
+        register(Commands.TTT_BOARD_DELTA, TttBoardDelta.class);
+        register(Commands.TTT_RESULT, TttResult.class);
+        register(Commands.TTT_SNAPSHOT, TttSnapshot.class);
+        register(Commands.TTT_RESUME, TttSnapshot.class);
+        register(Commands.TTT_PAUSED, TttPaused.class);
+        register(Commands.TTT_WATCH_REQ, TttWatchReq.class);
+        register(Commands.TTT_WATCH_RESP, TttWatchResp.class);
+        register(Commands.TTT_UNWATCH_RESP, TttWatchResp.class);
+        register(Commands.LEADERBOARD_REQ, LeaderboardReq.class);
+        register(Commands.LEADERBOARD_RESP, LeaderboardResp.class);
+        register(Commands.ROOM_JOIN_REQ, RoomJoinReq.class);
+        register(Commands.ROOM_JOIN_RESP, RoomJoinResp.class);
+        register(Commands.ROOM_LEAVE_REQ, RoomLeaveReq.class);
+        register(Commands.ROOM_LEAVE_RESP, RoomLeaveResp.class);
+        register(Commands.ROOM_MSG_REQ, RoomMsgReq.class);
+        register(Commands.ROOM_MSG_RESP, RoomMsgResp.class);
+        register(Commands.ROOM_MSG, RoomMsg.class);
+        register(Commands.HISTORY_REQ, HistoryReq.class);
+        register(Commands.HISTORY_RESP, HistoryResp.class);
+        register(Commands.SEARCH_REQ, SearchReq.class);
+        register(Commands.SEARCH_RESP, SearchResp.class);
+        register(Commands.FRAMING_REQ, FramingReq.class);
+        register(Commands.FRAMING_RESP, FramingResp.class);
+        register(Commands.COMPRESS_REQ, CompressReq.class);
+        register(Commands.COMPRESS_RESP, CompressResp.class);
+        // Sent as the response of any request refused by the rate limiter, never as a command of its own
+        MAPPER.addMixIn(ErrorResp.class, IgnoreRequestId.class);
+        READERS.put(ErrorResp.class, MAPPER.readerFor(ErrorResp.class));
+        WRITERS.put(ErrorResp.class, MAPPER.writerFor(ErrorResp.class));
+    }
+
+    // Lets a record be decoded from a payload with a request id
+    @JsonIgnoreProperties({REQUEST_ID})
+    private interface IgnoreRequestId {
+    }
+
+    private MessageCodec() {
+    }
+
+    private static void register(String command, Class<?> type) {
+        if (!READERS.containsKey(type)) {
+            MAPPER.addMixIn(type, IgnoreRequestId.class);
+        }
+        TYPE_BY_COMMAND.put(command, type);
+        COMMAND_BY_TYPE.putIfAbsent(type, command);
+        READERS.computeIfAbsent(type, MAPPER::readerFor);
+        WRITERS.computeIfAbsent(type, MAPPER::writerFor);
+    }
+
+    /**
+     * Runs every registered command through a decode of an empty object and an encode of the result, so the
+     * first real message of any type takes the same path as the following ones. Types that cannot be built
+     * from an empty object are skipped, their reader and writer were already resolved when registered.
+     *
+     * @return The time the warm-up took in nanoseconds.
+     */
+    public static long warmUp() {
+        long start = System.nanoTime();
+        for (String command : TYPE_BY_COMMAND.keySet()) {
+            try {
+                encode(command, decode(command, "{}"));
+            } catch (Exception ignored) {
+                // Only a warm-up, the type is still usable
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Formats a command and its payload into a frame, without the trailing newline.
+     *
+     * @param command The command of the frame.
+     * @param message The payload, null is encoded as the JSON null.
+     * @return The frame.
+     * @throws JsonProcessingException If the payload cannot be serialized.
+     */
+    public static String encode(String command, Object message) throws JsonProcessingException {
+        return command + " " + toJson(message);
+    }
+
+    /**
+     * Formats a request or its answer into a frame with a request id, without the trailing newline.
+     *
+     * @param command   The command of the frame.
+     * @param message   The payload.
+     * @param requestId The request id, or null for none.
+     * @return The frame.
+     * @throws JsonProcessingException If the payload cannot be serialized.
+     */
+    public static String encode(String command, Object message, Long requestId) throws JsonProcessingException {
+        String frame = encode(command, message);
+        return requestId == null ? frame : withRequestId(frame, requestId);
+    }
+
+    /**
+     * Adds a request id to a frame encoded by this codec, i.e. a JSON object without spaces.
+     *
+     * @param frame     The frame, as in "COMMAND {json}".
+     * @param requestId The request id.
+     * @return The frame with the id as the last member of its payload, or the frame unchanged if its
+     * payload is not an object.
+     */
+    public static String withRequestId(String frame, long requestId) {
+        int end = frame.length() - 1;
+        if (end < 1 || frame.charAt(end) != '}') {
+            return frame;
+        }
+        String separator = frame.charAt(end - 1) == '{' ? "" : ",";
+        return frame.substring(0, end) + separator + QUOTED_REQUEST_ID + ":" + requestId + "}";
+    }
+
+    /**
+     * Reads the request id of a JSON payload. Only payloads that contain the name of the id are parsed.
+     *
+     * @param json The JSON payload.
+     * @return The request id, or null if the payload has none, or no integer one.
+     */
+    public static Long requestIdOf(String json) {
+        if (!json.contains(QUOTED_REQUEST_ID)) {
+            return null;
+        }
+        try (JsonParser parser = MAPPER.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (REQUEST_ID.equals(name)) {
+                    return value == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : null;
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            // Not valid JSON, or an id out of range: decoding the payload reports the error
+        }
+        return null;
+    }
+
+    /**
+     * @param message The payload to serialize.
+     * @return The payload as JSON.
+     * @throws JsonProcessingException If the payload cannot be serialized.
+     */
+    public static String toJson(Object message) throws JsonProcessingException {
+        ObjectWriter writer = message == null ? null : WRITERS.get(message.getClass());
+        // writeValueAsString() never returns its buffers to a shared pool, so it would allocate new ones on every call
+        StringWriter json = new StringWriter(128);
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(json)) {
+            (writer != null ? writer : MAPPER.writer()).writeValue(generator, message);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            // Writing to a StringWriter never fails
+            throw new IllegalStateException(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Parses a JSON payload into a type, using the pre-built reader when the type is registered.
+     *
+     * @param json The JSON payload.
+     * @param type The type to parse it into.
+     * @return The parsed payload.
+     * @throws JsonProcessingException If the payload is not valid JSON or does not match the type.
+     */
+    public static <T> T decode(String json, Class<T> type) throws JsonProcessingException {
+        ObjectReader reader = READERS.get(type);
+        return reader != null ? reader.readValue(json) : MAPPER.readValue(json, type);
+    }
+
+    /**
+     * Parses the JSON payload of a command into the record registered for that command.
+     *
+     * @param command The command of the frame.
+     * @param json    The JSON payload.
+     * @return The parsed payload.
+     * @throws JsonProcessingException  If the payload is not valid JSON or does not match the record.
+     * @throws IllegalArgumentException If no record is registered for the command.
+     */
+    public static Object decode(String command, String json) throws JsonProcessingException {
+        Class<?> type = TYPE_BY_COMMAND.get(command);
+        if (type == null) {
+            throw new IllegalArgumentException("No message type registered for command " + command);
+        }
+        return READERS.get(type).readValue(json);
+    }
+
+    /**
+     * @param json A JSON payload.
+     * @return The payload as a tree, for callers that only need a field or two.
+     * @throws JsonProcessingException If the payload is not valid JSON.
+     */
+    public static JsonNode readTree(String json) throws JsonProcessingException {
+        return MAPPER.readTree(json);
+    }
+
+    /**
+     * @param command A command.
+     * @return The record type carried by the command, or null if the command has no record.
+     */
+    public static Class<?> typeOf(String command) {
+        return TYPE_BY_COMMAND.get(command);
+    }
+
+    /**
+     * @param type A record type.
+     * @return The first command registered for the type, or null if the type is not registered.
+     */
+    public static String commandOf(Class<?> type) {
+        return COMMAND_BY_TYPE.get(type);
+    }
+}
@@ -1,5 +1,9 @@
 package Utilities;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -8,6 +12,19 @@ import java.security.MessageDigest;
 public class Utils {
     public static final int SERVER_PORT = 1234;
     public static final int FILE_TRANSFER_PORT = 1235;
+    /** The compression a client can ask for with COMPRESS_REQ: a raw deflate stream in each direction. */
+    public static final String COMPRESSION = "deflate";
+
+    /**
+     * Creates an ObjectMapper that borrows its parse and serialization buffers from one pool shared by all
+     * threads. By default, Jackson caches a set of buffers (about 16 KB) in every thread that used it,
+     * which adds up with a thread per connection.
+     *
+     * @return A new ObjectMapper.
+     */
+    public static ObjectMapper newSharedBufferMapper() {
+        return new ObjectMapper(JsonFactory.builder().recyclerPool(JsonRecyclerPools.sharedLockFreePool()).build());
+    }
 
     public static String calculateFileChecksum(String filePath) {
         try {
@@ -1,5 +1,5 @@
 package Utilities.messages;
 
-public record BroadcastResp(String status, int code) {
+public record BroadcastResp(String status, int code) implements Response {
 }
 
@@ -0,0 +1,7 @@
+package Utilities.messages;
+
+/**
+ * Asks the server to compress the connection. The only compression is "deflate", a raw deflate stream in each direction.
+ */
+public record CompressReq(String compression) {
+}
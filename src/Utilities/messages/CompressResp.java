@@ -0,0 +1,7 @@
+package Utilities.messages;
+
+/**
+ * Answers a COMPRESS_REQ. After an OK, every following byte in both directions is part of the deflate streams.
+ */
+public record CompressResp(String status, int code) implements Response {
+}
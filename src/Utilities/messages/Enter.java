@@ -1,5 +1,21 @@
 package Utilities.messages;
 
-public record Enter(String username) {
-}
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Logs in. A client that sets acks receives private messages with an id and acknowledges them
+ * with PRIVATE_MSG_ACK; unacknowledged messages are delivered again after the next login.
+ * A client that sets resumable receives a resume token in ENTER_RESP. After losing its connection,
+ * it can log in again with that token to continue the same session.
+ * A client that sets presenceDeltas receives PRESENCE_DELTA instead of JOINED and LEFT.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record Enter(String username, boolean acks, boolean resumable, String resumeToken, boolean presenceDeltas) {
+    public Enter(String username) {
+        this(username, false, false, null, false);
+    }
 
+    public Enter(String username, boolean acks) {
+        this(username, acks, false, null, false);
+    }
+}
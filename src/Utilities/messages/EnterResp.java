@@ -1,6 +1,15 @@
 package Utilities.messages;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Result of a login. The resume token is only set for resumable sessions; resumed is true when
+ * the login continued an earlier session with its resume token.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record
-EnterResp(String status, int code) {
+EnterResp(String status, int code, String resumeToken, Boolean resumed) implements Response {
+    public EnterResp(String status, int code) {
+        this(status, code, null, null);
+    }
 }
-
@@ -0,0 +1,7 @@
+package Utilities.messages;
+
+/**
+ * An error response for any request, for errors that are the same for every command.
+ */
+public record ErrorResp(String status, int code) implements Response {
+}
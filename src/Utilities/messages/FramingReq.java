@@ -0,0 +1,7 @@
+package Utilities.messages;
+
+/**
+ * Asks the server to switch the connection to another framing. The only framing is "binary", see BinaryCodec.
+ */
+public record FramingReq(String framing) {
+}
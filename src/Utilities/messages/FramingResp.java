@@ -0,0 +1,7 @@
+package Utilities.messages;
+
+/**
+ * Answers a FRAMING_REQ. After an OK, every following frame in both directions uses the new framing.
+ */
+public record FramingResp(String status, int code) implements Response {
+}
@@ -0,0 +1,7 @@
+package Utilities.messages;
+
+/**
+ * Tells a user that a broadcast of sender mentioned them with @username.
+ */
+public record Mention(String sender, String message) {
+}
@@ -0,0 +1,9 @@
+package Utilities.messages;
+
+import java.util.List;
+
+/**
+ * The users that logged in and out since the previous delta.
+ */
+public record PresenceDelta(List<String> joined, List<String> left) {
+}
@@ -0,0 +1,11 @@
+package Utilities.messages;
+
+/**
+ * The answer to a request: a status and a code, 0 for OK. Every *_RESP record has both, so a client can
+ * handle errors that are the same for every command, e.g. the rate limit (21000), in one place.
+ */
+public interface Response {
+    String status();
+
+    int code();
+}
@@ -1,4 +1,6 @@
 package Utilities.messages.fileTransfer;
 
-public record FileTransferResp(String status, int code) {
+import Utilities.messages.Response;
+
+public record FileTransferResp(String status, int code) implements Response {
 }
@@ -0,0 +1,4 @@
+package Utilities.messages.history;
+
+public record HistoryReq(String room, int limit) {
+}
@@ -0,0 +1,6 @@
+package Utilities.messages.history;
+
+import Utilities.messages.Response;
+
+public record HistoryResp(String status, int code, String room, int count) implements Response {
+}
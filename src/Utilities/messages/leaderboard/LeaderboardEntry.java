@@ -0,0 +1,4 @@
+package Utilities.messages.leaderboard;
+
+public record LeaderboardEntry(String username, int rank, int rating, int wins, int losses, int ties) {
+}
@@ -0,0 +1,4 @@
+package Utilities.messages.leaderboard;
+
+public record LeaderboardReq(String game, int limit) {
+}
@@ -0,0 +1,7 @@
+package Utilities.messages.leaderboard;
+
+import Utilities.messages.Response;
+import java.util.List;
+
+public record LeaderboardResp(String status, int code, String game, List<LeaderboardEntry> top, LeaderboardEntry self) implements Response {
+}
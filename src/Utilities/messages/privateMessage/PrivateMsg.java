@@ -1,4 +1,14 @@
 package Utilities.messages.privateMessage;
 
-public record PrivateMsg(String sender, String message) {
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A private message delivered to its receiver. The id is only set for clients that acknowledge
+ * messages (see PrivateMsgAck) and left out of the JSON otherwise.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PrivateMsg(String sender, String message, Long id) {
+    public PrivateMsg(String sender, String message) {
+        this(sender, message, null);
+    }
 }
@@ -0,0 +1,7 @@
+package Utilities.messages.privateMessage;
+
+/**
+ * Acknowledges every private message up to and including the given id.
+ */
+public record PrivateMsgAck(long id) {
+}
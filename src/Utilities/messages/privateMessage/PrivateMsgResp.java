@@ -1,4 +1,6 @@
 package Utilities.messages.privateMessage;
 
-public record PrivateMsgResp(String status, int code) {
+import Utilities.messages.Response;
+
+public record PrivateMsgResp(String status, int code) implements Response {
 }
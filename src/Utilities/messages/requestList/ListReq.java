@@ -1,4 +1,11 @@
 package Utilities.messages.requestList;
 
-public record ListReq() {
+/**
+ * Requests the online users, optionally only those whose name starts with prefix, a page at a time.
+ * A limit of 0 returns every matching user.
+ */
+public record ListReq(int offset, int limit, String prefix) {
+    public ListReq() {
+        this(0, 0, null);
+    }
 }
@@ -1,6 +1,17 @@
 package Utilities.messages.requestList;
 
+import Utilities.messages.Response;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
-public record ListResp(String status, int code, List<String> clients) {
+/**
+ * The online users. Total is the number of matching users, only set for a request with an
+ * offset, limit or prefix.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ListResp(String status, int code, List<String> clients, Integer total) implements Response {
+    public ListResp(String status, int code, List<String> clients) {
+        this(status, code, clients, null);
+    }
 }
@@ -1,4 +1,6 @@
 package Utilities.messages.rockPaperScissor;
 
-public record RpsMoveResp(String status, int code) {
+import Utilities.messages.Response;
+
+public record RpsMoveResp(String status, int code) implements Response {
 }
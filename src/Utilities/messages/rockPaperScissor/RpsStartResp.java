@@ -1,4 +1,6 @@
 package Utilities.messages.rockPaperScissor;
 
-public record RpsStartResp(String status, int code, String player1, String player2) {
+import Utilities.messages.Response;
+
+public record RpsStartResp(String status, int code, String player1, String player2) implements Response {
 }
\ No newline at end of file
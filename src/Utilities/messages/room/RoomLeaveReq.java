@@ -0,0 +1,4 @@
+package Utilities.messages.room;
+
+public record RoomLeaveReq(String room) {
+}
@@ -0,0 +1,4 @@
+package Utilities.messages.room;
+
+public record RoomMsg(String room, String username, String message) {
+}
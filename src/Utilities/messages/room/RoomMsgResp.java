@@ -0,0 +1,6 @@
+package Utilities.messages.room;
+
+import Utilities.messages.Response;
+
+public record RoomMsgResp(String status, int code) implements Response {
+}
@@ -0,0 +1,4 @@
+package Utilities.messages.search;
+
+public record SearchReq(String query, int limit) {
+}
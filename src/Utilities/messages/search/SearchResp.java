@@ -0,0 +1,7 @@
+package Utilities.messages.search;
+
+import Utilities.messages.Response;
+import java.util.List;
+
+public record SearchResp(String status, int code, List<SearchResult> results) implements Response {
+}
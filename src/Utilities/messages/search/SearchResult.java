@@ -0,0 +1,4 @@
+package Utilities.messages.search;
+
+public record SearchResult(String channel, String sender, String message, long timestamp) {
+}
@@ -0,0 +1,3 @@
+package Utilities.messages.ticTacToe;
+
+public record TttBoardDelta(int row, int col, String symbol, int seq) {}
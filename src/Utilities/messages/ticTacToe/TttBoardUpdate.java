@@ -1,5 +0,0 @@
-package Utilities.messages.ticTacToe;
-
-import java.util.Map;
-
-public record TttBoardUpdate(Map<String, String> board) {}
\ No newline at end of file
@@ -1,3 +1,3 @@
 package Utilities.messages.ticTacToe;
 
-public record TttInvite(String sender) {}
+public record TttInvite(String sender, int rows, int cols, int winLength) {}
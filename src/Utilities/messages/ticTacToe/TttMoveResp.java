@@ -1,3 +1,5 @@
 package Utilities.messages.ticTacToe;
 
-public record TttMoveResp(String status, int code) {}
\ No newline at end of file
+import Utilities.messages.Response;
+
+public record TttMoveResp(String status, int code) implements Response {}
\ No newline at end of file
@@ -0,0 +1,3 @@
+package Utilities.messages.ticTacToe;
+
+public record TttPaused(String player, int graceSeconds) {}
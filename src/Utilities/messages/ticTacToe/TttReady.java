@@ -0,0 +1,3 @@
+package Utilities.messages.ticTacToe;
+
+public record TttReady(int rows, int cols, int winLength) {}
@@ -0,0 +1,3 @@
+package Utilities.messages.ticTacToe;
+
+public record TttSnapshot(String playerX, String playerO, int rows, int cols, int winLength, String board, int seq, String next) {}
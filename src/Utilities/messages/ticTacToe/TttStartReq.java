@@ -1,3 +1,7 @@
 package Utilities.messages.ticTacToe;
 
-public record TttStartReq(String receiver) {}
\ No newline at end of file
+public record TttStartReq(String receiver, int rows, int cols, int winLength) {
+    public TttStartReq(String receiver) {
+        this(receiver, 0, 0, 0);
+    }
+}
@@ -1,3 +1,5 @@
 package Utilities.messages.ticTacToe;
 
-public record TttStartResp(String status, int code, String player1, String player2) {}
\ No newline at end of file
+import Utilities.messages.Response;
+
+public record TttStartResp(String status, int code, String player1, String player2) implements Response {}
\ No newline at end of file
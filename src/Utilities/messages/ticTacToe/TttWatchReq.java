@@ -0,0 +1,3 @@
+package Utilities.messages.ticTacToe;
+
+public record TttWatchReq(String player) {}
@@ -0,0 +1,5 @@
+package Utilities.messages.ticTacToe;
+
+import Utilities.messages.Response;
+
+public record TttWatchResp(String status, int code) implements Response {}
@@ -0,0 +1,127 @@
+package benchmarks;
+
+import Utilities.Commands;
+import Utilities.Utils;
+import client.api.ChatClient;
+import client.api.ChatEvent;
+import client.api.ChatListener;
+import client.api.ClientRuntime;
+import server.Server;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many ChatClients in one JVM: connects and logs in the clients on one shared ClientRuntime, then
+ * every client sends a private message to the next one, and reports the time of both, the heap per
+ * client and the platform threads of the JVM.
+ *
+ * Without a host the server runs in this JVM with a thread per connection, so the heap and the threads
+ * also hold the server side of the connections; IdleConnectionBenchmark measures that side on its own.
+ * On a machine with few cores the server in the same JVM can fall behind its PING timeout with 10,000
+ * clients, so run the server on its own for that many.
+ *
+ * Run with: java benchmarks.ChatClientBenchmark [clients] [host] (default 10000, a server in this JVM)
+ */
+public class ChatClientBenchmark {
+    // Connections opened at the same time, below the accept backlog of the server (50)
+    private static final int CONNECTING = 32;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        String host = args.length > 1 ? args[1] : "127.0.0.1";
+
+        if (args.length < 2) {
+            Thread serverThread = new Thread(() -> new Server().start(), "benchmark-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            Thread.sleep(1000);
+        }
+
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        long heapBefore = usedHeap();
+        CountDownLatch delivered = new CountDownLatch(count);
+        AtomicInteger lost = new AtomicInteger();
+        ChatListener listener = new ChatListener() {
+            @Override
+            public void onEvent(ChatClient client, ChatEvent event) {
+                if (event.command().equals(Commands.PRIVATE_MSG)) {
+                    delivered.countDown();
+                }
+            }
+
+            @Override
+            public void onClosed(ChatClient client, IOException cause) {
+                if (cause != null) {
+                    lost.incrementAndGet();
+                }
+            }
+        };
+
+        ClientRuntime runtime = new ClientRuntime();
+        ChatClient.Options options = new ChatClient.Options(false, false, true, true, true);
+        List<ChatClient> clients = new ArrayList<>(count);
+        List<CompletableFuture<?>> logins = new ArrayList<>(count);
+        Semaphore connecting = new Semaphore(CONNECTING);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            ChatClient client = new ChatClient(host, Utils.SERVER_PORT, options, runtime, listener);
+            clients.add(client);
+            String username = "bench" + i;
+            connecting.acquire();
+            logins.add(client.connectAsync()
+                    .thenCompose(ready -> client.login(username))
+                    .whenComplete((response, error) -> connecting.release()));
+        }
+        int failed = 0;
+        for (CompletableFuture<?> login : logins) {
+            try {
+                login.join();
+            } catch (RuntimeException e) {
+                failed++;
+            }
+        }
+        double loginSeconds = (System.nanoTime() - start) / 1e9;
+        // Let the last presence deltas go out
+        Thread.sleep(1000);
+        long heapPerClient = (usedHeap() - heapBefore) / count;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            clients.get(i).privateMessage("bench" + (i + 1) % count, "hello from bench" + i);
+        }
+        boolean all = delivered.await(60, TimeUnit.SECONDS);
+        double messageSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-28s %d (%d failed)%n", "clients", count, failed);
+        System.out.printf("%-28s %.2f s (%.0f/s)%n", "connect and login", loginSeconds, count / loginSeconds);
+        System.out.printf("%-28s %d%n", "heap bytes/client", heapPerClient);
+        System.out.printf("%-28s %d%n", "platform threads added", threads);
+        System.out.printf("%-28s %.2f s (%.0f/s)%s%n", "private message round", messageSeconds, count / messageSeconds,
+                all ? "" : ", " + delivered.getCount() + " not delivered");
+        System.out.printf("%-28s %d%n", "connections lost", lost.get());
+
+        for (ChatClient client : clients) {
+            client.close();
+        }
+        runtime.close();
+        System.exit(0);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
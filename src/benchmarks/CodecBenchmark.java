@@ -0,0 +1,146 @@
+package benchmarks;
+
+import Utilities.Commands;
+import Utilities.MessageCodec;
+import Utilities.messages.Broadcast;
+import Utilities.messages.BroadcastReq;
+import Utilities.messages.privateMessage.PrivateMsg;
+import Utilities.messages.ticTacToe.TttSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the time to the first message, decoding a BROADCAST_REQ and encoding the BROADCAST that
+ * follows it, in a fresh JVM with a plain ObjectMapper and with the warmed-up message codec, and the
+ * steady-state cost of encoding and decoding a few common frames with both.
+ *
+ * Every first-message run starts a new JVM with the same classpath, as the cost only shows once per JVM.
+ *
+ * Run with: java --enable-preview benchmarks.CodecBenchmark [runs]
+ */
+public class CodecBenchmark {
+    private static final int ROUNDS = 1_000_000;
+    private static final String REQUEST = "{\"message\":\"hello everyone, how is it going?\"}";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("cold")) {
+            ObjectMapper mapper = new ObjectMapper();
+            long start = System.nanoTime();
+            BroadcastReq request = mapper.readValue(REQUEST, BroadcastReq.class);
+            String frame = Commands.BROADCAST + " " + mapper.writeValueAsString(new Broadcast("alice", request.message()));
+            System.out.println((System.nanoTime() - start) + " 0 " + frame.length());
+            return;
+        } else if (args.length > 0 && args[0].equals("warm")) {
+            long warmUpNanos = MessageCodec.warmUp();
+            long start = System.nanoTime();
+            BroadcastReq request = MessageCodec.decode(REQUEST, BroadcastReq.class);
+            String frame = MessageCodec.encode(Commands.BROADCAST, new Broadcast("alice", request.message()));
+            System.out.println((System.nanoTime() - start) + " " + warmUpNanos + " " + frame.length());
+            return;
+        }
+
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        System.out.printf("%-22s %18s %14s%n", "first message", "median first us", "warm-up ms");
+        for (String mode : new String[]{"cold", "warm"}) {
+            long[] first = new long[runs];
+            long[] warmUp = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                String[] result = runChild(mode).split(" ");
+                first[i] = Long.parseLong(result[0]);
+                warmUp[i] = Long.parseLong(result[1]);
+            }
+            System.out.printf("%-22s %18.0f %14.1f%n", mode.equals("cold") ? "plain ObjectMapper" : "warmed MessageCodec",
+                    median(first) / 1e3, median(warmUp) / 1e6);
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        Object[] messages = {
+                new Broadcast("alice", "hello everyone, how is it going?"),
+                new PrivateMsg("bob", "see you at eight", 42L),
+                new TttSnapshot("alice", "bob", 3, 3, 3, "XO.X..O..", 4, "alice")
+        };
+        String[] payloads = new String[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            payloads[i] = MessageCodec.toJson(messages[i]);
+        }
+
+        System.out.printf("%n%-22s %14s %14s%n", "steady state", "encode ns", "decode ns");
+        for (int pass = 0; pass < 2; pass++) {
+            boolean report = pass == 1;
+            long encodeNanos = time(() -> {
+                int length = 0;
+                for (int i = 0; i < ROUNDS; i++) {
+                    length += mapper.writeValueAsString(messages[i % messages.length]).length();
+                }
+                return length;
+            });
+            long decodeNanos = time(() -> {
+                int hash = 0;
+                for (int i = 0; i < ROUNDS; i++) {
+                    hash += mapper.readValue(payloads[i % payloads.length], messages[i % messages.length].getClass()).hashCode();
+                }
+                return hash;
+            });
+            if (report) {
+                System.out.printf("%-22s %14.0f %14.0f%n", "plain ObjectMapper", (double) encodeNanos / ROUNDS,
+                        (double) decodeNanos / ROUNDS);
+            }
+            encodeNanos = time(() -> {
+                int length = 0;
+                for (int i = 0; i < ROUNDS; i++) {
+                    length += MessageCodec.toJson(messages[i % messages.length]).length();
+                }
+                return length;
+            });
+            decodeNanos = time(() -> {
+                int hash = 0;
+                for (int i = 0; i < ROUNDS; i++) {
+                    hash += MessageCodec.decode(payloads[i % payloads.length], messages[i % messages.length].getClass()).hashCode();
+                }
+                return hash;
+            });
+            if (report) {
+                System.out.printf("%-22s %14.0f %14.0f%n", "MessageCodec", (double) encodeNanos / ROUNDS,
+                        (double) decodeNanos / ROUNDS);
+            }
+        }
+    }
+
+    private static String runChild(String mode) throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>(List.of(java, "--enable-preview", "-cp",
+                System.getProperty("java.class.path"), CodecBenchmark.class.getName(), mode));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line = output.readLine();
+            process.waitFor();
+            return line;
+        }
+    }
+
+    private static double median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static long time(Task task) throws Exception {
+        long start = System.nanoTime();
+        int sink = task.run();
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return elapsed;
+    }
+
+    private interface Task {
+        int run() throws Exception;
+    }
+}
@@ -0,0 +1,235 @@
+package benchmarks;
+
+import Utilities.BinaryCodec;
+import Utilities.Commands;
+import Utilities.MessageCodec;
+import Utilities.messages.Broadcast;
+import Utilities.messages.BroadcastReq;
+import Utilities.messages.BroadcastResp;
+import Utilities.messages.Joined;
+import Utilities.messages.Mention;
+import Utilities.messages.Ping;
+import Utilities.messages.Pong;
+import Utilities.messages.PresenceDelta;
+import Utilities.messages.privateMessage.PrivateMsg;
+import Utilities.messages.privateMessage.PrivateMsgAck;
+import Utilities.messages.privateMessage.PrivateMsgReq;
+import Utilities.messages.privateMessage.PrivateMsgResp;
+import Utilities.messages.room.RoomMsg;
+import Utilities.messages.room.RoomMsgReq;
+import Utilities.messages.room.RoomMsgResp;
+import Utilities.messages.ticTacToe.TttBoardDelta;
+import Utilities.messages.ticTacToe.TttMove;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Measures the compressed connection (COMPRESS_REQ) on generated chat traffic: the frames a client receives
+ * in a busy lobby (broadcasts, private and room messages, presence, pings and game moves) and the frames a
+ * client sends. Every frame is followed by a sync flush, as the server and the client do, so each frame can
+ * be inflated as soon as it arrives.
+ *
+ * For text and binary frames and a few deflate levels, it reports the compression ratio, the deflate and
+ * inflate time per frame, and for comparison the ratio when every frame is compressed on its own, without
+ * the dictionary of the previous frames.
+ *
+ * Run with: java --enable-preview benchmarks.CompressionBenchmark [frames]
+ */
+public class CompressionBenchmark {
+    private static final int PASSES = 5;
+    private static final String[] USERS = {"alice", "bob", "carol", "dave", "erin", "frank", "grace", "heidi",
+            "ivan", "judy", "mallory", "niaj", "olivia", "peggy", "rupert", "sybil", "trent", "victor", "walter",
+            "xavier", "yvonne", "zoe", "gamer_42", "night_owl", "coffee4life", "pixelpanda", "m4rk", "lena_k"};
+    private static final String[] ROOMS = {"lobby", "games", "music", "random", "help"};
+    private static final String[] OPENERS = {"hey", "hi all", "lol", "ok", "yeah", "no way", "haha", "brb", "gg",
+            "omg", "wait", "hmm", "sure", "thanks", "nice", "same", "idk", "true", "exactly", "anyone"};
+    private static final String[] PHRASES = {"did anyone see the match yesterday", "who wants to play tic tac toe",
+            "I am going to grab some coffee", "that was a great game", "the server seems fast today",
+            "can someone help me with the file transfer", "what time is the meeting tomorrow",
+            "I just finished the assignment", "does anyone know a good movie", "let's play rock paper scissors",
+            "I'll be back in five minutes", "this chat is so quiet today", "good morning everyone",
+            "good night, see you tomorrow", "how do I join the music room", "check out this new song",
+            "the weather is really nice outside", "I lost again, one more round", "who is online right now",
+            "I think the bot cheats at tic tac toe", "where did everyone go", "welcome back",
+            "I can't believe it's already friday", "anyone up for a game", "my internet is so slow today"};
+    private static final String[] CLOSERS = {"", "", "", "?", "!", " :)", " :D", " haha", " lol", "...", " 😂", " 👍"};
+
+    public static void main(String[] args) throws Exception {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        List<Object[]> received = receivedTraffic(frames, new Random(1));
+        List<Object[]> sent = sentTraffic(frames, new Random(2));
+
+        System.out.printf("%-9s %-7s %5s %12s %12s %8s %12s %14s %14s%n", "traffic", "framing", "level",
+                "raw B/frame", "zip B/frame", "ratio", "alone ratio", "deflate ns", "inflate ns");
+        for (Object[] traffic : new Object[][]{{"received", received}, {"sent", sent}}) {
+            @SuppressWarnings("unchecked")
+            List<Object[]> messages = (List<Object[]>) traffic[1];
+            for (boolean binary : new boolean[]{false, true}) {
+                List<byte[]> encoded = new ArrayList<>();
+                for (Object[] message : messages) {
+                    encoded.add(binary ? BinaryCodec.encodeFrame((String) message[0], message[1])
+                            : (MessageCodec.encode((String) message[0], message[1]) + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                for (int level : new int[]{1, 6, 9}) {
+                    report((String) traffic[0], binary ? "binary" : "text", level, encoded);
+                }
+            }
+        }
+    }
+
+    private static void report(String traffic, String framing, int level, List<byte[]> frames) {
+        long rawBytes = 0;
+        for (byte[] frame : frames) {
+            rawBytes += frame.length;
+        }
+        // The first passes warm up the code, the fastest pass is reported
+        long zippedBytes = 0;
+        long deflateNanos = Long.MAX_VALUE;
+        long inflateNanos = Long.MAX_VALUE;
+        for (int pass = 0; pass < PASSES; pass++) {
+            List<byte[]> zipped = new ArrayList<>(frames.size());
+            byte[] out = new byte[8 * 1024];
+            Deflater deflater = new Deflater(level, true);
+            long start = System.nanoTime();
+            for (byte[] frame : frames) {
+                deflater.setInput(frame);
+                ByteArrayOutputStream flushed = new ByteArrayOutputStream(frame.length);
+                int length;
+                do {
+                    length = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+                    flushed.write(out, 0, length);
+                } while (length == out.length);
+                zipped.add(flushed.toByteArray());
+            }
+            deflateNanos = Math.min(deflateNanos, System.nanoTime() - start);
+            deflater.end();
+
+            zippedBytes = 0;
+            for (byte[] chunk : zipped) {
+                zippedBytes += chunk.length;
+            }
+
+            Inflater inflater = new Inflater(true);
+            long inflated = 0;
+            start = System.nanoTime();
+            try {
+                for (byte[] chunk : zipped) {
+                    inflater.setInput(chunk);
+                    int length;
+                    do {
+                        length = inflater.inflate(out);
+                        inflated += length;
+                    } while (length > 0);
+                }
+            } catch (java.util.zip.DataFormatException e) {
+                throw new IllegalStateException(e);
+            }
+            inflateNanos = Math.min(inflateNanos, System.nanoTime() - start);
+            inflater.end();
+            if (inflated != rawBytes) {
+                throw new IllegalStateException("Inflated " + inflated + " of " + rawBytes + " bytes");
+            }
+        }
+
+        // Every frame compressed with a fresh deflater, as without a dictionary carried over
+        long aloneBytes = 0;
+        Deflater deflater = new Deflater(level, true);
+        byte[] out = new byte[8 * 1024];
+        for (byte[] frame : frames) {
+            deflater.reset();
+            deflater.setInput(frame);
+            aloneBytes += deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+        }
+        deflater.end();
+
+        System.out.printf("%-9s %-7s %5d %12.1f %12.1f %8.2f %12.2f %14.0f %14.0f%n", traffic, framing, level,
+                (double) rawBytes / frames.size(), (double) zippedBytes / frames.size(), (double) zippedBytes / rawBytes,
+                (double) aloneBytes / rawBytes, (double) deflateNanos / frames.size(), (double) inflateNanos / frames.size());
+    }
+
+    /**
+     * @return The frames a client in a busy lobby receives, as {command, message} pairs.
+     */
+    private static List<Object[]> receivedTraffic(int frames, Random random) {
+        List<Object[]> messages = new ArrayList<>(frames);
+        long messageId = 1;
+        int moves = 0;
+        while (messages.size() < frames) {
+            int kind = random.nextInt(100);
+            if (kind < 55) {
+                messages.add(new Object[]{Commands.BROADCAST, new Broadcast(user(random), chatLine(random))});
+            } else if (kind < 70) {
+                messages.add(new Object[]{Commands.ROOM_MSG, new RoomMsg(pick(ROOMS, random), user(random), chatLine(random))});
+            } else if (kind < 78) {
+                messages.add(new Object[]{Commands.PRIVATE_MSG, new PrivateMsg(user(random), chatLine(random), messageId++)});
+            } else if (kind < 84) {
+                messages.add(new Object[]{Commands.PRESENCE_DELTA, new PresenceDelta(List.of(user(random)),
+                        random.nextBoolean() ? List.of(user(random)) : List.of())});
+            } else if (kind < 88) {
+                messages.add(new Object[]{random.nextBoolean() ? Commands.JOINED : Commands.LEFT, new Joined(user(random))});
+            } else if (kind < 91) {
+                messages.add(new Object[]{Commands.MENTION, new Mention(user(random), chatLine(random))});
+            } else if (kind < 95) {
+                messages.add(new Object[]{Commands.PING, new Ping()});
+            } else {
+                messages.add(new Object[]{Commands.TTT_BOARD_DELTA, new TttBoardDelta(random.nextInt(3), random.nextInt(3),
+                        moves % 2 == 0 ? "X" : "O", ++moves)});
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * @return The frames a chatting client sends and the answers it gets, as {command, message} pairs.
+     */
+    private static List<Object[]> sentTraffic(int frames, Random random) {
+        List<Object[]> messages = new ArrayList<>(frames);
+        long messageId = 1;
+        while (messages.size() < frames) {
+            int kind = random.nextInt(100);
+            if (kind < 50) {
+                messages.add(new Object[]{Commands.BROADCAST_REQ, new BroadcastReq(chatLine(random))});
+                messages.add(new Object[]{Commands.BROADCAST_RESP, new BroadcastResp("OK", 0)});
+            } else if (kind < 70) {
+                messages.add(new Object[]{Commands.ROOM_MSG_REQ, new RoomMsgReq(pick(ROOMS, random), chatLine(random))});
+                messages.add(new Object[]{Commands.ROOM_MSG_RESP, new RoomMsgResp("OK", 0)});
+            } else if (kind < 82) {
+                messages.add(new Object[]{Commands.PRIVATE_MSG_REQ, new PrivateMsgReq(user(random), chatLine(random))});
+                messages.add(new Object[]{Commands.PRIVATE_MSG_RESP, new PrivateMsgResp("OK", 0)});
+            } else if (kind < 88) {
+                messages.add(new Object[]{Commands.PRIVATE_MSG_ACK, new PrivateMsgAck(messageId++)});
+            } else if (kind < 94) {
+                messages.add(new Object[]{Commands.PONG, new Pong()});
+            } else {
+                messages.add(new Object[]{Commands.TTT_MOVE_REQ, new TttMove(random.nextInt(3), random.nextInt(3))});
+            }
+        }
+        return messages;
+    }
+
+    private static String chatLine(Random random) {
+        int kind = random.nextInt(10);
+        if (kind < 3) {
+            return pick(OPENERS, random) + pick(CLOSERS, random);
+        } else if (kind < 5) {
+            return pick(OPENERS, random) + " @" + user(random) + " " + pick(PHRASES, random) + pick(CLOSERS, random);
+        } else if (kind < 6) {
+            return pick(PHRASES, random) + ", " + pick(PHRASES, random) + pick(CLOSERS, random);
+        }
+        return pick(PHRASES, random) + pick(CLOSERS, random);
+    }
+
+    private static String user(Random random) {
+        return pick(USERS, random);
+    }
+
+    private static String pick(String[] values, Random random) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,86 @@
+package benchmarks;
+
+import server.filter.ContentFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the cost of checking messages of different lengths against a blocklist of 10,000
+ * phrases, with the content filter and with a loop of String.contains over every phrase.
+ * The filter should cost about the same per character for every length, whatever the number of phrases.
+ *
+ * Run with: java benchmarks.ContentFilterBenchmark [phrases]
+ */
+public class ContentFilterBenchmark {
+    private static final int[] MESSAGE_LENGTHS = {32, 256, 2048, 16384};
+    private static final int MESSAGES = 200;
+
+    public static void main(String[] args) {
+        int phraseCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        Random random = new Random(42);
+        List<String> phrases = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < phraseCount; i++) {
+            String phrase = randomWord(random, 4 + random.nextInt(6));
+            phrases.add(phrase);
+            lines.add((i % 3 == 0 ? "mask " : "flag ") + phrase);
+        }
+        ContentFilter filter = new ContentFilter(null);
+        long buildStart = System.nanoTime();
+        filter.load(lines);
+        System.out.printf("phrases %d, built in %.1f ms%n", phraseCount, (System.nanoTime() - buildStart) / 1e6);
+        System.out.printf("%8s %16s %16s %16s%n", "length", "filter ns/char", "filter us/msg", "contains us/msg");
+
+        for (int length : MESSAGE_LENGTHS) {
+            String[] messages = new String[MESSAGES];
+            for (int i = 0; i < MESSAGES; i++) {
+                StringBuilder message = new StringBuilder(length + 16);
+                while (message.length() < length) {
+                    message.append(randomWord(random, 2 + random.nextInt(8))).append(' ');
+                }
+                messages[i] = message.substring(0, length);
+            }
+
+            long sink = 0;
+            int rounds = Math.max(50, 4_000_000 / length);
+            for (int warmup = 0; warmup < 2; warmup++) {
+                for (int r = 0; r < rounds; r++) {
+                    sink += filter.check(messages[r % MESSAGES]).message().length();
+                }
+            }
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                sink += filter.check(messages[r % MESSAGES]).message().length();
+            }
+            double filterNanos = (double) (System.nanoTime() - start) / rounds;
+
+            int naiveRounds = Math.max(5, rounds / 500);
+            start = System.nanoTime();
+            for (int r = 0; r < naiveRounds; r++) {
+                String lower = messages[r % MESSAGES].toLowerCase(Locale.ROOT);
+                for (String phrase : phrases) {
+                    if (lower.contains(phrase)) {
+                        sink++;
+                    }
+                }
+            }
+            double naiveNanos = (double) (System.nanoTime() - start) / naiveRounds;
+
+            System.out.printf("%8d %16.2f %16.2f %16.1f%n", length, filterNanos / length, filterNanos / 1e3, naiveNanos / 1e3);
+            if (sink == 42) {
+                System.out.println();
+            }
+        }
+    }
+
+    private static String randomWord(Random random, int length) {
+        char[] word = new char[length];
+        for (int i = 0; i < length; i++) {
+            word[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(word);
+    }
+}
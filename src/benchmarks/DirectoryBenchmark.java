@@ -0,0 +1,63 @@
+package benchmarks;
+
+import Utilities.Commands;
+import Utilities.messages.requestList.ListResp;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import server.chat.UserDirectory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the cost of a LIST_RESP with many online users: copying and serializing the client map on
+ * every request, the cached full list of the user directory, a page of 50 users and a prefix search.
+ *
+ * Run with: java benchmarks.DirectoryBenchmark [users]
+ */
+public class DirectoryBenchmark {
+    private static final int ROUNDS = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        Map<String, Object> clients = new ConcurrentHashMap<>();
+        UserDirectory directory = new UserDirectory();
+        for (int i = 0; i < users; i++) {
+            clients.put("user" + i, Boolean.TRUE);
+            directory.add("user" + i);
+        }
+        ObjectMapper mapper = new ObjectMapper();
+
+        System.out.printf("users %d%n", users);
+        report("copy + serialize", () -> {
+            List<String> clientList = List.copyOf(clients.keySet());
+            return Commands.LIST_RESP + " " + mapper.writeValueAsString(new ListResp("OK", 0, clientList));
+        });
+        report("cached full list", directory::listAll);
+        report("page of 50", () -> directory.list(null, users / 2, 50));
+        report("prefix user4999", () -> directory.list("user4999", 0, 50));
+        directory.add("late");
+        report("rebuild + full", () -> {
+            directory.remove("late");
+            directory.add("late");
+            return directory.listAll();
+        });
+    }
+
+    private interface Request {
+        String run() throws Exception;
+    }
+
+    private static void report(String name, Request request) throws Exception {
+        long bytes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            bytes += request.run().length();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            bytes += request.run().length();
+        }
+        double micros = (System.nanoTime() - start) / 1e3 / ROUNDS;
+        System.out.printf("%-18s %12.2f us/request %10d chars%n", name, micros, bytes / (2L * ROUNDS));
+    }
+}
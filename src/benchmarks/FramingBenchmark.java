@@ -0,0 +1,132 @@
+package benchmarks;
+
+import Utilities.BinaryCodec;
+import Utilities.Commands;
+import Utilities.MessageCodec;
+import Utilities.messages.Broadcast;
+import Utilities.messages.BroadcastReq;
+import Utilities.messages.BroadcastResp;
+import Utilities.messages.Enter;
+import Utilities.messages.Ping;
+import Utilities.messages.PresenceDelta;
+import Utilities.messages.leaderboard.LeaderboardEntry;
+import Utilities.messages.leaderboard.LeaderboardResp;
+import Utilities.messages.privateMessage.PrivateMsg;
+import Utilities.messages.requestList.ListResp;
+import Utilities.messages.search.SearchResp;
+import Utilities.messages.search.SearchResult;
+import Utilities.messages.ticTacToe.TttBoardDelta;
+import Utilities.messages.ticTacToe.TttMove;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the text and the binary framing for a set of typical messages: the bytes on the wire per
+ * frame, line break included, and the CPU time to parse a frame into its record and to encode it.
+ *
+ * Run with: java --enable-preview benchmarks.FramingBenchmark
+ */
+public class FramingBenchmark {
+    private static final int ROUNDS = 500_000;
+
+    public static void main(String[] args) throws Exception {
+        List<String> users = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            users.add("user" + i);
+        }
+        List<LeaderboardEntry> top = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            top.add(new LeaderboardEntry("player" + i, i + 1, 1700 - 25 * i, 40 - i, i, 2));
+        }
+        List<SearchResult> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(new SearchResult("lobby", "alice", "did anyone see the match yesterday, number " + i, 1_700_000_000_000L + i));
+        }
+        Object[][] messages = {
+                {Commands.ENTER, new Enter("alice")},
+                {Commands.BROADCAST_REQ, new BroadcastReq("hello everyone, how is it going?")},
+                {Commands.BROADCAST_RESP, new BroadcastResp("OK", 0)},
+                {Commands.BROADCAST, new Broadcast("alice", "hello everyone, how is it going?")},
+                {Commands.PRIVATE_MSG, new PrivateMsg("bob", "see you at eight", 1234L)},
+                {Commands.PING, new Ping()},
+                {Commands.TTT_MOVE_REQ, new TttMove(1, 2)},
+                {Commands.TTT_BOARD_DELTA, new TttBoardDelta(1, 2, "X", 5)},
+                {Commands.PRESENCE_DELTA, new PresenceDelta(users.subList(0, 5), users.subList(5, 7))},
+                {Commands.LIST_RESP, new ListResp("OK", 0, users)},
+                {Commands.LEADERBOARD_RESP, new LeaderboardResp("OK", 0, "TTT", top, top.get(3))},
+                {Commands.SEARCH_RESP, new SearchResp("OK", 0, results)},
+        };
+
+        System.out.printf("%-18s %10s %12s %10s %12s %12s %12s %12s%n", "command", "text B", "binary B", "ratio",
+                "text dec ns", "bin dec ns", "text enc ns", "bin enc ns");
+        long totalText = 0;
+        long totalBinary = 0;
+        for (Object[] entry : messages) {
+            String command = (String) entry[0];
+            Object message = entry[1];
+            String text = MessageCodec.encode(command, message);
+            byte[] binary = BinaryCodec.encodeFrame(command, message);
+            int textBytes = text.getBytes(java.nio.charset.StandardCharsets.UTF_8).length + 1;
+            totalText += textBytes;
+            totalBinary += binary.length;
+            // The length prefix of a short frame is one byte; decodeFrame() gets the frame after it
+            int lengthBytes = binary.length - 1 > 127 ? 2 : 1;
+            Class<?> type = message.getClass();
+
+            // The first pass warms up the code, the second is measured
+            double[] nanos = new double[4];
+            for (int pass = 0; pass < 2; pass++) {
+                nanos[0] = time(() -> {
+                    int hash = 0;
+                    for (int i = 0; i < ROUNDS; i++) {
+                        int space = text.indexOf(' ');
+                        hash += MessageCodec.decode(text.substring(space + 1), type).hashCode();
+                    }
+                    return hash;
+                });
+                nanos[1] = time(() -> {
+                    int hash = 0;
+                    for (int i = 0; i < ROUNDS; i++) {
+                        hash += BinaryCodec.decodeFrame(binary, lengthBytes, binary.length - lengthBytes).payload().hashCode();
+                    }
+                    return hash;
+                });
+                nanos[2] = time(() -> {
+                    int length = 0;
+                    for (int i = 0; i < ROUNDS; i++) {
+                        length += MessageCodec.encode(command, message).length();
+                    }
+                    return length;
+                });
+                nanos[3] = time(() -> {
+                    int length = 0;
+                    for (int i = 0; i < ROUNDS; i++) {
+                        length += BinaryCodec.encodeFrame(command, message).length;
+                    }
+                    return length;
+                });
+            }
+            System.out.printf("%-18s %10d %12d %10.2f %12.0f %12.0f %12.0f %12.0f%n", command, textBytes, binary.length,
+                    (double) binary.length / textBytes, nanos[0], nanos[1], nanos[2], nanos[3]);
+        }
+        System.out.printf("%-18s %10d %12d %10.2f%n", "all", totalText, totalBinary, (double) totalBinary / totalText);
+    }
+
+    /**
+     * @return The time per round in nanoseconds.
+     */
+    private static double time(Task task) throws Exception {
+        long start = System.nanoTime();
+        int sink = task.run();
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return (double) elapsed / ROUNDS;
+    }
+
+    private interface Task {
+        int run() throws Exception;
+    }
+}
@@ -0,0 +1,184 @@
+package benchmarks;
+
+import Utilities.Utils;
+import server.Server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap used per idle connection: clients that logged in and then only answer PINGs.
+ *
+ * The server runs in this JVM, so the heap also holds the client ends of the connections. To tell the
+ * two apart, the same number of connections is first opened to a plain ServerSocket that only keeps
+ * the accepted sockets; the difference is the cost of a logged in client on the chat server.
+ * The clients log in with presence deltas, so logins are not broadcast to every other client.
+ * Client i uses the local address 127.0.0.(1 + i / 20000), so more clients fit than there are ports.
+ *
+ * Every connection needs two file descriptors and the server a thread per connection, so 50,000
+ * clients need ulimit -n above 100,000.
+ *
+ * Run with: java benchmarks.IdleConnectionBenchmark [clients...] (default 1000 10000 50000)
+ */
+public class IdleConnectionBenchmark {
+    private static final int CLIENTS_PER_ADDRESS = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        int[] counts = args.length > 0 ? new int[args.length] : new int[]{1_000, 10_000, 50_000};
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Integer.parseInt(args[i]);
+        }
+
+        Thread serverThread = new Thread(() -> new Server().start(), "benchmark-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(1000);
+
+        System.out.printf("%10s %18s %18s %18s%n", "clients", "bare bytes/conn", "chat bytes/conn", "server bytes/conn");
+        for (int count : counts) {
+            long bare = measureBareConnections(count);
+            long chat = measureChatClients(count);
+            System.out.printf("%10d %18d %18d %18d%n", count, bare, chat, chat - bare);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @return The heap per connection of connections that hold nothing but their sockets.
+     */
+    private static long measureBareConnections(int count) throws IOException, InterruptedException {
+        try (ServerSocket acceptor = new ServerSocket(0, 50_000)) {
+            List<Socket> accepted = new ArrayList<>(count);
+            Thread acceptThread = new Thread(() -> {
+                try {
+                    while (accepted.size() < count) {
+                        accepted.add(acceptor.accept());
+                    }
+                } catch (IOException e) {
+                    System.out.println("Accept failed: " + e.getMessage());
+                }
+            });
+            long before = usedHeap();
+            acceptThread.start();
+            List<SocketChannel> channels = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                channels.add(connect(i, acceptor.getLocalPort()));
+            }
+            acceptThread.join();
+            long used = (usedHeap() - before) / count;
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+            for (Socket socket : accepted) {
+                socket.close();
+            }
+            return used;
+        }
+    }
+
+    /**
+     * @return The heap per connection of clients that are logged in on the chat server.
+     */
+    private static long measureChatClients(int count) throws IOException, InterruptedException {
+        Selector selector = Selector.open();
+        List<SocketChannel> channels = new ArrayList<>(count);
+        Thread ponger = new Thread(() -> answerPings(selector), "benchmark-ponger");
+        ponger.setDaemon(true);
+        ponger.start();
+
+        long before = usedHeap();
+        ByteBuffer line = ByteBuffer.allocate(64 * 1024);
+        for (int i = 0; i < count; i++) {
+            SocketChannel channel = connect(i, Utils.SERVER_PORT);
+            readLine(channel, line); // READY
+            String enter = "ENTER {\"username\":\"idle" + i + "\",\"presenceDeltas\":true}\n";
+            channel.write(ByteBuffer.wrap(enter.getBytes(StandardCharsets.UTF_8)));
+            readLine(channel, line); // ENTER_RESP
+            channel.configureBlocking(false);
+            selector.wakeup();
+            channel.register(selector, SelectionKey.OP_READ);
+            channels.add(channel);
+        }
+        // Let the last presence deltas go out
+        Thread.sleep(1000);
+        long used = (usedHeap() - before) / count;
+
+        ponger.interrupt();
+        selector.close();
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        // Wait until the server has noticed the closed connections
+        Thread.sleep(2000);
+        return used;
+    }
+
+    private static SocketChannel connect(int client, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.bind(new InetSocketAddress("127.0.0." + (1 + client / CLIENTS_PER_ADDRESS), 0));
+        channel.connect(new InetSocketAddress("127.0.0.1", port));
+        return channel;
+    }
+
+    /**
+     * Reads one line in blocking mode, one byte at a time so no bytes after the line are consumed.
+     */
+    private static void readLine(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear().limit(1);
+        while (true) {
+            buffer.position(0);
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Connection closed by the server");
+            }
+            if (buffer.get(0) == '\n') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answers every PING of the chat clients with a PONG, and discards everything else they receive.
+     */
+    private static void answerPings(Selector selector) {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer pong = ByteBuffer.wrap("PONG {}\n".getBytes(StandardCharsets.UTF_8));
+        try {
+            while (!Thread.currentThread().isInterrupted() && selector.isOpen()) {
+                selector.select(100);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    buffer.clear();
+                    if (channel.read(buffer) < 0) {
+                        key.cancel();
+                        continue;
+                    }
+                    String received = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+                    for (int i = received.indexOf("PING"); i >= 0; i = received.indexOf("PING", i + 4)) {
+                        channel.write(pong.rewind());
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (Exception e) {
+            // The selector was closed at the end of the measurement
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
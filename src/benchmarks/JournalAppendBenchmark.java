@@ -0,0 +1,73 @@
+package benchmarks;
+
+import server.journal.MessageJournal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the append throughput of the message journal with a typical BROADCAST frame,
+ * from one thread and from several threads at once, and the time to read the journal back.
+ * The journal is written to a temporary directory that is removed afterwards.
+ *
+ * Run with: java benchmarks.JournalAppendBenchmark
+ */
+public class JournalAppendBenchmark {
+    private static final int MESSAGES = 2_000_000;
+    private static final int SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final int[] THREADS = {1, 4};
+    private static final String FRAME = "BROADCAST {\"username\":\"someone\",\"message\":\"Hello everyone, how is the game going?\"}";
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-8s %12s %12s %14s%n", "threads", "messages", "ns/append", "appends/s");
+        for (int threads : THREADS) {
+            Path directory = Files.createTempDirectory("journal-bench");
+            try {
+                MessageJournal journal = new MessageJournal(directory, SEGMENT_BYTES, 100);
+                journal.start();
+                run(journal, threads, MESSAGES / 10);
+
+                long start = System.nanoTime();
+                run(journal, threads, MESSAGES);
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("%-8d %12d %12.1f %14.0f%n", threads, MESSAGES, (double) elapsed / MESSAGES,
+                        MESSAGES * 1e9 / elapsed);
+
+                AtomicLong bytes = new AtomicLong();
+                start = System.nanoTime();
+                journal.read(0, Integer.MAX_VALUE, record -> bytes.addAndGet(record.frame().length()));
+                elapsed = System.nanoTime() - start;
+                System.out.printf("  read back %d messages in %.1f ms%n", journal.getNextOffset(), elapsed / 1e6);
+                journal.flush();
+            } finally {
+                delete(directory);
+            }
+        }
+    }
+
+    private static void run(MessageJournal journal, int threads, int messages) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < messages / threads; i++) {
+                    journal.append("lobby", FRAME);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
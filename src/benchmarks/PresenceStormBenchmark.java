@@ -0,0 +1,50 @@
+package benchmarks;
+
+import server.chat.PresenceService;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the frames sent when every client reconnects after a server restart, with per-user
+ * JOINED frames and with coalesced PRESENCE_DELTA frames.
+ *
+ * With JOINED, the i-th login is sent to the i - 1 clients already online, so n logins cost
+ * n(n - 1)/2 frames. With deltas, every window costs one frame per subscriber. The logins are
+ * spread evenly over the reconnect period and a delta is flushed at the end of every window.
+ *
+ * Run with: java benchmarks.PresenceStormBenchmark [clients] [reconnect seconds] [window ms]
+ */
+public class PresenceStormBenchmark {
+    public static void main(String[] args) {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        double reconnectSeconds = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+        long windowMillis = args.length > 2 ? Long.parseLong(args[2]) : 250;
+
+        long legacyFrames = 0;
+        for (int i = 0; i < clients; i++) {
+            legacyFrames += i;
+        }
+
+        PresenceService presence = new PresenceService(windowMillis);
+        AtomicLong deltaFrames = new AtomicLong();
+        long windows = Math.max(1, Math.round(reconnectSeconds * 1000 / windowMillis));
+        long nextFlush = 1;
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            presence.subscribe(frame -> deltaFrames.incrementAndGet());
+            presence.userJoined("user" + i);
+            // Flush when the login time (i / clients of the reconnect period) passes the end of a window
+            while ((double) (i + 1) / clients >= (double) nextFlush / windows) {
+                presence.flush();
+                nextFlush++;
+            }
+        }
+        presence.flush();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("clients %d, reconnecting over %.1f s, window %d ms%n", clients, reconnectSeconds, windowMillis);
+        System.out.printf("%-16s %14d frames%n", "JOINED", legacyFrames);
+        System.out.printf("%-16s %14d frames (%.1f ms)%n", "PRESENCE_DELTA", deltaFrames.get(), elapsed / 1e6);
+        System.out.printf("reduction        %14.0fx%n", (double) legacyFrames / deltaFrames.get());
+    }
+}
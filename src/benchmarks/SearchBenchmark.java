@@ -0,0 +1,92 @@
+package benchmarks;
+
+import server.journal.MessageJournal;
+import server.search.SearchIndex;
+import server.search.Tokenizer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Fills a journal with random broadcasts and private messages, waits until they are indexed
+ * and measures the time of queries with rare, common and combined words.
+ * The journal is written to a temporary directory that is removed afterwards.
+ *
+ * Run with: java benchmarks.SearchBenchmark [messages]
+ */
+public class SearchBenchmark {
+    private static final int VOCABULARY = 50_000;
+    private static final int WORDS_PER_MESSAGE = 8;
+    private static final int QUERY_ROUNDS = 100;
+    private static final Set<String> ROOMS = Set.of("lobby");
+    private static final String[] QUERIES = {"w7", "w49999", "w3 w5", "w1 w2 w3", "w12 w40000"};
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path directory = Files.createTempDirectory("search-bench");
+        try {
+            MessageJournal journal = new MessageJournal(directory, 256 * 1024 * 1024, 1000);
+            journal.start();
+            SearchIndex index = new SearchIndex(journal);
+            index.start();
+
+            long start = System.nanoTime();
+            Random random = new Random(42);
+            for (int i = 0; i < messages; i++) {
+                String text = randomText(random);
+                if (i % 10 == 0) {
+                    journal.append("@user" + random.nextInt(1000), "PRIVATE_MSG {\"sender\":\"user" + random.nextInt(1000) + "\",\"message\":\"" + text + "\"}");
+                } else {
+                    journal.append("lobby", "BROADCAST {\"username\":\"user" + random.nextInt(1000) + "\",\"message\":\"" + text + "\"}");
+                }
+            }
+            // Wait for the indexer to catch up: the newest message is found once it is indexed
+            journal.append("lobby", "BROADCAST {\"username\":\"bench\",\"message\":\"endmarker\"}");
+            while (index.search("bench", ROOMS, List.of("endmarker"), 1).isEmpty()) {
+                Thread.sleep(10);
+            }
+            System.out.printf("Appended and indexed %d messages in %.1f s%n", messages, (System.nanoTime() - start) / 1e9);
+
+            System.out.printf("%-14s %12s %12s%n", "query", "results", "ms/query");
+            for (String query : QUERIES) {
+                List<String> terms = Tokenizer.tokenize(query);
+                int results = 0;
+                for (int i = 0; i < QUERY_ROUNDS; i++) {
+                    results = index.search("user1", ROOMS, terms, SearchIndex.DEFAULT_LIMIT).size();
+                }
+                start = System.nanoTime();
+                for (int i = 0; i < QUERY_ROUNDS; i++) {
+                    index.search("user1", ROOMS, terms, SearchIndex.DEFAULT_LIMIT);
+                }
+                System.out.printf("%-14s %12d %12.3f%n", query, results, (System.nanoTime() - start) / 1e6 / QUERY_ROUNDS);
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Picks words with a skewed distribution, so low word numbers are common and high ones are rare.
+     */
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < WORDS_PER_MESSAGE; i++) {
+            double skew = random.nextDouble();
+            text.append('w').append((int) (skew * skew * skew * VOCABULARY)).append(' ');
+        }
+        return text.toString();
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
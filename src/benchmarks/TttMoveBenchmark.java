@@ -0,0 +1,74 @@
+package benchmarks;
+
+import server.games.TttMatch;
+
+import java.util.Random;
+
+/**
+ * Measures the cost of a single move on boards of different sizes.
+ * Win detection only walks the lines through the last move, so the time per move should stay
+ * roughly the same from 3x3 Tic-Tac-Toe up to 19x19 Gomoku.
+ *
+ * Run with: java benchmarks.TttMoveBenchmark
+ */
+public class TttMoveBenchmark {
+    private static final int GAMES = 20_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int[][] BOARDS = {{3, 3, 3}, {7, 7, 4}, {11, 11, 5}, {15, 15, 5}, {19, 19, 5}};
+
+    public static void main(String[] args) {
+        System.out.printf("%-10s %-8s %12s %12s%n", "board", "in-a-row", "moves", "ns/move");
+        for (int[] board : BOARDS) {
+            int[][] games = randomGames(board[0], board[1], new Random(42));
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                run(board, games);
+            }
+
+            long start = System.nanoTime();
+            long moves = run(board, games);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%-10s %-8d %12d %12.1f%n", board[0] + "x" + board[1], board[2], moves, (double) elapsed / moves);
+        }
+    }
+
+    /**
+     * Replays every game until it is won or the board is full.
+     *
+     * @return The number of moves played.
+     */
+    private static long run(int[] board, int[][] games) {
+        long moves = 0;
+        for (int[] cells : games) {
+            TttMatch match = new TttMatch("x", "o", board[0], board[1], board[2]);
+            String player = "x";
+            for (int cell : cells) {
+                moves++;
+                String status = match.play(player, cell / board[1], cell % board[1]).status();
+                if (!status.equals("OK")) {
+                    break;
+                }
+                player = player.equals("x") ? "o" : "x";
+            }
+        }
+        return moves;
+    }
+
+    private static int[][] randomGames(int rows, int cols, Random random) {
+        int[][] games = new int[GAMES][];
+        for (int g = 0; g < GAMES; g++) {
+            int[] cells = new int[rows * cols];
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = i;
+            }
+            for (int i = cells.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = cells[i];
+                cells[i] = cells[j];
+                cells[j] = tmp;
+            }
+            games[g] = cells;
+        }
+        return games;
+    }
+}
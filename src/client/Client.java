@@ -1,8 +1,8 @@
 package client;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import Utilities.Commands;
+import Utilities.MessageCodec;
 import Utilities.Utils;
 import Utilities.messages.*;
 import Utilities.messages.fileTransfer.FileTransferReady;
@@ -14,47 +14,66 @@ import Utilities.messages.privateMessage.PrivateMsgResp;
 import Utilities.messages.requestList.ListReq;
 import Utilities.messages.requestList.ListResp;
 import Utilities.messages.rockPaperScissor.*;
+import client.api.ChatClient;
+import client.api.ChatEvent;
+import client.api.ChatListener;
+import client.api.ClientRuntime;
 import client.managers.FileTransferManager;
 import client.managers.MessageManager;
 
 import java.io.*;
-import java.net.Socket;
+import java.net.ProtocolException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 public class Client {
     private static final String SERVER_ADDRESS = "127.0.0.1";
+    private static final int RECONNECT_ATTEMPTS = 5;
+    private static final long RECONNECT_DELAY_MS = 2000;
 
-    private static Socket socket;
+    private static ChatClient chatClient;
     private static BufferedReader userReader;
-    private static BufferedReader serverReader;
-    private static ObjectMapper mapper;
-    private static PrintWriter writer;
 
-    private static String username;
+    private static volatile boolean exiting;
+    // Set while reconnect() runs, so the connections it gives up on do not start another reconnect
+    private static volatile boolean reconnecting;
     private static FileTransferManager fileTransferManager;
     private static MessageManager messageManager;
 
     public static void main(String[] args) {
+        // With --compress, ask the server to compress the connection
+        boolean compress = Arrays.asList(args).contains("--compress");
         try {
-            socket = new Socket(SERVER_ADDRESS, Utils.SERVER_PORT);
+            MessageCodec.warmUp();
 
-            mapper = new ObjectMapper();
+            // Initialize managers
+            fileTransferManager = new FileTransferManager(SERVER_ADDRESS);
+            messageManager = new MessageManager(fileTransferManager::handleFileTransfer, fileTransferManager::addIncomingRequest);
+            chatClient = new ChatClient(SERVER_ADDRESS, Utils.SERVER_PORT, new ChatClient.Options(compress, false, true, true, true),
+                    ClientRuntime.shared(), new ChatListener() {
+                        @Override
+                        public void onEvent(ChatClient client, ChatEvent event) {
+                            messageManager.onEvent(client, event);
+                        }
+
+                        @Override
+                        public void onClosed(ChatClient client, IOException cause) {
+                            connectionLost(cause);
+                        }
+                    });
+            messageManager.setClient(chatClient);
 
             if (!establishServerConnection()) return;
 
             userReader = new BufferedReader(new InputStreamReader(System.in));
-            writer = new PrintWriter(socket.getOutputStream(), true);
 
-            username = authenticateUser();
+            String username = authenticateUser();
             if (username == null) return;
 
-            // Initialize managers
-            fileTransferManager = new FileTransferManager(SERVER_ADDRESS);
-            messageManager = new MessageManager(writer, mapper, username, fileTransferManager::handleFileTransfer, fileTransferManager::addIncomingRequest);
-
             enterChatSession();
         } catch (IOException e) {
             System.out.println("Error: " + e.getMessage());
@@ -62,24 +81,16 @@ public class Client {
     }
 
     private static boolean establishServerConnection() throws IOException {
-        serverReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        String serverResponse = serverReader.readLine();
-
-        if (serverResponse == null) {
-            System.out.println("Failed to connect: No response from server.");
-            return false;
-        }
-
         try {
-            String[] parts = serverResponse.split(" ", 2);
-            if (parts.length < 2 || !Commands.READY.equals(parts[0])) {
-                System.out.println("Unexpected response from server.");
-                return false;
-            }
-
-            Ready readyMessage = mapper.readValue(parts[1], Ready.class);
+            Ready readyMessage = chatClient.connect();
             System.out.println("Server connected successfully! Version: " + readyMessage.version());
             return true;
+        } catch (EOFException e) {
+            System.out.println("Failed to connect: No response from server.");
+            return false;
+        } catch (ProtocolException e) {
+            System.out.println("Unexpected response from server.");
+            return false;
         } catch (JsonProcessingException e) {
             System.out.println("Failed to parse server response: " + e.getMessage());
             return false;
@@ -91,25 +102,16 @@ public class Client {
             System.out.print("Enter username: ");
             String usernameInput = userReader.readLine();
 
-            Enter enterMessage = new Enter(usernameInput);
-            sendServerCommand(Commands.ENTER, enterMessage);
-
-            String serverResponse = serverReader.readLine();
-            if (serverResponse == null) {
+            EnterResp enterResp;
+            try {
+                enterResp = chatClient.login(usernameInput).join();
+            } catch (CompletionException e) {
                 System.out.println("No response from server. Exiting...");
                 return null;
             }
 
-            String[] parts = serverResponse.split(" ", 2);
-            if (parts.length < 2 || !Commands.ENTER_RESP.equals(parts[0])) {
-                System.out.println("Unexpected response from server.");
-                continue;
-            }
-
-            EnterResp enterResp = mapper.readValue(parts[1], EnterResp.class);
             if (enterResp.status().equals("OK")) {
                 System.out.println("Logged in as " + usernameInput);
-                username = usernameInput;
                 return usernameInput;
             }
 
@@ -130,24 +132,65 @@ public class Client {
     private static void enterChatSession() throws IOException {
         System.out.println("You are now in chat mode.");
         showHelpMenu();
-        Thread listenerThread = setupServerMessageListener();
-        listenerThread.start();
         processUserInput();
     }
 
-    private static Thread setupServerMessageListener() {
-        return new Thread(() -> {
-            try {
-                String serverMessage;
-                while ((serverMessage = serverReader.readLine()) != null) {
-                    messageManager.handleServerMessage(serverMessage);
-                }
-            } catch (IOException e) {
-                System.out.println("Connection to server lost: " + e.getMessage());
+    /**
+     * Called when the connection is closed: by the user, or by a lost connection which is resumed if possible.
+     *
+     * @param cause Why the connection was lost, or null if it was closed by the user.
+     */
+    private static void connectionLost(IOException cause) {
+        if (reconnecting) {
+            return;
+        }
+        if (!exiting) {
+            System.out.println("Connection to server lost: " + (cause == null ? "closed" : cause.getMessage()));
+            if (reconnect()) {
+                return;
             }
             closeConnection();
-            System.exit(0);
-        });
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Connects to the server again and resumes the session with the resume token, so messages sent
+     * in the meantime are not lost and other users do not see us leave and join.
+     *
+     * @return True if the session was resumed.
+     */
+    private static boolean reconnect() {
+        if (chatClient.resumeToken() == null) {
+            return false;
+        }
+        reconnecting = true;
+        try {
+            for (int attempt = 1; attempt <= RECONNECT_ATTEMPTS; attempt++) {
+                System.out.println("Reconnecting (" + attempt + "/" + RECONNECT_ATTEMPTS + ")...");
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                    EnterResp enterResp = chatClient.resume().join();
+                    if (!Boolean.TRUE.equals(enterResp.resumed())) {
+                        System.out.println("The session has expired, please log in again.");
+                        return false;
+                    }
+                    System.out.println("Reconnected.");
+                    return true;
+                } catch (IOException e) {
+                    System.out.println("Reconnect failed: " + e.getMessage());
+                } catch (CompletionException e) {
+                    System.out.println("Reconnect failed: " + e.getCause().getMessage());
+                    chatClient.close();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return false;
+        } finally {
+            reconnecting = false;
+        }
     }
 
     private static void processUserInput() throws IOException {
@@ -162,6 +205,22 @@ public class Client {
                 String receiver = parts[1];
                 String messageContent = parts[2];
                 messageManager.sendPrivateMessage(receiver, messageContent);
+            } else if (input.startsWith("/history")) {
+                String[] parts = input.split(" ", 2);
+                messageManager.requestHistory(parts.length < 2 ? null : parts[1].trim());
+            } else if (input.startsWith("/search ")) {
+                messageManager.search(input.substring("/search ".length()));
+            } else if (input.startsWith("/join ")) {
+                messageManager.joinRoom(input.substring("/join ".length()).trim());
+            } else if (input.startsWith("/leave ")) {
+                messageManager.leaveRoom(input.substring("/leave ".length()).trim());
+            } else if (input.startsWith("/room ")) {
+                String[] parts = input.split(" ", 3);
+                if (parts.length < 3) {
+                    System.out.println("Invalid format. Use /room <room> <message>");
+                    continue;
+                }
+                messageManager.sendRoomMessage(parts[1], parts[2]);
             } else if (input.startsWith("/send")) {
                 initiateFileTransferRequest(input);
             } else if (input.startsWith("/a ")) {
@@ -170,9 +229,19 @@ public class Client {
                 handleFileTransferDecision(input, false);
             } else if(input.startsWith("/tttmove")){
                 handleTicTacToeMove(input);
-            }else {
+            } else if (input.startsWith("/ttt ")) {
+                startTicTacToeGame(input);
+            } else if (input.startsWith("/watch ")) {
+                messageManager.sendTttWatchRequest(input.substring("/watch ".length()).trim());
+            } else if (input.startsWith("/all ")) {
+                messageManager.requestClientList(input.substring("/all ".length()).trim());
+            } else if (input.startsWith("/leaderboard")) {
+                String[] parts = input.split(" ", 2);
+                messageManager.requestLeaderboard(parts.length < 2 ? "rps" : parts[1].trim());
+            } else {
                 switch (input) {
                     case "/exit" -> {
+                        exiting = true;
                         messageManager.sendBye();
                         closeConnection();
                     }
@@ -188,6 +257,7 @@ public class Client {
                     case "/s" -> messageManager.sendRpsMove("/s");
                     case "/files" -> fileTransferManager.displayPendingRequests();
                     case "/ttt" -> startTicTacToeGame();
+                    case "/unwatch" -> messageManager.sendTttUnwatchRequest();
                     default -> messageManager.sendBroadcastMessage(input);
                 }
             }
@@ -257,6 +327,24 @@ public class Client {
         messageManager.sendTttStartRequest(opponent);
     }
 
+    private static void startTicTacToeGame(String input) throws IOException {
+        String[] parts = input.split(" ");
+        if (parts.length != 4) {
+            System.out.println("Invalid command. Use /ttt <rows> <cols> <in-a-row>");
+            return;
+        }
+
+        int rows = Integer.parseInt(parts[1]);
+        int cols = Integer.parseInt(parts[2]);
+        int winLength = Integer.parseInt(parts[3]);
+
+        messageManager.requestClientList();
+
+        System.out.println("\nEnter your opponent: ");
+        String opponent = userReader.readLine();
+        messageManager.sendTttStartRequest(opponent, rows, cols, winLength);
+    }
+
     private static void handleTicTacToeMove(String input) throws JsonProcessingException {
         String[] parts = input.split(" ");
         if (parts.length != 3) {
@@ -274,32 +362,32 @@ public class Client {
         System.out.println("/help - Show this help menu");
         System.out.println("/exit - Exit the chatroom");
         System.out.println("/all - Show all connected clients");
-        System.out.println("@username <message> - Send a private message to a user");
+        System.out.println("/all <prefix> - Show the connected clients whose name starts with <prefix>");
+        System.out.println("/dm <username> <message> - Send a private message to a user");
+        System.out.println("@username in a message - Notify the user that you mentioned them");
+        System.out.println("/history [room] - Show recent messages of the lobby or a room");
+        System.out.println("/search <words> - Find messages containing all the words");
+        System.out.println("/join <room> - Join (or create) a chat room");
+        System.out.println("/leave <room> - Leave a chat room");
+        System.out.println("/room <room> <message> - Send a message to a chat room");
         System.out.println("/rps - Start a Rock, Paper, Scissors game");
         System.out.println("/send <username> <file-path> - Request to send a file to another user");
         System.out.println("/files - Show all incoming file requests");
         System.out.println("/a <username> <filename> - Accept a file transfer request");
         System.out.println("/d <username> <filename> - Decline a file transfer request");
-        System.out.println("/ttt - Start a Tic-Tac-Toe game");
+        System.out.println("/ttt - Start a Tic-Tac-Toe game (choose TttBot as opponent to play against the computer)");
+        System.out.println("/ttt <rows> <cols> <in-a-row> - Start a game on a bigger board, e.g. /ttt 15 15 5 for Gomoku");
         System.out.println("/tttmove <row> <col> - Make a move in Tic-Tac-Toe");
+        System.out.println("/watch <username> - Watch the Tic-Tac-Toe game of a user");
+        System.out.println("/unwatch - Stop watching a Tic-Tac-Toe game");
+        System.out.println("/leaderboard [rps|ttt] - Show the top players of a game");
         System.out.println("Type a message to broadcast to the chatroom.");
         System.out.println("---------------------------------------------------------------------");
 
     }
 
     private static void closeConnection() {
-        try {
-            if (writer != null) writer.close();
-            if (serverReader != null) serverReader.close();
-            if (socket != null && !socket.isClosed()) socket.close();
-            System.out.println("All resources closed successfully.");
-        } catch (IOException e) {
-            System.out.println("Error while closing resources: " + e.getMessage());
-        }
-    }
-
-    private static void sendServerCommand(String command, Object message) throws JsonProcessingException {
-        String jsonMessage = command + " " + (message == null ? "{}" : mapper.writeValueAsString(message));
-        writer.println(jsonMessage);
+        chatClient.close();
+        System.out.println("All resources closed successfully.");
     }
-}
\ No newline at end of file
+}
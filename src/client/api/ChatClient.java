@@ -0,0 +1,622 @@
+package client.api;
+
+import Utilities.BinaryCodec;
+import Utilities.Commands;
+import Utilities.MessageCodec;
+import Utilities.Utils;
+import Utilities.messages.*;
+import Utilities.messages.history.HistoryReq;
+import Utilities.messages.history.HistoryResp;
+import Utilities.messages.leaderboard.LeaderboardReq;
+import Utilities.messages.leaderboard.LeaderboardResp;
+import Utilities.messages.privateMessage.PrivateMsg;
+import Utilities.messages.privateMessage.PrivateMsgAck;
+import Utilities.messages.privateMessage.PrivateMsgReq;
+import Utilities.messages.privateMessage.PrivateMsgResp;
+import Utilities.messages.requestList.ListReq;
+import Utilities.messages.requestList.ListResp;
+import Utilities.messages.room.*;
+import Utilities.messages.search.SearchReq;
+import Utilities.messages.search.SearchResp;
+import client.managers.PendingRequests;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.*;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A connection to the chat server without any user interface, for the command line client, bots and
+ * load tests. Any number of clients can share one ClientRuntime.
+ *
+ * Sending never blocks: frames are queued and written by a task of the runtime, which flushes once per
+ * batch of queued frames. A request is sent with a request id and its answer completes the returned
+ * future; every other frame from the server is passed to the listener as a ChatEvent with its record.
+ * The client answers PING itself, acknowledges private messages and drops the ones delivered again
+ * after a resume, so listeners see neither.
+ *
+ * Futures and listeners are completed and called on the thread that reads the connection: they must not
+ * wait for another answer of the same client, e.g. with join().
+ */
+public class ChatClient implements AutoCloseable {
+    private static final int BUFFER_SIZE = 2048;
+    private static final int MAX_FRAME_BYTES = 1024 * 1024;
+    private static final int MAX_QUEUED_FRAMES = 4096;
+    // How long connect() waits for each answer of the server, e.g. when the accept backlog of the server overflowed
+    private static final int HANDSHAKE_TIMEOUT_MS = 10_000;
+    // Private messages are acknowledged cumulatively: after ACK_EVERY messages, or ACK_DELAY_MS after the first unacknowledged one
+    private static final int ACK_EVERY = 16;
+    private static final long ACK_DELAY_MS = 500;
+    // Ids of the last private messages passed to the listener, more than the server redelivers (chat.delivery.window)
+    private static final int RECENT_IDS = 4096;
+
+    /**
+     * What the client asks the server for when it connects and logs in.
+     *
+     * @param compress       Compress the connection, see COMPRESS_REQ.
+     * @param binaryFraming  Use binary frames, see FRAMING_REQ.
+     * @param acks           Receive private messages with an id and acknowledge them.
+     * @param resumable      Receive a resume token, so the session can be resumed after a lost connection.
+     * @param presenceDeltas Receive PRESENCE_DELTA instead of JOINED and LEFT.
+     */
+    public record Options(boolean compress, boolean binaryFraming, boolean acks, boolean resumable, boolean presenceDeltas) {
+        public static final Options DEFAULT = new Options(false, false, true, true, true);
+    }
+
+    private final String host;
+    private final int port;
+    private final Options options;
+    private final ClientRuntime runtime;
+    private final ChatListener listener;
+    private final PendingRequests requests = new PendingRequests();
+
+    private volatile Connection connection;
+    private volatile String username;
+    private volatile String resumeToken;
+
+    private final Object ackLock = new Object();
+    private final Set<Long> recentIds = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > RECENT_IDS;
+        }
+    });
+    private long lastDeliveredId = -1;
+    private long lastAckedId = -1;
+    private int unackedCount;
+    private boolean ackScheduled;
+
+    public ChatClient(String host, int port, ChatListener listener) {
+        this(host, port, Options.DEFAULT, ClientRuntime.shared(), listener);
+    }
+
+    public ChatClient(String host, int port, Options options, ClientRuntime runtime, ChatListener listener) {
+        this.host = host;
+        this.port = port;
+        this.options = options;
+        this.runtime = runtime;
+        this.listener = listener;
+    }
+
+    /**
+     * Opens the connection, waits for READY and negotiates the compression and framing of the options.
+     * When the server refuses either, the connection goes on without it.
+     *
+     * @return The READY message of the server.
+     * @throws IOException If the connection fails.
+     * @throws IllegalStateException If the client is already connected.
+     */
+    public Ready connect() throws IOException {
+        if (isConnected()) {
+            throw new IllegalStateException("Already connected");
+        }
+        Socket socket = new Socket(host, port);
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            Ready ready = MessageCodec.decode(awaitLine(in, out, line, Commands.READY), Ready.class);
+
+            Deflater deflater = null;
+            Inflater inflater = null;
+            if (options.compress()) {
+                writeLine(out, Commands.COMPRESS_REQ, new CompressReq(Utils.COMPRESSION));
+                CompressResp response = MessageCodec.decode(awaitLine(in, out, line, Commands.COMPRESS_RESP), CompressResp.class);
+                if (response.status().equals("OK")) {
+                    // Every flush is a sync flush, so each batch of frames reaches the server right away
+                    deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                    out = new DeflaterOutputStream(out, deflater, BUFFER_SIZE, true);
+                    inflater = new Inflater(true);
+                    in = new InflaterInputStream(in, inflater, BUFFER_SIZE);
+                }
+            }
+            boolean binary = false;
+            if (options.binaryFraming()) {
+                writeLine(out, Commands.FRAMING_REQ, new FramingReq(BinaryCodec.FRAMING));
+                FramingResp response = MessageCodec.decode(awaitLine(in, out, line, Commands.FRAMING_RESP), FramingResp.class);
+                binary = response.status().equals("OK");
+            }
+
+            socket.setSoTimeout(0);
+            synchronized (ackLock) {
+                // The server delivers the unacknowledged messages again; acknowledge them even if already seen
+                lastAckedId = -1;
+            }
+            Connection connection = new Connection(socket, new BufferedInputStream(in, BUFFER_SIZE),
+                    new BufferedOutputStream(out, BUFFER_SIZE), binary, deflater, inflater);
+            this.connection = connection;
+            runtime.io().execute(connection::read);
+            return ready;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Connects on a thread of the runtime.
+     *
+     * @return The READY message of the server.
+     */
+    public CompletableFuture<Ready> connectAsync() {
+        CompletableFuture<Ready> ready = new CompletableFuture<>();
+        runtime.io().execute(() -> {
+            try {
+                ready.complete(connect());
+            } catch (IOException | RuntimeException e) {
+                ready.completeExceptionally(e);
+            }
+        });
+        return ready;
+    }
+
+    /**
+     * Logs in. After an OK the client remembers the username and the resume token.
+     *
+     * @param username The username.
+     * @return The answer of the server.
+     */
+    public CompletableFuture<EnterResp> login(String username) {
+        return enter(new Enter(username, options.acks(), options.resumable(), null, options.presenceDeltas()));
+    }
+
+    /**
+     * Connects again and continues the session of the last login with its resume token, so messages sent
+     * in the meantime are not lost and other users do not see the client leave and join.
+     *
+     * @return The answer of the server, with resumed set if the session was continued.
+     * @throws IOException If the connection fails.
+     * @throws IllegalStateException If there is no session to resume.
+     */
+    public CompletableFuture<EnterResp> resume() throws IOException {
+        String token = resumeToken;
+        if (token == null) {
+            throw new IllegalStateException("No session to resume");
+        }
+        connect();
+        return enter(new Enter(username, options.acks(), options.resumable(), token, options.presenceDeltas()));
+    }
+
+    private CompletableFuture<EnterResp> enter(Enter enter) {
+        return request(Commands.ENTER, enter, EnterResp.class).thenApply(response -> {
+            if (response.status().equals("OK")) {
+                username = enter.username();
+                resumeToken = response.resumeToken();
+            }
+            return response;
+        });
+    }
+
+    public CompletableFuture<BroadcastResp> broadcast(String message) {
+        return request(Commands.BROADCAST_REQ, new BroadcastReq(message), BroadcastResp.class);
+    }
+
+    public CompletableFuture<PrivateMsgResp> privateMessage(String receiver, String message) {
+        return request(Commands.PRIVATE_MSG_REQ, new PrivateMsgReq(receiver, message), PrivateMsgResp.class);
+    }
+
+    public CompletableFuture<ListResp> list(String prefix) {
+        return request(Commands.LIST_REQ, prefix == null ? new ListReq() : new ListReq(0, 0, prefix), ListResp.class);
+    }
+
+    public CompletableFuture<RoomJoinResp> joinRoom(String room) {
+        return request(Commands.ROOM_JOIN_REQ, new RoomJoinReq(room), RoomJoinResp.class);
+    }
+
+    public CompletableFuture<RoomLeaveResp> leaveRoom(String room) {
+        return request(Commands.ROOM_LEAVE_REQ, new RoomLeaveReq(room), RoomLeaveResp.class);
+    }
+
+    public CompletableFuture<RoomMsgResp> roomMessage(String room, String message) {
+        return request(Commands.ROOM_MSG_REQ, new RoomMsgReq(room, message), RoomMsgResp.class);
+    }
+
+    public CompletableFuture<HistoryResp> history(String room) {
+        return request(Commands.HISTORY_REQ, new HistoryReq(room, 0), HistoryResp.class);
+    }
+
+    public CompletableFuture<SearchResp> search(String query) {
+        return request(Commands.SEARCH_REQ, new SearchReq(query, 0), SearchResp.class);
+    }
+
+    public CompletableFuture<LeaderboardResp> leaderboard(String game) {
+        return request(Commands.LEADERBOARD_REQ, new LeaderboardReq(game, 10), LeaderboardResp.class);
+    }
+
+    public CompletableFuture<BroadcastResp> bye() {
+        return request(Commands.BYE, new Bye(), BroadcastResp.class);
+    }
+
+    /**
+     * Sends a request with a request id. Any number of requests can be in flight: each answer completes
+     * its own request, whatever the order in which the answers arrive.
+     *
+     * @param command      The command of the request.
+     * @param message      The request.
+     * @param responseType The record of the answer.
+     * @return The answer; completed exceptionally if the request cannot be sent, the connection is lost
+     * before the answer, or the server cannot handle the request (a ProtocolException).
+     * @throws IllegalArgumentException If the command is not a request, so has no answer.
+     */
+    public <T> CompletableFuture<T> request(String command, Object message, Class<T> responseType) {
+        PendingRequests.Request<T> request = requests.register(command, responseType);
+        try {
+            Connection connection = this.connection;
+            if (connection == null || !connection.enqueue(connection.encode(command, message, request.id()))) {
+                request.answer().completeExceptionally(new IOException("Not connected, or too many frames queued"));
+            }
+        } catch (JsonProcessingException e) {
+            request.answer().completeExceptionally(e);
+        }
+        return request.answer();
+    }
+
+    /**
+     * Queues a frame without waiting for an answer.
+     *
+     * @param command The command.
+     * @param message The payload record, or null for none.
+     * @return False if the frame was dropped as the client is not connected or too many frames are queued.
+     * @throws JsonProcessingException If the message cannot be serialized.
+     */
+    public boolean send(String command, Object message) throws JsonProcessingException {
+        Connection connection = this.connection;
+        return connection != null && connection.enqueue(connection.encode(command, message, null));
+    }
+
+    /**
+     * Closes the connection after the queued frames are written. The listener is told with onClosed().
+     */
+    @Override
+    public void close() {
+        Connection connection = this.connection;
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    public boolean isConnected() {
+        Connection connection = this.connection;
+        return connection != null && !connection.closed;
+    }
+
+    /**
+     * @return The username of the last successful login, or null.
+     */
+    public String username() {
+        return username;
+    }
+
+    /**
+     * @return The resume token of the session, or null if it cannot be resumed.
+     */
+    public String resumeToken() {
+        return resumeToken;
+    }
+
+    /**
+     * @return The number of requests waiting for their answer.
+     */
+    public int pendingRequests() {
+        return requests.size();
+    }
+
+    private void received(String command, Object payload) throws JsonProcessingException {
+        if (command.equals(Commands.PING)) {
+            send(Commands.PONG, new Pong());
+            return;
+        }
+        if (payload instanceof PrivateMsg privateMsg && privateMsg.id() != null) {
+            // A message delivered again after a resume reaches the listener once, but is acknowledged again
+            if (firstDelivery(privateMsg.id())) {
+                listener.onEvent(this, new ChatEvent(command, payload));
+            }
+            delivered(privateMsg.id());
+            return;
+        }
+        listener.onEvent(this, new ChatEvent(command, payload));
+    }
+
+    /**
+     * @return False if the private message with this id was already passed to the listener, before a resume.
+     */
+    private boolean firstDelivery(long id) {
+        synchronized (ackLock) {
+            return !recentIds.contains(id);
+        }
+    }
+
+    /**
+     * Counts a private message that the listener handled towards the next acknowledgement.
+     */
+    private void delivered(long id) {
+        synchronized (ackLock) {
+            recentIds.add(id);
+            lastDeliveredId = Math.max(lastDeliveredId, id);
+            unackedCount++;
+            if (unackedCount >= ACK_EVERY) {
+                sendAck();
+            } else if (!ackScheduled && lastDeliveredId > lastAckedId) {
+                ackScheduled = true;
+                runtime.timers().schedule(this::sendAck, ACK_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Acknowledges every private message handled so far with a single PRIVATE_MSG_ACK. The server delivers
+     * a client its messages in the order of their ids, so the highest one covers all of them.
+     */
+    private void sendAck() {
+        synchronized (ackLock) {
+            ackScheduled = false;
+            if (lastDeliveredId <= lastAckedId) {
+                return;
+            }
+            try {
+                if (send(Commands.PRIVATE_MSG_ACK, new PrivateMsgAck(lastDeliveredId))) {
+                    lastAckedId = lastDeliveredId;
+                    unackedCount = 0;
+                }
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private void connectionLost(IOException cause) {
+        requests.failAll(cause != null ? cause : new EOFException("The connection was closed"));
+        listener.onClosed(this, cause);
+    }
+
+    /**
+     * Reads lines before the reader thread starts, answering PING, until the expected command.
+     *
+     * @return The JSON payload of the expected command.
+     */
+    private static String awaitLine(InputStream in, OutputStream out, ByteArrayOutputStream line, String command) throws IOException {
+        while (true) {
+            String frame = readLine(in, line);
+            if (frame == null) {
+                throw new EOFException("The server closed the connection");
+            }
+            int space = frame.indexOf(' ');
+            String received = space < 0 ? frame : frame.substring(0, space);
+            if (received.equals(command)) {
+                return space < 0 ? "{}" : frame.substring(space + 1);
+            } else if (received.equals(Commands.PING)) {
+                writeLine(out, Commands.PONG, new Pong());
+            } else {
+                throw new ProtocolException("Expected " + command + " but received " + received);
+            }
+        }
+    }
+
+    private static void writeLine(OutputStream out, String command, Object message) throws IOException {
+        out.write((MessageCodec.encode(command, message) + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Reads a line byte by byte, so from an unbuffered stream nothing after it is consumed, as the bytes
+     * after the answer to COMPRESS_REQ are compressed.
+     *
+     * @param in   The stream to read.
+     * @param line The buffer for the bytes of the line, reused from line to line.
+     * @return The line without its line break, or null at the end of the stream.
+     * @throws IOException If the stream cannot be read or the line is too long.
+     */
+    private static String readLine(InputStream in, ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+            } else if (line.size() >= MAX_FRAME_BYTES) {
+                throw new IOException("Line longer than " + MAX_FRAME_BYTES + " bytes");
+            }
+            line.write(b);
+        }
+        String text = line.toString(StandardCharsets.UTF_8);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    /**
+     * One connection to the server; a resume opens a new one.
+     */
+    private final class Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final boolean binary;
+        private final Deflater deflater;
+        private final Inflater inflater;
+        private final ConcurrentLinkedQueue<byte[]> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        // Guards out, finished and the deflater; not a monitor, which would pin the virtual thread of a blocked write
+        private final ReentrantLock writeLock = new ReentrantLock();
+        // Set when no more frames are accepted; the socket is closed once the queued frames are written
+        private volatile boolean closed;
+        // Set when the socket is closed
+        private boolean finished;
+
+        private Connection(Socket socket, InputStream in, OutputStream out, boolean binary, Deflater deflater, Inflater inflater) {
+            this.socket = socket;
+            this.in = in;
+            this.out = out;
+            this.binary = binary;
+            this.deflater = deflater;
+            this.inflater = inflater;
+        }
+
+        private byte[] encode(String command, Object message, Long requestId) throws JsonProcessingException {
+            if (binary) {
+                return BinaryCodec.encodeFrame(command, message, requestId);
+            }
+            String frame = message == null ? command + " {}" : MessageCodec.encode(command, message);
+            if (requestId != null) {
+                frame = MessageCodec.withRequestId(frame, requestId);
+            }
+            return (frame + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        private boolean enqueue(byte[] frame) {
+            if (closed) {
+                return false;
+            }
+            if (queued.incrementAndGet() > MAX_QUEUED_FRAMES) {
+                queued.decrementAndGet();
+                return false;
+            }
+            outbox.add(frame);
+            startDraining();
+            return true;
+        }
+
+        private void startDraining() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    runtime.io().execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // The runtime was closed
+                    draining.set(false);
+                    closeSocket();
+                }
+            }
+        }
+
+        /**
+         * Writes the queued frames with one flush per batch, until the queue is empty.
+         */
+        private void drain() {
+            try {
+                writeLock.lock();
+                try {
+                    do {
+                        if (finished) {
+                            return;
+                        }
+                        byte[] frame;
+                        while ((frame = outbox.poll()) != null) {
+                            queued.decrementAndGet();
+                            out.write(frame);
+                        }
+                        out.flush();
+                        draining.set(false);
+                    } while (!outbox.isEmpty() && draining.compareAndSet(false, true));
+                } finally {
+                    writeLock.unlock();
+                }
+                if (closed) {
+                    closeSocket();
+                }
+            } catch (IOException e) {
+                draining.set(false);
+                closeSocket();
+            }
+        }
+
+        private void close() {
+            closed = true;
+            // The drain that writes the last queued frames closes the socket
+            startDraining();
+        }
+
+        private void closeSocket() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+
+        private void read() {
+            IOException cause = null;
+            try {
+                if (binary) {
+                    BinaryCodec.Frame frame;
+                    while ((frame = BinaryCodec.readFrame(in, MAX_FRAME_BYTES)) != null) {
+                        if (frame.command() != null && !requests.complete(frame.command(), frame.payload(), frame.requestId())) {
+                            received(frame.command(), frame.payload());
+                        }
+                    }
+                } else {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream(128);
+                    String line;
+                    while ((line = readLine(in, buffer)) != null) {
+                        int space = line.indexOf(' ');
+                        String command = space < 0 ? line : line.substring(0, space);
+                        String json = space < 0 ? "{}" : line.substring(space + 1);
+                        if (!requests.complete(command, json)) {
+                            received(command, MessageCodec.typeOf(command) == null ? null : MessageCodec.decode(command, json));
+                        }
+                    }
+                }
+                if (!closed) {
+                    cause = new EOFException("The server closed the connection");
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    cause = e;
+                }
+            } catch (RuntimeException e) {
+                cause = new IOException("The listener failed", e);
+            } finally {
+                closed = true;
+                closeSocket();
+                writeLock.lock();
+                try {
+                    finished = true;
+                    if (deflater != null) {
+                        deflater.end();
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+            connectionLost(cause);
+        }
+    }
+}
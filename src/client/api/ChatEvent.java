@@ -0,0 +1,11 @@
+package client.api;
+
+/**
+ * A frame received from the server that did not answer a request of the client, e.g. a BROADCAST.
+ *
+ * @param command The command of the frame.
+ * @param payload The record registered for the command in MessageCodec, e.g. Broadcast, or null for a
+ *                command without a record (RPS_READY, TTT_INVITE_DECLINED) or one the client does not know.
+ */
+public record ChatEvent(String command, Object payload) {
+}
@@ -0,0 +1,25 @@
+package client.api;
+
+import java.io.IOException;
+
+/**
+ * Receives the events of a ChatClient, on the thread that reads its connection.
+ */
+public interface ChatListener {
+    /**
+     * Called for every frame from the server that did not answer a request, in the order of arrival.
+     *
+     * @param client The client that received the frame.
+     * @param event  The frame.
+     */
+    void onEvent(ChatClient client, ChatEvent event);
+
+    /**
+     * Called once when the connection is closed. The client can then resume() its session.
+     *
+     * @param client The client.
+     * @param cause  Why the connection was lost, or null if it was closed with close().
+     */
+    default void onClosed(ChatClient client, IOException cause) {
+    }
+}
@@ -0,0 +1,55 @@
+package client.api;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The threads shared by any number of ChatClients: virtual threads that read the connections and write
+ * the queued frames, and one daemon thread for timers, e.g. the delayed PRIVATE_MSG_ACK. A client blocked
+ * on its socket only holds a parked virtual thread, so one JVM can host thousands of clients.
+ *
+ * Listeners are called on the virtual thread that reads the connection of their client, so they may
+ * block, but a slow listener delays the following events of that client.
+ */
+public class ClientRuntime implements AutoCloseable {
+    private static final ClientRuntime SHARED = new ClientRuntime();
+
+    private final ExecutorService io = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("chat-client-io-", 0).factory());
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chat-client-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @return The runtime used by clients that are not given one, which is never closed.
+     */
+    public static ClientRuntime shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return The executor that runs the readers and writers of the connections.
+     */
+    public ExecutorService io() {
+        return io;
+    }
+
+    /**
+     * @return The executor for timers; its tasks must not block.
+     */
+    public ScheduledExecutorService timers() {
+        return timers;
+    }
+
+    /**
+     * Stops the threads. The clients of this runtime should be closed first.
+     */
+    @Override
+    public void close() {
+        io.shutdownNow();
+        timers.shutdownNow();
+    }
+}
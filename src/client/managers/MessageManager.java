@@ -2,9 +2,17 @@ package client.managers;
 
 import Utilities.messages.ticTacToe.*;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import Utilities.Commands;
 import Utilities.messages.*;
+import Utilities.messages.leaderboard.LeaderboardEntry;
+import Utilities.messages.leaderboard.LeaderboardReq;
+import Utilities.messages.leaderboard.LeaderboardResp;
+import Utilities.messages.history.HistoryReq;
+import Utilities.messages.history.HistoryResp;
+import Utilities.messages.search.SearchReq;
+import Utilities.messages.search.SearchResp;
+import Utilities.messages.search.SearchResult;
+import Utilities.messages.room.*;
 import Utilities.messages.fileTransfer.FileTransferReady;
 import Utilities.messages.fileTransfer.FileTransferReq;
 import Utilities.messages.fileTransfer.FileTransferResp;
@@ -14,70 +22,95 @@ import Utilities.messages.privateMessage.PrivateMsgResp;
 import Utilities.messages.requestList.ListReq;
 import Utilities.messages.requestList.ListResp;
 import Utilities.messages.rockPaperScissor.*;
+import client.api.ChatClient;
+import client.api.ChatEvent;
+import client.api.ChatListener;
 
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.function.Consumer;
 
-public class MessageManager {
-    private final ObjectMapper mapper;
-    private final PrintWriter writer;
+public class MessageManager implements ChatListener {
+    private volatile ChatClient client;
     private final Consumer<FileTransferReady> fileTransferReadyHandler;
     private final Consumer<FileTransferReq> incomingFileRequestHandler;
-    private final String username;
 
-    public MessageManager(PrintWriter writer, ObjectMapper mapper, String username,
-                          Consumer<FileTransferReady> fileTransferReadyHandler,
+    private static final int RATE_LIMITED = 21000;
+    private static final char TTT_EMPTY = '.';
+    private int tttRows = 3;
+    private int tttCols = 3;
+    private char[] tttBoard = new char[9];
+    private int tttSeq;
+
+    public MessageManager(Consumer<FileTransferReady> fileTransferReadyHandler,
                           Consumer<FileTransferReq> incomingFileRequestHandler) {
-        this.writer = writer;
-        this.mapper = mapper;
-        this.username = username;
         this.fileTransferReadyHandler = fileTransferReadyHandler;
         this.incomingFileRequestHandler = incomingFileRequestHandler;
+        Arrays.fill(tttBoard, TTT_EMPTY);
+    }
+
+    /**
+     * Sends the commands of the user with this client.
+     */
+    public void setClient(ChatClient client) {
+        this.client = client;
     }
 
     /**
      * Processes a single message received from the server.
      * Dispatches the message to the appropriate handler based on its command type.
      *
-     * @param serverMessage The message received from the server.
-     * @throws IOException If an error occurs during message parsing or handling.
+     * @param client The client that received the message.
+     * @param event  The message received from the server.
      */
-    public void handleServerMessage(String serverMessage) throws IOException {
-        String[] parts = serverMessage.split(" ", 2);
-        String command = parts[0];
-        String jsonPayload = parts.length > 1 ? parts[1] : "{}";
+    @Override
+    public void onEvent(ChatClient client, ChatEvent event) {
+        Object payload = event.payload();
+        if (payload instanceof Response response && rateLimited(response)) {
+            return;
+        }
 
-        switch (command) {
-            case Commands.PING -> respondToPing();
+        switch (event.command()) {
             case Commands.HANGUP -> System.out.println("Received HANGUP due to missing PONG");
-            case Commands.BROADCAST_RESP -> processBroadcastResponse(jsonPayload);
-            case Commands.BROADCAST -> showBroadcastMessage(jsonPayload);
-            case Commands.JOINED -> notifyUserJoined(jsonPayload);
-            case Commands.LEFT -> notifyUserLeft(jsonPayload);
+            case Commands.BROADCAST_RESP -> processBroadcastResponse((BroadcastResp) payload);
+            case Commands.BROADCAST -> showBroadcastMessage((Broadcast) payload);
+            case Commands.JOINED -> notifyUserJoined((Joined) payload);
+            case Commands.LEFT -> notifyUserLeft((Joined) payload);
+            case Commands.PRESENCE_DELTA -> notifyPresenceDelta((PresenceDelta) payload);
+            case Commands.MENTION -> notifyMention((Mention) payload);
             case Commands.BYE_RESP -> System.out.println("Goodbye!");
-            case Commands.LIST_RESP -> displayConnectedClients(jsonPayload);
-            case Commands.PRIVATE_MSG -> displayPrivateMessage(jsonPayload);
-            case Commands.PRIVATE_MSG_RESP -> handlePrivateMessageResponse(jsonPayload);
-            case Commands.RPS_START_RESP -> processRpsGameInvitationResponse(jsonPayload);
-            case Commands.RPS_INVITE -> processRpsGameInvitation(jsonPayload);
+            case Commands.LIST_RESP -> displayConnectedClients((ListResp) payload);
+            case Commands.PRIVATE_MSG -> displayPrivateMessage((PrivateMsg) payload);
+            case Commands.PRIVATE_MSG_RESP -> handlePrivateMessageResponse((PrivateMsgResp) payload);
+            case Commands.RPS_START_RESP -> processRpsGameInvitationResponse((RpsStartResp) payload);
+            case Commands.RPS_INVITE -> processRpsGameInvitation((RpsInvite) payload);
             case Commands.RPS_INVITE_DECLINED -> System.out.println("Game invitation declined.");
             case Commands.RPS_READY -> System.out.println("Please select your move: /r, /p, /s");
-            case Commands.RPS_MOVE_RESP -> processRpsMoveResponse(jsonPayload);
-            case Commands.RPS_RESULT -> displayRpsGameResult(jsonPayload);
-            case Commands.FILE_TRANSFER_REQ -> processIncomingFileRequest(jsonPayload);
-            case Commands.FILE_TRANSFER_RESP -> processFileTransferResponse(jsonPayload);
-            case Commands.FILE_TRANSFER_READY -> processFileTransferReady(jsonPayload);
-            case Commands.TTT_INVITE -> processTttGameInvitation(jsonPayload);
-            case Commands.TTT_INVITE_RESP -> processTttGameInvitationResponse(jsonPayload);
-            case Commands.TTT_START_RESP -> processTttStartResponse(jsonPayload);
-            case Commands.TTT_READY -> System.out.println("Tic-Tac-Toe game started. Make your move with /tttmove <row> <col>");
-            case Commands.TTT_MOVE_RESP -> processTttMoveResponse(jsonPayload);
-            case Commands.TTT_RESULT -> displayTttGameResult(jsonPayload);
+            case Commands.RPS_MOVE_RESP -> processRpsMoveResponse((RpsMoveResp) payload);
+            case Commands.RPS_RESULT -> displayRpsGameResult((RpsResult) payload);
+            case Commands.FILE_TRANSFER_REQ -> processIncomingFileRequest((FileTransferReq) payload);
+            case Commands.FILE_TRANSFER_RESP -> processFileTransferResponse((FileTransferResp) payload);
+            case Commands.FILE_TRANSFER_READY -> processFileTransferReady((FileTransferReady) payload);
+            case Commands.TTT_INVITE -> processTttGameInvitation((TttInvite) payload);
+            case Commands.TTT_INVITE_RESP -> processTttGameInvitationResponse((TttInviteResp) payload);
+            case Commands.TTT_START_RESP -> processTttStartResponse((TttStartResp) payload);
+            case Commands.TTT_READY -> processTttReady((TttReady) payload);
+            case Commands.TTT_MOVE_RESP -> processTttMoveResponse((TttMoveResp) payload);
+            case Commands.TTT_RESULT -> displayTttGameResult((TttResult) payload);
             case Commands.TTT_INVITE_DECLINED -> processTttInviteDeclined();
-            case Commands.TTT_BOARD_UPDATE -> processTttBoardUpdate(jsonPayload);
-            default -> System.out.println("Unknown server message: " + serverMessage);
+            case Commands.TTT_BOARD_DELTA -> processTttBoardDelta((TttBoardDelta) payload);
+            case Commands.TTT_SNAPSHOT -> processTttSnapshot((TttSnapshot) payload);
+            case Commands.TTT_PAUSED -> processTttPaused((TttPaused) payload);
+            case Commands.TTT_RESUME -> processTttResume((TttSnapshot) payload);
+            case Commands.TTT_WATCH_RESP -> processTttWatchResponse((TttWatchResp) payload);
+            case Commands.TTT_UNWATCH_RESP -> System.out.println("Stopped watching.");
+            case Commands.LEADERBOARD_RESP -> displayLeaderboard((LeaderboardResp) payload);
+            case Commands.ROOM_JOIN_RESP -> processRoomResponse(((RoomJoinResp) payload).code(), "Joined room ✔");
+            case Commands.ROOM_LEAVE_RESP -> processRoomResponse(((RoomLeaveResp) payload).code(), "Left room ✔");
+            case Commands.ROOM_MSG_RESP -> processRoomResponse(((RoomMsgResp) payload).code(), "Sent ✔");
+            case Commands.ROOM_MSG -> showRoomMessage((RoomMsg) payload);
+            case Commands.HISTORY_RESP -> processHistoryResponse((HistoryResp) payload);
+            case Commands.SEARCH_RESP -> displaySearchResults((SearchResp) payload);
+            default -> System.out.println("Unknown server message: " + event.command());
         }
     }
 
@@ -89,16 +122,20 @@ public class MessageManager {
      * @throws JsonProcessingException If the message cannot be serialized.
      */
     public void sendServerCommand(String command, Object message) throws JsonProcessingException {
-        String jsonMessage = command + " " + (message == null ? "{}" : mapper.writeValueAsString(message));
-        writer.println(jsonMessage);
+        if (!client.send(command, message)) {
+            System.out.println("Not sent, the connection to the server is lost.");
+        }
     }
 
-    private void respondToPing() throws JsonProcessingException {
-        sendServerCommand(Commands.PONG, new Pong());
+    private boolean rateLimited(Response response) {
+        if (response.code() == RATE_LIMITED) {
+            System.out.println("You are sending too fast, please slow down.");
+            return true;
+        }
+        return false;
     }
 
-    private void processBroadcastResponse(String jsonPayload) throws JsonProcessingException {
-        BroadcastResp broadcastResp = mapper.readValue(jsonPayload, BroadcastResp.class);
+    private void processBroadcastResponse(BroadcastResp broadcastResp) {
         if ((broadcastResp.status()).equals("OK")) {
             System.out.println("Sent ✔");
         } else {
@@ -109,19 +146,82 @@ public class MessageManager {
     private void displayBroadcastError(int errorCode) {
         if (errorCode == 6000) {
             System.out.println("Error: You must log in before sending a broadcast message.");
+        } else if (errorCode == 6001) {
+            System.out.println("Your message was blocked by the content filter.");
         } else {
             System.out.println("Unknown broadcast error occurred. Code: " + errorCode);
         }
     }
 
-    private void showBroadcastMessage(String jsonPayload) throws JsonProcessingException {
-        Broadcast broadcast = mapper.readValue(jsonPayload, Broadcast.class);
+    private void showBroadcastMessage(Broadcast broadcast) {
         System.out.println("[PUBLIC] " + broadcast.username() + ": " + broadcast.message());
     }
 
-    private void displayConnectedClients(String jsonPayload) throws JsonProcessingException {
-        ListResp listResp = mapper.readValue(jsonPayload, ListResp.class);
+    private void showRoomMessage(RoomMsg roomMsg) {
+        System.out.println("[#" + roomMsg.room() + "] " + roomMsg.username() + ": " + roomMsg.message());
+    }
+
+    private void processRoomResponse(int code, String okMessage) {
+        switch (code) {
+            case 0 -> System.out.println(okMessage);
+            case 15000 -> System.out.println("Please log in first.");
+            case 15001 -> System.out.println("A room name may only consist of 3-20 characters, numbers, and underscores.");
+            case 15002 -> System.out.println("You are not a member of this room.");
+            case 15003 -> System.out.println("You can't leave the lobby.");
+            case 15004 -> System.out.println("Your message was blocked by the content filter.");
+            default -> System.out.println("Unknown room error occurred. Code: " + code);
+        }
+    }
+
+    private void processHistoryResponse(HistoryResp historyResp) {
+        switch (historyResp.code()) {
+            case 0 -> System.out.println("(" + historyResp.count() + " earlier messages in " + historyResp.room() + ")");
+            case 16000 -> System.out.println("Please log in first.");
+            case 16001 -> System.out.println("You are not a member of this room.");
+            default -> System.out.println("Unknown history error occurred. Code: " + historyResp.code());
+        }
+    }
 
+    private void displaySearchResults(SearchResp searchResp) {
+        switch (searchResp.code()) {
+            case 0 -> {
+                if (searchResp.results().isEmpty()) {
+                    System.out.println("No messages found.");
+                }
+                for (SearchResult result : searchResp.results()) {
+                    System.out.println("[" + result.channel() + "] " + result.sender() + ": " + result.message());
+                }
+            }
+            case 17000 -> System.out.println("Please log in first.");
+            case 17001 -> System.out.println("Please enter at least one word to search for.");
+            default -> System.out.println("Unknown search error occurred. Code: " + searchResp.code());
+        }
+    }
+
+    public void search(String query) throws JsonProcessingException {
+        sendServerCommand(Commands.SEARCH_REQ, new SearchReq(query, 0));
+    }
+
+    public void requestHistory(String room) throws JsonProcessingException {
+        sendServerCommand(Commands.HISTORY_REQ, new HistoryReq(room, 0));
+    }
+
+    public void joinRoom(String room) throws JsonProcessingException {
+        sendServerCommand(Commands.ROOM_JOIN_REQ, new RoomJoinReq(room));
+    }
+
+    public void leaveRoom(String room) throws JsonProcessingException {
+        sendServerCommand(Commands.ROOM_LEAVE_REQ, new RoomLeaveReq(room));
+    }
+
+    public void sendRoomMessage(String room, String message) throws JsonProcessingException {
+        sendServerCommand(Commands.ROOM_MSG_REQ, new RoomMsgReq(room, message));
+    }
+
+    private void displayConnectedClients(ListResp listResp) {
+        if (rateLimited(listResp)) {
+            return;
+        }
         if ("ERROR".equals(listResp.status())) {
             if (listResp.code() == 9000) {
                 System.out.println("Cannot retrieve list: You are not logged in.");
@@ -132,42 +232,61 @@ public class MessageManager {
             if (listResp.clients() != null && !listResp.clients().isEmpty()) {
                 String clientListString = String.join(", ", listResp.clients());
                 System.out.println("Currently connected users: " + clientListString);
+                if (listResp.total() != null && listResp.total() > listResp.clients().size()) {
+                    System.out.println("(" + (listResp.total() - listResp.clients().size()) + " more)");
+                }
+            } else if (listResp.total() != null) {
+                System.out.println("No connected users match.");
             } else {
                 System.out.println("(no users connected?)");
             }
         }
     }
 
-    private void notifyUserJoined(String jsonPayload) throws JsonProcessingException {
-        Joined joined = mapper.readValue(jsonPayload, Joined.class);
+    private void notifyUserJoined(Joined joined) {
         System.out.println(joined.username() + " has joined the chat.");
     }
 
-    private void notifyUserLeft(String jsonPayload) throws JsonProcessingException {
-        Joined left = mapper.readValue(jsonPayload, Joined.class);
+    private void notifyUserLeft(Joined left) {
         System.out.println(left.username() + " has left the chat.");
     }
 
-    private void displayPrivateMessage(String jsonPayload) throws JsonProcessingException {
-        PrivateMsg privateMsg = mapper.readValue(jsonPayload, PrivateMsg.class);
+    private void notifyPresenceDelta(PresenceDelta delta) {
+        if (!delta.joined().isEmpty()) {
+            System.out.println(String.join(", ", delta.joined()) + (delta.joined().size() == 1 ? " has" : " have") + " joined the chat.");
+        }
+        if (!delta.left().isEmpty()) {
+            System.out.println(String.join(", ", delta.left()) + (delta.left().size() == 1 ? " has" : " have") + " left the chat.");
+        }
+    }
+
+    private void notifyMention(Mention mention) {
+        System.out.println("*** " + mention.sender() + " mentioned you: " + mention.message());
+    }
+
+    private void displayPrivateMessage(PrivateMsg privateMsg) {
         System.out.println("[PRIVATE] " + privateMsg.sender() + ": " + privateMsg.message());
     }
 
-    private void handlePrivateMessageResponse(String jsonPayload) throws JsonProcessingException {
-        PrivateMsgResp privateMsgResp = mapper.readValue(jsonPayload, PrivateMsgResp.class);
+    private void handlePrivateMessageResponse(PrivateMsgResp privateMsgResp) {
         if (privateMsgResp.status().equals("ERROR")) {
             switch (privateMsgResp.code()) {
                 case 10001 -> System.out.println("Please log in to send private message.");
                 case 10002 -> System.out.println("No receiver found.");
                 case 10003 -> System.out.println("Can't send to self.");
+                case 10004 -> System.out.println("The inbox of the receiver is full.");
+                case 10005 -> System.out.println("The receiver is not keeping up with messages, try again later.");
+                case 10006 -> System.out.println("Your message was blocked by the content filter.");
+                case 10007 -> System.out.println("Can't send an empty message.");
             }
+        } else if (privateMsgResp.status().equals("STORED")) {
+            System.out.println("The receiver is offline. The message will be delivered when they log in.");
         } else {
             System.out.println("Sent ✔");
         }
     }
 
-    private void processRpsGameInvitationResponse(String jsonPayload) throws JsonProcessingException {
-        RpsStartResp rpsStartResp = mapper.readValue(jsonPayload, RpsStartResp.class);
+    private void processRpsGameInvitationResponse(RpsStartResp rpsStartResp) {
         if (rpsStartResp.status().equals("ERROR")) {
             switch (rpsStartResp.code()) {
                 case 11001 -> System.out.println("You need to log in first. Please try again");
@@ -181,8 +300,7 @@ public class MessageManager {
         }
     }
 
-    private void processRpsGameInvitation(String jsonPayload) throws IOException {
-        RpsInvite rpsInvite = mapper.readValue(jsonPayload, RpsInvite.class);
+    private void processRpsGameInvitation(RpsInvite rpsInvite) {
 
         System.out.println("You have been invited to a game by " + rpsInvite.sender());
         System.out.println("Would you like to accept?");
@@ -190,8 +308,7 @@ public class MessageManager {
         System.out.println("/n - no");
     }
 
-    private void processRpsMoveResponse(String jsonPayload) throws JsonProcessingException {
-        RpsMoveResp rpsMoveResp = mapper.readValue(jsonPayload, RpsMoveResp.class);
+    private void processRpsMoveResponse(RpsMoveResp rpsMoveResp) {
         if (rpsMoveResp.status().equals("OK")) {
             System.out.println("Move sent ✔");
         } else if (rpsMoveResp.status().equals("ERROR") && rpsMoveResp.code() == 11005) {
@@ -201,9 +318,8 @@ public class MessageManager {
         }
     }
 
-    private void displayRpsGameResult(String jsonPayload) throws JsonProcessingException {
-        Map<String, Object> result = mapper.readValue(jsonPayload, Map.class);
-        String winner = (String) result.get("winner");
+    private void displayRpsGameResult(RpsResult result) {
+        String winner = result.winner();
 
         if (winner == null) {
             System.out.println("It's a tie!");
@@ -212,8 +328,10 @@ public class MessageManager {
         }
     }
 
-    private void processFileTransferResponse(String jsonPayload) throws JsonProcessingException {
-        FileTransferResp fileTransferResp = mapper.readValue(jsonPayload, FileTransferResp.class);
+    private void processFileTransferResponse(FileTransferResp fileTransferResp) {
+        if (rateLimited(fileTransferResp)) {
+            return;
+        }
         if (fileTransferResp.status().equals("OK")) {
             System.out.println("File transfer request sent ✔");
         } else if (fileTransferResp.status().equals("DECLINE")) {
@@ -227,14 +345,12 @@ public class MessageManager {
         }
     }
 
-    private void processIncomingFileRequest(String jsonPayload) throws IOException {
-        FileTransferReq req = mapper.readValue(jsonPayload, FileTransferReq.class);
+    private void processIncomingFileRequest(FileTransferReq req) {
         incomingFileRequestHandler.accept(req);
         System.out.println("New file transfer request from: " + req.sender());
     }
 
-    private void processFileTransferReady(String jsonPayload) throws JsonProcessingException {
-        FileTransferReady fileTransferReady = mapper.readValue(jsonPayload, FileTransferReady.class);
+    private void processFileTransferReady(FileTransferReady fileTransferReady) {
         fileTransferReadyHandler.accept(fileTransferReady);
     }
 
@@ -246,8 +362,12 @@ public class MessageManager {
         sendServerCommand(Commands.BROADCAST_REQ, new BroadcastReq(message));
     }
 
-    public  void requestClientList() throws JsonProcessingException {
-        sendServerCommand(Commands.LIST_REQ, new ListReq());
+    public void requestClientList() {
+        client.list(null).thenAccept(this::displayConnectedClients);
+    }
+
+    public void requestClientList(String prefix) {
+        client.list(prefix).thenAccept(this::displayConnectedClients);
     }
 
     public void sendRpsStartRequest(String opponent) throws JsonProcessingException {
@@ -268,9 +388,10 @@ public class MessageManager {
         sendServerCommand(Commands.RPS_MOVE_REQ, new RpsMove(move));
     }
 
-    public void sendFileTransferRequest(String receiver, String filename, String checksum) throws JsonProcessingException {
-        FileTransferReq fileTransferReq = new FileTransferReq(username, receiver, filename, checksum);
-        sendServerCommand(Commands.FILE_TRANSFER_REQ, fileTransferReq);
+    public void sendFileTransferRequest(String receiver, String filename, String checksum) {
+        FileTransferReq fileTransferReq = new FileTransferReq(client.username(), receiver, filename, checksum);
+        // A later FILE_TRANSFER_RESP without the id tells whether the receiver declined
+        client.request(Commands.FILE_TRANSFER_REQ, fileTransferReq, FileTransferResp.class).thenAccept(this::processFileTransferResponse);
     }
 
     public void sendFileTransferResponse(boolean accept) throws JsonProcessingException {
@@ -290,19 +411,22 @@ public class MessageManager {
         sendServerCommand(Commands.TTT_START_REQ, new TttStartReq(opponent));
     }
 
+    public void sendTttStartRequest(String opponent, int rows, int cols, int winLength) throws JsonProcessingException {
+        sendServerCommand(Commands.TTT_START_REQ, new TttStartReq(opponent, rows, cols, winLength));
+    }
+
     public void sendTttMove(int row, int col) throws JsonProcessingException {
         sendServerCommand(Commands.TTT_MOVE_REQ, new TttMove(row, col));
     }
-    private void processTttGameInvitation(String jsonPayload) throws IOException {
-        TttInvite invite = mapper.readValue(jsonPayload, TttInvite.class);
-        System.out.println("You have been invited to a Tic-Tac-Toe game by " + invite.sender());
+    private void processTttGameInvitation(TttInvite invite) {
+        System.out.println("You have been invited to a Tic-Tac-Toe game by " + invite.sender()
+                + " (" + invite.rows() + "x" + invite.cols() + ", " + invite.winLength() + " in a row)");
         System.out.println("Would you like to accept?");
         System.out.println("/yes");
         System.out.println("/no");
     }
 
-    private void processTttGameInvitationResponse(String jsonPayload) throws JsonProcessingException {
-        TttInviteResp response = mapper.readValue(jsonPayload, TttInviteResp.class);
+    private void processTttGameInvitationResponse(TttInviteResp response) {
         if (response.status().equals("ACCEPT")) {
             System.out.println("Tic-Tac-Toe game started. Make your move with /tttmove <row> <col>");
         } else {
@@ -310,38 +434,92 @@ public class MessageManager {
         }
     }
 
-    private void processTttMoveResponse(String jsonPayload) throws JsonProcessingException {
-        TttMoveResp moveResp = mapper.readValue(jsonPayload, TttMoveResp.class);
+    private void processTttMoveResponse(TttMoveResp moveResp) {
         if (moveResp.status().equals("OK")) {
             System.out.println("Move sent ✔");
         } else {
             System.out.println("Invalid move. Try again.");
         }
     }
-    private void processTttBoardUpdate(String jsonPayload) throws JsonProcessingException {
-        TttBoardUpdate boardUpdate = mapper.readValue(jsonPayload, TttBoardUpdate.class);
-        Map<String, String> board = boardUpdate.board();
+    private void processTttReady(TttReady ready) {
+        resetTttBoard(ready.rows(), ready.cols());
+        System.out.println("Tic-Tac-Toe game started on a " + ready.rows() + "x" + ready.cols() + " board, "
+                + ready.winLength() + " in a row wins. Make your move with /tttmove <row> <col>");
+    }
+
+    private void resetTttBoard(int rows, int cols) {
+        tttRows = rows;
+        tttCols = cols;
+        tttBoard = new char[rows * cols];
+        Arrays.fill(tttBoard, TTT_EMPTY);
+        tttSeq = 0;
+    }
+
+    private void processTttSnapshot(TttSnapshot snapshot) {
+        resetTttBoard(snapshot.rows(), snapshot.cols());
+        snapshot.board().getChars(0, tttBoard.length, tttBoard, 0);
+        tttSeq = snapshot.seq();
+        System.out.println("Watching " + snapshot.playerX() + " (X) vs " + snapshot.playerO() + " (O)");
+        printTttBoard();
+        System.out.println("It's " + snapshot.next() + "'s turn.");
+    }
 
+    private void processTttPaused(TttPaused paused) {
+        System.out.println(paused.player() + " lost the connection. The Tic-Tac-Toe game continues if they return within "
+                + paused.graceSeconds() + " seconds.");
+    }
+
+    private void processTttResume(TttSnapshot snapshot) {
+        resetTttBoard(snapshot.rows(), snapshot.cols());
+        snapshot.board().getChars(0, tttBoard.length, tttBoard, 0);
+        tttSeq = snapshot.seq();
+        System.out.println("Tic-Tac-Toe game resumed: " + snapshot.playerX() + " (X) vs " + snapshot.playerO() + " (O)");
+        printTttBoard();
+        System.out.println("It's " + snapshot.next() + "'s turn. Make your move with /tttmove <row> <col>");
+    }
+
+    private void processTttBoardDelta(TttBoardDelta delta) {
+        // Deltas already contained in the snapshot are skipped
+        if (delta.seq() <= tttSeq) {
+            return;
+        }
+        tttBoard[delta.row() * tttCols + delta.col()] = delta.symbol().charAt(0);
+        tttSeq = delta.seq();
+
+        printTttBoard();
+        System.out.println("It's " + (delta.symbol().equals("X") ? "O" : "X") + "'s turn.");
+    }
+
+    private void printTttBoard() {
         // Display the board in a user-friendly format
         System.out.println("Current Tic-Tac-Toe Board:");
-        for (int row = 0; row < 3; row++) {
-            for (int col = 0; col < 3; col++) {
-                String cell = board.get(row + "," + col);
-                if (cell.isEmpty()) {
-                    System.out.print("[ ]");
-                } else {
-                    System.out.print("[" + cell + "]");
-                }
+        for (int row = 0; row < tttRows; row++) {
+            for (int col = 0; col < tttCols; col++) {
+                char cell = tttBoard[row * tttCols + col];
+                System.out.print(cell == TTT_EMPTY ? "[ ]" : "[" + cell + "]");
             }
             System.out.println(); // New line after each row
         }
+    }
+
+    private void processTttWatchResponse(TttWatchResp watchResp) {
+        if (watchResp.status().equals("ERROR")) {
+            switch (watchResp.code()) {
+                case 12010 -> System.out.println("You need to log in first. Please try again.");
+                case 12011 -> System.out.println("That user is not playing Tic-Tac-Toe.");
+            }
+        }
+    }
 
-        // Display whose turn it is
-        System.out.println("It's " + (board.containsValue("X") ? "O" : "X") + "'s turn.");
+    public void sendTttWatchRequest(String player) throws JsonProcessingException {
+        sendServerCommand(Commands.TTT_WATCH_REQ, new TttWatchReq(player));
     }
 
-    private void displayTttGameResult(String jsonPayload) throws JsonProcessingException {
-        TttResult result = mapper.readValue(jsonPayload, TttResult.class);
+    public void sendTttUnwatchRequest() throws JsonProcessingException {
+        sendServerCommand(Commands.TTT_UNWATCH_REQ, null);
+    }
+
+    private void displayTttGameResult(TttResult result) {
         if (result.winner() == null) {
             System.out.println("It's a tie!");
         } else {
@@ -350,14 +528,15 @@ public class MessageManager {
         System.out.println("Final board:");
         result.board().forEach((key, value) -> System.out.println(key + ": " + value));
     }
-    private void processTttStartResponse(String jsonPayload) throws JsonProcessingException {
-        TttStartResp startResp = mapper.readValue(jsonPayload, TttStartResp.class);
+    private void processTttStartResponse(TttStartResp startResp) {
         if (startResp.status().equals("ERROR")) {
             switch (startResp.code()) {
                 case 12001 -> System.out.println("You need to log in first. Please try again.");
                 case 12002 -> System.out.println("No opponent found.");
                 case 12003 -> System.out.println("Can't send game request to yourself.");
                 case 12004 -> System.out.println("A game is ongoing between " + startResp.player1() + " and " + startResp.player2());
+                case 12012 -> System.out.println("Boards must be between 3x3 and 19x19 and the line must fit on the board.");
+                case 12013 -> System.out.println("TttBot only plays on a 3x3 board.");
             }
         } else {
             System.out.println("Tic-Tac-Toe invitation sent to " + startResp.player2());
@@ -376,4 +555,35 @@ public class MessageManager {
             System.out.println("Tic-Tac-Toe invitation declined");
         }
     }
-}
\ No newline at end of file
+
+    public void requestLeaderboard(String game) throws JsonProcessingException {
+        sendServerCommand(Commands.LEADERBOARD_REQ, new LeaderboardReq(game, 10));
+    }
+
+    private void displayLeaderboard(LeaderboardResp resp) {
+        if (resp.status().equals("ERROR")) {
+            switch (resp.code()) {
+                case 14000 -> System.out.println("Please log in first.");
+                case 14001 -> System.out.println("Unknown game: " + resp.game() + ". Use rps or ttt.");
+                default -> System.out.println("Unknown leaderboard error occurred. Code: " + resp.code());
+            }
+            return;
+        }
+
+        System.out.println("Leaderboard " + resp.game() + ":");
+        if (resp.top().isEmpty()) {
+            System.out.println("(no games played yet)");
+        }
+        for (LeaderboardEntry entry : resp.top()) {
+            System.out.println(formatLeaderboardEntry(entry));
+        }
+        if (resp.self() != null) {
+            System.out.println("You: " + formatLeaderboardEntry(resp.self()));
+        }
+    }
+
+    private String formatLeaderboardEntry(LeaderboardEntry entry) {
+        return "#" + entry.rank() + " " + entry.username() + " - " + entry.rating()
+                + " (W " + entry.wins() + " / L " + entry.losses() + " / T " + entry.ties() + ")";
+    }
+}
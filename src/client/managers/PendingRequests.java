@@ -0,0 +1,149 @@
+package client.managers;
+
+import Utilities.Commands;
+import Utilities.MessageCodec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.net.ProtocolException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The requests sent with a request id (see MessageCodec.REQUEST_ID) that wait for their answer. The server
+ * echoes the id in the answer, so answers are matched by id with one map lookup, however many requests
+ * are in flight and in whatever order the answers arrive.
+ *
+ * A request is completed with the record of its answer, also when the answer is an error status, or
+ * exceptionally with a ProtocolException when the server answers PARSE_ERROR or UNKNOWN_COMMAND.
+ * A request that is given up on, e.g. with orTimeout(), is forgotten.
+ */
+public class PendingRequests {
+    /**
+     * A request that was registered and still has to be sent.
+     *
+     * @param id     The id to send the request with.
+     * @param answer The answer of the server.
+     */
+    public record Request<T>(long id, CompletableFuture<T> answer) {
+    }
+
+    private record Pending<T>(String response, Class<T> type, CompletableFuture<T> answer) {
+    }
+
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<Long, Pending<?>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a request before it is sent.
+     *
+     * @param command      The command of the request.
+     * @param responseType The record of its answer.
+     * @return The id to send the request with and its answer.
+     * @throws IllegalArgumentException If the command is not a request, so has no answer.
+     */
+    public <T> Request<T> register(String command, Class<T> responseType) {
+        String response = Commands.responseTo(command);
+        if (response == null) {
+            throw new IllegalArgumentException(command + " has no answer");
+        }
+        long id = nextId.getAndIncrement();
+        CompletableFuture<T> answer = new CompletableFuture<>();
+        pending.put(id, new Pending<>(response, responseType, answer));
+        answer.whenComplete((result, error) -> pending.remove(id));
+        return new Request<>(id, answer);
+    }
+
+    /**
+     * Completes the request answered by a text frame from the server.
+     *
+     * @param command     The command of the frame.
+     * @param jsonPayload The JSON payload of the frame.
+     * @return True if the frame answered a pending request, which consumed it.
+     */
+    public boolean complete(String command, String jsonPayload) {
+        if (pending.isEmpty()) {
+            return false;
+        }
+        Pending<?> request = answered(command, MessageCodec.requestIdOf(jsonPayload));
+        if (request == null) {
+            return false;
+        }
+        if (!request.response().equals(command)) {
+            request.answer().completeExceptionally(new ProtocolException("The server answered " + command));
+        } else {
+            completeWith(request, jsonPayload);
+        }
+        return true;
+    }
+
+    /**
+     * Completes the request answered by a binary frame from the server.
+     *
+     * @param command   The command of the frame.
+     * @param payload   The decoded payload of the frame.
+     * @param requestId The request id of the frame, or null for none.
+     * @return True if the frame answered a pending request, which consumed it.
+     */
+    public boolean complete(String command, Object payload, Long requestId) {
+        if (pending.isEmpty()) {
+            return false;
+        }
+        Pending<?> request = answered(command, requestId);
+        if (request == null) {
+            return false;
+        }
+        if (!request.response().equals(command)) {
+            request.answer().completeExceptionally(new ProtocolException("The server answered " + command));
+        } else if (!request.type().isInstance(payload)) {
+            request.answer().completeExceptionally(new ProtocolException("Unexpected payload for " + command));
+        } else {
+            completeWith(request, payload);
+        }
+        return true;
+    }
+
+    /**
+     * @return The request answered by a frame: the request with its id, if the frame is its answer or
+     * says that the server could not handle it.
+     */
+    private Pending<?> answered(String command, Long id) {
+        Pending<?> request = id == null ? null : pending.get(id);
+        if (request == null) {
+            return null;
+        }
+        boolean refused = command.equals(Commands.PARSE_ERROR) || command.equals(Commands.UNKNOWN_COMMAND);
+        return refused || command.equals(request.response()) ? request : null;
+    }
+
+    /**
+     * Fails every pending request, e.g. when the connection is closed for good.
+     *
+     * @param cause The reason.
+     */
+    public void failAll(Throwable cause) {
+        for (Pending<?> request : pending.values()) {
+            request.answer().completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * @return The number of requests waiting for their answer.
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    private static <T> void completeWith(Pending<T> request, Object payload) {
+        request.answer().complete(request.type().cast(payload));
+    }
+
+    private static <T> void completeWith(Pending<T> request, String jsonPayload) {
+        try {
+            request.answer().complete(MessageCodec.decode(jsonPayload, request.type()));
+        } catch (JsonProcessingException e) {
+            request.answer().completeExceptionally(e);
+        }
+    }
+}
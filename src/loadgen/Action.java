@@ -0,0 +1,56 @@
+package loadgen;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * What a virtual user does when an arrival picks it. The mix of a run gives each action a relative
+ * weight, e.g. "broadcast:10,dm:40,list:10,rps:10,ttt:20,file:10".
+ */
+public enum Action {
+    /** A BROADCAST_REQ to everybody. */
+    BROADCAST,
+    /** A PRIVATE_MSG_REQ to another user, also timed until it is delivered. */
+    DM,
+    /** A LIST_REQ of all users. */
+    LIST,
+    /** A Rock, Paper, Scissors game with another free user, who accepts and plays a random choice. */
+    RPS,
+    /** A Tic-Tac-Toe game against the bot with random moves. */
+    TTT,
+    /** A file offer to another user, who declines it. */
+    FILE;
+
+    /**
+     * Parses a mix of weights.
+     *
+     * @param mix Comma separated action:weight pairs; actions that are left out have weight 0.
+     * @return The weight of every action in the mix.
+     * @throws IllegalArgumentException If an action is unknown, a weight is negative, or all weights are 0.
+     */
+    public static Map<Action, Integer> parseMix(String mix) {
+        Map<Action, Integer> weights = new EnumMap<>(Action.class);
+        for (String pair : mix.split(",")) {
+            String[] parts = pair.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected action:weight but found '" + pair + "'");
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight in '" + pair + "'");
+            }
+            Action action;
+            try {
+                action = valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown action in '" + pair + "'");
+            }
+            weights.merge(action, weight, Integer::sum);
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("The mix '" + mix + "' has no action");
+        }
+        return weights;
+    }
+}
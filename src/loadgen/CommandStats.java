@@ -0,0 +1,69 @@
+package loadgen;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The outcomes and latencies of one command, or of one measured step such as a whole game.
+ * An answer is counted as ok or as an error and its latency recorded either way; a request that is
+ * not answered in time, lost with its connection, or never started because no user was free has no latency.
+ */
+public class CommandStats {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder ok = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * Counts a successful answer.
+     *
+     * @param micros The time from when the request should have been sent until the answer.
+     */
+    public void ok(long micros) {
+        ok.increment();
+        latency.record(micros);
+    }
+
+    /**
+     * Counts an error answer.
+     *
+     * @param micros      The time from when the request should have been sent until the answer.
+     * @param rateLimited Whether the server refused the request because the user sent too many.
+     */
+    public void error(long micros, boolean rateLimited) {
+        (rateLimited ? this.rateLimited : errors).increment();
+        latency.record(micros);
+    }
+
+    /**
+     * Counts a request that was not answered in time.
+     */
+    public void timeout() {
+        timeouts.increment();
+    }
+
+    /**
+     * Counts a request that could not be sent, or whose connection was lost before it was answered.
+     */
+    public void lost() {
+        lost.increment();
+    }
+
+    /**
+     * Counts an action that was due but not started, as no user was free to start it, e.g. a game.
+     */
+    public void skipped() {
+        skipped.increment();
+    }
+
+    /**
+     * @return The counts and latency percentiles in microseconds, for the report.
+     */
+    public LoadReport.Command report() {
+        return new LoadReport.Command(ok.sum(), errors.sum(), rateLimited.sum(), timeouts.sum(), lost.sum(), skipped.sum(),
+                new LoadReport.Latency(latency.min(), latency.mean(), latency.percentile(50), latency.percentile(90),
+                        latency.percentile(99), latency.percentile(99.9), latency.percentile(99.99), latency.max()));
+    }
+}
@@ -0,0 +1,39 @@
+package loadgen;
+
+import Utilities.Utils;
+
+/**
+ * Settings of a load run, read once from system properties
+ * (e.g. java -Dloadgen.users=2000 -Dloadgen.rate=400 loadgen.LoadGenerator).
+ */
+public final class LoadConfig {
+    /** The host of the server under load. */
+    public static final String HOST = System.getProperty("loadgen.host", "127.0.0.1");
+    /** The port of the server under load. */
+    public static final int PORT = Integer.getInteger("loadgen.port", Utils.SERVER_PORT);
+    /** Whether the server runs in this JVM instead of on its own; it then shares the CPU with the load. */
+    public static final boolean EMBEDDED_SERVER = Boolean.getBoolean("loadgen.embedded");
+    /** Number of virtual users that log in. */
+    public static final int USERS = Integer.getInteger("loadgen.users", 500);
+    /** Logins started per second, whether or not the earlier ones were answered. */
+    public static final double LOGIN_RATE = Double.parseDouble(System.getProperty("loadgen.loginRate", "100"));
+    /** Actions started per second by all users together, whether or not the earlier ones were answered. */
+    public static final double RATE = Double.parseDouble(System.getProperty("loadgen.rate", "200"));
+    /** How many seconds actions are started after all users logged in. */
+    public static final int DURATION_SECONDS = Integer.getInteger("loadgen.durationSeconds", 60);
+    /** The relative weights of the actions, see Action. */
+    public static final String MIX = System.getProperty("loadgen.mix", "broadcast:10,dm:40,list:10,rps:10,ttt:20,file:10");
+    /** How many milliseconds a request may wait for its answer before it counts as timed out. */
+    public static final long TIMEOUT_MILLIS = Long.getLong("loadgen.timeoutMs", 5000);
+    /** Whether the users compress their connections. */
+    public static final boolean COMPRESS = Boolean.getBoolean("loadgen.compress");
+    /** Whether the users use the binary framing. */
+    public static final boolean BINARY_FRAMING = Boolean.getBoolean("loadgen.binary");
+    /** The file the JSON report is written to. */
+    public static final String REPORT_FILE = System.getProperty("loadgen.report", "loadgen-report.json");
+    /** The seed of the random arrivals and the actions and users chosen for them, so that a run can be repeated. */
+    public static final long SEED = Long.getLong("loadgen.seed", System.nanoTime());
+
+    private LoadConfig() {
+    }
+}
@@ -0,0 +1,263 @@
+package loadgen;
+
+import Utilities.Commands;
+import Utilities.messages.EnterResp;
+import client.api.ChatClient;
+import client.api.ClientRuntime;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import server.Server;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives many virtual users against a server to reproduce production load, and writes what happened
+ * as a JSON report (see LoadReport) and as a summary on stdout.
+ *
+ * The users log in at a fixed rate and then actions arrive at random, in a Poisson process with the
+ * configured mean rate, each picked from the mix and given to a random user (see Action). Arrivals are
+ * open-loop: an action starts when it is due, whether or not the earlier ones were answered, and its
+ * latency is measured from when it was due. A server that falls behind therefore shows up as latency,
+ * as it would for real users, instead of slowing down the load that measures it.
+ *
+ * The defaults stay below the rate limits of the server for a single user (see ServerConfig); a higher
+ * rate per user shows up as rateLimited in the report. All settings are system properties, see LoadConfig.
+ *
+ * Run with: java loadgen.LoadGenerator, against a server on 127.0.0.1 started with java server.Server
+ */
+public class LoadGenerator {
+    // Logins waiting for their connection to be accepted, below the accept backlog of the server (50)
+    private static final int MAX_CONNECTING = 32;
+    private static final int CLAIM_ATTEMPTS = 8;
+
+    private final Random random = new Random(LoadConfig.SEED);
+    private final LoadRecorder recorder = new LoadRecorder(LoadConfig.TIMEOUT_MILLIS);
+    private final List<VirtualUser> users = new ArrayList<>();
+    private final Action[] actions;
+    private final int[] cumulativeWeights;
+
+    private LoadGenerator(Map<Action, Integer> mix) {
+        actions = mix.keySet().toArray(new Action[0]);
+        cumulativeWeights = new int[actions.length];
+        int total = 0;
+        for (int i = 0; i < actions.length; i++) {
+            total += mix.get(actions[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<Action, Integer> mix = Action.parseMix(LoadConfig.MIX);
+        if (LoadConfig.EMBEDDED_SERVER) {
+            Thread serverThread = new Thread(() -> new Server().start(), "loadgen-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            Thread.sleep(1000);
+        }
+
+        LoadGenerator generator = new LoadGenerator(mix);
+        ClientRuntime runtime = new ClientRuntime();
+        ChatClient.Options options = new ChatClient.Options(LoadConfig.COMPRESS, LoadConfig.BINARY_FRAMING, true, true, true);
+
+        double loginSeconds = generator.login(options, runtime);
+        System.out.printf("%d of %d users logged in in %.1f s%n", generator.users.size(), LoadConfig.USERS, loginSeconds);
+        LoadReport.Load load = generator.run();
+        // Every request still in flight is answered or timed out by now
+        Thread.sleep(LoadConfig.TIMEOUT_MILLIS + 1000);
+
+        int lost = 0;
+        for (VirtualUser user : generator.users) {
+            if (user.connectionLost()) {
+                lost++;
+            }
+        }
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        mix.forEach((action, weight) -> weights.put(action.name().toLowerCase(Locale.ROOT), weight));
+        LoadReport report = new LoadReport(LoadConfig.HOST + ":" + LoadConfig.PORT,
+                new LoadReport.Config(LoadConfig.USERS, LoadConfig.LOGIN_RATE, LoadConfig.RATE, LoadConfig.DURATION_SECONDS, weights,
+                        LoadConfig.TIMEOUT_MILLIS, LoadConfig.COMPRESS, LoadConfig.BINARY_FRAMING, LoadConfig.EMBEDDED_SERVER, LoadConfig.SEED),
+                new LoadReport.Users(LoadConfig.USERS, generator.users.size(), lost, loginSeconds),
+                load, generator.recorder.report());
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(LoadConfig.REPORT_FILE), report);
+        printSummary(report);
+
+        for (VirtualUser user : generator.users) {
+            user.close();
+        }
+        runtime.close();
+        System.exit(0);
+    }
+
+    /**
+     * Logs in every user at the login rate, with at most MAX_CONNECTING connections being set up at a time.
+     *
+     * @return The seconds until every login was answered or failed.
+     */
+    private double login(ChatClient.Options options, ClientRuntime runtime) throws InterruptedException {
+        List<VirtualUser> candidates = new ArrayList<>(LoadConfig.USERS);
+        List<CompletableFuture<EnterResp>> logins = new ArrayList<>(LoadConfig.USERS);
+        Semaphore connecting = new Semaphore(MAX_CONNECTING);
+        long start = System.nanoTime();
+        for (int i = 0; i < LoadConfig.USERS; i++) {
+            long due = start + (long) (i * 1e9 / LoadConfig.LOGIN_RATE);
+            parkUntil(due);
+            connecting.acquire();
+            VirtualUser user = VirtualUser.create("load" + i, LoadConfig.HOST, LoadConfig.PORT, options, runtime, recorder);
+            candidates.add(user);
+            logins.add(user.login(due).whenComplete((response, error) -> connecting.release()));
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            VirtualUser user = candidates.get(i);
+            try {
+                if (logins.get(i).join().status().equals("OK")) {
+                    users.add(user);
+                    continue;
+                }
+            } catch (RuntimeException e) {
+                // Recorded as ENTER
+            }
+            user.close();
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * Starts actions at random times for the configured duration.
+     *
+     * @return The planned and achieved rate.
+     */
+    private LoadReport.Load run() {
+        if (users.isEmpty()) {
+            return new LoadReport.Load(0, 0, LoadConfig.RATE, 0, 0);
+        }
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(LoadConfig.DURATION_SECONDS);
+        long due = start;
+        long started = 0;
+        long maxLag = 0;
+        while (true) {
+            // Exponential gaps between arrivals make a Poisson process
+            due += (long) (-Math.log(1 - random.nextDouble()) / LoadConfig.RATE * 1e9);
+            if (due >= end) {
+                break;
+            }
+            parkUntil(due);
+            maxLag = Math.max(maxLag, System.nanoTime() - due);
+            start(nextAction(), due);
+            started++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return new LoadReport.Load(seconds, started, LoadConfig.RATE, started / seconds, TimeUnit.NANOSECONDS.toMicros(maxLag));
+    }
+
+    private void start(Action action, long due) {
+        VirtualUser user = users.get(random.nextInt(users.size()));
+        switch (action) {
+            case BROADCAST -> user.broadcast(due);
+            case LIST -> user.list(due);
+            case DM -> {
+                VirtualUser receiver = other(user);
+                if (receiver == null) {
+                    recorder.stats(Commands.PRIVATE_MSG_REQ).skipped();
+                } else {
+                    user.privateMessage(receiver, due);
+                }
+            }
+            case FILE -> {
+                VirtualUser receiver = other(user);
+                if (receiver == null) {
+                    recorder.stats(Commands.FILE_TRANSFER_REQ).skipped();
+                } else {
+                    user.offerFile(receiver, due);
+                }
+            }
+            case TTT -> {
+                VirtualUser player = claim(null);
+                if (player == null) {
+                    recorder.stats(Commands.TTT_START_REQ).skipped();
+                } else {
+                    player.startTtt(due);
+                }
+            }
+            case RPS -> {
+                VirtualUser player = claim(null);
+                VirtualUser opponent = player == null ? null : claim(player);
+                if (opponent == null) {
+                    if (player != null) {
+                        player.release();
+                    }
+                    recorder.stats(Commands.RPS_START_REQ).skipped();
+                } else {
+                    player.startRps(opponent, due);
+                }
+            }
+        }
+    }
+
+    private Action nextAction() {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < actions.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return actions[i];
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @return A random user other than the given one that is still connected, or null if none was found.
+     */
+    private VirtualUser other(VirtualUser user) {
+        for (int i = 0; i < CLAIM_ATTEMPTS; i++) {
+            VirtualUser other = users.get(random.nextInt(users.size()));
+            if (other != user && !other.connectionLost()) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Claims a random free user for a game.
+     *
+     * @param except A user that may not be claimed, or null.
+     * @return The claimed user, or null if no free user was found in a few attempts.
+     */
+    private VirtualUser claim(VirtualUser except) {
+        for (int i = 0; i < CLAIM_ATTEMPTS; i++) {
+            VirtualUser user = users.get(random.nextInt(users.size()));
+            if (user != except && user.claim()) {
+                return user;
+            }
+        }
+        return null;
+    }
+
+    private static void parkUntil(long due) {
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private static void printSummary(LoadReport report) {
+        LoadReport.Load load = report.load();
+        System.out.printf("%d actions in %.1f s: %.1f/s of %.1f/s planned, at most %d us late%n",
+                load.started(), load.seconds(), load.achievedRate(), load.targetRate(), load.maxScheduleLagMicros());
+        System.out.printf("%-24s %8s %7s %7s %8s %6s %7s %10s %10s %10s %10s%n",
+                "command", "ok", "errors", "limited", "timeouts", "lost", "skipped", "p50 us", "p99 us", "p99.9 us", "max us");
+        report.commands().forEach((name, command) -> System.out.printf("%-24s %8d %7d %7d %8d %6d %7d %10d %10d %10d %10d%n",
+                name, command.ok(), command.errors(), command.rateLimited(), command.timeouts(), command.lost(), command.skipped(),
+                command.latencyMicros().p50(), command.latencyMicros().p99(), command.latencyMicros().p999(), command.latencyMicros().max()));
+        System.out.printf("%d users lost their connection; report written to %s%n", report.users().connectionsLost(), LoadConfig.REPORT_FILE);
+    }
+}
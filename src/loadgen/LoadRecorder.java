@@ -0,0 +1,88 @@
+package loadgen;
+
+import Utilities.messages.Response;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Collects the CommandStats of a run by name. The names of requests are their commands, e.g. LIST_REQ;
+ * the names of steps that span several frames end with what they measure, e.g. TTT_GAME.
+ */
+public class LoadRecorder {
+    /** The code of an answer to a request that the server refused because of its rate limit. */
+    public static final int RATE_LIMITED = 21000;
+
+    private final Map<String, CommandStats> stats = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+
+    /**
+     * @param timeoutMillis How long a request may wait for its answer before it counts as timed out.
+     */
+    public LoadRecorder(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @param name The name of a command or step.
+     * @return Its statistics, created on first use.
+     */
+    public CommandStats stats(String name) {
+        return stats.computeIfAbsent(name, key -> new CommandStats());
+    }
+
+    /**
+     * Records the outcome of a request once it is answered, fails, or times out.
+     *
+     * @param name     The name to record the request under.
+     * @param intended The System.nanoTime() at which the request should have been sent.
+     * @param answer   The answer of the request.
+     * @return The answer, which completes with a TimeoutException if it is not answered in time.
+     */
+    public <T extends Response> CompletableFuture<T> track(String name, long intended, CompletableFuture<T> answer) {
+        CommandStats command = stats(name);
+        return answer.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((response, error) -> {
+            if (error == null) {
+                long micros = microsSince(intended);
+                if (response.status().equals("OK")) {
+                    command.ok(micros);
+                } else {
+                    command.error(micros, response.code() == RATE_LIMITED);
+                }
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof TimeoutException) {
+                command.timeout();
+            } else if (cause instanceof IOException && !(cause instanceof ProtocolException)) {
+                command.lost();
+            } else {
+                command.error(microsSince(intended), false);
+            }
+        });
+    }
+
+    /**
+     * @return The statistics of every command and step, sorted by name.
+     */
+    public Map<String, LoadReport.Command> report() {
+        Map<String, LoadReport.Command> report = new TreeMap<>();
+        stats.forEach((name, command) -> report.put(name, command.report()));
+        return report;
+    }
+
+    /**
+     * @param start A System.nanoTime().
+     * @return The microseconds since then.
+     */
+    public static long microsSince(long start) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,33 @@
+package loadgen;
+
+import java.util.Map;
+
+/**
+ * The machine-readable result of a load run, written as JSON. Latencies are in microseconds and
+ * measured from when a request should have been sent by the arrival schedule, so a stalled server or
+ * load generator shows up in the latencies instead of lowering the rate (coordinated omission).
+ *
+ * @param server   The host and port under load.
+ * @param config   The settings of the run.
+ * @param users    What happened to the virtual users.
+ * @param load     The planned and achieved arrival rate of actions.
+ * @param commands The outcomes per command, e.g. ENTER and BROADCAST_REQ, and per measured step,
+ *                 e.g. PRIVATE_MSG_DELIVERY and TTT_GAME.
+ */
+public record LoadReport(String server, Config config, Users users, Load load, Map<String, Command> commands) {
+    public record Config(int users, double loginRate, double rate, int durationSeconds, Map<String, Integer> mix,
+                         long timeoutMillis, boolean compress, boolean binaryFraming, boolean embeddedServer, long seed) {
+    }
+
+    public record Users(int requested, int loggedIn, int connectionsLost, double loginSeconds) {
+    }
+
+    public record Load(double seconds, long started, double targetRate, double achievedRate, long maxScheduleLagMicros) {
+    }
+
+    public record Command(long ok, long errors, long rateLimited, long timeouts, long lost, long skipped, Latency latencyMicros) {
+    }
+
+    public record Latency(long min, double mean, long p50, long p90, long p99, long p999, long p9999, long max) {
+    }
+}
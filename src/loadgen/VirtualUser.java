@@ -0,0 +1,339 @@
+package loadgen;
+
+import Utilities.Commands;
+import Utilities.messages.EnterResp;
+import Utilities.messages.fileTransfer.FileTransferReq;
+import Utilities.messages.fileTransfer.FileTransferResp;
+import Utilities.messages.privateMessage.PrivateMsg;
+import Utilities.messages.rockPaperScissor.RpsInviteResp;
+import Utilities.messages.rockPaperScissor.RpsMove;
+import Utilities.messages.rockPaperScissor.RpsMoveResp;
+import Utilities.messages.rockPaperScissor.RpsStartReq;
+import Utilities.messages.rockPaperScissor.RpsStartResp;
+import Utilities.messages.ticTacToe.TttBoardDelta;
+import Utilities.messages.ticTacToe.TttMove;
+import Utilities.messages.ticTacToe.TttMoveResp;
+import Utilities.messages.ticTacToe.TttStartReq;
+import Utilities.messages.ticTacToe.TttStartResp;
+import client.api.ChatClient;
+import client.api.ChatEvent;
+import client.api.ChatListener;
+import client.api.ClientRuntime;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import server.games.TttBot;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One simulated user: a ChatClient that starts the actions the load generator gives it and answers
+ * what other users start, e.g. it accepts every RPS invite and declines every file offer.
+ *
+ * A user plays one game at a time. The load generator claims a user before it starts a game with it
+ * and the user frees itself when the game ends, so games never conflict on the server.
+ */
+public class VirtualUser implements ChatListener {
+    // Private messages from the load generator carry the System.nanoTime() they were due at
+    private static final String TIMESTAMP_PREFIX = "loadgen ";
+    private static final String[] RPS_CHOICES = {"/r", "/p", "/s"};
+    private static final int[][] TTT_LINES = {
+            {0, 1, 2}, {3, 4, 5}, {6, 7, 8}, {0, 3, 6}, {1, 4, 7}, {2, 5, 8}, {0, 4, 8}, {2, 4, 6}};
+
+    private final String username;
+    // Set by create(), before the client can call this listener
+    private ChatClient client;
+    private final ClientRuntime runtime;
+    private final LoadRecorder recorder;
+    private final AtomicBoolean inGame = new AtomicBoolean();
+    private final Queue<Long> offers = new ConcurrentLinkedQueue<>();
+    private volatile long gameStarted;
+    private volatile boolean connectionLost;
+
+    // The Tic-Tac-Toe board against the bot, guarded by this
+    private final char[] board = new char[9];
+    private long moveSent;
+
+    private VirtualUser(String username, ClientRuntime runtime, LoadRecorder recorder) {
+        this.username = username;
+        this.runtime = runtime;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Creates a user with its client, which is not connected yet.
+     *
+     * @param username The username to log in with.
+     * @param host     The host of the server.
+     * @param port     The port of the server.
+     * @param options  The options of the connection.
+     * @param runtime  The threads shared by all users.
+     * @param recorder Where the outcomes are recorded.
+     * @return The user.
+     */
+    public static VirtualUser create(String username, String host, int port, ChatClient.Options options, ClientRuntime runtime, LoadRecorder recorder) {
+        VirtualUser user = new VirtualUser(username, runtime, recorder);
+        user.client = new ChatClient(host, port, options, runtime, user);
+        return user;
+    }
+
+    /**
+     * Connects and logs in, recorded as ENTER.
+     *
+     * @param intended When the login was due.
+     * @return The answer to the login.
+     */
+    public CompletableFuture<EnterResp> login(long intended) {
+        return recorder.track(Commands.ENTER, intended, client.connectAsync().thenCompose(ready -> client.login(username)));
+    }
+
+    /**
+     * Broadcasts a message to every user.
+     *
+     * @param intended When the broadcast was due.
+     */
+    public void broadcast(long intended) {
+        recorder.track(Commands.BROADCAST_REQ, intended, client.broadcast("load from " + username));
+    }
+
+    /**
+     * Sends a private message that the receiver times until it is delivered, as PRIVATE_MSG_DELIVERY.
+     *
+     * @param receiver The user to send it to.
+     * @param intended When the message was due.
+     */
+    public void privateMessage(VirtualUser receiver, long intended) {
+        recorder.track(Commands.PRIVATE_MSG_REQ, intended, client.privateMessage(receiver.username, TIMESTAMP_PREFIX + intended));
+    }
+
+    /**
+     * Requests the list of all users.
+     *
+     * @param intended When the request was due.
+     */
+    public void list(long intended) {
+        recorder.track(Commands.LIST_REQ, intended, client.list(null));
+    }
+
+    /**
+     * Offers a file that the receiver declines; the time until the decline arrives is recorded as
+     * FILE_TRANSFER_DECLINED.
+     *
+     * @param receiver The user to offer the file to.
+     * @param intended When the offer was due.
+     */
+    public void offerFile(VirtualUser receiver, long intended) {
+        offers.add(intended);
+        FileTransferReq offer = new FileTransferReq(username, receiver.username, "load.bin", "0");
+        recorder.track(Commands.FILE_TRANSFER_REQ, intended, client.request(Commands.FILE_TRANSFER_REQ, offer, FileTransferResp.class))
+                .whenComplete((response, error) -> {
+                    if (error != null || !response.status().equals("OK")) {
+                        offers.remove(intended);
+                    }
+                });
+    }
+
+    /**
+     * Starts an RPS game, recorded as RPS_GAME until its result. Both users must be claimed.
+     *
+     * @param opponent The user to invite.
+     * @param intended When the game was due.
+     */
+    public void startRps(VirtualUser opponent, long intended) {
+        gameStarted = intended;
+        RpsStartReq request = new RpsStartReq(opponent.username);
+        recorder.track(Commands.RPS_START_REQ, intended, client.request(Commands.RPS_START_REQ, request, RpsStartResp.class))
+                .whenComplete((response, error) -> {
+                    if (error != null || !response.status().equals("OK")) {
+                        gameStarted = 0;
+                        release();
+                        opponent.release();
+                    }
+                });
+    }
+
+    /**
+     * Starts a Tic-Tac-Toe game against the bot, recorded as TTT_GAME until its result. The user must be claimed.
+     *
+     * @param intended When the game was due.
+     */
+    public void startTtt(long intended) {
+        gameStarted = intended;
+        TttStartReq request = new TttStartReq(TttBot.USERNAME);
+        recorder.track(Commands.TTT_START_REQ, intended, client.request(Commands.TTT_START_REQ, request, TttStartResp.class))
+                .whenComplete((response, error) -> {
+                    if (error != null || !response.status().equals("OK")) {
+                        gameStarted = 0;
+                        release();
+                    }
+                });
+    }
+
+    /**
+     * @return True if the user was free and is now claimed for a game.
+     */
+    public boolean claim() {
+        return !connectionLost && inGame.compareAndSet(false, true);
+    }
+
+    /**
+     * Frees the user for the next game.
+     */
+    public void release() {
+        inGame.set(false);
+    }
+
+    /**
+     * @return True if the connection of the user was lost, rather than closed at the end of the run.
+     */
+    public boolean connectionLost() {
+        return connectionLost;
+    }
+
+    /**
+     * Closes the connection after the queued frames are written.
+     */
+    public void close() {
+        client.close();
+    }
+
+    @Override
+    public void onEvent(ChatClient client, ChatEvent event) {
+        try {
+            switch (event.command()) {
+                case Commands.PRIVATE_MSG -> delivered((PrivateMsg) event.payload());
+                case Commands.RPS_INVITE -> client.send(Commands.RPS_INVITE_RESP, new RpsInviteResp("ACCEPT"));
+                case Commands.RPS_READY -> playRps();
+                case Commands.RPS_RESULT -> gameEnded("RPS_GAME");
+                case Commands.RPS_INVITE_DECLINED, Commands.TTT_INVITE_DECLINED -> gameEnded(null);
+                case Commands.TTT_READY -> startBoard();
+                case Commands.TTT_BOARD_DELTA -> boardChanged((TttBoardDelta) event.payload());
+                case Commands.TTT_MOVE_RESP -> moveAnswered((TttMoveResp) event.payload());
+                case Commands.TTT_RESULT -> gameEnded("TTT_GAME");
+                case Commands.FILE_TRANSFER_REQ -> client.send(Commands.FILE_TRANSFER_RESP, new FileTransferResp("DECLINE", 0));
+                case Commands.FILE_TRANSFER_RESP -> {
+                    Long offered = offers.poll();
+                    if (offered != null) {
+                        recorder.stats("FILE_TRANSFER_DECLINED").ok(LoadRecorder.microsSince(offered));
+                    }
+                }
+                default -> {
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void onClosed(ChatClient client, IOException cause) {
+        if (cause != null) {
+            connectionLost = true;
+        }
+    }
+
+    private void delivered(PrivateMsg message) {
+        if (message.message().startsWith(TIMESTAMP_PREFIX)) {
+            long sent = Long.parseLong(message.message().substring(TIMESTAMP_PREFIX.length()));
+            recorder.stats("PRIVATE_MSG_DELIVERY").ok(LoadRecorder.microsSince(sent));
+        }
+    }
+
+    private void gameEnded(String step) {
+        long started = gameStarted;
+        gameStarted = 0;
+        if (step != null && started != 0) {
+            recorder.stats(step).ok(LoadRecorder.microsSince(started));
+        }
+        release();
+    }
+
+    /**
+     * Plays a random choice; a choice refused by the rate limit is played again a second later, as
+     * the game only ends once both players chose.
+     */
+    private void playRps() {
+        RpsMove move = new RpsMove(RPS_CHOICES[ThreadLocalRandom.current().nextInt(RPS_CHOICES.length)]);
+        recorder.track(Commands.RPS_MOVE_REQ, System.nanoTime(), client.request(Commands.RPS_MOVE_REQ, move, RpsMoveResp.class))
+                .thenAccept(response -> {
+                    if (response.code() == LoadRecorder.RATE_LIMITED) {
+                        runtime.timers().schedule(this::playRps, 1, TimeUnit.SECONDS);
+                    }
+                });
+    }
+
+    private synchronized void startBoard() {
+        Arrays.fill(board, ' ');
+        playTtt();
+    }
+
+    /**
+     * Plays a random free cell, unless the game is over; the result of the game follows its last
+     * delta, so a move after it would be refused. The move is timed until its delta arrives, as
+     * TTT_MOVE_REQ, since a move that ends the game has no TTT_MOVE_RESP.
+     */
+    private synchronized void playTtt() {
+        int free = 0;
+        for (char cell : board) {
+            if (cell == ' ') {
+                free++;
+            }
+        }
+        if (free == 0 || won('X') || won('O')) {
+            return;
+        }
+        int pick = ThreadLocalRandom.current().nextInt(free);
+        for (int cell = 0; cell < board.length; cell++) {
+            if (board[cell] == ' ' && pick-- == 0) {
+                moveSent = System.nanoTime();
+                try {
+                    if (!client.send(Commands.TTT_MOVE_REQ, new TttMove(cell / 3, cell % 3))) {
+                        recorder.stats(Commands.TTT_MOVE_REQ).lost();
+                    }
+                } catch (JsonProcessingException e) {
+                    throw new IllegalStateException(e);
+                }
+                return;
+            }
+        }
+    }
+
+    private synchronized void boardChanged(TttBoardDelta delta) {
+        board[delta.row() * 3 + delta.col()] = delta.symbol().charAt(0);
+        if (delta.symbol().equals("X")) {
+            recorder.stats(Commands.TTT_MOVE_REQ).ok(LoadRecorder.microsSince(moveSent));
+        } else {
+            playTtt();
+        }
+    }
+
+    /**
+     * Counts a refused move; a move refused by the rate limit is tried again a second later.
+     */
+    private void moveAnswered(TttMoveResp response) {
+        if (!response.status().equals("ERROR")) {
+            return;
+        }
+        boolean rateLimited = response.code() == LoadRecorder.RATE_LIMITED;
+        synchronized (this) {
+            recorder.stats(Commands.TTT_MOVE_REQ).error(LoadRecorder.microsSince(moveSent), rateLimited);
+        }
+        if (rateLimited) {
+            runtime.timers().schedule(this::playTtt, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    private boolean won(char symbol) {
+        for (int[] line : TTT_LINES) {
+            if (board[line[0]] == symbol && board[line[1]] == symbol && board[line[2]] == symbol) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,18 +1,40 @@
 package server;
 
 
+import server.chat.KnownUsers;
+import server.chat.OfflineInbox;
+import server.chat.PresenceService;
+import server.chat.RoomManager;
+import server.chat.UserDirectory;
+import server.filter.ContentFilter;
+import server.limits.RateLimiter;
+import server.games.GameType;
+import server.games.Leaderboard;
+import server.games.SuspendedTttGames;
+import server.games.TttBot;
+import server.games.TttMatch;
+import server.handlers.BufferPool;
 import server.handlers.ClientHandler;
 import server.handlers.FileTransferHandler;
+import server.journal.MessageJournal;
 import server.models.FileTransferDetails;
+import server.search.SearchIndex;
 import server.models.TransferContext;
+import Utilities.MessageCodec;
 import Utilities.Utils;
 
 import java.io.IOException;
 
+import java.nio.file.Path;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 
 public class Server {
@@ -21,15 +43,49 @@ public class Server {
     private final Map<String, String> playerMoves = new ConcurrentHashMap<>();
     private final List<FileTransferDetails> pendingTransfers = new ArrayList<>();
     private static Map<String, TransferContext> ongoingTransfers = new ConcurrentHashMap<>();
-    private final Map<String, Map<String, String>> tttGames = new ConcurrentHashMap<>();
-    private final Map<String, String> tttCurrentPlayer = new ConcurrentHashMap<>();
+    private final Map<String, TttMatch> tttGames = new ConcurrentHashMap<>();
+    private final Map<String, TttMatch> tttInvites = new ConcurrentHashMap<>();
+    private final Leaderboard leaderboard = new Leaderboard(Path.of("data"));
+    private final TttBot tttBot = new TttBot();
+    private final SuspendedTttGames suspendedTttGames = new SuspendedTttGames();
+    private final RoomManager rooms = new RoomManager();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "server-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Runs the work of timers that writes to clients, so a client that stops reading never blocks the scheduler
+    private final ExecutorService workers = Executors.newCachedThreadPool(
+            Thread.ofPlatform().name("server-worker-", 0).daemon().factory());
+    private final PresenceService presence = new PresenceService(ServerConfig.PRESENCE_WINDOW_MILLIS);
+    private final UserDirectory directory = new UserDirectory();
+    private final RateLimiter rateLimiter = new RateLimiter();
+    private final BufferPool bufferPool = new BufferPool(ServerConfig.BUFFER_POOL_SIZE);
+    private final Semaphore compressionSlots = new Semaphore(ServerConfig.COMPRESSION_MAX_CONNECTIONS);
+    private final ContentFilter contentFilter = new ContentFilter(Path.of(ServerConfig.FILTER_FILE));
+    private final MessageJournal journal = new MessageJournal(Path.of("data", "journal"),
+            ServerConfig.JOURNAL_SEGMENT_BYTES, ServerConfig.JOURNAL_FSYNC_MILLIS,
+            TimeUnit.HOURS.toMillis(ServerConfig.JOURNAL_RETENTION_HOURS), ServerConfig.JOURNAL_RETENTION_BYTES);
+    private final SearchIndex searchIndex = new SearchIndex(journal);
+    private final OfflineInbox offlineInbox = new OfflineInbox(Path.of("data", "inbox"), ServerConfig.INBOX_MAX_MESSAGES,
+            ServerConfig.INBOX_MAX_BYTES, TimeUnit.HOURS.toMillis(ServerConfig.INBOX_TTL_HOURS));
+    private final KnownUsers knownUsers = new KnownUsers(Path.of("data", "users.txt"));
 
     public static void main(String[] args) {
         new Server().start();
     }
 
     public void start() {
+        leaderboard.start(scheduler);
+        suspendedTttGames.start(scheduler, this::forfeitTttMatch);
+        offlineInbox.start(scheduler);
+        knownUsers.start();
+        presence.start(scheduler, workers);
+        contentFilter.start(scheduler, workers, ServerConfig.FILTER_RELOAD_MILLIS);
+        scheduler.scheduleWithFixedDelay(this::closeStalledConnections, 1, 1, TimeUnit.SECONDS);
         try {
+            journal.start();
+            searchIndex.start();
             ServerSocket serverSocket = new ServerSocket(Utils.SERVER_PORT);
             System.out.println("Server is running on port " + Utils.SERVER_PORT);
 
@@ -48,6 +104,10 @@ public class Server {
             });
             fileAcceptor.start();
 
+            // Clients connecting meanwhile wait in the accept backlog
+            long warmUpNanos = MessageCodec.warmUp();
+            System.out.println("Message codec warmed up in " + warmUpNanos / 1_000_000 + " ms");
+
             while (true) {
                 Socket clientSocket = serverSocket.accept();
                 ClientHandler clientHandler = new ClientHandler(clientSocket, clients, playerToPlayer, playerMoves, pendingTransfers, this);
@@ -58,14 +118,131 @@ public class Server {
         }
     }
 
+    /**
+     * Closes the connection of every client that has not taken a frame for longer than the write timeout,
+     * so a client that stopped reading blocks the threads that write to it for a bounded time only.
+     */
+    private void closeStalledConnections() {
+        long now = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(ServerConfig.WRITE_TIMEOUT_MILLIS);
+        for (ClientHandler client : clients.values()) {
+            client.closeIfStalled(now, timeoutNanos);
+        }
+    }
+
+    /**
+     * Ends a suspended Tic-Tac-Toe match whose player did not log in again within the grace period.
+     * The player loses and the opponent is told, on the workers since that writes to the opponent.
+     *
+     * @param username The player that did not come back.
+     * @param match    The expired match.
+     */
+    private void forfeitTttMatch(String username, TttMatch match) {
+        String opponent = match.getOpponent(username);
+        if (opponent.equals(TttBot.USERNAME)) {
+            return;
+        }
+        workers.execute(() -> {
+            leaderboard.recordResult(GameType.TTT, match.getPlayerX(), match.getPlayerO(), opponent);
+            ClientHandler opponentHandler = clients.get(opponent);
+            if (opponentHandler != null) {
+                opponentHandler.sendTttForfeit(match);
+            }
+        });
+    }
+
     public Map<String, TransferContext> getOngoingTransfers() {
         return ongoingTransfers;
     }
-    public Map<String, Map<String, String>> getTttGames() {
+
+    /**
+     * @return The ongoing Tic-Tac-Toe matches, keyed by the username of each of the two players.
+     */
+    public Map<String, TttMatch> getTttGames() {
         return tttGames;
     }
 
-    public Map<String, String> getTttCurrentPlayer() {
-        return tttCurrentPlayer;
+    /**
+     * @return The matches of Tic-Tac-Toe invitations that were not answered yet, keyed by the inviting player.
+     */
+    public Map<String, TttMatch> getTttInvites() {
+        return tttInvites;
+    }
+
+    public RoomManager getRooms() {
+        return rooms;
+    }
+
+    public SuspendedTttGames getSuspendedTttGames() {
+        return suspendedTttGames;
+    }
+
+    public TttBot getTttBot() {
+        return tttBot;
+    }
+
+    /**
+     * @return A scheduler for short tasks that have to run later, such as expiring sessions and snapshots.
+     * Its only thread must never wait on a client, so tasks that write to clients run on the workers.
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return Threads for the work of timers that may block, such as writing a PING to a client.
+     */
+    public ExecutorService getWorkers() {
+        return workers;
+    }
+
+    public PresenceService getPresence() {
+        return presence;
+    }
+
+    public UserDirectory getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return The socket buffers shared by all connections.
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * @return One permit per connection that may still be compressed, as each holds its own zlib state.
+     */
+    public Semaphore getCompressionSlots() {
+        return compressionSlots;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public ContentFilter getContentFilter() {
+        return contentFilter;
+    }
+
+    public MessageJournal getJournal() {
+        return journal;
+    }
+
+    public OfflineInbox getOfflineInbox() {
+        return offlineInbox;
+    }
+
+    public KnownUsers getKnownUsers() {
+        return knownUsers;
+    }
+
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
     }
 }
\ No newline at end of file
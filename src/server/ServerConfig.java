@@ -0,0 +1,74 @@
+package server;
+
+/**
+ * Server settings that operators can change without recompiling, read once from system properties
+ * (e.g. java -Dchat.history.bytes=1048576 server.Server).
+ */
+public final class ServerConfig {
+    /** Maximum size in bytes of the recent message history kept per room. */
+    public static final int HISTORY_MAX_BYTES = Integer.getInteger("chat.history.bytes", 256 * 1024);
+    /** Whether a client receives the recent lobby history right after logging in. */
+    public static final boolean HISTORY_REPLAY_ON_LOGIN = Boolean.getBoolean("chat.history.replayOnLogin");
+    /** Number of messages replayed after logging in, if enabled. */
+    public static final int HISTORY_REPLAY_LIMIT = Integer.getInteger("chat.history.replayLimit", 50);
+    /** Size in bytes of a message journal segment file. */
+    public static final int JOURNAL_SEGMENT_BYTES = Integer.getInteger("chat.journal.segmentBytes", 64 * 1024 * 1024);
+    /** How often in milliseconds journaled messages are forced to disk. */
+    public static final long JOURNAL_FSYNC_MILLIS = Long.getLong("chat.journal.fsyncMillis", 100);
+    /** How many hours journaled messages are kept, 0 to keep them regardless of their age. Whole segments are dropped. */
+    public static final long JOURNAL_RETENTION_HOURS = Long.getLong("chat.journal.retentionHours", 30 * 24);
+    /** The size in bytes the journal segments are kept under, 0 for no limit. Whole segments are dropped. */
+    public static final long JOURNAL_RETENTION_BYTES = Long.getLong("chat.journal.retentionBytes", 0);
+    /** Maximum number of private messages kept for an offline user. */
+    public static final int INBOX_MAX_MESSAGES = Integer.getInteger("chat.inbox.maxMessages", 100);
+    /** Maximum size in bytes of the stored private messages of an offline user. */
+    public static final long INBOX_MAX_BYTES = Long.getLong("chat.inbox.maxBytes", 64 * 1024);
+    /** How many hours a private message for an offline user is kept. */
+    public static final long INBOX_TTL_HOURS = Long.getLong("chat.inbox.ttlHours", 7 * 24);
+    /** Maximum number of unacknowledged private messages for a client that acknowledges messages. */
+    public static final int DELIVERY_WINDOW = Integer.getInteger("chat.delivery.window", 256);
+    /** How many seconds a resumable session is kept after its connection is lost. */
+    public static final int SESSION_RESUME_SECONDS = Integer.getInteger("chat.session.resumeSeconds", 30);
+    /** Maximum number of characters queued for a session while its connection is lost. */
+    public static final int SESSION_QUEUE_CHARS = Integer.getInteger("chat.session.queueChars", 256 * 1024);
+    /** How many milliseconds logins and logouts are collected into one PRESENCE_DELTA. */
+    public static final long PRESENCE_WINDOW_MILLIS = Long.getLong("chat.presence.windowMillis", 250);
+    /** Maximum number of users notified of a mention in one broadcast. */
+    public static final int MAX_MENTIONS = Integer.getInteger("chat.mentions.max", 10);
+    /** The blocklist file of the content filter. */
+    public static final String FILTER_FILE = System.getProperty("chat.filter.file", "data/filter.txt");
+    /** How often in milliseconds the blocklist file is checked for changes. */
+    public static final long FILTER_RELOAD_MILLIS = Long.getLong("chat.filter.reloadMillis", 5000);
+    /** Maximum length in bytes of a message from a client; longer messages get a PARSE_ERROR. */
+    public static final int MAX_LINE_BYTES = Integer.getInteger("chat.maxLineBytes", 64 * 1024);
+    /** Maximum number of free 4 KB socket buffers kept for reuse. */
+    public static final int BUFFER_POOL_SIZE = Integer.getInteger("chat.bufferPool.size", 1024);
+    /** Chat messages (broadcasts, private and room messages) a client may send per second, 0 for no limit. */
+    public static final long RATE_CHAT_PER_SECOND = Long.getLong("chat.rate.chatPerSecond", 10);
+    /** Chat messages a client may send at once after being quiet. */
+    public static final long RATE_CHAT_BURST = Long.getLong("chat.rate.chatBurst", 20);
+    /** Queries (list, history, search, leaderboard) a client may send per second, 0 for no limit. */
+    public static final long RATE_QUERY_PER_SECOND = Long.getLong("chat.rate.queryPerSecond", 5);
+    /** Queries a client may send at once after being quiet. */
+    public static final long RATE_QUERY_BURST = Long.getLong("chat.rate.queryBurst", 20);
+    /** Other requests a client may send per second, 0 for no limit. */
+    public static final long RATE_OTHER_PER_SECOND = Long.getLong("chat.rate.otherPerSecond", 10);
+    /** Other requests a client may send at once after being quiet. */
+    public static final long RATE_OTHER_BURST = Long.getLong("chat.rate.otherBurst", 30);
+    /** Broadcasts all clients together may send per second, 0 for no limit. */
+    public static final long RATE_BROADCAST_PER_SECOND = Long.getLong("chat.rate.broadcastPerSecond", 500);
+    /** Broadcasts all clients together may send at once. */
+    public static final long RATE_BROADCAST_BURST = Long.getLong("chat.rate.broadcastBurst", 1000);
+    /** The deflate level (1-9) of compressed connections; lower levels use less CPU per message. */
+    public static final int COMPRESSION_LEVEL = Integer.getInteger("chat.compression.level", 6);
+    /**
+     * Maximum number of compressed connections, 0 to refuse compression. The zlib state of a connection,
+     * with its 32 KB window in each direction, takes about 300 KB of native memory.
+     */
+    public static final int COMPRESSION_MAX_CONNECTIONS = Integer.getInteger("chat.compression.maxConnections", 512);
+    /** How many milliseconds a write to a client may block before the server closes the connection of the client. */
+    public static final long WRITE_TIMEOUT_MILLIS = Long.getLong("chat.writeTimeoutMillis", 10_000);
+
+    private ServerConfig() {
+    }
+}
@@ -0,0 +1,104 @@
+package server.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The private messages sent to a client that acknowledges messages, which it has not acknowledged yet.
+ *
+ * Messages are kept in a fixed-size ring of parallel arrays in the order they were sent, which is also
+ * the order of their ids. An acknowledgement is cumulative: it covers every message up to its id, so
+ * acknowledging removes messages from the head of the ring without searching.
+ *
+ * The window is closed when the client disconnects; after that, adding fails and the sender has to
+ * store the message in the offline inbox instead.
+ */
+public class DeliveryWindow {
+    private final long[] ids;
+    private final long[] timestamps;
+    private final String[] senders;
+    private final String[] messages;
+    private int head;
+    private int size;
+    private boolean closed;
+
+    /**
+     * @param capacity The maximum number of unacknowledged messages.
+     */
+    public DeliveryWindow(int capacity) {
+        ids = new long[capacity];
+        timestamps = new long[capacity];
+        senders = new String[capacity];
+        messages = new String[capacity];
+    }
+
+    /**
+     * Adds a sent message. Callers that also write the message to the client should hold the lock of
+     * the window while doing both, so the client receives the messages in the order of their ids.
+     *
+     * @param timestamp When the message was sent; a message that goes back to the offline inbox keeps it.
+     * @return False if the window is full or closed.
+     */
+    public synchronized boolean add(long id, String sender, String message, long timestamp) {
+        if (closed || size == ids.length) {
+            return false;
+        }
+        int slot = (head + size) % ids.length;
+        ids[slot] = id;
+        timestamps[slot] = timestamp;
+        senders[slot] = sender;
+        messages[slot] = message;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes every message with an id up to and including the acknowledged id.
+     *
+     * @param id The highest id the client received.
+     * @return The number of messages removed.
+     */
+    public synchronized int acknowledge(long id) {
+        int removed = 0;
+        while (size > 0 && ids[head] <= id) {
+            senders[head] = null;
+            messages[head] = null;
+            head = (head + 1) % ids.length;
+            size--;
+            removed++;
+        }
+        return removed;
+    }
+
+    public synchronized boolean isFull() {
+        return size == ids.length;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return The unacknowledged messages, oldest first. They stay in the window.
+     */
+    public synchronized List<InboxMessage> unacknowledged() {
+        List<InboxMessage> unacknowledged = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % ids.length;
+            unacknowledged.add(new InboxMessage(ids[slot], senders[slot], messages[slot], timestamps[slot]));
+        }
+        return unacknowledged;
+    }
+
+    /**
+     * Closes the window and removes the messages that were never acknowledged.
+     *
+     * @return The unacknowledged messages, oldest first.
+     */
+    public synchronized List<InboxMessage> close() {
+        closed = true;
+        List<InboxMessage> unacknowledged = unacknowledged();
+        acknowledge(Long.MAX_VALUE);
+        return unacknowledged;
+    }
+}
@@ -0,0 +1,14 @@
+package server.chat;
+
+/**
+ * A private message waiting in the inbox of a user who was offline when it was sent.
+ *
+ * @param id        The id of the message, its offset in the message journal, or NO_ID if it needs a new one.
+ * @param sender    The username of the sender.
+ * @param message   The text of the message.
+ * @param timestamp The time the message was sent, in milliseconds since the epoch.
+ */
+public record InboxMessage(long id, String sender, String message, long timestamp) {
+    // The id of a message that was delivered before, but did not fit in the delivery window
+    public static final long NO_ID = -1;
+}
@@ -0,0 +1,63 @@
+package server.chat;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The usernames that ever logged in, so private messages are only stored for users that exist.
+ * The names are kept in a text file with one username per line, which only grows.
+ */
+public class KnownUsers {
+    private final Path file;
+    private final Set<String> usernames = ConcurrentHashMap.newKeySet();
+
+    public KnownUsers(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the usernames from the file, if there is one.
+     */
+    public void start() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            usernames.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.out.println("Error reading known users: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Remembers a user that logged in. Only a name that is new is written to the file.
+     *
+     * @param username The username of the user.
+     */
+    public synchronized void add(String username) {
+        if (usernames.contains(username)) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(username);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.out.println("Error writing known users: " + e.getMessage());
+        }
+        usernames.add(username);
+    }
+
+    public boolean contains(String username) {
+        return usernames.contains(username);
+    }
+}
@@ -0,0 +1,52 @@
+package server.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Finds the online users mentioned in a message with @username.
+ *
+ * Usernames only contain letters, digits and underscores, so a mention is the longest run of those
+ * characters after an @ that does not follow such a character itself (so "mail@example" is no mention).
+ * The message is scanned once and every candidate costs one lookup of the online users, so the cost
+ * only depends on the length of the message, not on the number of users.
+ */
+public final class MentionScanner {
+    private static final int MIN_LENGTH = 3;
+    private static final int MAX_LENGTH = 14;
+
+    private MentionScanner() {
+    }
+
+    /**
+     * @param message     The message to scan.
+     * @param isOnline    Tells whether a username belongs to an online user.
+     * @param maxMentions The maximum number of users returned.
+     * @return The distinct online users mentioned in the message, in order of their first mention.
+     */
+    public static List<String> scan(String message, Predicate<String> isOnline, int maxMentions) {
+        List<String> mentioned = new ArrayList<>(0);
+        int length = message.length();
+        int i = message.indexOf('@');
+        while (i >= 0 && mentioned.size() < maxMentions) {
+            int end = i + 1;
+            while (end < length && isNameChar(message.charAt(end))) {
+                end++;
+            }
+            int nameLength = end - i - 1;
+            if ((i == 0 || !isNameChar(message.charAt(i - 1))) && nameLength >= MIN_LENGTH && nameLength <= MAX_LENGTH) {
+                String name = message.substring(i + 1, end);
+                if (!mentioned.contains(name) && isOnline.test(name)) {
+                    mentioned.add(name);
+                }
+            }
+            i = message.indexOf('@', end);
+        }
+        return mentioned;
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
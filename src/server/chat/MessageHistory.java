@@ -0,0 +1,90 @@
+package server.chat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded ring buffer of the most recent frames sent to a room, stored exactly as they were sent.
+ *
+ * Appends are serialized (a single writer at a time), reads take no lock and copy nothing: a reader
+ * walks the slots between tail and head and hands each frame to a consumer. The writer moves the tail
+ * past a slot before overwriting it, so a reader that sees the tail pass the slot it just read knows
+ * the frame may have been replaced and skips it.
+ *
+ * The buffer is bounded by the total size of the frames in bytes (UTF-8, as sent on the wire)
+ * and by a fixed number of slots.
+ */
+public class MessageHistory {
+    private static final int SLOTS = 4096;
+
+    private final int maxBytes;
+    private final AtomicReferenceArray<String> frames = new AtomicReferenceArray<>(SLOTS);
+    private final int[] frameSizes = new int[SLOTS];
+
+    // Sequence numbers: head is the next frame to write, tail the oldest frame still retained
+    private volatile long head;
+    private volatile long tail;
+    private long bytes;
+
+    public MessageHistory(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Appends a frame, evicting the oldest frames until it fits. A frame larger than the whole
+     * buffer is not stored.
+     *
+     * @param frame The formatted message as sent to the clients.
+     */
+    public synchronized void append(String frame) {
+        int size = frame.getBytes(StandardCharsets.UTF_8).length;
+        if (size > maxBytes) {
+            return;
+        }
+
+        long newTail = tail;
+        while (bytes + size > maxBytes || head - newTail == SLOTS) {
+            bytes -= frameSizes[(int) (newTail % SLOTS)];
+            newTail++;
+        }
+        // Publish the new tail before any slot is overwritten
+        tail = newTail;
+
+        int slot = (int) (head % SLOTS);
+        frames.set(slot, frame);
+        frameSizes[slot] = size;
+        bytes += size;
+        head = head + 1;
+    }
+
+    /**
+     * Passes up to limit of the most recent frames to a consumer, oldest first.
+     *
+     * @param limit    The maximum number of frames.
+     * @param consumer Receives each frame.
+     * @return The number of frames passed to the consumer.
+     */
+    public int replay(int limit, Consumer<String> consumer) {
+        long end = head;
+        long start = Math.max(tail, end - limit);
+        int count = 0;
+        for (long seq = start; seq < end; seq++) {
+            String frame = frames.get((int) (seq % SLOTS));
+            // The slot was overwritten while reading it
+            if (seq < tail) {
+                continue;
+            }
+            consumer.accept(frame);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of frames currently retained.
+     */
+    public int size() {
+        return (int) (head - tail);
+    }
+}
@@ -0,0 +1,250 @@
+package server.chat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores private messages for users who are offline until they log in again.
+ *
+ * Every user has one append-only file ("<username>.inbox") in the inbox directory. A message is stored
+ * as its id and timestamp (8 bytes each), the sender (2-byte length + UTF-8) and the text (4-byte length + UTF-8).
+ * An inbox is limited in number of messages and bytes, and messages older than the TTL are dropped,
+ * both on delivery and by a sweep every few minutes.
+ *
+ * All changes to one inbox run under the lock of its user, so storing and draining the same inbox never
+ * interleave, while different inboxes do not block each other. The file I/O is kept out of
+ * ConcurrentHashMap.compute, which would also block the other users that share a bin of the map.
+ */
+public class OfflineInbox {
+    private static final String SUFFIX = ".inbox";
+    private static final long SWEEP_INTERVAL_MINUTES = 10;
+
+    private final Path directory;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final long ttlMillis;
+    // Number of stored messages per username, for the users that have a non-empty inbox file
+    private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+    // One lock per user that ever had an inbox, guarding the file and the count of that user
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory   The directory holding the inbox files.
+     * @param maxMessages The maximum number of messages in an inbox.
+     * @param maxBytes    The maximum size of an inbox file in bytes.
+     * @param ttlMillis   How long a message is kept, in milliseconds.
+     */
+    public OfflineInbox(Path directory, int maxMessages, long maxBytes, long ttlMillis) {
+        this.directory = directory;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Counts the messages of the existing inbox files and starts removing expired messages periodically.
+     *
+     * @param scheduler The scheduler to run the sweep on.
+     */
+    public void start(ScheduledExecutorService scheduler) {
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    counts.put(name.substring(0, name.length() - SUFFIX.length()), 0);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading inbox directory: " + e.getMessage());
+        }
+        sweep();
+
+        scheduler.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_MINUTES, SWEEP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stores a message for an offline user.
+     *
+     * @param receiver The username of the receiver.
+     * @param id       The id of the message.
+     * @param sender   The username of the sender.
+     * @param message  The text of the message.
+     * @return False if the inbox of the receiver is full or the message could not be written.
+     */
+    public boolean store(String receiver, long id, String sender, String message) {
+        return store(receiver, new InboxMessage(id, sender, message, System.currentTimeMillis()));
+    }
+
+    /**
+     * Stores a message for an offline user with the timestamp it already has, e.g. a message that was
+     * delivered but not acknowledged. Its TTL still counts from that timestamp.
+     *
+     * @param receiver The username of the receiver.
+     * @param message  The message.
+     * @return False if the inbox of the receiver is full or the message could not be written.
+     */
+    public boolean store(String receiver, InboxMessage message) {
+        long recordBytes = recordBytes(message.sender(), message.message());
+        synchronized (lock(receiver)) {
+            Integer count = counts.get(receiver);
+            int current = count == null ? 0 : count;
+            Path file = inboxFile(receiver);
+            try {
+                long size = count == null ? 0 : Files.size(file);
+                if (current >= maxMessages || size + recordBytes > maxBytes) {
+                    return false;
+                }
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+                    write(out, message);
+                }
+                counts.put(receiver, current + 1);
+                return true;
+            } catch (IOException e) {
+                System.out.println("Error writing inbox of " + receiver + ": " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Removes and returns every message stored for a user that has not expired.
+     *
+     * @param username The username of the user.
+     * @return The messages, oldest first. Empty if the user has no messages.
+     */
+    public List<InboxMessage> drain(String username) {
+        if (!counts.containsKey(username)) {
+            return List.of();
+        }
+        synchronized (lock(username)) {
+            if (counts.remove(username) == null) {
+                return List.of();
+            }
+            Path file = inboxFile(username);
+            List<InboxMessage> messages = read(file);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.out.println("Error deleting inbox of " + username + ": " + e.getMessage());
+            }
+            return messages;
+        }
+    }
+
+    /**
+     * Removes expired messages from every inbox. An inbox without messages left is deleted.
+     */
+    private void sweep() {
+        for (String username : counts.keySet()) {
+            synchronized (lock(username)) {
+                if (!counts.containsKey(username)) {
+                    continue;
+                }
+                Path file = inboxFile(username);
+                List<InboxMessage> messages = read(file);
+                try {
+                    if (messages.isEmpty()) {
+                        Files.deleteIfExists(file);
+                        counts.remove(username);
+                        continue;
+                    }
+                    // Rewrite the file if messages expired or a crash left a torn record at its end
+                    long size = 0;
+                    for (InboxMessage message : messages) {
+                        size += recordBytes(message.sender(), message.message());
+                    }
+                    if (size != Files.size(file)) {
+                        rewrite(file, messages);
+                    }
+                    counts.put(username, messages.size());
+                } catch (IOException e) {
+                    System.out.println("Error sweeping inbox of " + username + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the messages of an inbox file that have not expired. A truncated last record is ignored.
+     */
+    private List<InboxMessage> read(Path file) {
+        List<InboxMessage> messages = new ArrayList<>();
+        long oldest = System.currentTimeMillis() - ttlMillis;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                long id = in.readLong();
+                long timestamp = in.readLong();
+                String sender = new String(readBytes(in, in.readUnsignedShort()), StandardCharsets.UTF_8);
+                String message = new String(readBytes(in, in.readInt()), StandardCharsets.UTF_8);
+                if (timestamp >= oldest) {
+                    messages.add(new InboxMessage(id, sender, message, timestamp));
+                }
+            }
+        } catch (EOFException e) {
+            // End of the inbox
+        } catch (IOException e) {
+            System.out.println("Error reading inbox " + file + ": " + e.getMessage());
+        }
+        return messages;
+    }
+
+    private void rewrite(Path file, List<InboxMessage> messages) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            for (InboxMessage message : messages) {
+                write(out, message);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(DataOutputStream out, InboxMessage message) throws IOException {
+        byte[] senderBytes = message.sender().getBytes(StandardCharsets.UTF_8);
+        byte[] messageBytes = message.message().getBytes(StandardCharsets.UTF_8);
+        out.writeLong(message.id());
+        out.writeLong(message.timestamp());
+        out.writeShort(senderBytes.length);
+        out.write(senderBytes);
+        out.writeInt(messageBytes.length);
+        out.write(messageBytes);
+    }
+
+    private static long recordBytes(String sender, String message) {
+        return 16 + 2 + sender.getBytes(StandardCharsets.UTF_8).length + 4 + message.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static byte[] readBytes(InputStream in, int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) {
+            throw new EOFException();
+        }
+        return bytes;
+    }
+
+    private Object lock(String username) {
+        return locks.computeIfAbsent(username, user -> new Object());
+    }
+
+    private Path inboxFile(String username) {
+        return directory.resolve(username + SUFFIX);
+    }
+}
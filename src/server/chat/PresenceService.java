@@ -0,0 +1,117 @@
+package server.chat;
+
+import Utilities.Commands;
+import Utilities.MessageCodec;
+import Utilities.messages.PresenceDelta;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Collects logins and logouts and sends them to the subscribed clients as one PRESENCE_DELTA per window.
+ *
+ * Sending JOINED to every other client on every login costs O(n) frames per login, so n clients
+ * reconnecting after a restart cost O(n²) frames. With deltas, every window costs one frame per
+ * subscriber, however many users joined in it. A user that joins and leaves within the same window
+ * does not appear at all.
+ */
+public class PresenceService {
+    private final long windowMillis;
+    private final Set<Consumer<String>> subscribers = ConcurrentHashMap.newKeySet();
+    private Set<String> joined = new LinkedHashSet<>();
+    private Set<String> left = new LinkedHashSet<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    /**
+     * @param windowMillis How long events are collected before they are sent.
+     */
+    public PresenceService(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Starts sending the collected events every window. A flush that is still writing when the next window
+     * ends delays that window, so subscribers receive the deltas in order.
+     *
+     * @param scheduler The scheduler that times the flushes.
+     * @param workers   The threads that run the flushes, as a write to a subscriber can block.
+     */
+    public void start(ScheduledExecutorService scheduler, Executor workers) {
+        scheduler.scheduleWithFixedDelay(() -> {
+            if (flushing.compareAndSet(false, true)) {
+                workers.execute(() -> {
+                    try {
+                        flush();
+                    } finally {
+                        flushing.set(false);
+                    }
+                });
+            }
+        }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param subscriber Receives every PRESENCE_DELTA frame.
+     */
+    public void subscribe(Consumer<String> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Consumer<String> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    public synchronized void userJoined(String username) {
+        if (!left.remove(username)) {
+            joined.add(username);
+        }
+    }
+
+    public synchronized void userLeft(String username) {
+        if (!joined.remove(username)) {
+            left.add(username);
+        }
+    }
+
+    /**
+     * Sends the events collected since the last flush to every subscriber, if there are any.
+     *
+     * @return The number of frames sent.
+     */
+    public int flush() {
+        Set<String> flushedJoined;
+        Set<String> flushedLeft;
+        synchronized (this) {
+            if (joined.isEmpty() && left.isEmpty()) {
+                return 0;
+            }
+            flushedJoined = joined;
+            flushedLeft = left;
+            joined = new LinkedHashSet<>();
+            left = new LinkedHashSet<>();
+        }
+
+        String frame;
+        try {
+            frame = MessageCodec.encode(Commands.PRESENCE_DELTA,
+                    new PresenceDelta(new ArrayList<>(flushedJoined), new ArrayList<>(flushedLeft)));
+        } catch (JsonProcessingException e) {
+            System.out.println("Error formatting presence delta: " + e.getMessage());
+            return 0;
+        }
+        int sent = 0;
+        for (Consumer<String> subscriber : subscribers) {
+            subscriber.accept(frame);
+            sent++;
+        }
+        return sent;
+    }
+}
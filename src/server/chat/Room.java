@@ -0,0 +1,32 @@
+package server.chat;
+
+import server.ServerConfig;
+import server.handlers.ClientHandler;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A chat room: the clients subscribed to it and the recent messages sent to it.
+ */
+public class Room {
+    private final String name;
+    private final Set<ClientHandler> members = ConcurrentHashMap.newKeySet();
+    private final MessageHistory history = new MessageHistory(ServerConfig.HISTORY_MAX_BYTES);
+
+    public Room(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Set<ClientHandler> getMembers() {
+        return members;
+    }
+
+    public MessageHistory getHistory() {
+        return history;
+    }
+}
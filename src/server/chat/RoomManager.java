@@ -0,0 +1,85 @@
+package server.chat;
+
+import server.handlers.ClientHandler;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named chat rooms, the clients subscribed to each of them and their recent history.
+ *
+ * Every room has its own concurrent subscriber set, so sending to a room only touches the members of
+ * that room. Joining and leaving use ConcurrentHashMap.compute, which only locks the bin of the room
+ * being changed; there is no lock shared by all rooms. Rooms are created on the first join and removed
+ * when the last member leaves, except for the lobby, which every logged-in client is a member of.
+ */
+public class RoomManager {
+    public static final String LOBBY = "lobby";
+    private static final String ROOM_NAME_PATTERN = "[A-Za-z0-9_]{3,20}";
+
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+
+    public RoomManager() {
+        rooms.put(LOBBY, new Room(LOBBY));
+    }
+
+    public static boolean isValidName(String room) {
+        return room != null && room.matches(ROOM_NAME_PATTERN);
+    }
+
+    /**
+     * Adds a client to a room, creating the room if it does not exist yet.
+     *
+     * @param room   The name of the room.
+     * @param client The client joining the room.
+     * @return True if the client joined, false if it was already a member.
+     */
+    public boolean join(String room, ClientHandler client) {
+        boolean[] added = new boolean[1];
+        rooms.compute(room, (name, existing) -> {
+            Room joined = existing == null ? new Room(name) : existing;
+            added[0] = joined.getMembers().add(client);
+            return joined;
+        });
+        return added[0];
+    }
+
+    /**
+     * Removes a client from a room. An empty room is removed, unless it is the lobby.
+     *
+     * @param room   The name of the room.
+     * @param client The client leaving the room.
+     * @return True if the client left, false if it was not a member.
+     */
+    public boolean leave(String room, ClientHandler client) {
+        boolean[] removed = new boolean[1];
+        rooms.computeIfPresent(room, (name, existing) -> {
+            removed[0] = existing.getMembers().remove(client);
+            return existing.getMembers().isEmpty() && !name.equals(LOBBY) ? null : existing;
+        });
+        return removed[0];
+    }
+
+    /**
+     * @param room The name of the room.
+     * @return The members of the room, or an empty set if the room does not exist.
+     */
+    public Set<ClientHandler> getMembers(String room) {
+        Room existing = rooms.get(room);
+        return existing == null ? Collections.emptySet() : existing.getMembers();
+    }
+
+    /**
+     * @param room The name of the room.
+     * @return The room, or null if it does not exist.
+     */
+    public Room getRoom(String room) {
+        return rooms.get(room);
+    }
+
+    public boolean isMember(String room, ClientHandler client) {
+        return getMembers(room).contains(client);
+    }
+}
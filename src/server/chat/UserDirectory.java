@@ -0,0 +1,120 @@
+package server.chat;
+
+import Utilities.Commands;
+import Utilities.MessageCodec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.util.Arrays;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * The usernames of the online users, for LIST_REQ.
+ *
+ * The names are kept in a sorted map, together with their JSON encoding. For requests, an immutable
+ * snapshot holds the sorted names, their encodings and the complete LIST_RESP frame. The snapshot is
+ * rebuilt on the first request after a login or logout, under the same lock as the changes; until
+ * then, every request reuses it. A request for everything sends the cached frame. A page or prefix
+ * search binary-searches the sorted names and joins the encoded names of the page.
+ */
+public class UserDirectory {
+    private static final String RESPONSE_START = Commands.LIST_RESP + " {\"status\":\"OK\",\"code\":0,\"clients\":[";
+
+    // Every username with its JSON encoding, sorted by username
+    private final NavigableMap<String, String> usernames = new TreeMap<>();
+    private volatile Snapshot snapshot;
+
+    private record Snapshot(String[] names, String[] encodedNames, String fullResponse) {
+    }
+
+    public synchronized void add(String username) {
+        if (usernames.putIfAbsent(username, encode(username)) == null) {
+            snapshot = null;
+        }
+    }
+
+    public synchronized void remove(String username) {
+        if (usernames.remove(username) != null) {
+            snapshot = null;
+        }
+    }
+
+    /**
+     * @return The LIST_RESP frame with every online user.
+     */
+    public String listAll() {
+        return snapshot().fullResponse();
+    }
+
+    /**
+     * Builds the LIST_RESP frame for a page of the users whose name starts with a prefix.
+     *
+     * @param prefix The start of the names, or null for every name.
+     * @param offset The number of matching names to skip.
+     * @param limit  The maximum number of names, or 0 for all.
+     * @return The LIST_RESP frame, including the total number of matching names.
+     */
+    public String list(String prefix, int offset, int limit) {
+        Snapshot current = snapshot();
+        String[] names = current.names();
+        int from = 0;
+        int to = names.length;
+        if (prefix != null && !prefix.isEmpty()) {
+            from = lowerBound(names, prefix);
+            // Every name starting with the prefix sorts below the prefix followed by the highest character
+            to = lowerBound(names, prefix + Character.MAX_VALUE);
+        }
+        int total = to - from;
+        int start = Math.min(to, from + Math.max(0, offset));
+        int end = limit <= 0 ? to : (int) Math.min(to, (long) start + limit);
+
+        StringBuilder response = new StringBuilder(RESPONSE_START.length() + 24 + (end - start) * 16);
+        response.append(RESPONSE_START);
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                response.append(',');
+            }
+            response.append(current.encodedNames()[i]);
+        }
+        return response.append("],\"total\":").append(total).append('}').toString();
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot != null) {
+                return snapshot;
+            }
+            String[] names = usernames.keySet().toArray(new String[0]);
+            String[] encodedNames = usernames.values().toArray(new String[0]);
+            StringBuilder full = new StringBuilder(RESPONSE_START.length() + 2 + names.length * 16);
+            full.append(RESPONSE_START);
+            for (int i = 0; i < encodedNames.length; i++) {
+                if (i > 0) {
+                    full.append(',');
+                }
+                full.append(encodedNames[i]);
+            }
+            current = new Snapshot(names, encodedNames, full.append("]}").toString());
+            snapshot = current;
+            return current;
+        }
+    }
+
+    private String encode(String name) {
+        try {
+            return MessageCodec.toJson(name);
+        } catch (JsonProcessingException e) {
+            // Serializing a string never fails
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int lowerBound(String[] names, String key) {
+        int i = Arrays.binarySearch(names, key);
+        return i >= 0 ? i : -i - 1;
+    }
+}
@@ -0,0 +1,150 @@
+package server.filter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An Aho-Corasick automaton that finds every occurrence of a set of patterns in one pass over a text.
+ * Matching ignores case.
+ *
+ * The automaton is compiled into a complete transition table: every character that occurs in a pattern
+ * gets a column, all other characters share column 0, and every state has a row. The failure links are
+ * folded into the table while it is built, so a scan does one table lookup per character and costs
+ * O(text length + matches), whatever the number of patterns. The table takes states * columns ints,
+ * e.g. 5 MB for 10,000 words of lower-case letters.
+ *
+ * The automaton never changes after it is built, so it can be shared by any number of threads.
+ */
+public final class AhoCorasick {
+    // At most 256 MB of transitions
+    private static final long MAX_TRANSITIONS = 1L << 26;
+
+    private final char[] columnOf = new char[Character.MAX_VALUE + 1];
+    private final int columns;
+    private final int[] transitions;
+    // The pattern ending at each state, or -1
+    private final int[] pattern;
+    // The nearest state on the failure chain that ends a pattern, or -1
+    private final int[] outputLink;
+    private final int[] patternLengths;
+
+    /**
+     * Receives a match of a pattern in a text.
+     */
+    @FunctionalInterface
+    public interface MatchConsumer {
+        /**
+         * @param start   The index of the first character of the match.
+         * @param end     The index after the last character of the match.
+         * @param pattern The index of the pattern in the list the automaton was built from.
+         */
+        void accept(int start, int end, int pattern);
+    }
+
+    /**
+     * Builds the automaton.
+     *
+     * @param patterns The non-empty patterns to find. A pattern that occurs twice is only reported for its first index.
+     * @throws IllegalArgumentException If the transition table of the patterns would be too large.
+     */
+    public AhoCorasick(List<String> patterns) {
+        int maxStates = 1;
+        int nextColumn = 1;
+        for (String text : patterns) {
+            maxStates += text.length();
+            for (int i = 0; i < text.length(); i++) {
+                char c = Character.toLowerCase(text.charAt(i));
+                if (columnOf[c] == 0) {
+                    columnOf[c] = (char) nextColumn++;
+                }
+            }
+        }
+        columns = nextColumn;
+        if ((long) maxStates * columns > MAX_TRANSITIONS) {
+            throw new IllegalArgumentException("Too many patterns: " + maxStates + " states with " + columns + " characters");
+        }
+
+        // Build the trie in the table, with -1 for a missing edge
+        int[] table = new int[maxStates * columns];
+        Arrays.fill(table, -1);
+        int[] ends = new int[maxStates];
+        Arrays.fill(ends, -1);
+        patternLengths = new int[patterns.size()];
+        int states = 1;
+        for (int p = 0; p < patterns.size(); p++) {
+            String text = patterns.get(p);
+            patternLengths[p] = text.length();
+            int state = 0;
+            for (int i = 0; i < text.length(); i++) {
+                int edge = state * columns + columnOf[Character.toLowerCase(text.charAt(i))];
+                if (table[edge] < 0) {
+                    table[edge] = states++;
+                }
+                state = table[edge];
+            }
+            if (ends[state] < 0) {
+                ends[state] = p;
+            }
+        }
+        transitions = Arrays.copyOf(table, states * columns);
+        pattern = Arrays.copyOf(ends, states);
+
+        // Breadth-first, so the row of the failure state of every state is complete before it is used.
+        // A missing edge of a state leads where the same character leads from its failure state.
+        int[] fail = new int[states];
+        outputLink = new int[states];
+        outputLink[0] = -1;
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int column = 0; column < columns; column++) {
+            int child = transitions[column];
+            if (child < 0) {
+                transitions[column] = 0;
+            } else {
+                outputLink[child] = -1;
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            int row = state * columns;
+            int failRow = fail[state] * columns;
+            for (int column = 0; column < columns; column++) {
+                int child = transitions[row + column];
+                if (child < 0) {
+                    transitions[row + column] = transitions[failRow + column];
+                } else {
+                    int f = transitions[failRow + column];
+                    fail[child] = f;
+                    outputLink[child] = pattern[f] >= 0 ? f : outputLink[f];
+                    queue[tail++] = child;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports every occurrence of every pattern, including overlapping ones, in order of their end.
+     *
+     * @param text     The text to search.
+     * @param consumer Receives the matches.
+     */
+    public void forEachMatch(CharSequence text, MatchConsumer consumer) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * columns + columnOf[Character.toLowerCase(text.charAt(i))]];
+            for (int out = pattern[state] >= 0 ? state : outputLink[state]; out >= 0; out = outputLink[out]) {
+                int p = pattern[out];
+                consumer.accept(i + 1 - patternLengths[p], i + 1, p);
+            }
+        }
+    }
+
+    /**
+     * @return The number of states, a measure of the size of the automaton.
+     */
+    public int stateCount() {
+        return pattern.length;
+    }
+}
@@ -0,0 +1,223 @@
+package server.filter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks chat messages against a blocklist that operators keep in a text file.
+ *
+ * Every line of the file is an action followed by a word or phrase, e.g. "mask darn" or
+ * "reject buy cheap pills"; empty lines and lines starting with # are ignored. Phrases match
+ * whole words, ignoring case. The actions are:
+ * - mask: the matching characters are replaced by *
+ * - reject: the message is not sent at all
+ * - flag: the message is sent, but reported to the operators
+ *
+ * All phrases are compiled into one Aho-Corasick automaton, so checking a message costs the same
+ * for ten or ten thousand phrases. The file is checked for changes periodically; a changed file is
+ * compiled into new rules, which replace the old ones with a single write, so a message is always
+ * checked against either the old or the new rules as a whole.
+ */
+public class ContentFilter {
+    public enum Action {
+        MASK, REJECT, FLAG
+    }
+
+    /**
+     * The outcome of a check.
+     *
+     * @param message  The message to send, with the masked phrases replaced, or the original message.
+     * @param rejected Whether the message must not be sent.
+     * @param flagged  Whether the message must be reported.
+     */
+    public record Verdict(String message, boolean rejected, boolean flagged) {
+    }
+
+    private record Rules(AhoCorasick automaton, Action[] actions, boolean[] checkStart, boolean[] checkEnd) {
+    }
+
+    private static final Rules NO_RULES = new Rules(new AhoCorasick(List.of()), new Action[0], new boolean[0], new boolean[0]);
+
+    private final Path file;
+    private volatile Rules rules = NO_RULES;
+    private long loadedModified = -1;
+    private final AtomicBoolean reloading = new AtomicBoolean();
+
+    /**
+     * @param file The blocklist file. A missing file means an empty blocklist.
+     */
+    public ContentFilter(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the blocklist and checks it for changes every reloadMillis. A check that is still running
+     * when the next one is due skips that one.
+     *
+     * @param scheduler    The scheduler that times the checks.
+     * @param workers      The threads that run the checks, as reading and compiling a large blocklist takes a while.
+     * @param reloadMillis How often the file is checked for changes.
+     */
+    public void start(ScheduledExecutorService scheduler, Executor workers, long reloadMillis) {
+        reload();
+        scheduler.scheduleWithFixedDelay(() -> {
+            if (reloading.compareAndSet(false, true)) {
+                workers.execute(() -> {
+                    try {
+                        reload();
+                    } finally {
+                        reloading.set(false);
+                    }
+                });
+            }
+        }, reloadMillis, reloadMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Loads the blocklist file again if it changed since it was last loaded. If the file cannot
+     * be read, the current rules stay in place.
+     *
+     * @return True if new rules were loaded.
+     */
+    public synchronized boolean reload() {
+        try {
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (modified == loadedModified) {
+                return false;
+            }
+            load(Files.readAllLines(file));
+            loadedModified = modified;
+            System.out.println("Content filter loaded " + rules.actions().length + " phrases from " + file);
+            return true;
+        } catch (NoSuchFileException e) {
+            if (loadedModified <= 0) {
+                loadedModified = 0;
+                return false;
+            }
+            load(List.of());
+            loadedModified = 0;
+            System.out.println("Content filter file " + file + " was removed, the blocklist is empty");
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error loading content filter, keeping the current rules: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the rules by the rules in the given lines, in the format of the blocklist file.
+     *
+     * @param lines The lines of a blocklist.
+     * @throws IllegalArgumentException If the blocklist is too large to compile.
+     */
+    public void load(List<String> lines) {
+        // A phrase listed with several actions gets the strongest of them
+        Map<String, Action> phrases = new HashMap<>();
+        for (String line : lines) {
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] parts = trimmed.split("\\s+", 2);
+            Action action;
+            try {
+                action = Action.valueOf(parts[0].toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Ignoring content filter line with unknown action: " + line);
+                continue;
+            }
+            if (parts.length < 2) {
+                continue;
+            }
+            phrases.merge(parts[1].toLowerCase(Locale.ROOT), action, ContentFilter::strongest);
+        }
+
+        List<String> patterns = new ArrayList<>(phrases.keySet());
+        Action[] actions = new Action[patterns.size()];
+        boolean[] checkStart = new boolean[patterns.size()];
+        boolean[] checkEnd = new boolean[patterns.size()];
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            actions[i] = phrases.get(pattern);
+            // Only a phrase that starts or ends with a word character has to start or end at a word boundary
+            checkStart[i] = Character.isLetterOrDigit(pattern.charAt(0));
+            checkEnd[i] = Character.isLetterOrDigit(pattern.charAt(pattern.length() - 1));
+        }
+        rules = new Rules(new AhoCorasick(patterns), actions, checkStart, checkEnd);
+    }
+
+    /**
+     * Checks a message against the blocklist.
+     *
+     * @param message The message, may be null.
+     * @return The verdict on the message.
+     */
+    public Verdict check(String message) {
+        Rules current = rules;
+        if (message == null || current.actions().length == 0) {
+            return new Verdict(message, false, false);
+        }
+        Scan scan = new Scan(message, current);
+        current.automaton().forEachMatch(message, scan);
+        String filtered = scan.masked == null ? message : new String(scan.masked);
+        return new Verdict(filtered, scan.rejected, scan.flagged);
+    }
+
+    private static Action strongest(Action a, Action b) {
+        if (a == Action.REJECT || b == Action.REJECT) {
+            return Action.REJECT;
+        }
+        return a == Action.MASK || b == Action.MASK ? Action.MASK : Action.FLAG;
+    }
+
+    /**
+     * Applies the actions of the phrases found in one message.
+     */
+    private static final class Scan implements AhoCorasick.MatchConsumer {
+        private final String message;
+        private final Rules rules;
+        private char[] masked;
+        private boolean rejected;
+        private boolean flagged;
+
+        private Scan(String message, Rules rules) {
+            this.message = message;
+            this.rules = rules;
+        }
+
+        @Override
+        public void accept(int start, int end, int pattern) {
+            if (rules.checkStart()[pattern] && start > 0 && Character.isLetterOrDigit(message.charAt(start - 1))) {
+                return;
+            }
+            if (rules.checkEnd()[pattern] && end < message.length() && Character.isLetterOrDigit(message.charAt(end))) {
+                return;
+            }
+            switch (rules.actions()[pattern]) {
+                case REJECT -> rejected = true;
+                case FLAG -> flagged = true;
+                case MASK -> {
+                    if (masked == null) {
+                        masked = message.toCharArray();
+                    }
+                    for (int i = start; i < end; i++) {
+                        if (!Character.isWhitespace(masked[i])) {
+                            masked[i] = '*';
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
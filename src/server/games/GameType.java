@@ -0,0 +1,24 @@
+package server.games;
+
+public enum GameType {
+    RPS,
+    TTT;
+
+    /**
+     * Resolves a game type from its protocol name, ignoring case.
+     *
+     * @param name The game name sent by the client ("RPS" or "TTT").
+     * @return The matching game type, or null if the name is unknown.
+     */
+    public static GameType fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (GameType type : values()) {
+            if (type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+package server.games;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a RatingTable per game type and periodically writes them to disk.
+ * Snapshots are plain CSV files ("username,rating,wins,losses,ties") in the snapshot directory.
+ */
+public class Leaderboard {
+    private static final long SNAPSHOT_INTERVAL_SECONDS = 60;
+
+    private final Map<GameType, RatingTable> tables = new EnumMap<>(GameType.class);
+    private final Path snapshotDirectory;
+
+    public Leaderboard(Path snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+        for (GameType type : GameType.values()) {
+            tables.put(type, new RatingTable());
+        }
+    }
+
+    public RatingTable getTable(GameType type) {
+        return tables.get(type);
+    }
+
+    /**
+     * Records the result of a finished game.
+     *
+     * @param type    The type of the game.
+     * @param player1 The username of the first player.
+     * @param player2 The username of the second player.
+     * @param winner  The username of the winner, or null for a tie.
+     */
+    public void recordResult(GameType type, String player1, String player2, String winner) {
+        tables.get(type).recordResult(player1, player2, winner);
+    }
+
+    /**
+     * Loads the last snapshot from disk and starts writing a new one every minute and when the server shuts down.
+     *
+     * @param scheduler The scheduler to write the snapshots on.
+     */
+    public void start(ScheduledExecutorService scheduler) {
+        load();
+        scheduler.scheduleWithFixedDelay(this::snapshot, SNAPSHOT_INTERVAL_SECONDS, SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::snapshot, "leaderboard-shutdown"));
+    }
+
+    /**
+     * Writes every rating table to its snapshot file. The file is written next to the old one
+     * and moved over it, so a crash during the write never leaves a half-written snapshot.
+     */
+    public synchronized void snapshot() {
+        try {
+            Files.createDirectories(snapshotDirectory);
+            for (Map.Entry<GameType, RatingTable> entry : tables.entrySet()) {
+                Path target = snapshotFile(entry.getKey());
+                Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+                try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    for (PlayerRating rating : entry.getValue().all()) {
+                        writer.write(rating.username() + "," + rating.rating() + "," + rating.wins() + ","
+                                + rating.losses() + "," + rating.ties());
+                        writer.newLine();
+                    }
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            System.out.println("Error writing leaderboard snapshot: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        for (Map.Entry<GameType, RatingTable> entry : tables.entrySet()) {
+            Path file = snapshotFile(entry.getKey());
+            if (!Files.exists(file)) {
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(",");
+                    if (fields.length != 5) {
+                        continue;
+                    }
+                    entry.getValue().restore(new PlayerRating(fields[0], Integer.parseInt(fields[1]),
+                            Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4])));
+                }
+            } catch (IOException | NumberFormatException e) {
+                System.out.println("Error reading leaderboard snapshot " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private Path snapshotFile(GameType type) {
+        return snapshotDirectory.resolve("leaderboard-" + type.name().toLowerCase() + ".csv");
+    }
+}
@@ -0,0 +1,49 @@
+package server.games;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * The frames of a match on their way to its players and spectators.
+ *
+ * Frames are queued while the match is locked, so they are in the order of the moves, and written after
+ * the lock is released. Only one thread writes at a time: a thread that finds another one writing leaves
+ * its frames to that thread. A client that stops reading therefore blocks the thread writing to it,
+ * never the match, and every client still receives the frames of a match in order.
+ */
+public class MatchFeed {
+    private record Delivery(Consumer<String> sink, String frame) {
+    }
+
+    private final Queue<Delivery> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    /**
+     * Queues a frame for one client. Call drain() after releasing the lock of the match.
+     *
+     * @param sink  Writes a frame to the client.
+     * @param frame The formatted message.
+     */
+    public void publish(Consumer<String> sink, String frame) {
+        queue.add(new Delivery(sink, frame));
+    }
+
+    /**
+     * Writes the queued frames, unless another thread is writing them already.
+     */
+    public void drain() {
+        // Checked again after writing, as frames queued just before the flag was cleared would be left behind
+        while (!queue.isEmpty() && writing.compareAndSet(false, true)) {
+            try {
+                Delivery delivery;
+                while ((delivery = queue.poll()) != null) {
+                    delivery.sink().accept(delivery.frame());
+                }
+            } finally {
+                writing.set(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package server.games;
+
+/**
+ * Immutable rating state of a single player for a single game type.
+ * A new instance is created on every result so it can be swapped in with a CAS.
+ */
+public record PlayerRating(String username, int rating, int wins, int losses, int ties) {
+    public static final int INITIAL_RATING = 1200;
+
+    public static PlayerRating initial(String username) {
+        return new PlayerRating(username, INITIAL_RATING, 0, 0, 0);
+    }
+
+    /**
+     * Applies a game result to this rating.
+     *
+     * @param newRating The rating after the Elo update.
+     * @param score     1 for a win, 0 for a loss, anything in between for a tie.
+     * @return The updated rating.
+     */
+    public PlayerRating withResult(int newRating, double score) {
+        if (score == 1.0) {
+            return new PlayerRating(username, newRating, wins + 1, losses, ties);
+        } else if (score == 0.0) {
+            return new PlayerRating(username, newRating, wins, losses + 1, ties);
+        }
+        return new PlayerRating(username, newRating, wins, losses, ties + 1);
+    }
+}
@@ -0,0 +1,172 @@
+package server.games;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ratings and win/loss/tie counters of every player for one game type.
+ *
+ * Each player's state lives in an AtomicReference and is replaced with a CAS, so results
+ * are recorded without locks. Two indexes are kept next to it:
+ * - a skip list ordered by rating (highest first) for top-N queries;
+ * - a Fenwick tree of player counts per rating, so "how many players are rated higher"
+ *   is O(log MAX_RATING) no matter how many players there are.
+ */
+public class RatingTable {
+    public static final int MAX_RATING = 4095;
+    private static final int K_FACTOR = 32;
+
+    private static final Comparator<PlayerRating> BY_RATING = Comparator
+            .comparingInt(PlayerRating::rating).reversed()
+            .thenComparing(PlayerRating::username);
+
+    private final ConcurrentHashMap<String, AtomicReference<PlayerRating>> players = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<PlayerRating> ranking = new ConcurrentSkipListSet<>(BY_RATING);
+    // 1-based Fenwick tree indexed by (rating + 1)
+    private final AtomicIntegerArray ratingCounts = new AtomicIntegerArray(MAX_RATING + 2);
+
+    /**
+     * Records the result of a finished game and updates both players' ratings.
+     *
+     * @param player1 The username of the first player.
+     * @param player2 The username of the second player.
+     * @param winner  The username of the winner, or null for a tie.
+     */
+    public void recordResult(String player1, String player2, String winner) {
+        double score1 = winner == null ? 0.5 : (winner.equals(player1) ? 1.0 : 0.0);
+
+        AtomicReference<PlayerRating> ref1 = playerRef(player1);
+        AtomicReference<PlayerRating> ref2 = playerRef(player2);
+        int rating1 = ref1.get().rating();
+        int rating2 = ref2.get().rating();
+
+        double expected1 = 1.0 / (1.0 + Math.pow(10, (rating2 - rating1) / 400.0));
+        int delta = (int) Math.round(K_FACTOR * (score1 - expected1));
+
+        apply(ref1, delta, score1);
+        apply(ref2, -delta, 1.0 - score1);
+    }
+
+    /**
+     * Returns the highest rated players.
+     *
+     * @param limit The maximum number of players to return.
+     * @return The players ordered by rating, highest first.
+     */
+    public List<PlayerRating> top(int limit) {
+        List<PlayerRating> result = new ArrayList<>(Math.min(limit, 100));
+        Iterator<PlayerRating> it = ranking.iterator();
+        while (it.hasNext() && result.size() < limit) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    /**
+     * Gets the current rating state of a player.
+     *
+     * @param username The username of the player.
+     * @return The rating state, or null if the player has not finished a game yet.
+     */
+    public PlayerRating get(String username) {
+        AtomicReference<PlayerRating> ref = players.get(username);
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * Calculates the rank of a rating: one more than the number of players rated strictly higher.
+     *
+     * @param rating The rating to rank.
+     * @return The 1-based rank.
+     */
+    public int rankOf(int rating) {
+        return countAtMost(MAX_RATING) - countAtMost(rating) + 1;
+    }
+
+    public Collection<PlayerRating> all() {
+        List<PlayerRating> result = new ArrayList<>(players.size());
+        for (AtomicReference<PlayerRating> ref : players.values()) {
+            result.add(ref.get());
+        }
+        return result;
+    }
+
+    /**
+     * Restores a player's state, e.g. from a snapshot on disk. Existing state is kept.
+     *
+     * @param rating The state to restore.
+     */
+    public void restore(PlayerRating rating) {
+        PlayerRating clamped = new PlayerRating(rating.username(), clamp(rating.rating()),
+                rating.wins(), rating.losses(), rating.ties());
+        if (players.putIfAbsent(clamped.username(), new AtomicReference<>(clamped)) == null) {
+            index(null, clamped);
+        }
+    }
+
+    private AtomicReference<PlayerRating> playerRef(String username) {
+        AtomicReference<PlayerRating> ref = players.get(username);
+        if (ref != null) {
+            return ref;
+        }
+        PlayerRating initial = PlayerRating.initial(username);
+        AtomicReference<PlayerRating> created = new AtomicReference<>(initial);
+        ref = players.putIfAbsent(username, created);
+        if (ref == null) {
+            index(null, initial);
+            return created;
+        }
+        return ref;
+    }
+
+    private void apply(AtomicReference<PlayerRating> ref, int delta, double score) {
+        PlayerRating previous;
+        PlayerRating next;
+        do {
+            previous = ref.get();
+            next = previous.withResult(clamp(previous.rating() + delta), score);
+        } while (!ref.compareAndSet(previous, next));
+
+        index(previous, next);
+        // A concurrent update may have indexed its state before this one; replace ours with the latest state.
+        PlayerRating current = ref.get();
+        if (current != next) {
+            ranking.remove(next);
+            ranking.add(current);
+        }
+    }
+
+    private void index(PlayerRating previous, PlayerRating next) {
+        if (previous != null) {
+            ranking.remove(previous);
+            addCount(previous.rating(), -1);
+        }
+        ranking.add(next);
+        addCount(next.rating(), 1);
+    }
+
+    private void addCount(int rating, int delta) {
+        for (int i = rating + 1; i < ratingCounts.length(); i += i & -i) {
+            ratingCounts.addAndGet(i, delta);
+        }
+    }
+
+    private int countAtMost(int rating) {
+        int sum = 0;
+        for (int i = rating + 1; i > 0; i -= i & -i) {
+            sum += ratingCounts.get(i);
+        }
+        return sum;
+    }
+
+    private static int clamp(int rating) {
+        return Math.max(0, Math.min(MAX_RATING, rating));
+    }
+}
@@ -0,0 +1,93 @@
+package server.games;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Tic-Tac-Toe matches of players that disconnected in the middle of a game.
+ *
+ * A match is kept in its binary form (see TttMatch.toBytes()) for a grace period, so the player can
+ * log in again and continue. Expired matches are evicted by a timer, which keeps memory bounded
+ * even when players never come back, and the player that did not come back loses the match.
+ */
+public class SuspendedTttGames {
+    public static final int GRACE_PERIOD_SECONDS = 60;
+    private static final long EVICTION_INTERVAL_SECONDS = 5;
+
+    private record Suspended(byte[] state, long expiresAtMillis) {
+    }
+
+    private final Map<String, Suspended> suspended = new ConcurrentHashMap<>();
+    private BiConsumer<String, TttMatch> onExpired = (username, match) -> { };
+
+    /**
+     * Keeps the match of a disconnected player for the grace period.
+     *
+     * @param username The username of the player that disconnected.
+     * @param match    The match the player was in.
+     */
+    public void suspend(String username, TttMatch match) {
+        long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(GRACE_PERIOD_SECONDS);
+        suspended.put(username, new Suspended(match.toBytes(), expiresAt));
+    }
+
+    /**
+     * Takes the suspended match of a player out of the store if it can continue. A match that cannot
+     * continue yet, e.g. because the opponent is offline, stays until the grace period ends.
+     *
+     * @param username    The username of the player that logged in.
+     * @param canContinue Tells whether the restored match can be played now.
+     * @return The restored match, or null if there is none, it has expired or it cannot continue.
+     */
+    public TttMatch resume(String username, Predicate<TttMatch> canContinue) {
+        Suspended entry = suspended.get(username);
+        if (entry == null || entry.expiresAtMillis() < System.currentTimeMillis()) {
+            return null;
+        }
+        TttMatch match = restore(username, entry);
+        // The match may have expired meanwhile, then the opponent has already won it
+        if (match == null || !canContinue.test(match) || !suspended.remove(username, entry)) {
+            return null;
+        }
+        return match;
+    }
+
+    /**
+     * Starts evicting expired matches every few seconds.
+     *
+     * @param scheduler The scheduler to run the eviction on.
+     * @param onExpired Receives the username of the player that did not come back and the match.
+     *                  Runs on the scheduler, so it must not write to clients.
+     */
+    public void start(ScheduledExecutorService scheduler, BiConsumer<String, TttMatch> onExpired) {
+        this.onExpired = onExpired;
+        scheduler.scheduleAtFixedRate(this::evictExpired, EVICTION_INTERVAL_SECONDS, EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Suspended> entry : suspended.entrySet()) {
+            Suspended value = entry.getValue();
+            if (value.expiresAtMillis() < now && suspended.remove(entry.getKey(), value)) {
+                TttMatch match = restore(entry.getKey(), value);
+                if (match != null) {
+                    onExpired.accept(entry.getKey(), match);
+                }
+            }
+        }
+    }
+
+    private static TttMatch restore(String username, Suspended entry) {
+        try {
+            return TttMatch.fromBytes(entry.state());
+        } catch (IOException e) {
+            System.out.println("Error restoring Tic-Tac-Toe match of " + username + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package server.games;
+
+import java.util.Arrays;
+
+/**
+ * Perfect-play Tic-Tac-Toe opponent for the classic 3x3 board.
+ *
+ * Every position reachable from the empty board (about 5.5k) is solved once with minimax when the bot is
+ * created. The best move of each position is stored in a table indexed directly by the two bitboards
+ * (xBits | oBits << 9), so choosing a move during a game is a single array read.
+ */
+public class TttBot {
+    public static final String USERNAME = "TttBot";
+
+    private static final int CELLS = TttMatch.SIZE * TttMatch.SIZE;
+    private static final int FULL_BOARD = (1 << CELLS) - 1;
+    private static final byte UNSOLVED = -1;
+    // Bit (row * 3 + col) is set for each cell of a line
+    private static final int[] WIN_MASKS = {
+            0b000_000_111, 0b000_111_000, 0b111_000_000, // rows
+            0b001_001_001, 0b010_010_010, 0b100_100_100, // columns
+            0b100_010_001, 0b001_010_100                 // diagonals
+    };
+
+    private final byte[] bestMoves = new byte[1 << (2 * CELLS)];
+    private final byte[] scores = new byte[1 << (2 * CELLS)];
+    private int positionCount;
+
+    public TttBot() {
+        Arrays.fill(bestMoves, UNSOLVED);
+        solve(0, 0);
+    }
+
+    /**
+     * Gets the best move for the player to move.
+     *
+     * @param xBits The bitboard of the cells taken by X.
+     * @param oBits The bitboard of the cells taken by O.
+     * @return The index (row * 3 + col) of the best cell, or -1 if the game is already over.
+     */
+    public int bestMove(int xBits, int oBits) {
+        return bestMoves[key(xBits, oBits)];
+    }
+
+    /**
+     * @return The number of distinct positions stored in the table.
+     */
+    public int getPositionCount() {
+        return positionCount;
+    }
+
+    /**
+     * Solves a position with negamax and stores the result.
+     * Scores are from the point of view of the player to move: positive is a win, negative a loss,
+     * and a win in fewer moves scores higher than a win in more moves.
+     */
+    private int solve(int xBits, int oBits) {
+        int key = key(xBits, oBits);
+        int taken = xBits | oBits;
+        if (bestMoves[key] != UNSOLVED || isFinished(xBits, oBits)) {
+            return terminalScoreOr(key, xBits, oBits);
+        }
+
+        boolean xToMove = Integer.bitCount(xBits) == Integer.bitCount(oBits);
+        int bestScore = Integer.MIN_VALUE;
+        int bestCell = UNSOLVED;
+        for (int cell = 0; cell < CELLS; cell++) {
+            int bit = 1 << cell;
+            if ((taken & bit) != 0) {
+                continue;
+            }
+            int score = xToMove ? -solve(xBits | bit, oBits) : -solve(xBits, oBits | bit);
+            if (score > bestScore) {
+                bestScore = score;
+                bestCell = cell;
+            }
+        }
+
+        bestMoves[key] = (byte) bestCell;
+        scores[key] = (byte) bestScore;
+        positionCount++;
+        return bestScore;
+    }
+
+    private int terminalScoreOr(int key, int xBits, int oBits) {
+        if (bestMoves[key] != UNSOLVED) {
+            return scores[key];
+        }
+        // The previous move either won the game or filled the board
+        boolean lastMoveWon = isWin(xBits) || isWin(oBits);
+        return lastMoveWon ? -(CELLS + 1 - Integer.bitCount(xBits | oBits)) : 0;
+    }
+
+    private static boolean isFinished(int xBits, int oBits) {
+        return isWin(xBits) || isWin(oBits) || (xBits | oBits) == FULL_BOARD;
+    }
+
+    private static int key(int xBits, int oBits) {
+        return xBits | (oBits << CELLS);
+    }
+
+    private static boolean isWin(int bits) {
+        for (int mask : WIN_MASKS) {
+            if ((bits & mask) == mask) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,313 @@
+package server.games;
+
+import Utilities.messages.ticTacToe.TttBoardDelta;
+import Utilities.messages.ticTacToe.TttMoveResp;
+import Utilities.messages.ticTacToe.TttSnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * State of a single k-in-a-row match (Tic-Tac-Toe on a 3x3 board by default, up to 19x19 Gomoku):
+ * the board, whose turn it is, the move sequence number and the clients watching the match.
+ *
+ * The board is stored as one packed bitset per player, with bit (row * cols + col) set for every taken cell.
+ * A move can only complete a line through the cell it was played on, so a win is detected by walking
+ * the four lines through that cell, which costs O(winLength) regardless of the board size.
+ *
+ * Callers must synchronize on the match when a move and the publication of its delta need to be atomic,
+ * so every watcher sees the deltas in sequence order. They publish to the feed of the match while holding
+ * the lock and drain it after releasing the lock, so no write to a client happens under the lock.
+ */
+public class TttMatch {
+    public static final int SIZE = 3;
+    public static final int MIN_SIZE = 3;
+    public static final int MAX_SIZE = 19;
+    private static final char EMPTY = '.';
+    private static final byte STATE_VERSION = 1;
+    // Row and column steps of the four line directions: horizontal, vertical and both diagonals
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    private final String playerX;
+    private final String playerO;
+    private final int rows;
+    private final int cols;
+    private final int winLength;
+    // Packed bitsets of the cells taken by X and O
+    private final long[] xBits;
+    private final long[] oBits;
+    // Each spectator is the sink that writes frames to its client
+    private final Set<Consumer<String>> spectators = ConcurrentHashMap.newKeySet();
+    private final MatchFeed feed = new MatchFeed();
+
+    private String currentPlayer;
+    private int seq;
+    private TttBoardDelta lastDelta;
+
+    /**
+     * Creates a new 3x3 Tic-Tac-Toe match with an empty board.
+     *
+     * @param playerX The username of the player using X, who makes the first move.
+     * @param playerO The username of the player using O.
+     */
+    public TttMatch(String playerX, String playerO) {
+        this(playerX, playerO, SIZE, SIZE, SIZE);
+    }
+
+    /**
+     * Creates a new match with an empty board of any size.
+     *
+     * @param playerX   The username of the player using X, who makes the first move.
+     * @param playerO   The username of the player using O.
+     * @param rows      The number of rows of the board.
+     * @param cols      The number of columns of the board.
+     * @param winLength The number of symbols in a row needed to win.
+     */
+    public TttMatch(String playerX, String playerO, int rows, int cols, int winLength) {
+        this.playerX = playerX;
+        this.playerO = playerO;
+        this.rows = rows;
+        this.cols = cols;
+        this.winLength = winLength;
+        this.xBits = new long[(rows * cols + 63) / 64];
+        this.oBits = new long[xBits.length];
+        this.currentPlayer = playerX;
+    }
+
+    /**
+     * Checks whether a board size is supported.
+     *
+     * @param rows      The number of rows of the board.
+     * @param cols      The number of columns of the board.
+     * @param winLength The number of symbols in a row needed to win.
+     * @return True if the board is between 3x3 and 19x19 and a line of winLength fits on it.
+     */
+    public static boolean isValidSize(int rows, int cols, int winLength) {
+        return rows >= MIN_SIZE && rows <= MAX_SIZE && cols >= MIN_SIZE && cols <= MAX_SIZE
+                && winLength >= MIN_SIZE && winLength <= Math.max(rows, cols);
+    }
+
+    /**
+     * Plays a move for a player.
+     *
+     * @param player The username of the player making the move.
+     * @param row    The row of the move.
+     * @param col    The column of the move.
+     * @return "OK", "WIN" or "TIE" if the move was played, or an ERROR response otherwise.
+     */
+    public synchronized TttMoveResp play(String player, int row, int col) {
+        if (!player.equals(currentPlayer)) {
+            return new TttMoveResp("ERROR", 12009); // Not your turn
+        }
+        if (row < 0 || row >= rows || col < 0 || col >= cols || isTaken(row * cols + col)) {
+            return new TttMoveResp("ERROR", 12007); // Invalid move
+        }
+
+        char symbol = symbolOf(player);
+        long[] bits = symbol == 'X' ? xBits : oBits;
+        set(bits, row * cols + col);
+        seq++;
+        lastDelta = new TttBoardDelta(row, col, String.valueOf(symbol), seq);
+        currentPlayer = getOpponent(player);
+
+        if (isWinningMove(bits, row, col)) {
+            return new TttMoveResp("WIN", 0);
+        } else if (seq == rows * cols) {
+            return new TttMoveResp("TIE", 0);
+        }
+        return new TttMoveResp("OK", 0);
+    }
+
+    /**
+     * Encodes the state of the match in a compact binary form, e.g. to keep it while a player reconnects.
+     * Spectators and the last delta are not part of the state.
+     *
+     * @return The encoded state.
+     */
+    public synchronized byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + 16 * xBits.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(STATE_VERSION);
+            out.writeByte(rows);
+            out.writeByte(cols);
+            out.writeByte(winLength);
+            out.writeShort(seq);
+            out.writeBoolean(currentPlayer.equals(playerX));
+            out.writeUTF(playerX);
+            out.writeUTF(playerO);
+            for (int i = 0; i < xBits.length; i++) {
+                out.writeLong(xBits[i]);
+                out.writeLong(oBits[i]);
+            }
+        } catch (IOException e) {
+            // Writing to a byte array never fails
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restores a match from the output of toBytes().
+     *
+     * @param state The encoded state.
+     * @return The restored match, without spectators.
+     * @throws IOException If the state is truncated or has an unknown version.
+     */
+    public static TttMatch fromBytes(byte[] state) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+            if (in.readByte() != STATE_VERSION) {
+                throw new IOException("Unknown match state version");
+            }
+            int rows = in.readUnsignedByte();
+            int cols = in.readUnsignedByte();
+            int winLength = in.readUnsignedByte();
+            int seq = in.readUnsignedShort();
+            boolean xToMove = in.readBoolean();
+            TttMatch match = new TttMatch(in.readUTF(), in.readUTF(), rows, cols, winLength);
+            for (int i = 0; i < match.xBits.length; i++) {
+                match.xBits[i] = in.readLong();
+                match.oBits[i] = in.readLong();
+            }
+            match.seq = seq;
+            match.currentPlayer = xToMove ? match.playerX : match.playerO;
+            return match;
+        }
+    }
+
+    /**
+     * @return The delta describing the last move that was played, or null if no move was played yet.
+     */
+    public synchronized TttBoardDelta getLastDelta() {
+        return lastDelta;
+    }
+
+    /**
+     * @return The full state of the match, sent once to a client that starts watching.
+     */
+    public synchronized TttSnapshot snapshot() {
+        char[] cells = new char[rows * cols];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = cellAt(i);
+        }
+        return new TttSnapshot(playerX, playerO, rows, cols, winLength, new String(cells), seq, currentPlayer);
+    }
+
+    /**
+     * @return The board as a map from "row,col" to "X", "O" or "" for an empty cell.
+     */
+    public synchronized Map<String, String> boardAsMap() {
+        Map<String, String> board = new HashMap<>();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                char cell = cellAt(row * cols + col);
+                board.put(row + "," + col, cell == EMPTY ? "" : String.valueOf(cell));
+            }
+        }
+        return board;
+    }
+
+    /**
+     * @return The cells taken by X as a 9-bit bitboard. Only meaningful on a 3x3 board.
+     */
+    public synchronized int getXBits() {
+        return (int) xBits[0];
+    }
+
+    /**
+     * @return The cells taken by O as a 9-bit bitboard. Only meaningful on a 3x3 board.
+     */
+    public synchronized int getOBits() {
+        return (int) oBits[0];
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getWinLength() {
+        return winLength;
+    }
+
+    public String getPlayerX() {
+        return playerX;
+    }
+
+    public String getPlayerO() {
+        return playerO;
+    }
+
+    public String getOpponent(String player) {
+        return player.equals(playerX) ? playerO : playerX;
+    }
+
+    public Set<Consumer<String>> getSpectators() {
+        return spectators;
+    }
+
+    public MatchFeed getFeed() {
+        return feed;
+    }
+
+    private char symbolOf(String player) {
+        return player.equals(playerX) ? 'X' : 'O';
+    }
+
+    private boolean isWinningMove(long[] bits, int row, int col) {
+        for (int[] direction : DIRECTIONS) {
+            int count = 1 + countInDirection(bits, row, col, direction[0], direction[1])
+                    + countInDirection(bits, row, col, -direction[0], -direction[1]);
+            if (count >= winLength) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the consecutive cells of a player starting next to (row, col), stopping after winLength - 1 cells.
+     */
+    private int countInDirection(long[] bits, int row, int col, int rowStep, int colStep) {
+        int count = 0;
+        int r = row + rowStep;
+        int c = col + colStep;
+        while (count < winLength - 1 && r >= 0 && r < rows && c >= 0 && c < cols && isSet(bits, r * cols + c)) {
+            count++;
+            r += rowStep;
+            c += colStep;
+        }
+        return count;
+    }
+
+    private boolean isTaken(int index) {
+        return isSet(xBits, index) || isSet(oBits, index);
+    }
+
+    private char cellAt(int index) {
+        if (isSet(xBits, index)) {
+            return 'X';
+        } else if (isSet(oBits, index)) {
+            return 'O';
+        }
+        return EMPTY;
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+}
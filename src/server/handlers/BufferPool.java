@@ -0,0 +1,51 @@
+package server.handlers;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Byte buffers shared by all connections. A connection borrows a buffer only while it is reading or
+ * writing a message and returns it right after, so an idle connection holds no buffer at all.
+ */
+public class BufferPool {
+    public static final int BUFFER_SIZE = 4096;
+
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * @param maxPooled The maximum number of free buffers kept; more returned buffers are left to the garbage collector.
+     */
+    public BufferPool(int maxPooled) {
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @return A buffer of BUFFER_SIZE bytes with undefined contents.
+     */
+    public byte[] borrow() {
+        byte[] buffer = free.poll();
+        if (buffer == null) {
+            return new byte[BUFFER_SIZE];
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers of another size than BUFFER_SIZE are not kept.
+     *
+     * @param buffer The buffer, which the caller must not use anymore.
+     */
+    public void release(byte[] buffer) {
+        if (buffer.length != BUFFER_SIZE) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            free.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
@@ -2,8 +2,27 @@ package server.handlers;
 
 import Utilities.messages.ticTacToe.*;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import Utilities.messages.leaderboard.*;
+import Utilities.messages.history.*;
+import Utilities.messages.room.*;
+import Utilities.messages.search.*;
+import server.ServerConfig;
+import server.chat.DeliveryWindow;
+import server.chat.InboxMessage;
+import server.chat.MentionScanner;
+import server.chat.Room;
+import server.chat.RoomManager;
+import server.filter.ContentFilter;
+import server.limits.TokenBuckets;
 import server.Server;
+import server.games.GameType;
+import server.games.PlayerRating;
+import server.games.RatingTable;
+import server.games.SuspendedTttGames;
+import server.games.TttBot;
+import server.games.TttMatch;
+import server.search.SearchIndex;
+import server.search.Tokenizer;
 import server.models.FileTransferDetails;
 import server.models.TransferContext;
 import Utilities.*;
@@ -15,16 +34,27 @@ import Utilities.messages.rockPaperScissor.*;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class ClientHandler implements Runnable {
     private static final String VERSION = "1.6.0";
 
     private static final int PING_INTERVAL_MS = 10000;
     private static final int PONG_TIMEOUT_MS = 2000;
+    private static final int DEFAULT_LEADERBOARD_LIMIT = 10;
+    private static final int MAX_LEADERBOARD_LIMIT = 100;
+    private static final int DEFAULT_HISTORY_LIMIT = 50;
+    private static final String USERNAME_PATTERN = "[A-Za-z0-9_]{3,14}";
+    private static final SecureRandom RANDOM = new SecureRandom();
 
     private final Map<String, ClientHandler> clients;
-    private final ObjectMapper mapper = new ObjectMapper();
 
     private Map<String, String> playerToPlayer;
     private Map<String, String> playerMoves;
@@ -33,11 +63,39 @@ public class ClientHandler implements Runnable {
     private Server server;
 
     private final Socket socket;
-    private BufferedReader reader;
-    private PrintWriter writer;
+    private LineFramer reader;
+    private SocketWriter socketWriter;
+    // Replaced by a ParkedWriter while a resumable session has no connection
+    private volatile PrintWriter writer;
+    // Set after FRAMING_REQ, only used by the thread of this handler
+    private boolean binaryFraming;
+    // Set after COMPRESS_REQ, only used by the thread of this handler, which also returns the compression slot
+    private boolean compressed;
+    // The payload of the binary frame being handled, see readPayload()
+    private Object decodedPayload;
+    // The id of the request being handled and the command of its answer, see withRequestId()
+    private Thread handlerThread;
+    private Long requestId;
+    private String requestResponse;
     private String username;
-    private Timer pingTimer;
-    private boolean awaitingPong;
+    private ScheduledFuture<?> pingTask;
+    private volatile boolean awaitingPong;
+    private TttMatch watchedTttMatch;
+    // Unacknowledged private messages, only for clients that acknowledge messages
+    private DeliveryWindow deliveryWindow;
+    private final Set<String> rooms = ConcurrentHashMap.newKeySet();
+    // Only used by the thread of this handler, see handleClientMessage()
+    private final TokenBuckets rateLimits;
+    // Session resumption, see connectionLost(); all guarded by the lock of the handler
+    private String resumeToken;
+    private ParkedWriter parkedWriter;
+    private List<InboxMessage> unacknowledgedWhenParked = List.of();
+    private boolean parked;
+    // Receives PRESENCE_DELTA frames, only for clients that asked for presence deltas instead of JOINED and LEFT
+    private Consumer<String> presenceSubscriber;
+    // Receives the frames of a Tic-Tac-Toe match this client plays or watches
+    private final Consumer<String> matchSink = frame -> writer.println(frame);
+    private boolean closed;
 
     /**
      * Initializes a new ClientHandler instance for managing communication with a connected client.
@@ -56,29 +114,43 @@ public class ClientHandler implements Runnable {
         this.playerMoves = playerMoves;
         this.pendingTransfers = pendingTransfers;
         this.server = server;
+        this.rateLimits = server.getRateLimiter().newClientBuckets();
     }
 
     @Override
     public void run() {
+        handlerThread = Thread.currentThread();
         try {
             setupStreams();
             sendReadyMessage();
 
             while (true) {
-                String input = reader.readLine();
-                if (input == null) break;
-                handleClientMessage(input);
+                try {
+                    if (binaryFraming) {
+                        byte[] frame = reader.readBinaryFrame();
+                        if (frame == null) break;
+                        handleBinaryFrame(frame);
+                    } else {
+                        String input = reader.readLine();
+                        if (input == null) break;
+                        handleClientMessage(input);
+                    }
+                } catch (LineFramer.FrameTooLongException e) {
+                    sendFormattedMessage(Commands.PARSE_ERROR, new ParseError());
+                }
             }
         } catch (IOException e) {
             System.out.println("Connection error with client " + username + ": " + e.getMessage());
         } finally {
-            disconnectClient();
+            connectionLost();
+            releaseCompression();
         }
     }
 
     private void setupStreams() throws IOException {
-        reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        writer = new PrintWriter(socket.getOutputStream(), true);
+        reader = new LineFramer(socket.getInputStream(), ServerConfig.MAX_LINE_BYTES, server.getBufferPool());
+        socketWriter = new SocketWriter(socket.getOutputStream(), server.getBufferPool());
+        writer = new PrintWriter(socketWriter, true);
     }
 
     private void sendReadyMessage() throws JsonProcessingException {
@@ -97,17 +169,62 @@ public class ClientHandler implements Runnable {
             sendFormattedMessage(Commands.UNKNOWN_COMMAND, new ParseError());
             return;
         }
-        String command = parts[0];
-        String jsonPayload = parts[1];
+        handleCommand(parts[0], parts[1], MessageCodec.requestIdOf(parts[1]));
+    }
+
+    private void handleBinaryFrame(byte[] frame) throws IOException {
+        BinaryCodec.Frame decoded;
+        try {
+            decoded = BinaryCodec.decodeFrame(frame, 0, frame.length);
+        } catch (IOException e) {
+            sendFormattedMessage(Commands.PARSE_ERROR, new ParseError());
+            return;
+        }
+        if (decoded.command() == null) {
+            sendFormattedMessage(Commands.UNKNOWN_COMMAND, new ParseError());
+            return;
+        }
+        decodedPayload = decoded.payload();
+        try {
+            handleCommand(decoded.command(), null, decoded.requestId());
+        } finally {
+            decodedPayload = null;
+        }
+    }
+
+    /**
+     * Handles a command from a text frame, or from a binary frame with its payload in decodedPayload.
+     * The answers sent meanwhile get the request id.
+     *
+     * @param command     The command.
+     * @param jsonPayload The JSON payload of a text frame, null for a binary frame.
+     * @param id          The request id, or null for none.
+     */
+    private void handleCommand(String command, String jsonPayload, Long id) throws IOException {
+        requestId = id;
+        requestResponse = id == null ? null : Commands.responseTo(command);
+        try {
+            dispatchCommand(command, jsonPayload);
+        } finally {
+            requestId = null;
+        }
+    }
+
+    private void dispatchCommand(String command, String jsonPayload) throws IOException {
+        if (!server.getRateLimiter().admit(rateLimits, command)) {
+            sendFormattedMessage(Commands.responseTo(command), new ErrorResp("ERROR", 21000));
+            return;
+        }
         try {
-            System.out.println(jsonPayload);
+            System.out.println(jsonPayload != null ? jsonPayload : decodedPayload);
             switch (command) {
                 case Commands.ENTER -> handleLogin(jsonPayload);
                 case Commands.BROADCAST_REQ -> handleBroadcast(jsonPayload);
                 case Commands.PONG -> handlePong();
                 case Commands.BYE -> handleLogout();
-                case Commands.LIST_REQ -> sendListOfConnectedClients();
+                case Commands.LIST_REQ -> sendListOfConnectedClients(jsonPayload);
                 case Commands.PRIVATE_MSG_REQ -> handlePrivateMessage(jsonPayload);
+                case Commands.PRIVATE_MSG_ACK -> handlePrivateMessageAck(jsonPayload);
                 case Commands.RPS_START_REQ -> handleRpsStart(jsonPayload);
                 case Commands.RPS_INVITE_RESP -> handleRpsInviteResponse(jsonPayload);
                 case Commands.RPS_MOVE_REQ -> handleRpsMove(jsonPayload);
@@ -116,6 +233,16 @@ public class ClientHandler implements Runnable {
                 case Commands.TTT_START_REQ -> handleTttStart(jsonPayload);
                 case Commands.TTT_INVITE_RESP -> handleTttInviteResponse(jsonPayload);
                 case Commands.TTT_MOVE_REQ -> handleTttMove(jsonPayload);
+                case Commands.TTT_WATCH_REQ -> handleTttWatch(jsonPayload);
+                case Commands.TTT_UNWATCH_REQ -> handleTttUnwatch();
+                case Commands.LEADERBOARD_REQ -> handleLeaderboardRequest(jsonPayload);
+                case Commands.ROOM_JOIN_REQ -> handleRoomJoin(jsonPayload);
+                case Commands.ROOM_LEAVE_REQ -> handleRoomLeave(jsonPayload);
+                case Commands.ROOM_MSG_REQ -> handleRoomMessage(jsonPayload);
+                case Commands.HISTORY_REQ -> handleHistoryRequest(jsonPayload);
+                case Commands.SEARCH_REQ -> handleSearchRequest(jsonPayload);
+                case Commands.FRAMING_REQ -> handleFramingRequest(jsonPayload);
+                case Commands.COMPRESS_REQ -> handleCompressRequest(jsonPayload);
                 default -> sendFormattedMessage(Commands.UNKNOWN_COMMAND, new ParseError());
 
             }
@@ -132,7 +259,7 @@ public class ClientHandler implements Runnable {
      * @throws JsonProcessingException If the payload cannot be parsed.
      */
     private void handleFileTransferResponse(String jsonPayload) throws JsonProcessingException {
-        FileTransferResp response = mapper.readValue(jsonPayload, FileTransferResp.class);
+        FileTransferResp response = readPayload(jsonPayload, FileTransferResp.class);
 
         FileTransferDetails matched = null;
         for (FileTransferDetails ftd : pendingTransfers) {
@@ -185,7 +312,7 @@ public class ClientHandler implements Runnable {
             return;
         }
 
-        FileTransferReq request = mapper.readValue(jsonPayload, FileTransferReq.class);
+        FileTransferReq request = readPayload(jsonPayload, FileTransferReq.class);
         String sender = request.sender();
         String receiver = request.receiver();
         String filename = request.filename();
@@ -220,7 +347,7 @@ public class ClientHandler implements Runnable {
             return;
         }
 
-        RpsStartReq request = mapper.readValue(jsonPayload, RpsStartReq.class);
+        RpsStartReq request = readPayload(jsonPayload, RpsStartReq.class);
         String receiver = request.receiver();
 
         if (receiver.equals(username)) {
@@ -273,7 +400,7 @@ public class ClientHandler implements Runnable {
 
         String opponent = playerToPlayer.get(username);
 
-        RpsMove move = mapper.readValue(jsonPayload, RpsMove.class);
+        RpsMove move = readPayload(jsonPayload, RpsMove.class);
         String choice = move.choice();
 
         playerMoves.put(username, choice);
@@ -297,7 +424,7 @@ public class ClientHandler implements Runnable {
             return;
         }
 
-        RpsInviteResp response = mapper.readValue(jsonPayload, RpsInviteResp.class);
+        RpsInviteResp response = readPayload(jsonPayload, RpsInviteResp.class);
         String opponent = playerToPlayer.get(username);
 
         if (opponent == null) {
@@ -347,6 +474,8 @@ public class ClientHandler implements Runnable {
         playerToPlayer.remove(player1);
         playerToPlayer.remove(player2);
 
+        server.getLeaderboard().recordResult(GameType.RPS, player1, player2, winner);
+
         Map<String, String> choices = Map.of(player1, move1, player2, move2);
 
         RpsResult result = new RpsResult(winner, choices);
@@ -354,6 +483,43 @@ public class ClientHandler implements Runnable {
         clients.get(player2).sendFormattedMessage(Commands.RPS_RESULT, result);
     }
 
+    /**
+     * Sends the highest rated players of a game and the requesting player's own rank.
+     *
+     * @param jsonPayload The JSON payload containing the game type and the number of players to return.
+     * @throws JsonProcessingException If the payload cannot be parsed.
+     */
+    private void handleLeaderboardRequest(String jsonPayload) throws JsonProcessingException {
+        if (username == null) {
+            sendFormattedMessage(Commands.LEADERBOARD_RESP, new LeaderboardResp("ERROR", 14000, null, null, null));
+            return;
+        }
+
+        LeaderboardReq request = readPayload(jsonPayload, LeaderboardReq.class);
+        GameType gameType = GameType.fromName(request.game());
+        if (gameType == null) {
+            sendFormattedMessage(Commands.LEADERBOARD_RESP, new LeaderboardResp("ERROR", 14001, request.game(), null, null));
+            return;
+        }
+
+        int limit = request.limit() <= 0 ? DEFAULT_LEADERBOARD_LIMIT : Math.min(request.limit(), MAX_LEADERBOARD_LIMIT);
+        RatingTable table = server.getLeaderboard().getTable(gameType);
+
+        List<LeaderboardEntry> top = new ArrayList<>();
+        for (PlayerRating rating : table.top(limit)) {
+            top.add(toLeaderboardEntry(table, rating));
+        }
+        PlayerRating own = table.get(username);
+        LeaderboardEntry self = own == null ? null : toLeaderboardEntry(table, own);
+
+        sendFormattedMessage(Commands.LEADERBOARD_RESP, new LeaderboardResp("OK", 0, gameType.name(), top, self));
+    }
+
+    private LeaderboardEntry toLeaderboardEntry(RatingTable table, PlayerRating rating) {
+        return new LeaderboardEntry(rating.username(), table.rankOf(rating.rating()), rating.rating(),
+                rating.wins(), rating.losses(), rating.ties());
+    }
+
     /**
      * Handles private messages between two clients.
      * Validates the receiver and forwards the message or responds with an error.
@@ -367,9 +533,22 @@ public class ClientHandler implements Runnable {
             return;
         }
 
-        PrivateMsgReq privateMsgReq = mapper.readValue(jsonPayload, PrivateMsgReq.class);
+        PrivateMsgReq privateMsgReq = readPayload(jsonPayload, PrivateMsgReq.class);
         String receiverUsername = privateMsgReq.receiver();
-        String messageContent = privateMsgReq.message();
+        if (receiverUsername == null) {
+            sendFormattedMessage(Commands.PRIVATE_MSG_RESP, new PrivateMsgResp("ERROR", 10002));
+            return;
+        }
+        if (privateMsgReq.message() == null || privateMsgReq.message().isBlank()) {
+            sendFormattedMessage(Commands.PRIVATE_MSG_RESP, new PrivateMsgResp("ERROR", 10007));
+            return;
+        }
+        ContentFilter.Verdict verdict = checkContent(privateMsgReq.message());
+        if (verdict.rejected()) {
+            sendFormattedMessage(Commands.PRIVATE_MSG_RESP, new PrivateMsgResp("ERROR", 10006));
+            return;
+        }
+        String messageContent = verdict.message();
 
         if (receiverUsername.equals(username)) {
             sendFormattedMessage(Commands.PRIVATE_MSG_RESP, new PrivateMsgResp("ERROR", 10003));
@@ -377,18 +556,127 @@ public class ClientHandler implements Runnable {
         }
 
         ClientHandler receiver = clients.get(receiverUsername);
-        if (receiver == null) {
+        // Messages are only stored for users that logged in before, so a typo never creates an inbox
+        if (receiver == null && (!server.getKnownUsers().contains(receiverUsername) || TttBot.USERNAME.equals(receiverUsername))) {
             sendFormattedMessage(Commands.PRIVATE_MSG_RESP, new PrivateMsgResp("ERROR", 10002));
             return;
         }
 
-        PrivateMsg privateMsg = new PrivateMsg(username, messageContent);
-        receiver.sendFormattedMessage(Commands.PRIVATE_MSG, privateMsg);
+        String formattedMessage = formatMessage(Commands.PRIVATE_MSG, new PrivateMsg(username, messageContent));
+        if (receiver == null) {
+            storeOfflineMessage(receiverUsername, formattedMessage, messageContent);
+            return;
+        }
+
+        DeliveryWindow window = receiver.deliveryWindow;
+        if (window == null) {
+            server.getJournal().append("@" + receiverUsername, formattedMessage);
+            receiver.writer.println(formattedMessage);
+            sendFormattedMessage(Commands.PRIVATE_MSG_RESP, new PrivateMsgResp("OK", 0));
+            return;
+        }
+
+        // The id is taken and the message written under the lock of the window, so the receiver
+        // gets its messages in the order of their ids and a cumulative acknowledgement is safe
+        synchronized (window) {
+            if (window.isClosed()) {
+                // The receiver disconnected after it was looked up
+                storeOfflineMessage(receiverUsername, formattedMessage, messageContent);
+                return;
+            }
+            if (window.isFull()) {
+                sendFormattedMessage(Commands.PRIVATE_MSG_RESP, new PrivateMsgResp("ERROR", 10005));
+                return;
+            }
+            long id = server.getJournal().append("@" + receiverUsername, formattedMessage);
+            window.add(id, username, messageContent, System.currentTimeMillis());
+            receiver.writer.println(formatMessage(Commands.PRIVATE_MSG, new PrivateMsg(username, messageContent, id)));
+        }
         sendFormattedMessage(Commands.PRIVATE_MSG_RESP, new PrivateMsgResp("OK", 0));
     }
 
+    /**
+     * Keeps a private message for a receiver that is offline, but could log in later.
+     *
+     * @param receiverUsername The username of the receiver.
+     * @param formattedMessage The PRIVATE_MSG frame, as it is journaled.
+     * @param messageContent   The text of the message.
+     * @throws JsonProcessingException If the response cannot be serialized.
+     */
+    private void storeOfflineMessage(String receiverUsername, String formattedMessage, String messageContent) throws JsonProcessingException {
+        long id = server.getJournal().append("@" + receiverUsername, formattedMessage);
+        if (server.getOfflineInbox().store(receiverUsername, id, username, messageContent)) {
+            sendFormattedMessage(Commands.PRIVATE_MSG_RESP, new PrivateMsgResp("STORED", 0));
+        } else {
+            sendFormattedMessage(Commands.PRIVATE_MSG_RESP, new PrivateMsgResp("ERROR", 10004));
+        }
+    }
+
+    /**
+     * Removes the acknowledged private messages from the delivery window. There is no response.
+     *
+     * @param jsonPayload The JSON payload containing the highest id the client received.
+     * @throws JsonProcessingException If the payload cannot be parsed.
+     */
+    private void handlePrivateMessageAck(String jsonPayload) throws JsonProcessingException {
+        PrivateMsgAck ack = readPayload(jsonPayload, PrivateMsgAck.class);
+        if (deliveryWindow != null) {
+            deliveryWindow.acknowledge(ack.id());
+        }
+    }
+
+    /**
+     * Sends the private messages that were stored while the client was offline, oldest first.
+     * All messages are written with a single write and flush instead of one per message.
+     * For a client that acknowledges messages, they enter the delivery window; messages that do not
+     * fit in the window go back to the inbox without their id. They get a new one at the next login,
+     * because by then the client may have acknowledged higher ids.
+     * The caller holds the lock of the window, so no live message gets in between.
+     *
+     * @throws JsonProcessingException If a message cannot be serialized.
+     */
+    private void deliverOfflineMessages() throws JsonProcessingException {
+        List<InboxMessage> messages = server.getOfflineInbox().drain(username);
+        if (messages.isEmpty()) {
+            return;
+        }
+        StringBuilder batch = new StringBuilder();
+        Object lock = deliveryWindow != null ? deliveryWindow : this;
+        synchronized (lock) {
+            // Once a message gets a new id, the ones after it need one too, so the ids keep increasing
+            boolean renumber = false;
+            for (InboxMessage message : messages) {
+                Long id = null;
+                if (deliveryWindow != null) {
+                    if (deliveryWindow.isFull()) {
+                        server.getOfflineInbox().store(username, new InboxMessage(InboxMessage.NO_ID, message.sender(), message.message(), message.timestamp()));
+                        continue;
+                    }
+                    renumber |= message.id() == InboxMessage.NO_ID;
+                    id = renumber ? newMessageId(message) : message.id();
+                    deliveryWindow.add(id, message.sender(), message.message(), message.timestamp());
+                }
+                batch.append(formatMessage(Commands.PRIVATE_MSG, new PrivateMsg(message.sender(), message.message(), id))).append('\n');
+            }
+            writer.print(batch);
+            writer.flush();
+        }
+    }
+
+    /**
+     * Takes a new id for a private message that is delivered again. The journal gets a record without
+     * the text, so the message is not indexed twice.
+     *
+     * @param message The message.
+     * @return The new id.
+     * @throws JsonProcessingException If the record cannot be serialized.
+     */
+    private long newMessageId(InboxMessage message) throws JsonProcessingException {
+        return server.getJournal().append("@" + username, formatMessage(Commands.PRIVATE_MSG, new PrivateMsg(message.sender(), null)));
+    }
+
     private void handleLogin(String jsonPayload) throws IOException {
-        if (jsonPayload == null || jsonPayload.isBlank()) {
+        if (decodedPayload == null && (jsonPayload == null || jsonPayload.isBlank())) {
             sendFormattedMessage(Commands.ENTER_RESP, new EnterResp("ERROR", 5001));
             return;
         }
@@ -397,40 +685,233 @@ public class ClientHandler implements Runnable {
             return;
         }
 
-        Enter enterMessage = mapper.readValue(jsonPayload, Enter.class);
+        Enter enterMessage = readPayload(jsonPayload, Enter.class);
         String newUsername = enterMessage.username();
+        if (newUsername == null) {
+            sendFormattedMessage(Commands.ENTER_RESP, new EnterResp("ERROR", 5001));
+            return;
+        }
 
-        if (clients.containsKey(newUsername)) {
+        if (enterMessage.resumeToken() != null && resumeSession(newUsername, enterMessage.resumeToken())) {
+            return;
+        }
+        if (clients.containsKey(newUsername) || TttBot.USERNAME.equals(newUsername)) {
             sendFormattedMessage(Commands.ENTER_RESP, new EnterResp("ERROR", 5000));
-        } else if (!newUsername.matches("[A-Za-z0-9_]{3,14}")) {
+        } else if (!newUsername.matches(USERNAME_PATTERN)) {
             sendFormattedMessage(Commands.ENTER_RESP, new EnterResp("ERROR", 5001));
         } else {
             this.username = newUsername;
-            clients.put(newUsername, this);
-
-            sendFormattedMessage(Commands.ENTER_RESP, new EnterResp("OK", 0));
-            broadcastMessage(Commands.JOINED, new Joined(newUsername), this);
+            if (enterMessage.acks()) {
+                deliveryWindow = new DeliveryWindow(ServerConfig.DELIVERY_WINDOW);
+            }
+            if (enterMessage.resumable()) {
+                resumeToken = newResumeToken();
+            }
+            // Before the login is visible: recording a new username writes to a file, and while that delays
+            // the ENTER_RESP, the JOINED of a user who logged in just before could get ahead of it
+            server.getKnownUsers().add(newUsername);
+            // Senders take the lock of the window as well, so a live private message waits until the
+            // stored ones are in the window and gets a higher id
+            synchronized (deliveryWindow != null ? deliveryWindow : this) {
+                clients.put(newUsername, this);
+                server.getRooms().join(RoomManager.LOBBY, this);
+                rooms.add(RoomManager.LOBBY);
+
+                // Before the ENTER_RESP, so a user who logs in right after this one does not get the JOINED
+                announcePresence(Commands.JOINED, newUsername);
+                sendFormattedMessage(Commands.ENTER_RESP, new EnterResp("OK", 0, resumeToken, null));
+                deliverOfflineMessages();
+            }
+            if (enterMessage.presenceDeltas()) {
+                presenceSubscriber = frame -> writer.println(frame);
+                server.getPresence().subscribe(presenceSubscriber);
+            }
             startPingTimer();
+            if (ServerConfig.HISTORY_REPLAY_ON_LOGIN) {
+                replayHistory(server.getRooms().getRoom(RoomManager.LOBBY), ServerConfig.HISTORY_REPLAY_LIMIT);
+            }
+            resumeTttMatch();
+        }
+    }
+
+    /**
+     * Continues the session of a client whose connection was lost, on this connection. The client takes
+     * over the username, rooms, watched match and delivery window of the session without a JOINED, and
+     * receives the private messages it had not acknowledged when the connection was lost, followed by
+     * everything sent to it since then.
+     *
+     * @param name  The username of the session.
+     * @param token The resume token the client received for the session.
+     * @return False if there is no session waiting to be resumed with this username and token.
+     * @throws IOException If the queued frames cannot be written.
+     */
+    private boolean resumeSession(String name, String token) throws IOException {
+        ClientHandler previous = clients.get(name);
+        if (previous == null || !previous.release(token)) {
+            return false;
+        }
+
+        username = name;
+        deliveryWindow = previous.deliveryWindow;
+        resumeToken = newResumeToken();
+        sendFormattedMessage(Commands.ENTER_RESP, new EnterResp("OK", 0, resumeToken, true));
+        StringBuilder redelivery = new StringBuilder();
+        for (InboxMessage message : previous.unacknowledgedWhenParked) {
+            redelivery.append(formatMessage(Commands.PRIVATE_MSG, new PrivateMsg(message.sender(), message.message(), message.id()))).append('\n');
+        }
+        writer.print(redelivery);
+        // From here on, frames sent to the previous handler are forwarded to this connection after the queued ones
+        previous.parkedWriter.resumeTo(writer);
+
+        clients.replace(name, previous, this);
+        for (String room : previous.rooms) {
+            server.getRooms().join(room, this);
+            rooms.add(room);
+            server.getRooms().leave(room, previous);
+        }
+        if (previous.presenceSubscriber != null) {
+            server.getPresence().unsubscribe(previous.presenceSubscriber);
+            presenceSubscriber = frame -> writer.println(frame);
+            server.getPresence().subscribe(presenceSubscriber);
+        }
+        TttMatch watched = previous.watchedTttMatch;
+        if (watched != null) {
+            watched.getSpectators().add(matchSink);
+            watched.getSpectators().remove(previous.matchSink);
+            watchedTttMatch = watched;
+        }
+        startPingTimer();
+        return true;
+    }
+
+    /**
+     * Hands a parked session over to a new connection, if the token matches and no frames were lost.
+     * After this, the handler is closed and never disconnects the session.
+     *
+     * @param token The resume token presented by the new connection.
+     * @return True if the session may be resumed.
+     */
+    private synchronized boolean release(String token) {
+        if (!parked || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), resumeToken.getBytes(StandardCharsets.UTF_8))
+                || !parkedWriter.isComplete()) {
+            return false;
+        }
+        parked = false;
+        closed = true;
+        return true;
+    }
+
+    /**
+     * Called when the connection to the client is lost or the client stops answering PINGs.
+     * A resumable session is parked: it keeps its place in the clients, rooms and games while its frames
+     * are queued, so the client can resume it within the grace period. Any other session is disconnected.
+     */
+    private void connectionLost() {
+        boolean parking = false;
+        synchronized (this) {
+            if (closed || parked) {
+                return;
+            }
+            if (username != null && resumeToken != null) {
+                parking = true;
+                parked = true;
+                parkedWriter = new ParkedWriter(ServerConfig.SESSION_QUEUE_CHARS,
+                        () -> server.getWorkers().execute(this::expireParkedSession));
+                // Private messages are sent under the lock of the window, so none can slip through
+                // between taking the unacknowledged messages and replacing the writer
+                Object lock = deliveryWindow != null ? deliveryWindow : this;
+                synchronized (lock) {
+                    unacknowledgedWhenParked = deliveryWindow != null ? deliveryWindow.unacknowledged() : List.of();
+                    writer = new PrintWriter(parkedWriter, true);
+                }
+            }
+        }
+
+        if (!parking) {
+            disconnectClient();
+            return;
+        }
+        if (pingTask != null) {
+            pingTask.cancel(false);
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.out.println("Error closing socket: " + e.getMessage());
+        }
+        server.getScheduler().schedule(() -> server.getWorkers().execute(this::expireParkedSession),
+                ServerConfig.SESSION_RESUME_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Disconnects a parked session that was not resumed in time.
+     */
+    private void expireParkedSession() {
+        synchronized (this) {
+            if (!parked) {
+                return;
+            }
+            parked = false;
+        }
+        disconnectClient();
+    }
+
+    private static String newResumeToken() {
+        byte[] bytes = new byte[18];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Continues the Tic-Tac-Toe match the player was in when the connection dropped, if it is still
+     * within the grace period and the opponent is online and not in another game.
+     * Both players receive the current state of the match.
+     *
+     * @throws JsonProcessingException If the state cannot be serialized.
+     */
+    private void resumeTttMatch() throws JsonProcessingException {
+        // Otherwise the match stays suspended, so it can still continue after another login
+        TttMatch match = server.getSuspendedTttGames().resume(username, suspended -> {
+            String player = suspended.getOpponent(username);
+            return player.equals(TttBot.USERNAME) || clients.containsKey(player) && !playerToPlayer.containsKey(player);
+        });
+        if (match == null) {
+            return;
+        }
+
+        String opponent = match.getOpponent(username);
+        boolean againstBot = opponent.equals(TttBot.USERNAME);
+        ClientHandler opponentHandler = clients.get(opponent);
+        if (!againstBot && opponentHandler == null) {
+            return;
+        }
+
+        server.getTttGames().put(username, match);
+        playerToPlayer.put(username, opponent);
+        TttSnapshot snapshot = match.snapshot();
+        sendFormattedMessage(Commands.TTT_RESUME, snapshot);
+
+        if (!againstBot) {
+            server.getTttGames().put(opponent, match);
+            playerToPlayer.put(opponent, username);
+            opponentHandler.sendFormattedMessage(Commands.TTT_RESUME, snapshot);
         }
     }
 
     /**
      * Starts a periodic "PING" timer to check the heartbeat of the client connection.
      * If no "PONG" is received within a timeout period, the client is disconnected.
+     * The timers only hand the writes to the workers of the server, as a write blocks while the client
+     * does not read.
      */
     private void startPingTimer() {
-        pingTimer = new Timer();
-        pingTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                if (awaitingPong) {
-                    sendHangup();
-                    disconnectClient();
-                } else {
-                    sendPing();
-                }
+        pingTask = server.getScheduler().scheduleAtFixedRate(() -> server.getWorkers().execute(() -> {
+            if (awaitingPong) {
+                hangUp();
+            } else {
+                sendPing();
             }
-        }, PING_INTERVAL_MS, PING_INTERVAL_MS);
+        }), PING_INTERVAL_MS, PING_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -444,21 +925,63 @@ public class ClientHandler implements Runnable {
             sendFormattedMessage(Commands.PING, new Ping());
             System.out.println(Commands.PING + " -> " + username);
             // Start a timeout for PONG
-            new Timer().schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    if (awaitingPong) {
-                        sendHangup();
-                        System.out.println("[HANGUP]" + username);
-                        disconnectClient();
-                    }
+            server.getScheduler().schedule(() -> {
+                if (awaitingPong) {
+                    server.getWorkers().execute(this::hangUp);
                 }
-            }, PONG_TIMEOUT_MS);
+            }, PONG_TIMEOUT_MS, TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             System.out.println("Error sending PING: " + e.getMessage());
         }
     }
 
+    /**
+     * Disconnects a client that did not answer a PING in time.
+     */
+    private void hangUp() {
+        if (awaitingPong) {
+            sendHangup();
+            System.out.println("[HANGUP]" + username);
+            connectionLost();
+        }
+    }
+
+    /**
+     * Closes the connection if a write to the client has been blocked for too long, i.e. the client stopped
+     * reading. The thread of the handler then sees the connection end; closing the socket itself never blocks.
+     *
+     * @param now          A System.nanoTime().
+     * @param timeoutNanos How long a write may block.
+     */
+    public void closeIfStalled(long now, long timeoutNanos) {
+        SocketWriter socketWriter = this.socketWriter;
+        if (socketWriter != null && socketWriter.stalledNanos(now) > timeoutNanos) {
+            System.out.println("Closing the connection of " + username + ", which stopped reading");
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.out.println("Error closing socket: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tells the player that the opponent did not come back to their suspended Tic-Tac-Toe match within the
+     * grace period, so the player won it. Nothing is sent while the player is in another match.
+     *
+     * @param match The expired match.
+     */
+    public void sendTttForfeit(TttMatch match) {
+        if (server.getTttGames().containsKey(username)) {
+            return;
+        }
+        try {
+            writer.println(formatMessage(Commands.TTT_RESULT, new TttResult(username, match.boardAsMap())));
+        } catch (JsonProcessingException e) {
+            System.out.println("Error notifying " + username + " about the expired match: " + e.getMessage());
+        }
+    }
+
     /**
      * Sends a "HANGUP" message to the client indicating that the server is closing the connection
      * due to a failed "PING"/"PONG" check.
@@ -490,7 +1013,7 @@ public class ClientHandler implements Runnable {
 
     /**
      * Handles broadcast messages sent by a client.
-     * Broadcasts the message to all connected clients except the sender.
+     * Broadcasts the message to all members of the lobby, which every logged-in client is a member of, except the sender.
      *
      * @param jsonPayload The JSON payload containing the broadcast message.
      * @throws JsonProcessingException If the payload cannot be parsed.
@@ -499,44 +1022,335 @@ public class ClientHandler implements Runnable {
         if (username == null) {
             sendFormattedMessage(Commands.BROADCAST_RESP, new BroadcastResp("ERROR", 6000));
         } else {
-            BroadcastReq broadcastReq = mapper.readValue(jsonPayload, BroadcastReq.class);
-            String messageContent = broadcastReq.message();
-            broadcastMessage(Commands.BROADCAST, new Broadcast(username, messageContent), this);
+            BroadcastReq broadcastReq = readPayload(jsonPayload, BroadcastReq.class);
+            ContentFilter.Verdict verdict = checkContent(broadcastReq.message());
+            if (verdict.rejected()) {
+                sendFormattedMessage(Commands.BROADCAST_RESP, new BroadcastResp("ERROR", 6001));
+                return;
+            }
+            String messageContent = verdict.message();
+            sendToRoom(RoomManager.LOBBY, Commands.BROADCAST, new Broadcast(username, messageContent), this);
             sendFormattedMessage(Commands.BROADCAST_RESP, new BroadcastResp("OK", 0));
+            notifyMentionedUsers(messageContent);
+        }
+    }
+
+    /**
+     * Checks a message of this client against the content filter and reports it if it is flagged.
+     *
+     * @param message The message the client wants to send.
+     * @return The verdict of the content filter.
+     */
+    private ContentFilter.Verdict checkContent(String message) {
+        ContentFilter.Verdict verdict = server.getContentFilter().check(message);
+        if (verdict.flagged() || verdict.rejected()) {
+            System.out.println("Content filter " + (verdict.rejected() ? "rejected" : "flagged") + " a message from " + username + ": " + message);
+        }
+        return verdict;
+    }
+
+    /**
+     * Sends a MENTION to every online user mentioned in a broadcast with @username, except the sender.
+     *
+     * @param messageContent The broadcast message.
+     * @throws JsonProcessingException If the message cannot be serialized.
+     */
+    private void notifyMentionedUsers(String messageContent) throws JsonProcessingException {
+        if (messageContent == null) {
+            return;
+        }
+        List<String> mentioned = MentionScanner.scan(messageContent, clients::containsKey, ServerConfig.MAX_MENTIONS);
+        if (mentioned.isEmpty()) {
+            return;
+        }
+        String formattedMessage = formatMessage(Commands.MENTION, new Mention(username, messageContent));
+        for (String name : mentioned) {
+            ClientHandler client = clients.get(name);
+            if (client != null && client != this) {
+                client.writer.println(formattedMessage);
+            }
         }
     }
 
     private void handleLogout() throws JsonProcessingException {
         if (username != null) {
-            clients.remove(username);
-            broadcastMessage(Commands.LEFT, new Joined(username), this);
+            returnUnacknowledgedMessages();
+            if (clients.remove(username, this)) {
+                announcePresence(Commands.LEFT, username);
+            }
         }
         sendFormattedMessage(Commands.BYE_RESP, new BroadcastResp("OK", 0));
         disconnectClient();
     }
 
-    private void broadcastMessage(String command, Object message, ClientHandler excludeClient) throws JsonProcessingException {
-        String formattedMessage = formatMessage(command, message);
+    /**
+     * Tells the other clients that a user logged in or out: clients that receive presence deltas with the
+     * next PRESENCE_DELTA, all other clients immediately with a JOINED or LEFT.
+     *
+     * @param command  JOINED or LEFT.
+     * @param username The user that logged in or out.
+     * @throws JsonProcessingException If the message cannot be serialized.
+     */
+    private void announcePresence(String command, String username) throws JsonProcessingException {
+        if (command.equals(Commands.JOINED)) {
+            server.getDirectory().add(username);
+            server.getPresence().userJoined(username);
+        } else {
+            server.getDirectory().remove(username);
+            server.getPresence().userLeft(username);
+        }
+        String formattedMessage = formatMessage(command, new Joined(username));
         for (ClientHandler client : clients.values()) {
+            if (client != this && client.presenceSubscriber == null) {
+                client.writer.println(formattedMessage);
+            }
+        }
+    }
+
+    /**
+     * Sends a message to every member of a room and adds it to the history of the room and the journal.
+     * The message is formatted once for all members, the history and the journal.
+     *
+     * @param room          The name of the room.
+     * @param command       The command type.
+     * @param message       The message object to be serialized and sent.
+     * @param excludeClient The client that does not receive the message, usually the sender.
+     * @throws JsonProcessingException If the message cannot be serialized.
+     */
+    private void sendToRoom(String room, String command, Object message, ClientHandler excludeClient) throws JsonProcessingException {
+        Room target = server.getRooms().getRoom(room);
+        if (target == null) {
+            return;
+        }
+        String formattedMessage = formatMessage(command, message);
+        target.getHistory().append(formattedMessage);
+        server.getJournal().append(room, formattedMessage);
+        for (ClientHandler client : target.getMembers()) {
             if (client != excludeClient) {
                 client.writer.println(formattedMessage);
             }
         }
     }
 
+    /**
+     * Sends the recent messages of a room the client is a member of, as they were originally sent,
+     * followed by a HISTORY_RESP with the number of messages.
+     *
+     * @param jsonPayload The JSON payload containing the room (the lobby if empty) and the maximum number of messages.
+     * @throws JsonProcessingException If the payload cannot be parsed.
+     */
+    private void handleHistoryRequest(String jsonPayload) throws JsonProcessingException {
+        if (username == null) {
+            sendFormattedMessage(Commands.HISTORY_RESP, new HistoryResp("ERROR", 16000, null, 0));
+            return;
+        }
+
+        HistoryReq request = readPayload(jsonPayload, HistoryReq.class);
+        String roomName = request.room() == null || request.room().isBlank() ? RoomManager.LOBBY : request.room();
+        Room room = server.getRooms().getRoom(roomName);
+        if (room == null || !rooms.contains(roomName)) {
+            sendFormattedMessage(Commands.HISTORY_RESP, new HistoryResp("ERROR", 16001, roomName, 0));
+            return;
+        }
+
+        int count = replayHistory(room, request.limit() <= 0 ? DEFAULT_HISTORY_LIMIT : request.limit());
+        sendFormattedMessage(Commands.HISTORY_RESP, new HistoryResp("OK", 0, roomName, count));
+    }
+
+    /**
+     * Searches the journaled messages for all words of a query and sends the newest matches.
+     * Private messages are only found by their sender and receiver.
+     *
+     * @param jsonPayload The JSON payload containing the query and the maximum number of results.
+     * @throws JsonProcessingException If the payload cannot be parsed.
+     */
+    private void handleSearchRequest(String jsonPayload) throws JsonProcessingException {
+        if (username == null) {
+            sendFormattedMessage(Commands.SEARCH_RESP, new SearchResp("ERROR", 17000, null));
+            return;
+        }
+
+        SearchReq request = readPayload(jsonPayload, SearchReq.class);
+        List<String> query = request.query() == null ? List.of() : Tokenizer.tokenize(request.query());
+        if (query.isEmpty()) {
+            sendFormattedMessage(Commands.SEARCH_RESP, new SearchResp("ERROR", 17001, null));
+            return;
+        }
+
+        int limit = request.limit() <= 0 ? SearchIndex.DEFAULT_LIMIT : Math.min(request.limit(), SearchIndex.MAX_LIMIT);
+        List<SearchResult> results = server.getSearchIndex().search(username, rooms, query, limit);
+        sendFormattedMessage(Commands.SEARCH_RESP, new SearchResp("OK", 0, results));
+    }
+
+    /**
+     * Writes the most recent frames of a room to this client without re-encoding them.
+     *
+     * @param room  The room.
+     * @param limit The maximum number of frames.
+     * @return The number of frames written.
+     */
+    private int replayHistory(Room room, int limit) {
+        return room.getHistory().replay(limit, writer::println);
+    }
+
+    /**
+     * Adds the client to a room. The room is created if it does not exist yet.
+     *
+     * @param jsonPayload The JSON payload containing the name of the room.
+     * @throws JsonProcessingException If the payload cannot be parsed.
+     */
+    private void handleRoomJoin(String jsonPayload) throws JsonProcessingException {
+        if (username == null) {
+            sendFormattedMessage(Commands.ROOM_JOIN_RESP, new RoomJoinResp("ERROR", 15000));
+            return;
+        }
+
+        RoomJoinReq request = readPayload(jsonPayload, RoomJoinReq.class);
+        if (!RoomManager.isValidName(request.room())) {
+            sendFormattedMessage(Commands.ROOM_JOIN_RESP, new RoomJoinResp("ERROR", 15001));
+            return;
+        }
+
+        server.getRooms().join(request.room(), this);
+        rooms.add(request.room());
+        sendFormattedMessage(Commands.ROOM_JOIN_RESP, new RoomJoinResp("OK", 0));
+    }
+
+    /**
+     * Removes the client from a room. The lobby cannot be left.
+     *
+     * @param jsonPayload The JSON payload containing the name of the room.
+     * @throws JsonProcessingException If the payload cannot be parsed.
+     */
+    private void handleRoomLeave(String jsonPayload) throws JsonProcessingException {
+        if (username == null) {
+            sendFormattedMessage(Commands.ROOM_LEAVE_RESP, new RoomLeaveResp("ERROR", 15000));
+            return;
+        }
+
+        RoomLeaveReq request = readPayload(jsonPayload, RoomLeaveReq.class);
+        if (RoomManager.LOBBY.equals(request.room())) {
+            sendFormattedMessage(Commands.ROOM_LEAVE_RESP, new RoomLeaveResp("ERROR", 15003));
+            return;
+        }
+        if (request.room() == null || !server.getRooms().leave(request.room(), this)) {
+            sendFormattedMessage(Commands.ROOM_LEAVE_RESP, new RoomLeaveResp("ERROR", 15002));
+            return;
+        }
+
+        rooms.remove(request.room());
+        sendFormattedMessage(Commands.ROOM_LEAVE_RESP, new RoomLeaveResp("OK", 0));
+    }
+
+    /**
+     * Sends a message to all other members of a room the client is a member of.
+     *
+     * @param jsonPayload The JSON payload containing the name of the room and the message.
+     * @throws JsonProcessingException If the payload cannot be parsed.
+     */
+    private void handleRoomMessage(String jsonPayload) throws JsonProcessingException {
+        if (username == null) {
+            sendFormattedMessage(Commands.ROOM_MSG_RESP, new RoomMsgResp("ERROR", 15000));
+            return;
+        }
+
+        RoomMsgReq request = readPayload(jsonPayload, RoomMsgReq.class);
+        if (request.room() == null || !rooms.contains(request.room())) {
+            sendFormattedMessage(Commands.ROOM_MSG_RESP, new RoomMsgResp("ERROR", 15002));
+            return;
+        }
+
+        ContentFilter.Verdict verdict = checkContent(request.message());
+        if (verdict.rejected()) {
+            sendFormattedMessage(Commands.ROOM_MSG_RESP, new RoomMsgResp("ERROR", 15004));
+            return;
+        }
+
+        sendToRoom(request.room(), Commands.ROOM_MSG, new RoomMsg(request.room(), username, verdict.message()), this);
+        sendFormattedMessage(Commands.ROOM_MSG_RESP, new RoomMsgResp("OK", 0));
+    }
+
     /**
      * Sends the list of all connected clients to the requesting client (including the client that makes the request).
+     * The responses come from the user directory, which only serializes the list again after a login or logout.
      *
-     * @throws JsonProcessingException If the client list cannot be serialized.
+     * @param jsonPayload The list request, optionally with a prefix and a page.
+     * @throws JsonProcessingException If the request cannot be parsed.
      */
-    private void sendListOfConnectedClients() throws JsonProcessingException {
+    private void sendListOfConnectedClients(String jsonPayload) throws JsonProcessingException {
         if (username == null) {
             sendFormattedMessage(Commands.LIST_RESP, new ListResp("ERROR", 9000, null));
             return;
         }
 
-        List<String> clientList = List.copyOf(clients.keySet());
-        sendFormattedMessage(Commands.LIST_RESP, new ListResp("OK", 0, clientList));
+        ListReq listReq = readPayload(jsonPayload, ListReq.class);
+        if (listReq.offset() == 0 && listReq.limit() == 0 && (listReq.prefix() == null || listReq.prefix().isEmpty())) {
+            writer.println(withRequestId(Commands.LIST_RESP, server.getDirectory().listAll()));
+        } else {
+            writer.println(withRequestId(Commands.LIST_RESP, server.getDirectory().list(listReq.prefix(), listReq.offset(), listReq.limit())));
+        }
+    }
+
+    /**
+     * Switches the connection to binary frames (see BinaryCodec). The answer is the last text frame;
+     * every later frame in both directions is binary.
+     *
+     * @param jsonPayload The framing request.
+     * @throws JsonProcessingException If the request cannot be parsed.
+     */
+    private void handleFramingRequest(String jsonPayload) throws JsonProcessingException {
+        FramingReq request = readPayload(jsonPayload, FramingReq.class);
+        if (binaryFraming) {
+            sendFormattedMessage(Commands.FRAMING_RESP, new FramingResp("ERROR", 22001));
+        } else if (!BinaryCodec.FRAMING.equals(request.framing())) {
+            sendFormattedMessage(Commands.FRAMING_RESP, new FramingResp("ERROR", 22000));
+        } else {
+            // Frames of other threads are written either before the answer as text, or after it as binary
+            synchronized (socketWriter) {
+                sendFormattedMessage(Commands.FRAMING_RESP, new FramingResp("OK", 0));
+                socketWriter.useBinaryFrames();
+            }
+            binaryFraming = true;
+        }
+    }
+
+    /**
+     * Compresses the connection with a raw deflate stream in each direction (see SocketWriter). The answer
+     * is the last uncompressed frame; every later byte in both directions is compressed.
+     *
+     * @param jsonPayload The compression request.
+     * @throws IOException If the request cannot be parsed or the answer cannot be sent.
+     */
+    private void handleCompressRequest(String jsonPayload) throws IOException {
+        CompressReq request = readPayload(jsonPayload, CompressReq.class);
+        if (compressed) {
+            sendFormattedMessage(Commands.COMPRESS_RESP, new CompressResp("ERROR", 23001));
+        } else if (!Utils.COMPRESSION.equals(request.compression())) {
+            sendFormattedMessage(Commands.COMPRESS_RESP, new CompressResp("ERROR", 23000));
+        } else if (!server.getCompressionSlots().tryAcquire()) {
+            sendFormattedMessage(Commands.COMPRESS_RESP, new CompressResp("ERROR", 23002));
+        } else {
+            compressed = true;
+            // Frames of other threads are written either before the answer uncompressed, or after it compressed
+            synchronized (socketWriter) {
+                sendFormattedMessage(Commands.COMPRESS_RESP, new CompressResp("OK", 0));
+                socketWriter.useCompression(ServerConfig.COMPRESSION_LEVEL);
+            }
+            reader.useCompression();
+        }
+    }
+
+    /**
+     * Frees the zlib state of a compressed connection and returns its slot, once the connection is closed.
+     */
+    private void releaseCompression() {
+        if (reader != null) {
+            reader.close();
+        }
+        if (compressed) {
+            socketWriter.endCompression();
+            server.getCompressionSlots().release();
+        }
     }
 
     /**
@@ -547,7 +1361,27 @@ public class ClientHandler implements Runnable {
      * @throws JsonProcessingException If the message cannot be serialized.
      */
     private void sendFormattedMessage(String command, Object message) throws JsonProcessingException {
-        writer.println(formatMessage(command, message));
+        writer.println(withRequestId(command, formatMessage(command, message)));
+    }
+
+    /**
+     * Adds the id of the request being handled to a frame that answers it: its response, or a PARSE_ERROR
+     * or UNKNOWN_COMMAND. Frames sent by other threads, e.g. a FILE_TRANSFER_RESP when the receiver
+     * declines, are no direct answer and keep no id.
+     *
+     * @param command The command of the frame.
+     * @param frame   The frame.
+     * @return The frame, with the request id if it answers the request being handled.
+     */
+    private String withRequestId(String command, String frame) {
+        Long id = requestId;
+        if (id == null || Thread.currentThread() != handlerThread) {
+            return frame;
+        }
+        if (command.equals(requestResponse) || command.equals(Commands.PARSE_ERROR) || command.equals(Commands.UNKNOWN_COMMAND)) {
+            return MessageCodec.withRequestId(frame, id);
+        }
+        return frame;
     }
 
     /**
@@ -560,14 +1394,38 @@ public class ClientHandler implements Runnable {
      */
     private String formatMessage(String command, Object message) throws JsonProcessingException {
         try {
-            return command + " " + mapper.writeValueAsString(message);
+            return MessageCodec.encode(command, message);
         } catch (JsonProcessingException e) {
             System.out.println("Error formatting message: " + e.getMessage());
             return "";
         }
     }
 
+    /**
+     * Parses the payload of the command being handled, or takes it from the binary frame being handled.
+     *
+     * @param jsonPayload The JSON payload of a text frame, null for a binary frame.
+     * @param type        The record of the command.
+     * @return The payload.
+     * @throws JsonProcessingException If the JSON payload cannot be parsed.
+     */
+    private <T> T readPayload(String jsonPayload, Class<T> type) throws JsonProcessingException {
+        return jsonPayload == null ? type.cast(decodedPayload) : MessageCodec.decode(jsonPayload, type);
+    }
+
     private void disconnectClient() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (pingTask != null) {
+            pingTask.cancel(false);
+        }
+        if (presenceSubscriber != null) {
+            server.getPresence().unsubscribe(presenceSubscriber);
+        }
         try {
             if (socket != null && !socket.isClosed()) {
                 socket.close();
@@ -576,38 +1434,117 @@ public class ClientHandler implements Runnable {
             System.out.println("Error closing socket: " + e.getMessage());
         }
 
+        stopWatchingTtt();
+        for (String room : rooms) {
+            server.getRooms().leave(room, this);
+        }
+        rooms.clear();
         if (username != null) {
+            server.getTttInvites().remove(username);
+            TttMatch suspendedMatch = suspendTttMatch();
             String opponent = playerToPlayer.remove(username);
             if (opponent != null) {
                 playerToPlayer.remove(opponent);
                 ClientHandler opponentHandler = clients.get(opponent);
                 if (opponentHandler != null) {
                     try {
-                        opponentHandler.sendFormattedMessage(Commands.RPS_INVITE_DECLINED, new RpsInviteDeclined());
+                        if (suspendedMatch != null) {
+                            opponentHandler.sendFormattedMessage(Commands.TTT_PAUSED, new TttPaused(username, SuspendedTttGames.GRACE_PERIOD_SECONDS));
+                        } else {
+                            opponentHandler.sendFormattedMessage(Commands.RPS_INVITE_DECLINED, new RpsInviteDeclined());
+                        }
                     } catch (JsonProcessingException e) {
                         System.out.println("Error notifying opponent about disconnection: " + e.getMessage());
                     }
                 }
             }
-            clients.remove(username);
+            // Before the username is free again, so a new login of the user finds the messages in the inbox
+            returnUnacknowledgedMessages();
+            if (clients.remove(username, this)) {
+                // Legacy clients only get LEFT after a BYE, so only subscribers of deltas hear about this
+                server.getDirectory().remove(username);
+                server.getPresence().userLeft(username);
+            }
         }
     }
+
+    /**
+     * Closes the delivery window and puts the messages the client never acknowledged back in its
+     * offline inbox, so they are delivered again after the next login.
+     */
+    private void returnUnacknowledgedMessages() {
+        if (deliveryWindow == null) {
+            return;
+        }
+        synchronized (deliveryWindow) {
+            for (InboxMessage message : deliveryWindow.close()) {
+                if (!server.getOfflineInbox().store(username, message)) {
+                    System.out.println("Inbox of " + username + " is full, dropping unacknowledged message " + message.id());
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the Tic-Tac-Toe match of a disconnecting player out of play and keeps it for the grace period,
+     * so the player can continue it after logging in again. Spectators stop watching.
+     *
+     * @return The suspended match, or null if the player was not in a match.
+     */
+    private TttMatch suspendTttMatch() {
+        TttMatch match = server.getTttGames().remove(username);
+        if (match == null) {
+            return null;
+        }
+        server.getTttGames().remove(match.getOpponent(username), match);
+        server.getSuspendedTttGames().suspend(username, match);
+
+        synchronized (match) {
+            try {
+                String frame = formatMessage(Commands.TTT_PAUSED, new TttPaused(username, SuspendedTttGames.GRACE_PERIOD_SECONDS));
+                for (Consumer<String> spectator : match.getSpectators()) {
+                    match.getFeed().publish(spectator, frame);
+                }
+            } catch (JsonProcessingException e) {
+                System.out.println("Error notifying spectators about disconnection: " + e.getMessage());
+            }
+            match.getSpectators().clear();
+        }
+        match.getFeed().drain();
+        return match;
+    }
+
     private void handleTttStart(String jsonPayload) throws JsonProcessingException {
         if (username == null) {
             sendFormattedMessage(Commands.TTT_START_RESP, new TttStartResp("ERROR", 12001, null, null));
             return;
         }
 
-        TttStartReq request = mapper.readValue(jsonPayload, TttStartReq.class);
+        TttStartReq request = readPayload(jsonPayload, TttStartReq.class);
         String receiver = request.receiver();
+        // A missing board size means the classic 3x3 board
+        int rows = request.rows() == 0 ? TttMatch.SIZE : request.rows();
+        int cols = request.cols() == 0 ? TttMatch.SIZE : request.cols();
+        int winLength = request.winLength() == 0 ? TttMatch.SIZE : request.winLength();
 
         if (receiver.equals(username)) {
             sendFormattedMessage(Commands.TTT_START_RESP, new TttStartResp("ERROR", 12003, null, null));
             return;
         }
 
+        if (!TttMatch.isValidSize(rows, cols, winLength)) {
+            sendFormattedMessage(Commands.TTT_START_RESP, new TttStartResp("ERROR", 12012, null, null));
+            return;
+        }
+
+        boolean againstBot = receiver.equals(TttBot.USERNAME);
+        if (againstBot && (rows != TttMatch.SIZE || cols != TttMatch.SIZE || winLength != TttMatch.SIZE)) {
+            sendFormattedMessage(Commands.TTT_START_RESP, new TttStartResp("ERROR", 12013, null, null));
+            return;
+        }
+
         ClientHandler receiverHandler = clients.get(receiver);
-        if (receiverHandler == null) {
+        if (receiverHandler == null && !againstBot) {
             sendFormattedMessage(Commands.TTT_START_RESP, new TttStartResp("ERROR", 12002, null, null));
             return;
         }
@@ -629,11 +1566,18 @@ public class ClientHandler implements Runnable {
             return;
         }
 
+        if (againstBot) {
+            startTttBotGame();
+            return;
+        }
+
         playerToPlayer.put(username, receiver);
         playerToPlayer.put(receiver, username);
+        // The player who initiated the game plays X and makes the first move
+        server.getTttInvites().put(username, new TttMatch(username, receiver, rows, cols, winLength));
 
         sendFormattedMessage(Commands.TTT_START_RESP, new TttStartResp("OK", 0, username, receiver));
-        receiverHandler.sendFormattedMessage(Commands.TTT_INVITE, new TttInvite(username));
+        receiverHandler.sendFormattedMessage(Commands.TTT_INVITE, new TttInvite(username, rows, cols, winLength));
     }
 
     private void handleTttInviteResponse(String jsonPayload) throws JsonProcessingException {
@@ -642,7 +1586,7 @@ public class ClientHandler implements Runnable {
             return;
         }
 
-        TttInviteResp response = mapper.readValue(jsonPayload, TttInviteResp.class);
+        TttInviteResp response = readPayload(jsonPayload, TttInviteResp.class);
         String opponent = playerToPlayer.get(username);
 
         if (opponent == null) {
@@ -654,22 +1598,23 @@ public class ClientHandler implements Runnable {
 
         switch (response.status()) {
             case "ACCEPT":
-                // Initialize a new game in tttGames
-                String gameKey = username + ":" + opponent;
-                Map<String, String> board = initializeTttBoard();
-                server.getTttGames().put(gameKey, board);
-
-                // Set the first player (X) as the player who initiated the game
-                server.getTttCurrentPlayer().put(gameKey, username);
+                TttMatch match = server.getTttInvites().remove(opponent);
+                if (match == null) {
+                    match = new TttMatch(opponent, username);
+                }
+                server.getTttGames().put(username, match);
+                server.getTttGames().put(opponent, match);
 
                 // Add players to playerToPlayer
                 playerToPlayer.put(username, opponent);
                 playerToPlayer.put(opponent, username);
 
-                sendFormattedMessage(Commands.TTT_READY, null);
-                opponentHandler.sendFormattedMessage(Commands.TTT_READY, null);
+                TttReady ready = new TttReady(match.getRows(), match.getCols(), match.getWinLength());
+                sendFormattedMessage(Commands.TTT_READY, ready);
+                opponentHandler.sendFormattedMessage(Commands.TTT_READY, ready);
                 break;
             case "DECLINE":
+                server.getTttInvites().remove(opponent);
                 playerToPlayer.remove(username);
                 playerToPlayer.remove(opponent);
                 opponentHandler.sendFormattedMessage(Commands.TTT_INVITE_DECLINED, "{}");
@@ -677,134 +1622,173 @@ public class ClientHandler implements Runnable {
                 break;
         }
     }
-    private Map<String, String> initializeTttBoard() {
-        Map<String, String> board = new HashMap<>();
 
-        // Initialize a 3x3 board with empty cells
-        for (int row = 0; row < 3; row++) {
-            for (int col = 0; col < 3; col++) {
-                board.put(row + "," + col, ""); // Empty cell
-            }
+    /**
+     * Starts a Tic-Tac-Toe game against the bot. The bot accepts immediately and the player plays X.
+     * The bot is never added to playerToPlayer, so any number of players can play against it at the same time.
+     *
+     * @throws JsonProcessingException If a response cannot be serialized.
+     */
+    private void startTttBotGame() throws JsonProcessingException {
+        TttMatch match = new TttMatch(username, TttBot.USERNAME);
+        server.getTttGames().put(username, match);
+        playerToPlayer.put(username, TttBot.USERNAME);
+
+        sendFormattedMessage(Commands.TTT_START_RESP, new TttStartResp("OK", 0, username, TttBot.USERNAME));
+        sendFormattedMessage(Commands.TTT_READY, new TttReady(TttMatch.SIZE, TttMatch.SIZE, TttMatch.SIZE));
+    }
+
+    /**
+     * Plays the bot's reply to a move. The move is a single table lookup, so it runs on the
+     * thread of the player instead of a thread of its own.
+     *
+     * @param match The match against the bot.
+     * @throws JsonProcessingException If a message cannot be serialized.
+     */
+    private void playTttBotMove(TttMatch match) throws JsonProcessingException {
+        TttMoveResp moveResp;
+        synchronized (match) {
+            int cell = server.getTttBot().bestMove(match.getXBits(), match.getOBits());
+            moveResp = match.play(TttBot.USERNAME, cell / match.getCols(), cell % match.getCols());
+            publishToMatch(match, formatMessage(Commands.TTT_BOARD_DELTA, match.getLastDelta()));
         }
+        match.getFeed().drain();
 
-        return board;
+        switch (moveResp.status()) {
+            case "WIN" -> resolveTttGame(TttBot.USERNAME, match);
+            case "TIE" -> resolveTttGame(null, match);
+        }
     }
+
+    /**
+     * Handles a Tic-Tac-Toe move. The move is sent to both players and all spectators as a single
+     * delta frame that is encoded once, instead of the full board.
+     *
+     * @param jsonPayload The JSON payload containing the row and column of the move.
+     * @throws JsonProcessingException If the payload cannot be parsed.
+     */
     private void handleTttMove(String jsonPayload) throws JsonProcessingException {
         if (!playerToPlayer.containsKey(username)) {
             sendFormattedMessage(Commands.TTT_MOVE_RESP, new TttMoveResp("ERROR", 12005));
             return;
         }
 
-        TttMove move = mapper.readValue(jsonPayload, TttMove.class);
-        int row = move.row();
-        int col = move.col();
+        TttMove move = readPayload(jsonPayload, TttMove.class);
 
-        String opponent = playerToPlayer.get(username);
-        String gameKey = username + ":" + opponent;
-
-        // Get the game board from tttGames
-        Map<String, String> board = server.getTttGames().get(gameKey);
-
-        if (board == null) {
+        TttMatch match = server.getTttGames().get(username);
+        if (match == null) {
             sendFormattedMessage(Commands.TTT_MOVE_RESP, new TttMoveResp("ERROR", 12006)); // Game not found
             return;
         }
 
-        // Check if it's the player's turn
-        String currentPlayer = server.getTttCurrentPlayer().get(gameKey);
-        if (!username.equals(currentPlayer)) {
-            sendFormattedMessage(Commands.TTT_MOVE_RESP, new TttMoveResp("ERROR", 12009)); // Not your turn
-            return;
+        TttMoveResp moveResp;
+        synchronized (match) {
+            moveResp = match.play(username, move.row(), move.col());
+            if (!moveResp.status().equals("ERROR")) {
+                publishToMatch(match, formatMessage(Commands.TTT_BOARD_DELTA, match.getLastDelta()));
+                if (moveResp.status().equals("OK")) {
+                    // Behind the delta, which another thread may still be writing
+                    match.getFeed().publish(matchSink, withRequestId(Commands.TTT_MOVE_RESP, formatMessage(Commands.TTT_MOVE_RESP, moveResp)));
+                }
+            }
         }
-
-        // Check if the cell is already occupied
-        String cellKey = row + "," + col;
-        if (!board.get(cellKey).isEmpty()) {
-            sendFormattedMessage(Commands.TTT_MOVE_RESP, new TttMoveResp("ERROR", 12007)); // Invalid move
-            return;
+        match.getFeed().drain();
+
+        switch (moveResp.status()) {
+            case "ERROR" -> sendFormattedMessage(Commands.TTT_MOVE_RESP, moveResp);
+            case "WIN" -> resolveTttGame(username, match);
+            case "TIE" -> resolveTttGame(null, match);
+            default -> {
+                if (match.getPlayerO().equals(TttBot.USERNAME)) {
+                    playTttBotMove(match);
+                }
+            }
         }
+    }
 
-        // Update the board with the player's move
-        String symbol = username.equals(currentPlayer) ? "X" : "O";
-        board.put(cellKey, symbol);
-
-        // Switch turns
-        String nextPlayer = username.equals(currentPlayer) ? opponent : username;
-        server.getTttCurrentPlayer().put(gameKey, nextPlayer);
+    private void resolveTttGame(String winner, TttMatch match) throws JsonProcessingException {
+        String player1 = match.getPlayerX();
+        String player2 = match.getPlayerO();
 
-        // Send the updated board to both players
-        sendFormattedMessage(Commands.TTT_BOARD_UPDATE, new TttBoardUpdate(board));
-        clients.get(opponent).sendFormattedMessage(Commands.TTT_BOARD_UPDATE, new TttBoardUpdate(board));
+        // Remove the game from tttGames
+        server.getTttGames().remove(player1, match);
+        server.getTttGames().remove(player2, match);
+        playerToPlayer.remove(player1);
+        playerToPlayer.remove(player2);
+        // Games against the bot are not ranked
+        if (!player2.equals(TttBot.USERNAME)) {
+            server.getLeaderboard().recordResult(GameType.TTT, player1, player2, winner);
+        }
 
-        // Check for a win or tie
-        if (checkWin(board, symbol)) {
-            resolveTttGame(username, gameKey);
-        } else if (checkTie(board)) {
-            resolveTttGame(null, gameKey);
-        } else {
-            sendFormattedMessage(Commands.TTT_MOVE_RESP, new TttMoveResp("OK", 0));
+        // Notify both players and all spectators of the result
+        synchronized (match) {
+            publishToMatch(match, formatMessage(Commands.TTT_RESULT, new TttResult(winner, match.boardAsMap())));
+            match.getSpectators().clear();
         }
+        match.getFeed().drain();
     }
 
-    private boolean checkWin(Map<String, String> board, String symbol) {
-        // Check rows
-        for (int row = 0; row < 3; row++) {
-            if (board.get(row + ",0").equals(symbol) &&
-                    board.get(row + ",1").equals(symbol) &&
-                    board.get(row + ",2").equals(symbol)) {
-                return true;
+    /**
+     * Queues an already formatted frame for both players and every spectator of a match. The caller holds
+     * the lock of the match and drains its feed after releasing the lock.
+     *
+     * @param match The match to publish to.
+     * @param frame The formatted message.
+     */
+    private void publishToMatch(TttMatch match, String frame) {
+        for (String player : List.of(match.getPlayerX(), match.getPlayerO())) {
+            ClientHandler playerHandler = clients.get(player);
+            if (playerHandler != null) {
+                match.getFeed().publish(playerHandler.matchSink, frame);
             }
         }
-
-        // Check columns
-        for (int col = 0; col < 3; col++) {
-            if (board.get("0," + col).equals(symbol) &&
-                    board.get("1," + col).equals(symbol) &&
-                    board.get("2," + col).equals(symbol)) {
-                return true;
-            }
+        for (Consumer<String> spectator : match.getSpectators()) {
+            match.getFeed().publish(spectator, frame);
         }
+    }
 
-        // Check diagonals
-        if (board.get("0,0").equals(symbol) &&
-                board.get("1,1").equals(symbol) &&
-                board.get("2,2").equals(symbol)) {
-            return true;
+    /**
+     * Starts watching the Tic-Tac-Toe match of a player. The spectator receives a snapshot of the
+     * match once, followed by the deltas of all later moves.
+     *
+     * @param jsonPayload The JSON payload containing the username of one of the players.
+     * @throws JsonProcessingException If the payload cannot be parsed.
+     */
+    private void handleTttWatch(String jsonPayload) throws JsonProcessingException {
+        if (username == null) {
+            sendFormattedMessage(Commands.TTT_WATCH_RESP, new TttWatchResp("ERROR", 12010));
+            return;
         }
 
-        if (board.get("0,2").equals(symbol) &&
-                board.get("1,1").equals(symbol) &&
-                board.get("2,0").equals(symbol)) {
-            return true;
+        TttWatchReq request = readPayload(jsonPayload, TttWatchReq.class);
+        TttMatch match = request.player() == null ? null : server.getTttGames().get(request.player());
+        if (match == null) {
+            sendFormattedMessage(Commands.TTT_WATCH_RESP, new TttWatchResp("ERROR", 12011));
+            return;
         }
 
-        return false;
-    }
-
-    private boolean checkTie(Map<String, String> board) {
-        for (int row = 0; row < 3; row++) {
-            for (int col = 0; col < 3; col++) {
-                if (board.get(row + "," + col).isEmpty()) {
-                    return false; // At least one cell is empty
-                }
-            }
+        stopWatchingTtt();
+        // The snapshot goes through the feed as well, so it reaches the spectator before the deltas after it
+        synchronized (match) {
+            match.getSpectators().add(matchSink);
+            watchedTttMatch = match;
+            match.getFeed().publish(matchSink, withRequestId(Commands.TTT_WATCH_RESP, formatMessage(Commands.TTT_WATCH_RESP, new TttWatchResp("OK", 0))));
+            match.getFeed().publish(matchSink, formatMessage(Commands.TTT_SNAPSHOT, match.snapshot()));
         }
-
-        // If no empty cells and no winner, it's a tie
-        return true;
+        match.getFeed().drain();
     }
 
-    private void resolveTttGame(String winner, String gameKey) throws JsonProcessingException {
-        String player1 = gameKey.split(":")[0];
-        String player2 = gameKey.split(":")[1];
-
-        // Remove the game from tttGames
-        server.getTttGames().remove(gameKey);
+    private void handleTttUnwatch() throws JsonProcessingException {
+        stopWatchingTtt();
+        sendFormattedMessage(Commands.TTT_UNWATCH_RESP, new TttWatchResp("OK", 0));
+    }
 
-        // Notify both players of the result
-        TttResult result = new TttResult(winner, server.getTttGames().get(gameKey));
-        clients.get(player1).sendFormattedMessage(Commands.TTT_RESULT, result);
-        clients.get(player2).sendFormattedMessage(Commands.TTT_RESULT, result);
+    private void stopWatchingTtt() {
+        TttMatch match = watchedTttMatch;
+        if (match != null) {
+            match.getSpectators().remove(matchSink);
+            watchedTttMatch = null;
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,259 @@
+package server.handlers;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Splits the bytes from a client into lines ending in \n or \r\n, with a maximum line length.
+ *
+ * Unlike BufferedReader.readLine(), which keeps growing its line for a client that never sends a
+ * line break, the buffer of the framer never grows beyond the maximum line length. The line breaks
+ * are found in the raw bytes, and only complete lines are decoded as UTF-8. A line that is too long
+ * is reported as soon as the maximum is exceeded, and the rest of it is skipped without buffering.
+ *
+ * The buffer is borrowed from a pool when the first byte of a message arrives and returned as soon as
+ * all buffered bytes are read, so a client that is waiting for its next message holds no buffer.
+ *
+ * After useCompression(), the bytes are inflated from a raw deflate stream before they are framed.
+ */
+class LineFramer {
+    /**
+     * Thrown for a line longer than the maximum. The framer skips the rest of the line, so the next
+     * read returns the line after it.
+     */
+    static class FrameTooLongException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        FrameTooLongException(int maxBytes) {
+            super("Line longer than " + maxBytes + " bytes");
+        }
+    }
+
+    // The inflater's own buffer of compressed bytes
+    private static final int INFLATE_BUFFER_BYTES = 512;
+
+    // The socket stream, or the inflate stream over it
+    private InputStream in;
+    private Inflater inflater;
+    private final int maxLineBytes;
+    private final BufferPool pool;
+    // Only set while bytes are buffered, or while a too long line is skipped
+    private byte[] buffer;
+    // The unread bytes are buffer[start..end); buffer[start..scanned) is known to contain no \n
+    private int start;
+    private int scanned;
+    private int end;
+    private boolean skipping;
+    // The bytes left of a binary frame that is too long
+    private int skipBytes;
+
+    /**
+     * @param in           The stream to read.
+     * @param maxLineBytes The maximum length of a line in bytes, without the line break.
+     * @param pool         The pool to borrow the buffer from.
+     */
+    LineFramer(InputStream in, int maxLineBytes, BufferPool pool) {
+        this.in = in;
+        this.maxLineBytes = maxLineBytes;
+        this.pool = pool;
+    }
+
+    /**
+     * Reads the next line.
+     *
+     * @return The line without its line break, or null at the end of the stream.
+     * @throws FrameTooLongException If the line is longer than the maximum.
+     * @throws IOException           If the stream cannot be read.
+     */
+    String readLine() throws IOException {
+        while (true) {
+            int newline = indexOfNewline();
+            if (newline >= 0) {
+                int lineStart = start;
+                start = newline + 1;
+                scanned = start;
+                if (skipping) {
+                    skipping = false;
+                    continue;
+                }
+                int lineEnd = newline > lineStart && buffer[newline - 1] == '\r' ? newline - 1 : newline;
+                if (lineEnd - lineStart > maxLineBytes) {
+                    throw new FrameTooLongException(maxLineBytes);
+                }
+                return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+            }
+
+            if (skipping) {
+                start = 0;
+                scanned = 0;
+                end = 0;
+            } else if (end - start > maxLineBytes + 1) {
+                // Even with a \r at the end, the line is too long
+                skipping = true;
+                start = 0;
+                scanned = 0;
+                end = 0;
+                throw new FrameTooLongException(maxLineBytes);
+            }
+
+            if (!fill()) {
+                if (skipping || start == end) {
+                    release();
+                    return null;
+                }
+                // Like BufferedReader, the last line does not need a line break
+                String line = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+                start = end;
+                scanned = end;
+                return line;
+            }
+        }
+    }
+
+    /**
+     * Reads the next binary frame, for a client that switched to binary framing (see BinaryCodec).
+     * The length of the frame is limited to the maximum line length.
+     *
+     * @return The frame without its length, or null at the end of the stream.
+     * @throws FrameTooLongException If the frame is longer than the maximum.
+     * @throws IOException           If the stream cannot be read or ends within a frame.
+     */
+    byte[] readBinaryFrame() throws IOException {
+        while (true) {
+            if (skipBytes > 0) {
+                int skipped = Math.min(skipBytes, end - start);
+                skipBytes -= skipped;
+                start += skipped;
+                scanned = start;
+            }
+            if (skipBytes == 0) {
+                int length = 0;
+                for (int i = start, shift = 0; i < end && shift <= 28; i++, shift += 7) {
+                    length |= (buffer[i] & 0x7F) << shift;
+                    if (buffer[i] >= 0) {
+                        int frameStart = i + 1;
+                        if (length < 0) {
+                            throw new IOException("Malformed binary frame length");
+                        } else if (length > maxLineBytes) {
+                            skipBytes = length;
+                            start = frameStart;
+                            scanned = start;
+                            throw new FrameTooLongException(maxLineBytes);
+                        }
+                        if (end - frameStart >= length) {
+                            start = frameStart + length;
+                            scanned = start;
+                            return Arrays.copyOfRange(buffer, frameStart, start);
+                        }
+                        break;
+                    } else if (shift == 28) {
+                        throw new IOException("Malformed binary frame length");
+                    }
+                }
+            }
+
+            if (!fill()) {
+                if (skipBytes == 0 && start == end) {
+                    release();
+                    return null;
+                }
+                throw new EOFException("Stream ended within a binary frame");
+            }
+        }
+    }
+
+    /**
+     * Inflates every following byte. Bytes the client sent after the request to compress and that are
+     * already buffered are inflated as well.
+     */
+    void useCompression() {
+        InputStream source = in;
+        if (start < end) {
+            source = new SequenceInputStream(new ByteArrayInputStream(Arrays.copyOfRange(buffer, start, end)), in);
+        }
+        release();
+        inflater = new Inflater(true);
+        in = new InflaterInputStream(source, inflater, INFLATE_BUFFER_BYTES);
+    }
+
+    /**
+     * Frees the buffer and the native memory of the inflater. Only called by the reading thread, once
+     * it stopped reading.
+     */
+    void close() {
+        release();
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    private int indexOfNewline() {
+        for (int i = scanned; i < end; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        scanned = end;
+        return -1;
+    }
+
+    /**
+     * Reads more bytes after the unread bytes, first making room by moving the unread bytes to the
+     * start of the buffer or growing it up to the maximum line length.
+     *
+     * @return False at the end of the stream.
+     */
+    private boolean fill() throws IOException {
+        if (start == end && !skipping) {
+            // Wait for the next message without a buffer
+            release();
+            int first = in.read();
+            if (first < 0) {
+                return false;
+            }
+            buffer = pool.borrow();
+            buffer[0] = (byte) first;
+            start = 0;
+            scanned = 0;
+            end = 1;
+            return true;
+        }
+        if (end == buffer.length) {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                scanned -= start;
+                start = 0;
+            } else {
+                byte[] pooled = buffer;
+                // Room for a line with \r\n, or for a binary frame with its length
+                buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, maxLineBytes + 8));
+                pool.release(pooled);
+            }
+        }
+        int read = in.read(buffer, end, buffer.length - end);
+        if (read < 0) {
+            return false;
+        }
+        end += read;
+        return true;
+    }
+
+    private void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+        start = 0;
+        scanned = 0;
+        end = 0;
+    }
+}
@@ -0,0 +1,69 @@
+package server.handlers;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Takes the place of the socket writer of a session whose connection was lost, while the client
+ * can still resume it. Everything written is queued, up to a maximum number of characters, until
+ * the session is resumed; then the queue is written to the new connection and later writes are
+ * passed straight through.
+ */
+class ParkedWriter extends Writer {
+    private final int maxChars;
+    private final Runnable onOverflow;
+    private final StringBuilder queue = new StringBuilder();
+    private Writer target;
+    private boolean overflowed;
+
+    /**
+     * @param maxChars   The maximum number of queued characters.
+     * @param onOverflow Called once when the queue is full; later writes are dropped.
+     */
+    ParkedWriter(int maxChars, Runnable onOverflow) {
+        this.maxChars = maxChars;
+        this.onOverflow = onOverflow;
+    }
+
+    @Override
+    public synchronized void write(char[] buffer, int offset, int length) throws IOException {
+        if (target != null) {
+            target.write(buffer, offset, length);
+        } else if (queue.length() + length <= maxChars) {
+            queue.append(buffer, offset, length);
+        } else if (!overflowed) {
+            overflowed = true;
+            onOverflow.run();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (target != null) {
+            target.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return False if frames were dropped because the queue was full.
+     */
+    synchronized boolean isComplete() {
+        return !overflowed;
+    }
+
+    /**
+     * Writes the queued frames to the new connection with a single write and forwards every later write to it.
+     *
+     * @param newTarget The writer of the new connection.
+     */
+    synchronized void resumeTo(Writer newTarget) throws IOException {
+        newTarget.write(queue.toString());
+        newTarget.flush();
+        queue.setLength(0);
+        target = newTarget;
+    }
+}
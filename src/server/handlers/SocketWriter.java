@@ -0,0 +1,258 @@
+package server.handlers;
+
+import Utilities.BinaryCodec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes characters as UTF-8 straight into a buffer borrowed from a pool, and writes the buffer to
+ * the socket on flush. The buffer is returned on every flush, so between messages the writer holds
+ * nothing but a few fields, unlike the buffered writer and encoder of a PrintWriter over an OutputStream.
+ *
+ * After useBinaryFrames(), every text frame written is converted to a binary frame (see BinaryCodec)
+ * once its line break is written, so the rest of the server keeps writing text frames to every client.
+ *
+ * After useCompression(), the bytes go through a raw deflate stream that is sync flushed on every flush,
+ * so each message, or each batch of messages written before one flush, can be inflated as soon as it
+ * arrives, while the dictionary of the stream carries over from one message to the next.
+ *
+ * Meant to be wrapped in a PrintWriter with automatic flushing, which flushes after every message.
+ *
+ * A write to the socket blocks while the client does not read; stalledNanos() tells how long, so the
+ * server can close the connection of a client that stopped reading (see ServerConfig.WRITE_TIMEOUT_MILLIS).
+ */
+class SocketWriter extends Writer {
+    // The last frame that was converted, as a broadcast writes the same string to every client
+    private static volatile ConvertedFrame lastConverted;
+
+    // The deflater's own buffer, only used for what a flush has to write at once
+    private static final int DEFLATE_BUFFER_BYTES = 1024;
+
+    private final OutputStream socketOut;
+    private final BufferPool pool;
+    // The socket stream, or the deflate stream over it
+    private OutputStream out;
+    private Deflater deflater;
+    private byte[] buffer;
+    private int count;
+    // The first half of a surrogate pair that was split over two writes
+    private char highSurrogate;
+    private boolean binary;
+    // In binary mode, the text frame written so far: either a whole string or the characters of a builder
+    private String pendingText;
+    private StringBuilder pendingChars;
+    // The System.nanoTime() at which the write to the socket in progress started, 0 if none is
+    private volatile long writeStarted;
+
+    private record ConvertedFrame(String text, byte[] frame) {
+    }
+
+    SocketWriter(OutputStream out, BufferPool pool) {
+        this.socketOut = out;
+        this.out = out;
+        this.pool = pool;
+    }
+
+    /**
+     * Converts every following frame to a binary frame. Frames already written are sent as text.
+     */
+    synchronized void useBinaryFrames() {
+        binary = true;
+    }
+
+    /**
+     * Compresses every following byte. Frames already written are sent uncompressed.
+     *
+     * @param level The deflate level, 1-9.
+     * @throws IOException If the frames already written cannot be sent.
+     */
+    synchronized void useCompression(int level) throws IOException {
+        flush();
+        deflater = new Deflater(level, true);
+        out = new DeflaterOutputStream(socketOut, deflater, DEFLATE_BUFFER_BYTES, true);
+    }
+
+    /**
+     * Frees the native memory of the deflater once the connection is closed. Any later write goes to the
+     * closed socket and fails there.
+     */
+    synchronized void endCompression() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+            out = socketOut;
+        }
+    }
+
+    @Override
+    public synchronized void write(char[] chars, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            if (binary) {
+                appendText(chars[i]);
+            } else {
+                encode(chars[i]);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void write(String text, int offset, int length) throws IOException {
+        if (binary && pendingText == null && (pendingChars == null || pendingChars.isEmpty())
+                && offset == 0 && length == text.length() && text.indexOf('\n') < 0) {
+            // Usually a whole frame, with the line break written next; keep it to recognize a converted frame
+            pendingText = text;
+            return;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            if (binary) {
+                appendText(text.charAt(i));
+            } else {
+                encode(text.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * @param now A System.nanoTime().
+     * @return How long the write to the socket in progress has been blocked, 0 if none is in progress.
+     */
+    long stalledNanos(long now) {
+        long started = writeStarted;
+        return started == 0 ? 0 : now - started;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            writeBuffer(true);
+        } finally {
+            pool.release(buffer);
+            buffer = null;
+            count = 0;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            try {
+                out.close();
+            } finally {
+                endCompression();
+            }
+        }
+    }
+
+    private void writeBuffer(boolean flush) throws IOException {
+        writeStarted = System.nanoTime();
+        try {
+            out.write(buffer, 0, count);
+            if (flush) {
+                out.flush();
+            }
+        } finally {
+            writeStarted = 0;
+        }
+    }
+
+    private void appendText(char c) throws IOException {
+        if (c == '\n') {
+            String text = pendingText;
+            if (pendingChars != null && !pendingChars.isEmpty()) {
+                text = (text == null ? "" : text) + pendingChars;
+                // Do not keep the room of a large frame
+                pendingChars = pendingChars.capacity() > 1024 ? null : pendingChars.delete(0, pendingChars.length());
+            }
+            pendingText = null;
+            if (text != null && !text.isEmpty()) {
+                writeFrame(text);
+            }
+            return;
+        }
+        if (pendingChars == null) {
+            pendingChars = new StringBuilder();
+        }
+        pendingChars.append(c);
+    }
+
+    private void writeFrame(String text) throws IOException {
+        if (text.endsWith("\r")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        byte[] frame;
+        ConvertedFrame last = lastConverted;
+        if (last != null && last.text == text) {
+            frame = last.frame;
+        } else {
+            try {
+                frame = BinaryCodec.textToFrame(text);
+            } catch (IOException | IllegalArgumentException e) {
+                // Only frames the server formats itself get here, so this is a bug rather than a client error
+                System.out.println("Dropped a frame without a binary form: " + e.getMessage());
+                return;
+            }
+            lastConverted = new ConvertedFrame(text, frame);
+        }
+        if (buffer == null) {
+            buffer = pool.borrow();
+        }
+        for (int written = 0; written < frame.length; ) {
+            if (count == buffer.length) {
+                writeBuffer(false);
+                count = 0;
+            }
+            int length = Math.min(frame.length - written, buffer.length - count);
+            System.arraycopy(frame, written, buffer, count, length);
+            count += length;
+            written += length;
+        }
+    }
+
+    private void encode(char c) throws IOException {
+        if (buffer == null) {
+            buffer = pool.borrow();
+        } else if (count > buffer.length - 4) {
+            writeBuffer(false);
+            count = 0;
+        }
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            // An unpaired high surrogate, encoded like the standard encoder does
+            buffer[count++] = '?';
+            encode(c);
+            return;
+        }
+        if (c < 0x80) {
+            buffer[count++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[count++] = (byte) (0xC0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer[count++] = '?';
+        } else {
+            buffer[count++] = (byte) (0xE0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+}
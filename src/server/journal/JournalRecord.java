@@ -0,0 +1,12 @@
+package server.journal;
+
+/**
+ * A message read back from the journal.
+ *
+ * @param offset    The position of the message in the journal, starting at 0.
+ * @param timestamp The time the message was appended, in milliseconds since the epoch.
+ * @param channel   Where the message was sent: a room name, or "@" followed by the receiver for private messages.
+ * @param frame     The message exactly as it was sent to the clients.
+ */
+public record JournalRecord(long offset, long timestamp, String channel, String frame) {
+}
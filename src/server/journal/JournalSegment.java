@@ -0,0 +1,252 @@
+package server.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * One file of the journal, holding the records from baseOffset up to (but not including) nextOffset().
+ *
+ * The file is created at its full size and mapped into memory, so an append is a copy into the mapped
+ * buffer. Each record is laid out as:
+ *
+ *   int length | int crc | long timestamp | byte channelLength | channel | frame
+ *
+ * where length counts the bytes after the crc and the crc (CRC-32C) covers the same bytes. The unused
+ * rest of the file is zero, so a length of 0 marks the end of the segment.
+ *
+ * A sparse index maps every INDEX_INTERVAL_BYTES-th record to its file position, so a read by offset
+ * only has to scan a few KB. The index is rebuilt when the segment is opened.
+ */
+class JournalSegment {
+    private static final int HEADER_BYTES = 8;
+    private static final int INDEX_INTERVAL_BYTES = 4096;
+
+    private final long baseOffset;
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final CRC32C crc = new CRC32C();
+
+    private int writePosition;
+    private volatile int count;
+    private volatile boolean dirty;
+    private volatile long lastTimestamp;
+
+    // Sparse index: the record at relative offset indexOffsets[i] starts at indexPositions[i]
+    private int[] indexOffsets = new int[64];
+    private int[] indexPositions = new int[64];
+    private int indexSize;
+    private int lastIndexedPosition = -INDEX_INTERVAL_BYTES;
+
+    private JournalSegment(long baseOffset, Path file, FileChannel channel, MappedByteBuffer buffer) {
+        this.baseOffset = baseOffset;
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Opens a segment file, creating it with the given size if it does not exist yet. Existing
+     * records are scanned to rebuild the index; a torn record at the end is removed.
+     *
+     * @param file       The segment file.
+     * @param baseOffset The offset of the first record in the segment.
+     * @param size       The size of a new segment file in bytes.
+     * @return The opened segment.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    static JournalSegment open(Path file, long baseOffset, int size) throws IOException {
+        boolean exists = Files.exists(file);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long mappedSize = exists ? channel.size() : size;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+        JournalSegment segment = new JournalSegment(baseOffset, file, channel, buffer);
+        if (exists) {
+            segment.recover();
+        }
+        return segment;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @return False if the record does not fit in the rest of the segment.
+     */
+    synchronized boolean append(long timestamp, byte[] channelName, byte[] frame) {
+        int length = 8 + 1 + channelName.length + frame.length;
+        int position = writePosition;
+        if (position + HEADER_BYTES + length > buffer.capacity()) {
+            return false;
+        }
+
+        int body = position + HEADER_BYTES;
+        buffer.putLong(body, timestamp);
+        buffer.put(body + 8, (byte) channelName.length);
+        buffer.put(body + 9, channelName);
+        buffer.put(body + 9 + channelName.length, frame);
+
+        crc.reset();
+        crc.update(buffer.slice(body, length));
+        buffer.putInt(position + 4, (int) crc.getValue());
+        // The length is written last: a record with a length but a wrong crc is torn
+        buffer.putInt(position, length);
+
+        addToIndex(count, position);
+        writePosition = body + length;
+        lastTimestamp = timestamp;
+        dirty = true;
+        count = count + 1;
+        return true;
+    }
+
+    /**
+     * Passes records to a consumer, starting at an offset, oldest first.
+     *
+     * @param fromOffset The offset of the first record to read.
+     * @param max        The maximum number of records to read.
+     * @param consumer   Receives each record.
+     * @return The number of records read.
+     */
+    int read(long fromOffset, int max, Consumer<JournalRecord> consumer) {
+        int end = count;
+        int relative = (int) Math.max(0, fromOffset - baseOffset);
+        if (relative >= end || max <= 0) {
+            return 0;
+        }
+
+        int position;
+        int current;
+        synchronized (this) {
+            int i = floorIndex(relative);
+            current = indexOffsets[i];
+            position = indexPositions[i];
+        }
+
+        int read = 0;
+        while (current < end && read < max) {
+            int length = buffer.getInt(position);
+            if (current >= relative) {
+                int body = position + HEADER_BYTES;
+                int channelLength = buffer.get(body + 8) & 0xFF;
+                byte[] channelName = new byte[channelLength];
+                buffer.get(body + 9, channelName);
+                byte[] frame = new byte[length - 9 - channelLength];
+                buffer.get(body + 9 + channelLength, frame);
+                consumer.accept(new JournalRecord(baseOffset + current, buffer.getLong(body),
+                        new String(channelName, StandardCharsets.UTF_8), new String(frame, StandardCharsets.UTF_8)));
+                read++;
+            }
+            position += HEADER_BYTES + length;
+            current++;
+        }
+        return read;
+    }
+
+    /**
+     * Writes appended records to the disk, if there are any.
+     */
+    void flush() {
+        if (dirty) {
+            dirty = false;
+            buffer.force();
+        }
+    }
+
+    void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    /**
+     * Closes the segment and deletes its file. Records that are being read stay readable, because the
+     * mapping of the file outlives the channel.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    long getBaseOffset() {
+        return baseOffset;
+    }
+
+    long nextOffset() {
+        return baseOffset + count;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return The size of the segment file in bytes.
+     */
+    long sizeBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return The timestamp of the newest record, or 0 if the segment is empty.
+     */
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    private void recover() {
+        int position = 0;
+        int records = 0;
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > buffer.capacity()) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(position + HEADER_BYTES, length));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            addToIndex(records, position);
+            lastTimestamp = buffer.getLong(position + HEADER_BYTES);
+            position += HEADER_BYTES + length;
+            records++;
+        }
+
+        if (position + 4 <= buffer.capacity() && buffer.getInt(position) != 0) {
+            System.out.println("Truncating torn record at position " + position + " of " + file);
+            byte[] zeros = new byte[Math.min(64 * 1024, buffer.capacity() - position)];
+            for (int p = position; p < buffer.capacity(); p += zeros.length) {
+                buffer.put(p, zeros, 0, Math.min(zeros.length, buffer.capacity() - p));
+            }
+            buffer.force();
+        }
+        writePosition = position;
+        count = records;
+    }
+
+    private void addToIndex(int relativeOffset, int position) {
+        if (position - lastIndexedPosition < INDEX_INTERVAL_BYTES) {
+            return;
+        }
+        if (indexSize == indexOffsets.length) {
+            indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+            indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+        }
+        indexOffsets[indexSize] = relativeOffset;
+        indexPositions[indexSize] = position;
+        indexSize++;
+        lastIndexedPosition = position;
+    }
+
+    private int floorIndex(int relativeOffset) {
+        int i = Arrays.binarySearch(indexOffsets, 0, indexSize, relativeOffset);
+        return i >= 0 ? i : -i - 2;
+    }
+}
@@ -0,0 +1,245 @@
+package server.journal;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Durable, append-only log of every chat message the server delivered.
+ *
+ * Messages are appended to memory-mapped segment files ("<base offset>.log") in the journal directory.
+ * When the active segment is full, a new one is started at the next offset. Appends only copy into
+ * memory; a background thread forces dirty segments to disk every fsync interval (group commit), so
+ * a crash loses at most that interval of messages. A record torn by a crash is detected by its checksum
+ * and removed when the journal is opened again.
+ *
+ * Old messages are dropped a whole segment at a time: the same thread deletes the oldest segments once
+ * their newest message is older than the retention time, or while the journal is larger than the
+ * retention size. The active segment is always kept.
+ */
+public class MessageJournal {
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long RETENTION_INTERVAL_SECONDS = 60;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long fsyncIntervalMillis;
+    private final long retentionMillis;
+    private final long retentionBytes;
+    private final ConcurrentSkipListMap<Long, JournalSegment> segments = new ConcurrentSkipListMap<>();
+    private final List<Consumer<JournalRecord>> listeners = new CopyOnWriteArrayList<>();
+    // Held while deleting segments, so appends, which lock the journal itself, never wait for it
+    private final Object retentionLock = new Object();
+    private volatile JournalSegment active;
+    private ScheduledExecutorService fsyncExecutor;
+
+    /**
+     * Creates a journal that keeps every message.
+     *
+     * @param directory           The directory holding the segment files.
+     * @param segmentBytes        The size of a segment file in bytes.
+     * @param fsyncIntervalMillis How often appended messages are forced to disk.
+     */
+    public MessageJournal(Path directory, int segmentBytes, long fsyncIntervalMillis) {
+        this(directory, segmentBytes, fsyncIntervalMillis, 0, 0);
+    }
+
+    /**
+     * @param directory           The directory holding the segment files.
+     * @param segmentBytes        The size of a segment file in bytes.
+     * @param fsyncIntervalMillis How often appended messages are forced to disk.
+     * @param retentionMillis     How long messages are kept, 0 to keep them regardless of their age.
+     * @param retentionBytes      The size in bytes the segment files are kept under, 0 for no limit.
+     */
+    public MessageJournal(Path directory, int segmentBytes, long fsyncIntervalMillis, long retentionMillis, long retentionBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.retentionMillis = retentionMillis;
+        this.retentionBytes = retentionBytes;
+    }
+
+    /**
+     * Opens the existing segments, recovering the last one, and starts the fsync thread, which also
+     * deletes the segments past the retention.
+     *
+     * @throws IOException If the directory or a segment cannot be opened.
+     */
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> baseOffsets = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    baseOffsets.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    System.out.println("Ignoring unknown file in journal: " + file);
+                }
+            }
+        }
+        baseOffsets.sort(null);
+        for (long baseOffset : baseOffsets) {
+            segments.put(baseOffset, JournalSegment.open(segmentFile(baseOffset), baseOffset, segmentBytes));
+        }
+        active = segments.isEmpty() ? roll(0) : segments.lastEntry().getValue();
+
+        fsyncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-fsync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fsyncExecutor.scheduleWithFixedDelay(this::flush, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        if (retentionMillis > 0 || retentionBytes > 0) {
+            fsyncExecutor.scheduleWithFixedDelay(this::enforceRetention, 0, RETENTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "journal-shutdown"));
+    }
+
+    /**
+     * Appends a message to the journal.
+     *
+     * @param channel The room the message was sent to, or "@" followed by the receiver for a private message.
+     * @param frame   The message as it was sent to the clients.
+     * @return The offset of the message, or -1 if it could not be written.
+     */
+    public long append(String channel, String frame) {
+        byte[] channelName = channel.getBytes(StandardCharsets.UTF_8);
+        byte[] frameBytes = frame.getBytes(StandardCharsets.UTF_8);
+        // Listeners are called before the next append can start, so they see the messages in offset order
+        synchronized (this) {
+            long timestamp = System.currentTimeMillis();
+            long offset = write(timestamp, channelName, frameBytes);
+            if (offset >= 0 && !listeners.isEmpty()) {
+                JournalRecord record = new JournalRecord(offset, timestamp, channel, frame);
+                for (Consumer<JournalRecord> listener : listeners) {
+                    listener.accept(record);
+                }
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Registers a listener that receives every message after it was appended, on the appending thread
+     * and in offset order. Listeners must return quickly, since they run on the send path of the server
+     * while other appends wait.
+     *
+     * @param listener Receives each appended message.
+     */
+    public void addListener(Consumer<JournalRecord> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Passes journaled messages to a consumer, oldest first.
+     *
+     * @param fromOffset The offset of the first message to read.
+     * @param max        The maximum number of messages to read.
+     * @param consumer   Receives each message.
+     */
+    public void read(long fromOffset, int max, Consumer<JournalRecord> consumer) {
+        Map.Entry<Long, JournalSegment> start = segments.floorEntry(fromOffset);
+        Long from = start == null ? segments.firstKey() : start.getKey();
+        int remaining = max;
+        for (JournalSegment segment : segments.tailMap(from).values()) {
+            if (remaining <= 0) {
+                break;
+            }
+            remaining -= segment.read(fromOffset, remaining, consumer);
+        }
+    }
+
+    /**
+     * @return The offset of the oldest message that is still kept. Messages below it were dropped by the retention.
+     */
+    public long getFirstOffset() {
+        return segments.firstKey();
+    }
+
+    /**
+     * @return The offset the next message will get.
+     */
+    public long getNextOffset() {
+        return active.nextOffset();
+    }
+
+    /**
+     * Forces every appended message to disk.
+     */
+    public void flush() {
+        for (JournalSegment segment : segments.values()) {
+            segment.flush();
+        }
+    }
+
+    /**
+     * Deletes the oldest segments while their newest message is older than the retention time or the
+     * segment files together are larger than the retention size. The active segment is never deleted.
+     */
+    public void enforceRetention() {
+        synchronized (retentionLock) {
+            long oldestKept = System.currentTimeMillis() - retentionMillis;
+            long totalBytes = 0;
+            for (JournalSegment segment : segments.values()) {
+                totalBytes += segment.sizeBytes();
+            }
+            for (JournalSegment segment : segments.values()) {
+                boolean expired = retentionMillis > 0 && segment.lastTimestamp() < oldestKept;
+                boolean tooLarge = retentionBytes > 0 && totalBytes > retentionBytes;
+                if (segment == active || !expired && !tooLarge) {
+                    break;
+                }
+                segments.remove(segment.getBaseOffset());
+                totalBytes -= segment.sizeBytes();
+                try {
+                    segment.delete();
+                } catch (IOException e) {
+                    System.out.println("Error deleting journal segment " + segment.getFile() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private synchronized long write(long timestamp, byte[] channelName, byte[] frame) {
+        JournalSegment segment = active;
+        long offset = segment.nextOffset();
+        if (segment.append(timestamp, channelName, frame)) {
+            return offset;
+        }
+        try {
+            segment.flush();
+            segment = roll(offset);
+        } catch (IOException e) {
+            System.out.println("Error starting journal segment: " + e.getMessage());
+            return -1;
+        }
+        if (segment.append(timestamp, channelName, frame)) {
+            return offset;
+        }
+        System.out.println("Message of " + frame.length + " bytes does not fit in a journal segment");
+        return -1;
+    }
+
+    private JournalSegment roll(long baseOffset) throws IOException {
+        JournalSegment segment = JournalSegment.open(segmentFile(baseOffset), baseOffset, segmentBytes);
+        segments.put(baseOffset, segment);
+        active = segment;
+        return segment;
+    }
+
+    private Path segmentFile(long baseOffset) {
+        return directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,71 @@
+package server.limits;
+
+import Utilities.Commands;
+import server.ServerConfig;
+
+/**
+ * Decides whether the server handles a request of a client, before any other work is done for it.
+ *
+ * Every client gets its own token buckets for three classes of commands: chat messages, which are
+ * sent to other users; queries, which read server state; and all other requests. Broadcasts are
+ * sent to every user, so they also need a token from a budget shared by all clients, which limits
+ * the total fan-out however many clients send. PONG, BYE, acknowledgements and answers to
+ * invitations are never limited.
+ */
+public class RateLimiter {
+    private static final int CHAT = 0;
+    private static final int QUERY = 1;
+    private static final int OTHER = 2;
+
+    private final long[] ratesPerSecond = {ServerConfig.RATE_CHAT_PER_SECOND, ServerConfig.RATE_QUERY_PER_SECOND, ServerConfig.RATE_OTHER_PER_SECOND};
+    private final long[] bursts = {ServerConfig.RATE_CHAT_BURST, ServerConfig.RATE_QUERY_BURST, ServerConfig.RATE_OTHER_BURST};
+    private final TokenBuckets broadcastBudget = new TokenBuckets(
+            new long[]{ServerConfig.RATE_BROADCAST_PER_SECOND}, new long[]{ServerConfig.RATE_BROADCAST_BURST});
+
+    /**
+     * @return Full buckets for a new client, to be used by the thread of that client only.
+     */
+    public TokenBuckets newClientBuckets() {
+        return new TokenBuckets(ratesPerSecond, bursts);
+    }
+
+    /**
+     * Takes the tokens for a request. A broadcast refused by the shared budget costs the client no token.
+     *
+     * @param clientBuckets The buckets of the client that sent the request.
+     * @param command       The command of the request.
+     * @return True if the request may be handled, false if it exceeds a limit.
+     */
+    public boolean admit(TokenBuckets clientBuckets, String command) {
+        int commandClass = classOf(command);
+        if (commandClass < 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (!clientBuckets.tryAcquire(commandClass, now)) {
+            return false;
+        }
+        if (!command.equals(Commands.BROADCAST_REQ)) {
+            return true;
+        }
+        boolean admitted;
+        synchronized (broadcastBudget) {
+            admitted = broadcastBudget.tryAcquire(0, now);
+        }
+        // Taking the shared token first would let a client over its own limit use up the budget of the others
+        if (!admitted) {
+            clientBuckets.release(commandClass);
+        }
+        return admitted;
+    }
+
+    private static int classOf(String command) {
+        return switch (command) {
+            case Commands.BROADCAST_REQ, Commands.PRIVATE_MSG_REQ, Commands.ROOM_MSG_REQ -> CHAT;
+            case Commands.LIST_REQ, Commands.HISTORY_REQ, Commands.SEARCH_REQ, Commands.LEADERBOARD_REQ -> QUERY;
+            case Commands.PONG, Commands.BYE, Commands.PRIVATE_MSG_ACK, Commands.RPS_INVITE_RESP,
+                 Commands.TTT_INVITE_RESP, Commands.FILE_TRANSFER_RESP -> -1;
+            default -> command.equals(Commands.ENTER) || command.endsWith("_REQ") ? OTHER : -1;
+        };
+    }
+}
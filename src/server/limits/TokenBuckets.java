@@ -0,0 +1,80 @@
+package server.limits;
+
+/**
+ * A fixed set of token buckets, e.g. one per command class of a client.
+ *
+ * Every bucket is two longs in one array: the tokens it holds, in billionths of a token, and the
+ * time of its last update. A bucket is only refilled when a token is taken from it, for the whole
+ * time since its last update, so idle buckets cost no CPU time. With tokens in billionths, a
+ * bucket refilling at r tokens per second gains exactly r units per nanosecond.
+ *
+ * Not thread-safe: a set of buckets belongs to one thread, or callers synchronize on it.
+ */
+public final class TokenBuckets {
+    private static final long ONE_TOKEN = 1_000_000_000L;
+
+    private final long[] ratesPerSecond;
+    private final long[] capacities;
+    // tokens and last update in nanoseconds of every bucket, interleaved
+    private final long[] state;
+
+    /**
+     * Creates full buckets.
+     *
+     * @param ratesPerSecond The tokens added to each bucket per second. A rate of 0 or less means no limit.
+     * @param bursts         The maximum number of tokens of each bucket.
+     */
+    public TokenBuckets(long[] ratesPerSecond, long[] bursts) {
+        this.ratesPerSecond = ratesPerSecond;
+        this.capacities = new long[bursts.length];
+        this.state = new long[2 * bursts.length];
+        long now = System.nanoTime();
+        for (int i = 0; i < bursts.length; i++) {
+            capacities[i] = bursts[i] * ONE_TOKEN;
+            state[2 * i] = capacities[i];
+            state[2 * i + 1] = now;
+        }
+    }
+
+    /**
+     * Takes a token from a bucket, if it has one.
+     *
+     * @param bucket The index of the bucket.
+     * @param now    The current System.nanoTime().
+     * @return True if a token was taken, false if the bucket is empty.
+     */
+    public boolean tryAcquire(int bucket, long now) {
+        long rate = ratesPerSecond[bucket];
+        if (rate <= 0) {
+            return true;
+        }
+        int i = 2 * bucket;
+        long tokens = state[i];
+        long elapsed = now - state[i + 1];
+        if (elapsed > 0) {
+            long missing = capacities[bucket] - tokens;
+            // Compare before multiplying, so a long idle time cannot overflow
+            tokens = elapsed >= missing / rate ? capacities[bucket] : tokens + elapsed * rate;
+            state[i + 1] = now;
+        }
+        if (tokens < ONE_TOKEN) {
+            state[i] = tokens;
+            return false;
+        }
+        state[i] = tokens - ONE_TOKEN;
+        return true;
+    }
+
+    /**
+     * Puts back a token taken by tryAcquire(), e.g. when another limit refused the request after all.
+     *
+     * @param bucket The index of the bucket.
+     */
+    public void release(int bucket) {
+        if (ratesPerSecond[bucket] <= 0) {
+            return;
+        }
+        int i = 2 * bucket;
+        state[i] = Math.min(capacities[bucket], state[i] + ONE_TOKEN);
+    }
+}
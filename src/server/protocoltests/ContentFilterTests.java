@@ -0,0 +1,74 @@
+package server.protocoltests;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import server.filter.ContentFilter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentFilterTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void maskedPhraseIsReplacedByStars() {
+        ContentFilter filter = new ContentFilter(directory.resolve("blocklist.txt"));
+        filter.load(List.of("mask darn", "mask bad word"));
+
+        ContentFilter.Verdict verdict = filter.check("Darn, a BAD WORD here");
+        assertEquals("****, a *** **** here", verdict.message());
+        assertFalse(verdict.rejected());
+        assertFalse(verdict.flagged());
+    }
+
+    @Test
+    void rejectAndFlagOnlyMatchWholeWords() {
+        ContentFilter filter = new ContentFilter(directory.resolve("blocklist.txt"));
+        filter.load(List.of("# operators", "reject spam", "flag scam", "", "unknown ignored"));
+
+        assertTrue(filter.check("buy spam now").rejected());
+        assertFalse(filter.check("spammer").rejected());
+        ContentFilter.Verdict flagged = filter.check("a scam?");
+        assertTrue(flagged.flagged());
+        assertEquals("a scam?", flagged.message());
+        assertFalse(filter.check("ignored").flagged());
+    }
+
+    @Test
+    void phraseWithSeveralActionsGetsTheStrongest() {
+        ContentFilter filter = new ContentFilter(directory.resolve("blocklist.txt"));
+        filter.load(List.of("flag word", "mask word", "reject word"));
+
+        assertTrue(filter.check("word").rejected());
+    }
+
+    @Test
+    void changedFileIsReloaded() throws IOException {
+        Path file = directory.resolve("blocklist.txt");
+        ContentFilter filter = new ContentFilter(file);
+        assertFalse(filter.reload());
+        assertFalse(filter.check("darn").rejected());
+
+        Files.writeString(file, "reject darn\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000));
+        assertTrue(filter.reload());
+        assertTrue(filter.check("darn").rejected());
+        assertFalse(filter.reload());
+
+        Files.writeString(file, "mask darn\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(2_000_000));
+        assertTrue(filter.reload());
+        assertEquals("****", filter.check("darn").message());
+
+        Files.delete(file);
+        assertTrue(filter.reload());
+        assertEquals("darn", filter.check("darn").message());
+    }
+}
@@ -0,0 +1,153 @@
+package server.protocoltests;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import server.journal.JournalRecord;
+import server.journal.MessageJournal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageJournalTests {
+
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsAreReadBackAfterReopening() throws IOException {
+        MessageJournal journal = open();
+        assertEquals(0, journal.append("lobby", "BROADCAST {\"message\":\"first\"}"));
+        assertEquals(1, journal.append("@user2", "PRIVATE_MSG {\"message\":\"second\"}"));
+        journal.flush();
+
+        MessageJournal reopened = open();
+        assertEquals(2, reopened.getNextOffset());
+        List<JournalRecord> records = readAll(reopened);
+        assertEquals(2, records.size());
+        assertEquals("lobby", records.get(0).channel());
+        assertEquals("BROADCAST {\"message\":\"first\"}", records.get(0).frame());
+        assertEquals("@user2", records.get(1).channel());
+        assertEquals(1, records.get(1).offset());
+    }
+
+    @Test
+    void recordsAcrossSegmentsAreReadFromAnyOffset() throws IOException {
+        MessageJournal journal = open();
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, journal.append("lobby", "BROADCAST {\"message\":\"message " + i + "\"}"));
+        }
+        journal.flush();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.count() > 1);
+        }
+
+        MessageJournal reopened = open();
+        assertEquals(200, reopened.getNextOffset());
+        List<JournalRecord> records = new ArrayList<>();
+        reopened.read(90, 50, records::add);
+        assertEquals(50, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(90 + i, records.get(i).offset());
+            assertEquals("BROADCAST {\"message\":\"message " + (90 + i) + "\"}", records.get(i).frame());
+        }
+    }
+
+    @Test
+    void tornRecordAtTheEndIsRemovedOnRecovery() throws IOException {
+        MessageJournal journal = open();
+        for (int i = 0; i < 3; i++) {
+            journal.append("lobby", "BROADCAST {\"message\":\"message " + i + "\"}");
+        }
+        journal.flush();
+        corruptLastRecord(directory.resolve(String.format("%020d.log", 0)));
+
+        MessageJournal reopened = open();
+        assertEquals(2, reopened.getNextOffset());
+        assertEquals(2, readAll(reopened).size());
+
+        // The torn record is overwritten by the next append
+        assertEquals(2, reopened.append("lobby", "BROADCAST {\"message\":\"after recovery\"}"));
+        reopened.flush();
+        List<JournalRecord> records = readAll(open());
+        assertEquals(3, records.size());
+        assertEquals("BROADCAST {\"message\":\"after recovery\"}", records.get(2).frame());
+    }
+
+    @Test
+    void oldestSegmentsAreDroppedPastTheRetentionSize() throws IOException {
+        MessageJournal journal = new MessageJournal(directory, SEGMENT_BYTES, 1000, 0, 2 * SEGMENT_BYTES);
+        journal.start();
+        for (int i = 0; i < 200; i++) {
+            journal.append("lobby", "BROADCAST {\"message\":\"message " + i + "\"}");
+        }
+        journal.enforceRetention();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+        long firstOffset = journal.getFirstOffset();
+        assertTrue(firstOffset > 0);
+        List<JournalRecord> records = readAll(journal);
+        assertEquals(firstOffset, records.get(0).offset());
+        assertEquals(200 - firstOffset, records.size());
+        assertEquals(200, journal.append("lobby", "BROADCAST {\"message\":\"after retention\"}"));
+    }
+
+    @Test
+    void expiredSegmentsAreDroppedButTheActiveOneIsKept() throws IOException, InterruptedException {
+        MessageJournal journal = new MessageJournal(directory, SEGMENT_BYTES, 1000, 1, 0);
+        journal.start();
+        for (int i = 0; i < 200; i++) {
+            journal.append("lobby", "BROADCAST {\"message\":\"message " + i + "\"}");
+        }
+        Thread.sleep(10);
+        journal.enforceRetention();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        assertEquals(200, journal.getNextOffset());
+        assertEquals(200 - journal.getFirstOffset(), readAll(journal).size());
+    }
+
+    private MessageJournal open() throws IOException {
+        MessageJournal journal = new MessageJournal(directory, SEGMENT_BYTES, 1000);
+        journal.start();
+        return journal;
+    }
+
+    private static List<JournalRecord> readAll(MessageJournal journal) {
+        List<JournalRecord> records = new ArrayList<>();
+        journal.read(0, Integer.MAX_VALUE, records::add);
+        return records;
+    }
+
+    /**
+     * Changes the last byte of the last record in a segment, as if the crash happened while it was written.
+     */
+    private static void corruptLastRecord(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int position = 0;
+            int last = 0;
+            while (buffer.getInt(position) != 0) {
+                last = position;
+                position += 8 + buffer.getInt(position);
+            }
+            int end = last + 8 + buffer.getInt(last) - 1;
+            buffer.put(end, (byte) (buffer.get(end) ^ 0x01));
+            buffer.force();
+        }
+    }
+}
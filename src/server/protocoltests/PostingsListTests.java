@@ -0,0 +1,85 @@
+package server.protocoltests;
+
+import org.junit.jupiter.api.Test;
+import server.search.PostingsList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingsListTests {
+
+    // Gaps of one, two, three, four and five varint bytes
+    private static final int[] DOCS = {0, 1, 127, 128, 300, 16_684, 16_685, 2_114_000, 270_000_000, Integer.MAX_VALUE - 1};
+
+    @Test
+    void idsAreDecodedInOrder() {
+        PostingsList list = listOf(DOCS);
+        assertEquals(DOCS.length, list.count());
+
+        // Asking for the id after the previous one decodes every id in turn
+        PostingsList.Cursor cursor = list.cursor();
+        int previous = -1;
+        for (int doc : DOCS) {
+            assertEquals(doc, cursor.advanceTo(previous + 1));
+            previous = doc;
+        }
+        assertEquals(Integer.MAX_VALUE, cursor.advanceTo(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void addingTheLastIdAgainIsIgnored() {
+        PostingsList list = listOf(3, 3, 5, 5);
+        assertEquals(2, list.count());
+        int[] block = new int[PostingsList.BLOCK_SIZE];
+        assertEquals(2, list.readBlock(0, block));
+        assertEquals(3, block[0]);
+        assertEquals(5, block[1]);
+    }
+
+    @Test
+    void everyBlockIsDecodedOnItsOwn() {
+        PostingsList list = new PostingsList();
+        int count = PostingsList.BLOCK_SIZE * 2 + 44;
+        for (int i = 0; i < count; i++) {
+            list.add(i * 200);
+        }
+        assertEquals(3, list.blockCount());
+
+        int[] block = new int[PostingsList.BLOCK_SIZE];
+        assertEquals(44, list.readBlock(2, block));
+        for (int i = 0; i < 44; i++) {
+            assertEquals((PostingsList.BLOCK_SIZE * 2 + i) * 200, block[i]);
+        }
+        assertEquals(PostingsList.BLOCK_SIZE, list.readBlock(1, block));
+        assertEquals(PostingsList.BLOCK_SIZE * 200, block[0]);
+    }
+
+    @Test
+    void cursorFromSkipsToTheBlockOfTheTarget() {
+        PostingsList list = new PostingsList();
+        for (int i = 0; i < 1000; i++) {
+            list.add(i * 3);
+        }
+
+        assertTrue(list.cursorFrom(2400).contains(2400));
+        assertFalse(list.cursorFrom(2401).contains(2401));
+        assertEquals(2403, list.cursorFrom(2401).advanceTo(2401));
+        assertEquals(Integer.MAX_VALUE, list.cursorFrom(3000).advanceTo(3000));
+    }
+
+    @Test
+    void emptyListHasNoIds() {
+        PostingsList list = new PostingsList();
+        assertEquals(0, list.count());
+        assertEquals(0, list.blockCount());
+        assertEquals(Integer.MAX_VALUE, list.cursor().advanceTo(0));
+        assertFalse(list.cursorFrom(10).contains(10));
+    }
+
+    private static PostingsList listOf(int... docs) {
+        PostingsList list = new PostingsList();
+        for (int doc : docs) {
+            list.add(doc);
+        }
+        return list;
+    }
+}
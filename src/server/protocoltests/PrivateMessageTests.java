@@ -0,0 +1,185 @@
+package server.protocoltests;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.jupiter.api.*;
+import Utilities.messages.*;
+import Utilities.messages.privateMessage.PrivateMsg;
+import Utilities.messages.privateMessage.PrivateMsgAck;
+import Utilities.messages.privateMessage.PrivateMsgReq;
+import Utilities.messages.privateMessage.PrivateMsgResp;
+import Utilities.messages.requestList.ListReq;
+import server.protocoltests.protocol.utils.Utils;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.Properties;
+
+import static java.time.Duration.ofMillis;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrivateMessageTests {
+
+    private final static Properties PROPS = new Properties();
+
+    private Socket socketUser1, socketUser2;
+    private BufferedReader inUser1, inUser2;
+    private PrintWriter outUser1, outUser2;
+
+    private final static int MAX_DELTA_ALLOWED_MS = 100;
+
+    @BeforeAll
+    static void setupAll() throws IOException {
+        InputStream in = PrivateMessageTests.class.getResourceAsStream("testconfig.properties");
+        PROPS.load(in);
+        in.close();
+    }
+
+    @BeforeEach
+    void setup() throws IOException {
+        socketUser1 = new Socket(PROPS.getProperty("host"), Integer.parseInt(PROPS.getProperty("port")));
+        inUser1 = new BufferedReader(new InputStreamReader(socketUser1.getInputStream()));
+        outUser1 = new PrintWriter(socketUser1.getOutputStream(), true);
+
+        connectUser2();
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        socketUser1.close();
+        socketUser2.close();
+    }
+
+    @Test
+    void tc61PrivateMessageToOfflineUserIsStoredAndDeliveredOnLogin() throws IOException {
+        receiveLineWithTimeout(inUser1); //ready msg
+        receiveLineWithTimeout(inUser2); //ready msg
+
+        // Connect user2 and log out, so the server knows the username
+        outUser2.println(Utils.objectToMessage(new Enter("pmreceiver1")));
+        receiveLineWithTimeout(inUser2); //OK
+        outUser2.println(Utils.objectToMessage(new Bye()));
+        receiveLineWithTimeout(inUser2); //BYE_RESP
+
+        // Connect user1
+        outUser1.println(Utils.objectToMessage(new Enter("pmsender1")));
+        receiveLineWithTimeout(inUser1); //OK
+
+        outUser1.println(Utils.objectToMessage(new PrivateMsgReq("pmreceiver1", "stored message")));
+        PrivateMsgResp privateMsgResp = Utils.messageToObject(receiveLineWithTimeout(inUser1));
+        assertEquals(new PrivateMsgResp("STORED", 0), privateMsgResp);
+
+        // The message is delivered right after the next login
+        reconnectUser2();
+        receiveLineWithTimeout(inUser2); //ready msg
+        outUser2.println(Utils.objectToMessage(new Enter("pmreceiver1")));
+        EnterResp enterResp = Utils.messageToObject(receiveLineWithTimeout(inUser2));
+        assertEquals("OK", enterResp.status());
+
+        PrivateMsg privateMsg = Utils.messageToObject(receiveLineWithTimeout(inUser2));
+        assertEquals(new PrivateMsg("pmsender1", "stored message"), privateMsg);
+    }
+
+    @Test
+    void tc62PrivateMessageToUserThatNeverLoggedInReturnsError() throws JsonProcessingException {
+        receiveLineWithTimeout(inUser1); //ready msg
+
+        outUser1.println(Utils.objectToMessage(new Enter("pmsender2")));
+        receiveLineWithTimeout(inUser1); //OK
+
+        outUser1.println(Utils.objectToMessage(new PrivateMsgReq("pmnobody2", "hello")));
+        PrivateMsgResp privateMsgResp = Utils.messageToObject(receiveLineWithTimeout(inUser1));
+        assertEquals(new PrivateMsgResp("ERROR", 10002), privateMsgResp);
+    }
+
+    @Test
+    void tc63UnacknowledgedPrivateMessageIsDeliveredAgainAfterReconnect() throws IOException {
+        receiveLineWithTimeout(inUser1); //ready msg
+        receiveLineWithTimeout(inUser2); //ready msg
+
+        // Connect user2 with acknowledgements
+        outUser2.println(Utils.objectToMessage(new Enter("pmreceiver3", true)));
+        receiveLineWithTimeout(inUser2); //OK
+        // The answer to a request follows the JOINED of user2, so user1 does not get it
+        outUser2.println(Utils.objectToMessage(new ListReq()));
+        receiveLineWithTimeout(inUser2); //LIST_RESP
+
+        // Connect user1
+        outUser1.println(Utils.objectToMessage(new Enter("pmsender3")));
+        receiveLineWithTimeout(inUser1); //OK
+        receiveLineWithTimeout(inUser2); //JOINED
+
+        // The first message is acknowledged, the second is not
+        outUser1.println(Utils.objectToMessage(new PrivateMsgReq("pmreceiver3", "first")));
+        receiveLineWithTimeout(inUser1); //OK
+        PrivateMsg first = Utils.messageToObject(receiveLineWithTimeout(inUser2));
+        assertEquals("first", first.message());
+        assertNotNull(first.id());
+        outUser2.println(Utils.objectToMessage(new PrivateMsgAck(first.id())));
+
+        outUser1.println(Utils.objectToMessage(new PrivateMsgReq("pmreceiver3", "second")));
+        receiveLineWithTimeout(inUser1); //OK
+        PrivateMsg second = Utils.messageToObject(receiveLineWithTimeout(inUser2));
+        assertEquals("second", second.message());
+        assertTrue(second.id() > first.id());
+
+        outUser2.println(Utils.objectToMessage(new Bye()));
+        receiveLineWithTimeout(inUser2); //BYE_RESP
+        receiveLineWithTimeout(inUser1); //LEFT
+
+        // Only the unacknowledged message is delivered again, with the same id
+        reconnectUser2();
+        receiveLineWithTimeout(inUser2); //ready msg
+        outUser2.println(Utils.objectToMessage(new Enter("pmreceiver3", true)));
+        receiveLineWithTimeout(inUser2); //OK
+
+        PrivateMsg redelivered = Utils.messageToObject(receiveLineWithTimeout(inUser2));
+        assertEquals(second, redelivered);
+    }
+
+    @Test
+    void tc64LivePrivateMessageAfterLoginHasHigherIdThanStoredOnes() throws IOException {
+        receiveLineWithTimeout(inUser1); //ready msg
+        receiveLineWithTimeout(inUser2); //ready msg
+
+        outUser2.println(Utils.objectToMessage(new Enter("pmreceiver4", true)));
+        receiveLineWithTimeout(inUser2); //OK
+        outUser2.println(Utils.objectToMessage(new Bye()));
+        receiveLineWithTimeout(inUser2); //BYE_RESP
+
+        outUser1.println(Utils.objectToMessage(new Enter("pmsender4")));
+        receiveLineWithTimeout(inUser1); //OK
+        outUser1.println(Utils.objectToMessage(new PrivateMsgReq("pmreceiver4", "stored")));
+        receiveLineWithTimeout(inUser1); //STORED
+
+        reconnectUser2();
+        receiveLineWithTimeout(inUser2); //ready msg
+        outUser2.println(Utils.objectToMessage(new Enter("pmreceiver4", true)));
+        receiveLineWithTimeout(inUser2); //OK
+        PrivateMsg stored = Utils.messageToObject(receiveLineWithTimeout(inUser2));
+        assertEquals("stored", stored.message());
+        receiveLineWithTimeout(inUser1); //JOINED
+
+        outUser1.println(Utils.objectToMessage(new PrivateMsgReq("pmreceiver4", "live")));
+        PrivateMsgResp privateMsgResp = Utils.messageToObject(receiveLineWithTimeout(inUser1));
+        assertEquals(new PrivateMsgResp("OK", 0), privateMsgResp);
+        PrivateMsg live = Utils.messageToObject(receiveLineWithTimeout(inUser2));
+        assertEquals("live", live.message());
+        assertTrue(live.id() > stored.id());
+    }
+
+    private void connectUser2() throws IOException {
+        socketUser2 = new Socket(PROPS.getProperty("host"), Integer.parseInt(PROPS.getProperty("port")));
+        inUser2 = new BufferedReader(new InputStreamReader(socketUser2.getInputStream()));
+        outUser2 = new PrintWriter(socketUser2.getOutputStream(), true);
+    }
+
+    private void reconnectUser2() throws IOException {
+        socketUser2.close();
+        connectUser2();
+    }
+
+    private String receiveLineWithTimeout(BufferedReader reader) {
+        return assertTimeoutPreemptively(ofMillis(MAX_DELTA_ALLOWED_MS), reader::readLine);
+    }
+
+}
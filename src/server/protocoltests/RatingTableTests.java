@@ -0,0 +1,59 @@
+package server.protocoltests;
+
+import org.junit.jupiter.api.Test;
+import server.games.PlayerRating;
+import server.games.RatingTable;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RatingTableTests {
+
+    @Test
+    void winnerTakesPointsFromLoser() {
+        RatingTable table = new RatingTable();
+        table.recordResult("player1", "player2", "player1");
+
+        // Equal ratings expect a score of 0.5, so the winner gets half of the K factor
+        assertEquals(new PlayerRating("player1", 1216, 1, 0, 0), table.get("player1"));
+        assertEquals(new PlayerRating("player2", 1184, 0, 1, 0), table.get("player2"));
+    }
+
+    @Test
+    void tieBetweenEqualRatingsOnlyCountsTheTie() {
+        RatingTable table = new RatingTable();
+        table.recordResult("player1", "player2", null);
+
+        assertEquals(new PlayerRating("player1", PlayerRating.INITIAL_RATING, 0, 0, 1), table.get("player1"));
+        assertEquals(new PlayerRating("player2", PlayerRating.INITIAL_RATING, 0, 0, 1), table.get("player2"));
+    }
+
+    @Test
+    void topAndRankFollowTheRatings() {
+        RatingTable table = new RatingTable();
+        table.recordResult("player1", "player2", "player1");
+        table.recordResult("player1", "player3", "player1");
+        table.recordResult("player3", "player2", null);
+
+        List<PlayerRating> top = table.top(2);
+        assertEquals(2, top.size());
+        assertEquals("player1", top.get(0).username());
+        assertEquals(1, table.rankOf(table.get("player1").rating()));
+        assertEquals(2, table.rankOf(top.get(1).rating()));
+        assertNull(table.get("player4"));
+    }
+
+    @Test
+    void restoreKeepsExistingStateAndClampsTheRating() {
+        RatingTable table = new RatingTable();
+        table.recordResult("player1", "player2", "player1");
+        table.restore(new PlayerRating("player1", 2000, 9, 9, 9));
+        table.restore(new PlayerRating("player3", RatingTable.MAX_RATING + 100, 1, 0, 0));
+
+        assertEquals(1216, table.get("player1").rating());
+        assertEquals(RatingTable.MAX_RATING, table.get("player3").rating());
+        assertEquals("player3", table.top(1).get(0).username());
+        assertEquals(3, table.all().size());
+    }
+}
@@ -0,0 +1,131 @@
+package server.protocoltests;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.jupiter.api.*;
+import Utilities.messages.*;
+import Utilities.messages.room.RoomJoinReq;
+import Utilities.messages.room.RoomJoinResp;
+import Utilities.messages.room.RoomMsgReq;
+import Utilities.messages.room.RoomMsgResp;
+import Utilities.messages.search.SearchReq;
+import Utilities.messages.search.SearchResp;
+import server.protocoltests.protocol.utils.Utils;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.Properties;
+
+import static java.time.Duration.ofMillis;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchTests {
+
+    private final static Properties PROPS = new Properties();
+
+    private Socket socketUser1, socketUser2;
+    private BufferedReader inUser1, inUser2;
+    private PrintWriter outUser1, outUser2;
+
+    private final static int MAX_DELTA_ALLOWED_MS = 100;
+    // Messages are indexed in the background, so a search is repeated until it finds them
+    private final static int MAX_INDEX_WAIT_MS = 2000;
+
+    @BeforeAll
+    static void setupAll() throws IOException {
+        InputStream in = SearchTests.class.getResourceAsStream("testconfig.properties");
+        PROPS.load(in);
+        in.close();
+    }
+
+    @BeforeEach
+    void setup() throws IOException {
+        socketUser1 = new Socket(PROPS.getProperty("host"), Integer.parseInt(PROPS.getProperty("port")));
+        inUser1 = new BufferedReader(new InputStreamReader(socketUser1.getInputStream()));
+        outUser1 = new PrintWriter(socketUser1.getOutputStream(), true);
+
+        socketUser2 = new Socket(PROPS.getProperty("host"), Integer.parseInt(PROPS.getProperty("port")));
+        inUser2 = new BufferedReader(new InputStreamReader(socketUser2.getInputStream()));
+        outUser2 = new PrintWriter(socketUser2.getOutputStream(), true);
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        socketUser1.close();
+        socketUser2.close();
+    }
+
+    @Test
+    void tc71RoomMessageIsOnlyFoundByMembersOfTheRoom() throws JsonProcessingException, InterruptedException {
+        receiveLineWithTimeout(inUser1); //ready msg
+        receiveLineWithTimeout(inUser2); //ready msg
+
+        outUser1.println(Utils.objectToMessage(new Enter("searcher1")));
+        receiveLineWithTimeout(inUser1); //OK
+        outUser1.println(Utils.objectToMessage(new RoomJoinReq("searchroom")));
+        RoomJoinResp roomJoinResp = Utils.messageToObject(receiveLineWithTimeout(inUser1));
+        assertEquals(new RoomJoinResp("OK", 0), roomJoinResp);
+        outUser1.println(Utils.objectToMessage(new RoomMsgReq("searchroom", "secret roomword")));
+        RoomMsgResp roomMsgResp = Utils.messageToObject(receiveLineWithTimeout(inUser1));
+        assertEquals(new RoomMsgResp("OK", 0), roomMsgResp);
+
+        outUser2.println(Utils.objectToMessage(new Enter("searcher2")));
+        receiveLineWithTimeout(inUser2); //OK
+        receiveLineWithTimeout(inUser1); //JOINED
+
+        // The member finds the message once it is indexed
+        SearchResp found = searchUntilFound(inUser1, outUser1, "roomword");
+        assertTrue(found.results().stream().anyMatch(result -> result.channel().equals("searchroom")));
+
+        // Another user does not, until joining the room
+        SearchResp notFound = search(inUser2, outUser2, "roomword");
+        assertEquals("OK", notFound.status());
+        assertTrue(notFound.results().stream().noneMatch(result -> result.channel().equals("searchroom")));
+
+        outUser2.println(Utils.objectToMessage(new RoomJoinReq("searchroom")));
+        receiveLineWithTimeout(inUser2); //OK
+        SearchResp afterJoin = search(inUser2, outUser2, "roomword");
+        assertTrue(afterJoin.results().stream().anyMatch(result -> result.channel().equals("searchroom")
+                && result.message().equals("secret roomword")));
+    }
+
+    @Test
+    void tc72BroadcastIsFoundByEveryUser() throws JsonProcessingException, InterruptedException {
+        receiveLineWithTimeout(inUser1); //ready msg
+        receiveLineWithTimeout(inUser2); //ready msg
+
+        outUser1.println(Utils.objectToMessage(new Enter("searcher3")));
+        receiveLineWithTimeout(inUser1); //OK
+        outUser1.println(Utils.objectToMessage(new BroadcastReq("public lobbyword")));
+        receiveLineWithTimeout(inUser1); //OK
+
+        // A user who logs in later finds it as well
+        outUser2.println(Utils.objectToMessage(new Enter("searcher4")));
+        receiveLineWithTimeout(inUser2); //OK
+        receiveLineWithTimeout(inUser1); //JOINED
+
+        SearchResp found = searchUntilFound(inUser2, outUser2, "lobbyword");
+        assertTrue(found.results().stream().anyMatch(result -> result.channel().equals("lobby")
+                && result.sender().equals("searcher3")));
+    }
+
+    private SearchResp search(BufferedReader in, PrintWriter out, String query) throws JsonProcessingException {
+        out.println(Utils.objectToMessage(new SearchReq(query, 0)));
+        return Utils.messageToObject(receiveLineWithTimeout(in));
+    }
+
+    private SearchResp searchUntilFound(BufferedReader in, PrintWriter out, String query) throws JsonProcessingException, InterruptedException {
+        long deadline = System.currentTimeMillis() + MAX_INDEX_WAIT_MS;
+        SearchResp resp = search(in, out, query);
+        while (resp.results().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            resp = search(in, out, query);
+        }
+        assertFalse(resp.results().isEmpty(), "No results for " + query);
+        return resp;
+    }
+
+    private String receiveLineWithTimeout(BufferedReader reader) {
+        return assertTimeoutPreemptively(ofMillis(MAX_DELTA_ALLOWED_MS), reader::readLine);
+    }
+
+}
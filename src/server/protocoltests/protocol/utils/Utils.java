@@ -1,38 +1,16 @@
 package server.protocoltests.protocol.utils;
 
+import Utilities.MessageCodec;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import Utilities.messages.*;
-
-import java.util.HashMap;
-import java.util.Map;
 
 public class Utils {
 
-    private final static ObjectMapper mapper = new ObjectMapper();
-    private final static Map<Class<?>, String> objToNameMapping = new HashMap<>();
-    static {
-        objToNameMapping.put(Enter.class, "ENTER");
-        objToNameMapping.put(EnterResp.class, "ENTER_RESP");
-        objToNameMapping.put(BroadcastReq.class, "BROADCAST_REQ");
-        objToNameMapping.put(BroadcastResp.class, "BROADCAST_RESP");
-        objToNameMapping.put(Broadcast.class, "BROADCAST");
-        objToNameMapping.put(Joined.class, "JOINED");
-        objToNameMapping.put(ParseError.class, "PARSE_ERROR");
-        objToNameMapping.put(Pong.class, "PONG");
-        objToNameMapping.put(PongError.class, "PONG_ERROR");
-        objToNameMapping.put(Ready.class, "READY");
-        objToNameMapping.put(Ping.class, "PING");
-    }
-
     public static String objectToMessage(Object object) throws JsonProcessingException {
-        Class<?> clazz = object.getClass();
-        String header = objToNameMapping.get(clazz);
+        String header = MessageCodec.commandOf(object.getClass());
         if (header == null) {
             throw new RuntimeException("Cannot convert this class to a message");
         }
-        String body = mapper.writeValueAsString(object);
-        return header + " " + body;
+        return MessageCodec.encode(header, object);
     }
 
     public static <T> T messageToObject(String message) throws JsonProcessingException {
@@ -45,16 +23,9 @@ public class Utils {
         if (parts.length == 2) {
             body = parts[1];
         }
-        Class<?> clazz = getClass(header);
-        Object obj = mapper.readValue(body, clazz);
-        return (T) clazz.cast(obj);
-    }
-
-    private static Class<?> getClass(String header) {
-        return objToNameMapping.entrySet().stream()
-                .filter(e -> e.getValue().equals(header))
-                .map(Map.Entry::getKey)
-                .findFirst()
-                .orElseThrow(() -> new RuntimeException("Cannot find class belonging to header " + header));
+        if (MessageCodec.typeOf(header) == null) {
+            throw new RuntimeException("Cannot find class belonging to header " + header);
+        }
+        return (T) MessageCodec.decode(header, body);
     }
 }
@@ -0,0 +1,142 @@
+package server.search;
+
+import java.util.Arrays;
+
+/**
+ * Sorted list of document ids, stored as the varint-encoded differences between consecutive ids.
+ * Ids must be added in increasing order; adding the last id again is ignored.
+ * Most gaps fit in one or two bytes, so a list costs a few bytes per document instead of four.
+ *
+ * The list is split into blocks of BLOCK_SIZE ids. For every block the byte position and the id before
+ * it are kept, so a reader can start decoding at any block: to skip ahead to an id, or to walk the
+ * list backwards one block at a time.
+ */
+public final class PostingsList {
+    public static final int BLOCK_SIZE = 128;
+
+    private byte[] bytes = new byte[8];
+    private int size;
+    private int lastDoc = -1;
+    private int count;
+    private int[] blockPositions = new int[1];
+    private int[] blockBaseDocs = new int[1];
+    private int blocks;
+
+    public void add(int doc) {
+        if (doc == lastDoc) {
+            return;
+        }
+        if (count % BLOCK_SIZE == 0) {
+            if (blocks == blockPositions.length) {
+                blockPositions = Arrays.copyOf(blockPositions, blocks * 2);
+                blockBaseDocs = Arrays.copyOf(blockBaseDocs, blocks * 2);
+            }
+            blockPositions[blocks] = size;
+            blockBaseDocs[blocks] = lastDoc;
+            blocks++;
+        }
+
+        int delta = doc - lastDoc;
+        if (size + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        while ((delta & ~0x7F) != 0) {
+            bytes[size++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        bytes[size++] = (byte) delta;
+        lastDoc = doc;
+        count++;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int blockCount() {
+        return blocks;
+    }
+
+    /**
+     * Decodes the ids of one block.
+     *
+     * @param block The index of the block.
+     * @param docs  Receives the ids, at least BLOCK_SIZE long.
+     * @return The number of ids in the block.
+     */
+    public int readBlock(int block, int[] docs) {
+        Cursor cursor = new Cursor(block);
+        int n = Math.min(BLOCK_SIZE, count - block * BLOCK_SIZE);
+        for (int i = 0; i < n; i++) {
+            docs[i] = cursor.advanceTo(cursor.doc + 1);
+        }
+        return n;
+    }
+
+    /**
+     * @return A cursor positioned before the first id.
+     */
+    public Cursor cursor() {
+        return new Cursor(0);
+    }
+
+    /**
+     * @return A cursor positioned before the first id that is not smaller than the target,
+     * without decoding the blocks before it.
+     */
+    public Cursor cursorFrom(int target) {
+        int low = 0;
+        int high = blocks - 1;
+        // Find the last block whose preceding id is smaller than the target
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (blockBaseDocs[mid] < target) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return new Cursor(low);
+    }
+
+    /**
+     * Walks the list forward. Every call must ask for an id at least as large as the previous one.
+     */
+    public final class Cursor {
+        private int position;
+        private int doc;
+
+        private Cursor(int block) {
+            position = blocks == 0 ? 0 : blockPositions[block];
+            doc = blocks == 0 ? -1 : blockBaseDocs[block];
+        }
+
+        /**
+         * Moves to the first id that is not smaller than the target.
+         *
+         * @return The id, or Integer.MAX_VALUE if the list has no such id.
+         */
+        public int advanceTo(int target) {
+            while (doc < target) {
+                if (position >= size) {
+                    doc = Integer.MAX_VALUE;
+                    break;
+                }
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += delta;
+            }
+            return doc;
+        }
+
+        public boolean contains(int target) {
+            return advanceTo(target) == target;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package server.search;
+
+import Utilities.MessageCodec;
+import Utilities.messages.search.SearchResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import server.journal.JournalRecord;
+import server.journal.MessageJournal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Inverted index over the text of every journaled message.
+ *
+ * Each message gets a document id in the order it was indexed; the index maps every term to the
+ * postings list of the documents containing it and the document id back to the journal offset, so
+ * the message itself is read from the journal. Private messages are also listed under their sender
+ * and receiver, and only those two users can find them. Room messages are only found by members of the room.
+ * Messages the journal dropped because of its retention are skipped.
+ *
+ * Messages are indexed on a background thread: the send path only hands the journal record over.
+ */
+public class SearchIndex {
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    private final MessageJournal journal;
+    private final Map<String, PostingsList> terms = new HashMap<>();
+    private final Map<String, PostingsList> privateDocsByUser = new HashMap<>();
+    private final PostingsList privateDocs = new PostingsList();
+    private long[] journalOffsets = new long[1024];
+    // The channel of every document; documents of the same channel share one string
+    private String[] channels = new String[1024];
+    private final Map<String, String> channelNames = new HashMap<>();
+    private int docCount;
+    private ExecutorService indexer;
+
+    public SearchIndex(MessageJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Indexes the messages already in the journal and every message appended from now on.
+     * Must be called after the journal was started and before clients connect. The journal hands
+     * new messages over in offset order and the single indexer thread keeps that order.
+     */
+    public void start() {
+        indexer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "search-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long end = journal.getNextOffset();
+        indexer.execute(() -> journal.read(0, (int) Math.min(end, Integer.MAX_VALUE), this::index));
+        journal.addListener(record -> indexer.execute(() -> index(record)));
+    }
+
+    /**
+     * Finds the most recent messages containing every term of a query that a user is allowed to see.
+     *
+     * @param username The user searching.
+     * @param rooms    The rooms the user is a member of.
+     * @param query    The terms that must all occur in a message, as returned by Tokenizer.tokenize().
+     * @param limit    The maximum number of results.
+     * @return The matching messages, newest first.
+     */
+    public List<SearchResult> search(String username, Set<String> rooms, List<String> query, int limit) {
+        long[] found = new long[limit];
+        int count = 0;
+        long firstOffset = journal.getFirstOffset();
+
+        synchronized (this) {
+            PostingsList[] lists = new PostingsList[query.size()];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = terms.get(query.get(i));
+                if (lists[i] == null) {
+                    return List.of();
+                }
+            }
+            // The shortest list leads and is walked backwards one block at a time, so the search stops
+            // as soon as enough recent matches are found. The other lists are only probed for its ids.
+            Arrays.sort(lists, Comparator.comparingInt(PostingsList::count));
+            PostingsList lead = lists[0];
+            PostingsList own = privateDocsByUser.get(username);
+            int[] block = new int[PostingsList.BLOCK_SIZE];
+            int[] matches = new int[PostingsList.BLOCK_SIZE];
+
+            for (int b = lead.blockCount() - 1; b >= 0 && count < limit; b--) {
+                int n = lead.readBlock(b, block);
+                PostingsList.Cursor[] others = new PostingsList.Cursor[lists.length - 1];
+                for (int i = 1; i < lists.length; i++) {
+                    others[i - 1] = lists[i].cursorFrom(block[0]);
+                }
+                PostingsList.Cursor privateCursor = privateDocs.cursorFrom(block[0]);
+                PostingsList.Cursor ownCursor = own == null ? null : own.cursorFrom(block[0]);
+
+                int matched = 0;
+                for (int i = 0; i < n; i++) {
+                    int doc = block[i];
+                    boolean inAll = true;
+                    for (PostingsList.Cursor other : others) {
+                        if (!other.contains(doc)) {
+                            inAll = false;
+                            break;
+                        }
+                    }
+                    if (inAll && (privateCursor.contains(doc) ? ownCursor != null && ownCursor.contains(doc) : rooms.contains(channels[doc]))) {
+                        matches[matched++] = doc;
+                    }
+                }
+                for (int i = matched - 1; i >= 0 && count < limit; i--) {
+                    long offset = journalOffsets[matches[i]];
+                    if (offset < firstOffset) {
+                        break;
+                    }
+                    found[count++] = offset;
+                }
+                // Documents follow the journal order, so the earlier blocks only hold dropped messages
+                if (journalOffsets[block[0]] < firstOffset) {
+                    break;
+                }
+            }
+        }
+
+        List<SearchResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long offset = found[i];
+            journal.read(offset, 1, record -> {
+                // A segment dropped meanwhile makes the read start at a later message
+                SearchResult result = record.offset() == offset ? parse(record) : null;
+                if (result != null) {
+                    results.add(result);
+                }
+            });
+        }
+        return results;
+    }
+
+    private void index(JournalRecord record) {
+        SearchResult message = parse(record);
+        if (message == null) {
+            return;
+        }
+        List<String> messageTerms = Tokenizer.tokenize(message.message());
+
+        synchronized (this) {
+            int doc = docCount++;
+            if (doc == journalOffsets.length) {
+                journalOffsets = Arrays.copyOf(journalOffsets, doc * 2);
+                channels = Arrays.copyOf(channels, doc * 2);
+            }
+            journalOffsets[doc] = record.offset();
+            channels[doc] = channelNames.computeIfAbsent(record.channel(), c -> c);
+            for (String term : messageTerms) {
+                terms.computeIfAbsent(term, t -> new PostingsList()).add(doc);
+            }
+            if (record.channel().startsWith("@")) {
+                privateDocs.add(doc);
+                privateDocsByUser.computeIfAbsent(message.sender(), u -> new PostingsList()).add(doc);
+                privateDocsByUser.computeIfAbsent(record.channel().substring(1), u -> new PostingsList()).add(doc);
+            }
+        }
+    }
+
+    /**
+     * Extracts the sender and text from a journaled BROADCAST, ROOM_MSG or PRIVATE_MSG frame.
+     *
+     * @return The message, or null if the frame has no text.
+     */
+    private SearchResult parse(JournalRecord record) {
+        String frame = record.frame();
+        int space = frame.indexOf(' ');
+        if (space < 0) {
+            return null;
+        }
+        try {
+            JsonNode node = MessageCodec.readTree(frame.substring(space + 1));
+            String sender = node.has("username") ? node.path("username").asText() : node.path("sender").asText();
+            String message = node.path("message").asText(null);
+            return message == null ? null : new SearchResult(record.channel(), sender, message, record.timestamp());
+        } catch (JsonProcessingException e) {
+            System.out.println("Error indexing journal record " + record.offset() + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
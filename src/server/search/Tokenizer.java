@@ -0,0 +1,42 @@
+package server.search;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits message text into search terms: runs of letters and digits, lower-cased.
+ * Terms shorter than MIN_LENGTH are dropped and longer than MAX_LENGTH are cut off.
+ */
+public final class Tokenizer {
+    public static final int MIN_LENGTH = 2;
+    public static final int MAX_LENGTH = 32;
+
+    private Tokenizer() {
+    }
+
+    /**
+     * @param text The text to split.
+     * @return The distinct terms of the text, in the order they first appear.
+     */
+    public static List<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i - start >= MIN_LENGTH) {
+                terms.add(text.substring(start, Math.min(i, start + MAX_LENGTH)).toLowerCase(Locale.ROOT));
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+}